@@ -0,0 +1,294 @@
+package de.oscillation.kismet.connector;
+
+import java.io.Serializable;
+import java.util.UUID;
+
+/**
+ * Compact, column oriented representation of the signal strength statistics per device and drone within a window.
+ * For every (device, drone) pair seen in the window, the batch contains the number of measured values, the minimum,
+ * maximum, mean and last signal strength, and the timestamps of the first and the last measured value. Drones are
+ * stored as indices into a drone table, just like in a {@link KismetMeasuredValueBatch}. Batches are immutable once
+ * constructed.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetAggregatedMessage
+ */
+public final class KismetAggregateBatch implements Serializable {
+    /** The serial version UID of this class. */
+    private static final long serialVersionUID = 1L;
+
+    /** The drone table, indexed by the drone indices. */
+    private final UUID[] drones;
+
+    /** The number of (device, drone) pairs. */
+    private final int size;
+
+    /** The EUI-48 addresses of the devices. */
+    private final long[] deviceIds;
+
+    /** The indices of the drones into the drone table. */
+    private final int[] droneIndices;
+
+    /** The number of measured values. */
+    private final int[] counts;
+
+    /** The minimum signal strengths in dBm. */
+    private final int[] minSignalStrengths;
+
+    /** The maximum signal strengths in dBm. */
+    private final int[] maxSignalStrengths;
+
+    /** The sums of the signal strengths in dBm. */
+    private final long[] sumSignalStrengths;
+
+    /** The last signal strengths in dBm. */
+    private final int[] lastSignalStrengths;
+
+    /** The kismet server timestamps of the first measured values in seconds. */
+    private final long[] firstTimestamps;
+
+    /** The kismet server timestamps of the last measured values in seconds. */
+    private final long[] lastTimestamps;
+
+    /**
+     * Constructs a new batch from the specified columns. The batch takes ownership of the arrays, so they must not be
+     * modified afterwards.
+     * 
+     * @param drones the drone table.
+     * @param size the number of (device, drone) pairs.
+     * @param deviceIds the EUI-48 addresses of the devices.
+     * @param droneIndices the indices of the drones into the <code>drones</code> table.
+     * @param counts the number of measured values.
+     * @param minSignalStrengths the minimum signal strengths in dBm.
+     * @param maxSignalStrengths the maximum signal strengths in dBm.
+     * @param sumSignalStrengths the sums of the signal strengths in dBm.
+     * @param lastSignalStrengths the last signal strengths in dBm.
+     * @param firstTimestamps the kismet server timestamps of the first measured values in seconds.
+     * @param lastTimestamps the kismet server timestamps of the last measured values in seconds.
+     * @throws IllegalArgumentException if <code>size</code> is negative or exceeds the length of any column.
+     * @throws NullPointerException if any of the arrays is <code>null</code>.
+     */
+    public KismetAggregateBatch(UUID[] drones, int size, long[] deviceIds, int[] droneIndices, int[] counts, int[] minSignalStrengths,
+                                int[] maxSignalStrengths, long[] sumSignalStrengths, int[] lastSignalStrengths, long[] firstTimestamps,
+                                long[] lastTimestamps) {
+        if (drones == null) {
+            throw new NullPointerException("drones must not be null");
+        }
+        if (size < 0 || size > deviceIds.length || size > droneIndices.length || size > counts.length || size > minSignalStrengths.length
+            || size > maxSignalStrengths.length || size > sumSignalStrengths.length || size > lastSignalStrengths.length
+            || size > firstTimestamps.length || size > lastTimestamps.length) {
+            throw new IllegalArgumentException("Invalid size " + size);
+        }
+        this.drones = drones;
+        this.size = size;
+        this.deviceIds = deviceIds;
+        this.droneIndices = droneIndices;
+        this.counts = counts;
+        this.minSignalStrengths = minSignalStrengths;
+        this.maxSignalStrengths = maxSignalStrengths;
+        this.sumSignalStrengths = sumSignalStrengths;
+        this.lastSignalStrengths = lastSignalStrengths;
+        this.firstTimestamps = firstTimestamps;
+        this.lastTimestamps = lastTimestamps;
+    }
+
+    /**
+     * Returns the number of (device, drone) pairs in this batch.
+     * 
+     * @return the number of pairs.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the number of entries in the drone table of this batch.
+     * 
+     * @return the number of drones.
+     */
+    public int getDroneCount() {
+        return this.drones.length;
+    }
+
+    /**
+     * Returns the drone at <code>droneIndex</code> in the drone table of this batch.
+     * 
+     * @param droneIndex the index into the drone table.
+     * @return the drone identifier.
+     * @throws IndexOutOfBoundsException if <code>droneIndex</code> is out of range.
+     */
+    public UUID getDrone(int droneIndex) {
+        return this.drones[droneIndex];
+    }
+
+    /**
+     * Returns the EUI-48 address of the device of the <code>index</code>-th pair.
+     * 
+     * @param index the index of the pair.
+     * @return the EUI-48 address in the lower 48 bits.
+     * @throws IndexOutOfBoundsException if <code>index</code> is out of range.
+     */
+    public long getDeviceId(int index) {
+        return this.deviceIds[checkIndex(index)];
+    }
+
+    /**
+     * Returns the index into the drone table of the drone of the <code>index</code>-th pair.
+     * 
+     * @param index the index of the pair.
+     * @return the index into the drone table.
+     * @throws IndexOutOfBoundsException if <code>index</code> is out of range.
+     */
+    public int getDroneIndex(int index) {
+        return this.droneIndices[checkIndex(index)];
+    }
+
+    /**
+     * Returns the unique identifier of the drone of the <code>index</code>-th pair.
+     * 
+     * @param index the index of the pair.
+     * @return the drone identifier.
+     * @throws IndexOutOfBoundsException if <code>index</code> is out of range.
+     */
+    public UUID getDroneId(int index) {
+        return this.drones[this.droneIndices[checkIndex(index)]];
+    }
+
+    /**
+     * Returns the number of measured values of the <code>index</code>-th pair.
+     * 
+     * @param index the index of the pair.
+     * @return the number of measured values.
+     * @throws IndexOutOfBoundsException if <code>index</code> is out of range.
+     */
+    public int getCount(int index) {
+        return this.counts[checkIndex(index)];
+    }
+
+    /**
+     * Returns the minimum signal strength of the <code>index</code>-th pair in dBm.
+     * 
+     * @param index the index of the pair.
+     * @return the minimum signal strength.
+     * @throws IndexOutOfBoundsException if <code>index</code> is out of range.
+     */
+    public int getMinSignalStrength(int index) {
+        return this.minSignalStrengths[checkIndex(index)];
+    }
+
+    /**
+     * Returns the maximum signal strength of the <code>index</code>-th pair in dBm.
+     * 
+     * @param index the index of the pair.
+     * @return the maximum signal strength.
+     * @throws IndexOutOfBoundsException if <code>index</code> is out of range.
+     */
+    public int getMaxSignalStrength(int index) {
+        return this.maxSignalStrengths[checkIndex(index)];
+    }
+
+    /**
+     * Returns the sum of the signal strengths of the <code>index</code>-th pair in dBm.
+     * 
+     * @param index the index of the pair.
+     * @return the sum of the signal strengths.
+     * @throws IndexOutOfBoundsException if <code>index</code> is out of range.
+     */
+    public long getSumSignalStrength(int index) {
+        return this.sumSignalStrengths[checkIndex(index)];
+    }
+
+    /**
+     * Returns the mean signal strength of the <code>index</code>-th pair in dBm.
+     * 
+     * @param index the index of the pair.
+     * @return the mean signal strength.
+     * @throws IndexOutOfBoundsException if <code>index</code> is out of range.
+     */
+    public double getMeanSignalStrength(int index) {
+        return (double) this.sumSignalStrengths[checkIndex(index)] / this.counts[index];
+    }
+
+    /**
+     * Returns the last signal strength of the <code>index</code>-th pair in dBm.
+     * 
+     * @param index the index of the pair.
+     * @return the last signal strength.
+     * @throws IndexOutOfBoundsException if <code>index</code> is out of range.
+     */
+    public int getLastSignalStrength(int index) {
+        return this.lastSignalStrengths[checkIndex(index)];
+    }
+
+    /**
+     * Returns the kismet server timestamp of the first measured value of the <code>index</code>-th pair in seconds.
+     * 
+     * @param index the index of the pair.
+     * @return the timestamp of the first measured value.
+     * @throws IndexOutOfBoundsException if <code>index</code> is out of range.
+     */
+    public long getFirstTimestamp(int index) {
+        return this.firstTimestamps[checkIndex(index)];
+    }
+
+    /**
+     * Returns the kismet server timestamp of the last measured value of the <code>index</code>-th pair in seconds.
+     * 
+     * @param index the index of the pair.
+     * @return the timestamp of the last measured value.
+     * @throws IndexOutOfBoundsException if <code>index</code> is out of range.
+     */
+    public long getLastTimestamp(int index) {
+        return this.lastTimestamps[checkIndex(index)];
+    }
+
+    /**
+     * Returns the last measured value of every pair as batch of measured values. The returned batch shares the columns
+     * with this batch.
+     * 
+     * @return the batch of last measured values.
+     */
+    public KismetMeasuredValueBatch getLastMeasuredValues() {
+        return new KismetMeasuredValueBatch(this.drones, this.size, this.deviceIds, this.droneIndices, this.lastSignalStrengths, this.lastTimestamps);
+    }
+
+    /**
+     * Checks that <code>index</code> is within the range of this batch.
+     * 
+     * @param index the index to check.
+     * @return the <code>index</code>.
+     * @throws IndexOutOfBoundsException if <code>index</code> is out of range.
+     */
+    private int checkIndex(int index) {
+        if (index < 0 || index >= this.size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+        }
+        return index;
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append('[');
+        for (int i = 0; i < this.size; ++i) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append("KismetAggregate[deviceId=").append(KismetIdentifiers.toString(this.deviceIds[i]));
+            sb.append(",droneId=").append(this.drones[this.droneIndices[i]]);
+            sb.append(",count=").append(this.counts[i]);
+            sb.append(",min=").append(this.minSignalStrengths[i]);
+            sb.append(",max=").append(this.maxSignalStrengths[i]);
+            sb.append(",mean=").append(getMeanSignalStrength(i));
+            sb.append(",last=").append(this.lastSignalStrengths[i]);
+            sb.append(",firstTimestamp=").append(this.firstTimestamps[i]);
+            sb.append(",lastTimestamp=").append(this.lastTimestamps[i]);
+            sb.append(']');
+        }
+        sb.append(']');
+        return sb.toString();
+    }
+}
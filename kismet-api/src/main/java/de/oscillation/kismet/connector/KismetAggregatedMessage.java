@@ -0,0 +1,105 @@
+package de.oscillation.kismet.connector;
+
+/**
+ * Represents a message send from the kismet resource adapter to the {@link KismetMessageService} when the activation
+ * is configured for windowed aggregation. Instead of the individual measured values, the message carries the signal
+ * strength statistics per device and drone for a single window. For compatibility with existing consumers, the
+ * {@link #getMeasuredValues() measured values} of the message are the last measured values per device and drone.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetAggregateBatch
+ */
+public class KismetAggregatedMessage extends KismetMessage {
+    /** The serial version UID of this class. */
+    private static final long serialVersionUID = 1L;
+
+    /** The statistics per device and drone. */
+    private final KismetAggregateBatch aggregates;
+
+    /** The kismet server timestamp of the start of the window in seconds (inclusive). */
+    private final long windowStart;
+
+    /** The kismet server timestamp of the end of the window in seconds (exclusive). */
+    private final long windowEnd;
+
+    /**
+     * Constructs a new aggregated message with the specified parameters.
+     * 
+     * @param droneRegistry the registry of known drones.
+     * @param aggregates the statistics per device and drone.
+     * @param windowStart the kismet server timestamp of the start of the window in seconds (inclusive).
+     * @param windowEnd the kismet server timestamp of the end of the window in seconds (exclusive).
+     * @param timestamp the kismet server timestamp in seconds.
+     * @throws NullPointerException if either <code>droneRegistry</code> or <code>aggregates</code> is
+     *             <code>null</code>.
+     */
+    public KismetAggregatedMessage(KismetDroneRegistry droneRegistry, KismetAggregateBatch aggregates, long windowStart, long windowEnd, long timestamp) {
+        this(droneRegistry, aggregates, windowStart, windowEnd, timestamp, false);
+    }
+
+    /**
+     * Constructs a new aggregated message with the specified parameters, which also reports whether measured values
+     * may be missing from the window.
+     * 
+     * @param droneRegistry the registry of known drones.
+     * @param aggregates the statistics per device and drone.
+     * @param windowStart the kismet server timestamp of the start of the window in seconds (inclusive).
+     * @param windowEnd the kismet server timestamp of the end of the window in seconds (exclusive).
+     * @param timestamp the kismet server timestamp in seconds.
+     * @param afterGap whether the connection to the kismet server was interrupted since the previous message.
+     * @throws NullPointerException if either <code>droneRegistry</code> or <code>aggregates</code> is
+     *             <code>null</code>.
+     * @see #isAfterGap()
+     */
+    public KismetAggregatedMessage(KismetDroneRegistry droneRegistry, KismetAggregateBatch aggregates, long windowStart, long windowEnd, long timestamp, boolean afterGap) {
+        super(droneRegistry, aggregates.getLastMeasuredValues(), KismetMeasuredValueBatch.empty(), timestamp, afterGap);
+        this.aggregates = aggregates;
+        this.windowStart = windowStart;
+        this.windowEnd = windowEnd;
+    }
+
+    /**
+     * Returns the signal strength statistics per device and drone within the window.
+     * 
+     * @return the statistics per device and drone.
+     */
+    public KismetAggregateBatch getAggregates() {
+        return this.aggregates;
+    }
+
+    /**
+     * Returns the kismet server timestamp of the start of the window in seconds (inclusive).
+     * 
+     * @return the start of the window.
+     */
+    public long getWindowStart() {
+        return this.windowStart;
+    }
+
+    /**
+     * Returns the kismet server timestamp of the end of the window in seconds (exclusive).
+     * 
+     * @return the end of the window.
+     */
+    public long getWindowEnd() {
+        return this.windowEnd;
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(KismetAggregatedMessage.class.getName());
+        sb.append("[droneNames=" + getDroneNames() + "]");
+        sb.append("[aggregates=" + this.aggregates + "]");
+        sb.append("[windowStart=" + this.windowStart + "]");
+        sb.append("[windowEnd=" + this.windowEnd + "]");
+        sb.append("[timestamp=" + getTimestamp() + "]");
+        if (isAfterGap()) {
+            sb.append("[afterGap=true]");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,74 @@
+package de.oscillation.kismet.connector;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import de.benediktmeurer.eui4j.EUI48;
+
+/**
+ * The interface to the live state of the devices seen by the kismet servers, i.e. the latest measured value per device
+ * and drone and the most recent measured values per device, as maintained by the kismet resource adapter. It is looked
+ * up as administered object (for example via JNDI), and answers from memory without blocking the connections, so
+ * applications need not rebuild the state from the messages delivered to their kismet message service beans.
+ * <p>
+ * Devices and drones not seen for the time-to-live configured on the kismet resource adapter are evicted, so the state
+ * only covers the devices currently around. All returned collections are snapshots and may be modified by the caller.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetMessageService
+ */
+public interface KismetDeviceStateService {
+    /**
+     * Returns the devices currently known.
+     * 
+     * @return the EUI-48 addresses of the devices.
+     */
+    public Set<EUI48> getDevices();
+
+    /**
+     * Returns the number of devices currently known.
+     * 
+     * @return the number of devices.
+     */
+    public int getDeviceCount();
+
+    /**
+     * Returns the latest measured value of the specified device reported by the specified drone.
+     * 
+     * @param deviceId the EUI-48 address of the device.
+     * @param droneId the UUID of the drone.
+     * @return the latest measured value, or <code>null</code> if the drone has not seen the device recently.
+     * @throws NullPointerException if either <code>deviceId</code> or <code>droneId</code> is <code>null</code>.
+     */
+    public KismetMeasuredValue getLatestValue(EUI48 deviceId, UUID droneId);
+
+    /**
+     * Returns the latest measured values of the specified device, one per drone that has seen the device recently.
+     * 
+     * @param deviceId the EUI-48 address of the device.
+     * @return the latest measured values indexed by drone UUID, empty if the device is unknown.
+     * @throws NullPointerException if <code>deviceId</code> is <code>null</code>.
+     */
+    public Map<UUID, KismetMeasuredValue> getLatestValues(EUI48 deviceId);
+
+    /**
+     * Returns the latest measured values reported by the specified drone, one per device the drone has seen recently.
+     * 
+     * @param droneId the UUID of the drone.
+     * @return the latest measured values indexed by device EUI-48 address, empty if the drone is unknown.
+     * @throws NullPointerException if <code>droneId</code> is <code>null</code>.
+     */
+    public Map<EUI48, KismetMeasuredValue> getLatestValuesByDrone(UUID droneId);
+
+    /**
+     * Returns the most recent measured values of the specified device reported by any drone, the most recent first.
+     * The number of measured values retained per device is configured on the kismet resource adapter.
+     * 
+     * @param deviceId the EUI-48 address of the device.
+     * @return the most recent measured values, empty if the device is unknown.
+     * @throws NullPointerException if <code>deviceId</code> is <code>null</code>.
+     */
+    public List<KismetMeasuredValue> getRecentValues(EUI48 deviceId);
+}
@@ -0,0 +1,156 @@
+package de.oscillation.kismet.connector;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Immutable, versioned snapshot of the drones known to a kismet server connection. A new snapshot with the next
+ * version number is only created when a drone is added or renamed, and all {@link KismetMessage}s generated in the
+ * meantime share the same snapshot. Consumers can therefore compare the {@link #getVersion() version} of the registry
+ * of a message with the version they saw last, and skip rebuilding their own drone lookup tables if it didn't change.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetMessage#getDroneRegistry()
+ */
+public final class KismetDroneRegistry implements Serializable {
+    /** The serial version UID of this class. */
+    private static final long serialVersionUID = 1L;
+
+    /** The version of registries that were not created by the kismet resource adapter. */
+    public static final long UNVERSIONED = -1L;
+
+    /** The empty registry, which is the initial registry of every connection. */
+    public static final KismetDroneRegistry EMPTY = new KismetDroneRegistry(Collections.<UUID, String> emptyMap(), 0L);
+
+    /** The unmodifiable mapping of known drone UUIDs to their configured names. */
+    private final Map<UUID, String> droneNames;
+
+    /** The version of this registry. */
+    private final long version;
+
+    /**
+     * Constructs a new registry with the specified parameters.
+     * 
+     * @param droneNames the unmodifiable mapping of drone UUIDs to their names.
+     * @param version the version of the registry.
+     */
+    private KismetDroneRegistry(Map<UUID, String> droneNames, long version) {
+        this.droneNames = droneNames;
+        this.version = version;
+    }
+
+    /**
+     * Returns an unversioned registry for the specified mapping of drone UUIDs to their names. The registry is backed
+     * by the <code>droneNames</code>, so it must not be modified afterwards.
+     * 
+     * @param droneNames the mapping of drone UUIDs to their names.
+     * @return the unversioned registry.
+     * @throws NullPointerException if <code>droneNames</code> is <code>null</code>.
+     */
+    public static KismetDroneRegistry unversioned(Map<UUID, String> droneNames) {
+        if (droneNames == null) {
+            throw new NullPointerException("droneNames must not be null");
+        }
+        return new KismetDroneRegistry(Collections.unmodifiableMap(droneNames), UNVERSIONED);
+    }
+
+    /**
+     * Returns a registry for the specified mapping of drone UUIDs to their names with the specified
+     * <code>version</code>, as restored by the {@link KismetMessageCodec}.
+     * 
+     * @param droneNames the mapping of drone UUIDs to their names.
+     * @param version the version of the registry, or {@link #UNVERSIONED}.
+     * @return the registry.
+     */
+    static KismetDroneRegistry of(Map<UUID, String> droneNames, long version) {
+        if (version == 0 && droneNames.isEmpty()) {
+            return EMPTY;
+        }
+        return new KismetDroneRegistry(Collections.unmodifiableMap(droneNames), version);
+    }
+
+    /**
+     * Returns a registry that maps the drone with the specified <code>droneId</code> to <code>name</code>. If this
+     * registry already contains that mapping, it is returned as is, otherwise a copy with the next version number is
+     * returned.
+     * 
+     * @param droneId the drone UUID.
+     * @param name the name of the drone.
+     * @return the registry containing the mapping.
+     * @throws NullPointerException if <code>droneId</code> is <code>null</code>.
+     */
+    public KismetDroneRegistry with(UUID droneId, String name) {
+        if (droneId == null) {
+            throw new NullPointerException("droneId must not be null");
+        }
+        String oldName = this.droneNames.get(droneId);
+        if (oldName == null ? name == null && this.droneNames.containsKey(droneId) : oldName.equals(name)) {
+            return this;
+        }
+        HashMap<UUID, String> droneNames = new HashMap<UUID, String>(this.droneNames);
+        droneNames.put(droneId, name);
+        return new KismetDroneRegistry(Collections.unmodifiableMap(droneNames), this.version + 1);
+    }
+
+    /**
+     * Returns the unmodifiable mapping of known drone UUIDs to their configured names.
+     * 
+     * @return the mapping of drone UUIDs to their names.
+     */
+    public Map<UUID, String> getDroneNames() {
+        return this.droneNames;
+    }
+
+    /**
+     * Returns the version of this registry, which is incremented whenever a drone is added or renamed, or
+     * {@link #UNVERSIONED} if the registry was not created by the kismet resource adapter.
+     * 
+     * @return the version.
+     */
+    public long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Returns the number of known drones.
+     * 
+     * @return the number of drones.
+     */
+    public int size() {
+        return this.droneNames.size();
+    }
+
+    /**
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        else if (o instanceof KismetDroneRegistry) {
+            KismetDroneRegistry registry = (KismetDroneRegistry) o;
+            return this.version == registry.version && this.droneNames.equals(registry.droneNames);
+        }
+        return false;
+    }
+
+    /**
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+        return this.droneNames.hashCode() ^ (int) this.version ^ (int) (this.version >> 32);
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return KismetDroneRegistry.class.getName() + "[droneNames=" + this.droneNames + "][version=" + this.version + "]";
+    }
+}
@@ -0,0 +1,344 @@
+package de.oscillation.kismet.connector;
+
+import java.util.UUID;
+
+import de.benediktmeurer.eui4j.EUI48;
+
+/**
+ * Bounded interning cache for the identifiers of devices and drones, which maps the primitive representation of an
+ * identifier to a canonical {@link EUI48} or {@link UUID} instance. Since the same few drones and devices are reported
+ * over and over again by the kismet server, this avoids creating new identifier objects for every measured value, and
+ * lets hash maps keyed on the identifiers hit the identity fast path of <code>equals</code>.
+ * <p>
+ * The cache is split into segments with a fixed number of entries each. When a segment is full, entries that were not
+ * used since the last sweep are evicted using the CLOCK algorithm (an approximation of LRU), so devices that are no
+ * longer seen eventually leave the cache. Instances of this class are thread-safe.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetIdentifiers
+ */
+public class KismetIdentifierCache {
+    /** The default number of cached device identifiers. */
+    public static final int DEFAULT_DEVICE_CAPACITY = 64 * 1024;
+
+    /** The default number of cached drone identifiers. */
+    public static final int DEFAULT_DRONE_CAPACITY = 1024;
+
+    /** The number of segments per cache. */
+    private static final int SEGMENTS = 16;
+
+    /** The default cache instance. */
+    private static final KismetIdentifierCache DEFAULT = new KismetIdentifierCache(DEFAULT_DEVICE_CAPACITY, DEFAULT_DRONE_CAPACITY);
+
+    /** The segments of the device cache. */
+    private final Segment[] devices = new Segment[SEGMENTS];
+
+    /** The segments of the drone cache. */
+    private final Segment[] drones = new Segment[SEGMENTS];
+
+    /**
+     * Constructs a new cache with the specified capacities.
+     * 
+     * @param deviceCapacity the maximum number of cached device identifiers.
+     * @param droneCapacity the maximum number of cached drone identifiers.
+     * @throws IllegalArgumentException if either capacity is not positive.
+     */
+    public KismetIdentifierCache(int deviceCapacity, int droneCapacity) {
+        if (deviceCapacity <= 0) {
+            throw new IllegalArgumentException("Invalid deviceCapacity " + deviceCapacity);
+        }
+        if (droneCapacity <= 0) {
+            throw new IllegalArgumentException("Invalid droneCapacity " + droneCapacity);
+        }
+        for (int i = 0; i < SEGMENTS; ++i) {
+            this.devices[i] = new Segment((deviceCapacity + SEGMENTS - 1) / SEGMENTS);
+            this.drones[i] = new Segment((droneCapacity + SEGMENTS - 1) / SEGMENTS);
+        }
+    }
+
+    /**
+     * Returns the default cache instance, which is shared by the kismet resource adapter and the
+     * {@link KismetMeasuredValueBatch}es it creates.
+     * 
+     * @return the default cache.
+     */
+    public static KismetIdentifierCache getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns the canonical {@link EUI48} instance for the specified <code>deviceId</code>.
+     * 
+     * @param deviceId the EUI-48 address in the lower 48 bits.
+     * @return the canonical {@link EUI48} instance.
+     */
+    public EUI48 getDeviceId(long deviceId) {
+        int hash = hash(deviceId, 0);
+        Segment segment = this.devices[hash >>> 28];
+        synchronized (segment) {
+            int entry = segment.lookup(hash, deviceId, 0);
+            if (entry >= 0) {
+                return (EUI48) segment.values[entry];
+            }
+        }
+        EUI48 eui48 = KismetIdentifiers.toEUI48(deviceId);
+        synchronized (segment) {
+            return (EUI48) segment.insert(hash, deviceId, 0, eui48);
+        }
+    }
+
+    /**
+     * Returns the canonical {@link UUID} instance for the drone with the specified UUID bits.
+     * 
+     * @param msb the most significant 64 bits of the drone UUID.
+     * @param lsb the least significant 64 bits of the drone UUID.
+     * @return the canonical {@link UUID} instance.
+     */
+    public UUID getDroneId(long msb, long lsb) {
+        int hash = hash(msb, lsb);
+        Segment segment = this.drones[hash >>> 28];
+        synchronized (segment) {
+            int entry = segment.lookup(hash, msb, lsb);
+            if (entry >= 0) {
+                return (UUID) segment.values[entry];
+            }
+            return (UUID) segment.insert(hash, msb, lsb, new UUID(msb, lsb));
+        }
+    }
+
+    /**
+     * Returns the number of device lookups that were answered from the cache.
+     * 
+     * @return the number of device cache hits.
+     */
+    public long getDeviceHits() {
+        return sum(this.devices, true);
+    }
+
+    /**
+     * Returns the number of device lookups that required a new {@link EUI48} instance.
+     * 
+     * @return the number of device cache misses.
+     */
+    public long getDeviceMisses() {
+        return sum(this.devices, false);
+    }
+
+    /**
+     * Returns the number of drone lookups that were answered from the cache.
+     * 
+     * @return the number of drone cache hits.
+     */
+    public long getDroneHits() {
+        return sum(this.drones, true);
+    }
+
+    /**
+     * Returns the number of drone lookups that required a new {@link UUID} instance.
+     * 
+     * @return the number of drone cache misses.
+     */
+    public long getDroneMisses() {
+        return sum(this.drones, false);
+    }
+
+    /**
+     * Returns the ratio of device lookups answered from the cache.
+     * 
+     * @return the device cache hit rate between <code>0</code> and <code>1</code>.
+     */
+    public double getDeviceHitRate() {
+        long hits = getDeviceHits();
+        long total = hits + getDeviceMisses();
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    /**
+     * Returns the ratio of drone lookups answered from the cache.
+     * 
+     * @return the drone cache hit rate between <code>0</code> and <code>1</code>.
+     */
+    public double getDroneHitRate() {
+        long hits = getDroneHits();
+        long total = hits + getDroneMisses();
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    /**
+     * Sums up the hits or misses of the specified <code>segments</code>.
+     * 
+     * @param segments the segments.
+     * @param hits <code>true</code> to sum up the hits, <code>false</code> to sum up the misses.
+     * @return the sum.
+     */
+    private static long sum(Segment[] segments, boolean hits) {
+        long sum = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                sum += hits ? segment.hits : segment.misses;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Computes the hash code of an identifier.
+     * 
+     * @param hi the most significant 64 bits of the identifier.
+     * @param lo the least significant 64 bits of the identifier.
+     * @return the hash code.
+     */
+    private static int hash(long hi, long lo) {
+        long h = (hi * 0x9e3779b97f4a7c15L) ^ (lo * 0xc2b2ae3d27d4eb4fL);
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * A segment of the cache, consisting of a fixed number of entries, which are swept by the CLOCK hand, and an open
+     * addressing hash table (with linear probing) that maps identifiers to entries. All methods must be invoked with
+     * the segment locked.
+     */
+    private static final class Segment {
+        /** The most significant 64 bits of the identifiers of the entries. */
+        final long[] his;
+
+        /** The least significant 64 bits of the identifiers of the entries. */
+        final long[] los;
+
+        /** The hash codes of the identifiers of the entries. */
+        final int[] hashes;
+
+        /** The canonical instances of the entries. */
+        final Object[] values;
+
+        /** The reference bits of the entries. */
+        final boolean[] referenced;
+
+        /** The hash table, mapping to entry index plus one, or <code>0</code> for empty slots. */
+        final int[] table;
+
+        /** The number of used entries. */
+        int size;
+
+        /** The position of the CLOCK hand. */
+        int hand;
+
+        /** The number of cache hits. */
+        long hits;
+
+        /** The number of cache misses. */
+        long misses;
+
+        /**
+         * Constructs a new segment with the specified <code>capacity</code>.
+         * 
+         * @param capacity the number of entries.
+         */
+        Segment(int capacity) {
+            this.his = new long[capacity];
+            this.los = new long[capacity];
+            this.hashes = new int[capacity];
+            this.values = new Object[capacity];
+            this.referenced = new boolean[capacity];
+            this.table = new int[Integer.highestOneBit(capacity) << 2];
+        }
+
+        /**
+         * Looks up the entry for the specified identifier, counting the lookup as hit if found.
+         * 
+         * @param hash the hash code of the identifier.
+         * @param hi the most significant 64 bits of the identifier.
+         * @param lo the least significant 64 bits of the identifier.
+         * @return the index of the entry, or <code>-1</code> if the identifier is not cached.
+         */
+        int lookup(int hash, long hi, long lo) {
+            int mask = this.table.length - 1;
+            for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+                int entry = this.table[slot] - 1;
+                if (entry < 0) {
+                    return -1;
+                }
+                else if (this.his[entry] == hi && this.los[entry] == lo) {
+                    this.referenced[entry] = true;
+                    ++this.hits;
+                    return entry;
+                }
+            }
+        }
+
+        /**
+         * Inserts the specified identifier, evicting another entry if necessary, unless it was inserted concurrently.
+         * 
+         * @param hash the hash code of the identifier.
+         * @param hi the most significant 64 bits of the identifier.
+         * @param lo the least significant 64 bits of the identifier.
+         * @param value the canonical instance for the identifier.
+         * @return the canonical instance, which is <code>value</code> unless another thread was faster.
+         */
+        Object insert(int hash, long hi, long lo, Object value) {
+            int mask = this.table.length - 1;
+            int slot = hash & mask;
+            for (int entry; (entry = this.table[slot] - 1) >= 0; slot = (slot + 1) & mask) {
+                if (this.his[entry] == hi && this.los[entry] == lo) {
+                    return this.values[entry];
+                }
+            }
+            ++this.misses;
+            int entry;
+            if (this.size < this.values.length) {
+                entry = this.size++;
+            }
+            else {
+                // Advance the CLOCK hand to the first entry that was not referenced since the last sweep
+                while (this.referenced[this.hand]) {
+                    this.referenced[this.hand] = false;
+                    this.hand = (this.hand + 1) % this.values.length;
+                }
+                entry = this.hand;
+                this.hand = (this.hand + 1) % this.values.length;
+                remove(entry);
+
+                // The removal may have shifted the free slot for the new entry
+                slot = hash & mask;
+                while (this.table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+            }
+            this.his[entry] = hi;
+            this.los[entry] = lo;
+            this.hashes[entry] = hash;
+            this.values[entry] = value;
+            this.referenced[entry] = false;
+            this.table[slot] = entry + 1;
+            return value;
+        }
+
+        /**
+         * Removes the specified <code>entry</code> from the hash table, shifting back the following entries of the
+         * probe sequence to close the gap.
+         * 
+         * @param entry the index of the entry.
+         */
+        private void remove(int entry) {
+            int mask = this.table.length - 1;
+            int i = this.hashes[entry] & mask;
+            while (this.table[i] != entry + 1) {
+                i = (i + 1) & mask;
+            }
+            for (int j = i;;) {
+                this.table[i] = 0;
+                int k;
+                do {
+                    j = (j + 1) & mask;
+                    if (this.table[j] == 0) {
+                        return;
+                    }
+                    k = this.hashes[this.table[j] - 1] & mask;
+                }
+                while (i <= j ? (i < k && k <= j) : (i < k || k <= j));
+                this.table[i] = this.table[j];
+                i = j;
+            }
+        }
+    }
+}
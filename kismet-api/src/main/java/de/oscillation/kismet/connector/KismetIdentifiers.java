@@ -0,0 +1,71 @@
+package de.oscillation.kismet.connector;
+
+import de.benediktmeurer.eui4j.EUI48;
+
+/**
+ * Conversions between the object representation of the identifiers used by the kismet resource adapter and their
+ * compact primitive representation. EUI-48 addresses are represented as <code>long</code> with the address in the
+ * lower 48 bits, and drone UUIDs are represented by their most and least significant 64 bits.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetMeasuredValueBatch
+ */
+public final class KismetIdentifiers {
+    /** The hexadecimal digits used to format EUI-48 addresses. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private KismetIdentifiers() {
+    }
+
+    /**
+     * Converts the EUI-48 address in the lower 48 bits of <code>deviceId</code> to an {@link EUI48} object.
+     * 
+     * @param deviceId the EUI-48 address.
+     * @return the {@link EUI48} object.
+     */
+    public static EUI48 toEUI48(long deviceId) {
+        return EUI48.fromString(toString(deviceId));
+    }
+
+    /**
+     * Converts the specified <code>eui48</code> to its primitive representation.
+     * 
+     * @param eui48 the {@link EUI48} object.
+     * @return the EUI-48 address in the lower 48 bits.
+     * @throws NullPointerException if <code>eui48</code> is <code>null</code>.
+     */
+    public static long toLong(EUI48 eui48) {
+        // Collect the hexadecimal digits, independent of the separators used
+        String s = eui48.toString();
+        long deviceId = 0;
+        for (int i = 0; i < s.length(); ++i) {
+            int digit = Character.digit(s.charAt(i), 16);
+            if (digit >= 0) {
+                deviceId = (deviceId << 4) | digit;
+            }
+        }
+        return deviceId & 0xffffffffffffL;
+    }
+
+    /**
+     * Formats the EUI-48 address in the lower 48 bits of <code>deviceId</code> in the canonical form
+     * <code>00:11:22:33:44:55</code>.
+     * 
+     * @param deviceId the EUI-48 address.
+     * @return the formatted EUI-48 address.
+     */
+    public static String toString(long deviceId) {
+        char[] chars = new char[17];
+        for (int i = 0, shift = 40; shift >= 0; shift -= 8) {
+            chars[i++] = HEX_DIGITS[(int) (deviceId >>> (shift + 4)) & 0xf];
+            chars[i++] = HEX_DIGITS[(int) (deviceId >>> shift) & 0xf];
+            if (shift > 0) {
+                chars[i++] = ':';
+            }
+        }
+        return new String(chars);
+    }
+}
@@ -89,6 +89,16 @@ public final class KismetMeasuredValue implements Serializable {
         return this.timestamp;
     }
 
+    /**
+     * Replaces this measured value with its compact serialized form.
+     * 
+     * @return the serialized form.
+     * @see KismetMessageCodec
+     */
+    private Object writeReplace() {
+        return new KismetSerializedForm(KismetSerializedForm.MEASURED_VALUE, this);
+    }
+
     /**
      * @see Object#equals(Object)
      */
@@ -0,0 +1,344 @@
+package de.oscillation.kismet.connector;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.UUID;
+
+/**
+ * Compact, column oriented representation of a batch of measured values. The EUI-48 addresses of the devices, the
+ * signal strengths and the timestamps are stored in primitive arrays, and the drones are stored as indices into a
+ * drone table, so a measured value takes 24 bytes instead of the roughly 150 bytes required for a
+ * {@link KismetMeasuredValue} with its identifiers.
+ * <p>
+ * The values can be accessed by index, using a {@link KismetMeasuredValueCursor}, or as list of
+ * {@link KismetMeasuredValue}s via {@link #asList()}, which creates the objects lazily on demand. Batches are
+ * immutable once constructed.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetMeasuredValueBatchBuilder
+ * @see KismetMessage#getMeasuredValueBatch()
+ */
+public final class KismetMeasuredValueBatch implements Serializable {
+    /** The serial version UID of this class. */
+    private static final long serialVersionUID = 1L;
+
+    /** The empty drone table. */
+    private static final UUID[] NO_DRONES = new UUID[0];
+
+    /** The drone table, indexed by the drone indices. */
+    private final UUID[] drones;
+
+    /** The number of measured values. */
+    private final int size;
+
+    /** The EUI-48 addresses of the devices. */
+    private final long[] deviceIds;
+
+    /** The indices of the drones into the drone table. */
+    private final int[] droneIndices;
+
+    /** The signal strengths in dBm. */
+    private final int[] signalStrengths;
+
+    /** The kismet server timestamps in seconds. */
+    private final long[] timestamps;
+
+    /** The lazily created list view of this batch. */
+    private transient List<KismetMeasuredValue> list;
+
+    /**
+     * Constructs a new batch from the specified columns. The batch takes ownership of the arrays, so they must not be
+     * modified afterwards.
+     * 
+     * @param drones the drone table.
+     * @param size the number of measured values.
+     * @param deviceIds the EUI-48 addresses of the devices.
+     * @param droneIndices the indices of the drones into the <code>drones</code> table.
+     * @param signalStrengths the signal strengths in dBm.
+     * @param timestamps the kismet server timestamps in seconds.
+     * @throws IllegalArgumentException if <code>size</code> is negative or exceeds the length of any column.
+     * @throws NullPointerException if any of the arrays is <code>null</code>.
+     */
+    public KismetMeasuredValueBatch(UUID[] drones, int size, long[] deviceIds, int[] droneIndices, int[] signalStrengths, long[] timestamps) {
+        if (drones == null) {
+            throw new NullPointerException("drones must not be null");
+        }
+        if (size < 0 || size > deviceIds.length || size > droneIndices.length || size > signalStrengths.length || size > timestamps.length) {
+            throw new IllegalArgumentException("Invalid size " + size);
+        }
+        this.drones = drones;
+        this.size = size;
+        this.deviceIds = deviceIds;
+        this.droneIndices = droneIndices;
+        this.signalStrengths = signalStrengths;
+        this.timestamps = timestamps;
+    }
+
+    /**
+     * Constructs a new batch from the specified list of <code>measuredValues</code>.
+     * 
+     * @param measuredValues the list of measured values.
+     * @return the batch.
+     * @throws NullPointerException if <code>measuredValues</code> is <code>null</code>.
+     */
+    public static KismetMeasuredValueBatch fromList(List<KismetMeasuredValue> measuredValues) {
+        if (measuredValues instanceof ListView) {
+            return ((ListView) measuredValues).batch;
+        }
+        KismetMeasuredValueBatchBuilder builder = new KismetMeasuredValueBatchBuilder(measuredValues.size());
+        HashMap<UUID, Integer> droneIndices = new HashMap<UUID, Integer>();
+        for (KismetMeasuredValue measuredValue : measuredValues) {
+            Integer droneIndex = droneIndices.get(measuredValue.getDroneId());
+            if (droneIndex == null) {
+                droneIndex = droneIndices.size();
+                droneIndices.put(measuredValue.getDroneId(), droneIndex);
+            }
+            builder.add(KismetIdentifiers.toLong(measuredValue.getDeviceId()), droneIndex, measuredValue.getSignalStrength(), measuredValue.getTimestamp());
+        }
+        UUID[] drones = new UUID[droneIndices.size()];
+        for (UUID droneId : droneIndices.keySet()) {
+            drones[droneIndices.get(droneId)] = droneId;
+        }
+        return builder.build(drones);
+    }
+
+    /**
+     * Returns an empty batch.
+     * 
+     * @return an empty batch.
+     */
+    public static KismetMeasuredValueBatch empty() {
+        return new KismetMeasuredValueBatch(NO_DRONES, 0, new long[0], new int[0], new int[0], new long[0]);
+    }
+
+    /**
+     * Returns the number of measured values in this batch.
+     * 
+     * @return the number of measured values.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the number of entries in the drone table of this batch.
+     * 
+     * @return the number of drones.
+     */
+    public int getDroneCount() {
+        return this.drones.length;
+    }
+
+    /**
+     * Returns the drone at <code>droneIndex</code> in the drone table of this batch.
+     * 
+     * @param droneIndex the index into the drone table.
+     * @return the drone identifier.
+     * @throws IndexOutOfBoundsException if <code>droneIndex</code> is out of range.
+     */
+    public UUID getDrone(int droneIndex) {
+        return this.drones[droneIndex];
+    }
+
+    /**
+     * Returns the EUI-48 address of the device of the <code>index</code>-th measured value.
+     * 
+     * @param index the index of the measured value.
+     * @return the EUI-48 address in the lower 48 bits.
+     * @throws IndexOutOfBoundsException if <code>index</code> is out of range.
+     * @see KismetIdentifiers#toEUI48(long)
+     */
+    public long getDeviceId(int index) {
+        return this.deviceIds[checkIndex(index)];
+    }
+
+    /**
+     * Returns the index into the drone table of the drone of the <code>index</code>-th measured value.
+     * 
+     * @param index the index of the measured value.
+     * @return the index into the drone table.
+     * @throws IndexOutOfBoundsException if <code>index</code> is out of range.
+     */
+    public int getDroneIndex(int index) {
+        return this.droneIndices[checkIndex(index)];
+    }
+
+    /**
+     * Returns the unique identifier of the drone of the <code>index</code>-th measured value.
+     * 
+     * @param index the index of the measured value.
+     * @return the drone identifier.
+     * @throws IndexOutOfBoundsException if <code>index</code> is out of range.
+     */
+    public UUID getDroneId(int index) {
+        return this.drones[this.droneIndices[checkIndex(index)]];
+    }
+
+    /**
+     * Returns the signal strength of the <code>index</code>-th measured value in dBm.
+     * 
+     * @param index the index of the measured value.
+     * @return the signal strength.
+     * @throws IndexOutOfBoundsException if <code>index</code> is out of range.
+     */
+    public int getSignalStrength(int index) {
+        return this.signalStrengths[checkIndex(index)];
+    }
+
+    /**
+     * Returns the kismet server timestamp of the <code>index</code>-th measured value in seconds.
+     * 
+     * @param index the index of the measured value.
+     * @return the kismet server timestamp.
+     * @throws IndexOutOfBoundsException if <code>index</code> is out of range.
+     */
+    public long getTimestamp(int index) {
+        return this.timestamps[checkIndex(index)];
+    }
+
+    /**
+     * Returns the <code>index</code>-th measured value as {@link KismetMeasuredValue} object. The device identifier is
+     * interned using the default {@link KismetIdentifierCache}.
+     * 
+     * @param index the index of the measured value.
+     * @return the measured value.
+     * @throws IndexOutOfBoundsException if <code>index</code> is out of range.
+     */
+    public KismetMeasuredValue get(int index) {
+        checkIndex(index);
+        return new KismetMeasuredValue(KismetIdentifierCache.getDefault().getDeviceId(this.deviceIds[index]), this.drones[this.droneIndices[index]],
+                                       this.signalStrengths[index], this.timestamps[index]);
+    }
+
+    /**
+     * Returns a new cursor positioned before the first measured value of this batch.
+     * 
+     * @return a new cursor.
+     */
+    public KismetMeasuredValueCursor cursor() {
+        return new KismetMeasuredValueCursor(this);
+    }
+
+    /**
+     * Returns an unmodifiable list view of this batch, which creates the {@link KismetMeasuredValue} objects lazily on
+     * first access.
+     * 
+     * @return the list view.
+     */
+    public List<KismetMeasuredValue> asList() {
+        List<KismetMeasuredValue> list = this.list;
+        if (list == null) {
+            this.list = list = new ListView(this);
+        }
+        return list;
+    }
+
+    /**
+     * Replaces this batch with a copy whose columns are trimmed to its size before it is serialized, if any of the
+     * columns has unused capacity.
+     * 
+     * @return the batch to serialize.
+     */
+    private Object writeReplace() {
+        if (this.deviceIds.length == this.size && this.droneIndices.length == this.size && this.signalStrengths.length == this.size && this.timestamps.length == this.size) {
+            return this;
+        }
+        return new KismetMeasuredValueBatch(this.drones, this.size, Arrays.copyOf(this.deviceIds, this.size), Arrays.copyOf(this.droneIndices, this.size),
+                                            Arrays.copyOf(this.signalStrengths, this.size), Arrays.copyOf(this.timestamps, this.size));
+    }
+
+    /**
+     * Checks that <code>index</code> is within the range of this batch.
+     * 
+     * @param index the index to check.
+     * @return the <code>index</code>.
+     * @throws IndexOutOfBoundsException if <code>index</code> is out of range.
+     */
+    private int checkIndex(int index) {
+        if (index < 0 || index >= this.size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+        }
+        return index;
+    }
+
+    /**
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        else if (o instanceof KismetMeasuredValueBatch) {
+            return asList().equals(((KismetMeasuredValueBatch) o).asList());
+        }
+        return false;
+    }
+
+    /**
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+        return asList().hashCode();
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return asList().toString();
+    }
+
+    /**
+     * The lazy list view of a batch. When serialized, only the reference to the batch is written.
+     */
+    private static final class ListView extends AbstractList<KismetMeasuredValue> implements RandomAccess, Serializable {
+        /** The serial version UID of this class. */
+        private static final long serialVersionUID = 1L;
+
+        /** The batch. */
+        private final KismetMeasuredValueBatch batch;
+
+        /** The measured values created so far. */
+        private transient KismetMeasuredValue[] values;
+
+        /**
+         * Constructs a new list view of the specified <code>batch</code>.
+         * 
+         * @param batch the batch.
+         */
+        ListView(KismetMeasuredValueBatch batch) {
+            this.batch = batch;
+        }
+
+        /**
+         * @see java.util.AbstractList#get(int)
+         */
+        @Override
+        public KismetMeasuredValue get(int index) {
+            KismetMeasuredValue[] values = this.values;
+            if (values == null) {
+                this.values = values = new KismetMeasuredValue[this.batch.size];
+            }
+            KismetMeasuredValue value = values[this.batch.checkIndex(index)];
+            if (value == null) {
+                values[index] = value = this.batch.get(index);
+            }
+            return value;
+        }
+
+        /**
+         * @see java.util.AbstractCollection#size()
+         */
+        @Override
+        public int size() {
+            return this.batch.size;
+        }
+    }
+}
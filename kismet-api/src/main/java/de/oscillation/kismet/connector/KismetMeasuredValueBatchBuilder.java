@@ -0,0 +1,128 @@
+package de.oscillation.kismet.connector;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Accumulates measured values in growable primitive columns and builds {@link KismetMeasuredValueBatch}es from them.
+ * Instances of this class are not thread-safe.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetMeasuredValueBatch
+ */
+public class KismetMeasuredValueBatchBuilder {
+    /** The default initial capacity. */
+    private static final int DEFAULT_CAPACITY = 64;
+
+    /** The number of measured values. */
+    private int size;
+
+    /** The EUI-48 addresses of the devices. */
+    private long[] deviceIds;
+
+    /** The indices of the drones into the drone table. */
+    private int[] droneIndices;
+
+    /** The signal strengths in dBm. */
+    private int[] signalStrengths;
+
+    /** The kismet server timestamps in seconds. */
+    private long[] timestamps;
+
+    /**
+     * Constructs a new builder with the default initial capacity.
+     */
+    public KismetMeasuredValueBatchBuilder() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a new builder with the specified initial <code>capacity</code>.
+     * 
+     * @param capacity the initial capacity.
+     * @throws IllegalArgumentException if <code>capacity</code> is negative.
+     */
+    public KismetMeasuredValueBatchBuilder(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+        allocate(capacity);
+    }
+
+    /**
+     * Returns the number of measured values added since the last batch was built.
+     * 
+     * @return the number of measured values.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Adds a measured value.
+     * 
+     * @param deviceId the EUI-48 address of the device in the lower 48 bits.
+     * @param droneIndex the index of the drone into the drone table.
+     * @param signalStrength the signal strength in dBm.
+     * @param timestamp the kismet server timestamp in seconds.
+     */
+    public void add(long deviceId, int droneIndex, int signalStrength, long timestamp) {
+        int index = this.size;
+        if (index == this.deviceIds.length) {
+            grow();
+        }
+        this.deviceIds[index] = deviceId;
+        this.droneIndices[index] = droneIndex;
+        this.signalStrengths[index] = signalStrength;
+        this.timestamps[index] = timestamp;
+        this.size = index + 1;
+    }
+
+    /**
+     * Builds a batch from the measured values added so far, and resets this builder. The batch gets copies of the
+     * columns trimmed to its size, so it does not retain (or serialize) unused capacity, while this builder keeps its
+     * columns for the next batch.
+     * 
+     * @param drones the drone table for the drone indices.
+     * @return the batch.
+     * @throws NullPointerException if <code>drones</code> is <code>null</code>.
+     */
+    public KismetMeasuredValueBatch build(UUID[] drones) {
+        int size = this.size;
+        KismetMeasuredValueBatch batch = new KismetMeasuredValueBatch(drones, size, Arrays.copyOf(this.deviceIds, size), Arrays.copyOf(this.droneIndices, size),
+                                                                      Arrays.copyOf(this.signalStrengths, size), Arrays.copyOf(this.timestamps, size));
+        this.size = 0;
+        return batch;
+    }
+
+    /**
+     * Allocates new columns with the specified <code>capacity</code>.
+     * 
+     * @param capacity the capacity.
+     */
+    private void allocate(int capacity) {
+        this.deviceIds = new long[capacity];
+        this.droneIndices = new int[capacity];
+        this.signalStrengths = new int[capacity];
+        this.timestamps = new long[capacity];
+    }
+
+    /**
+     * Doubles the capacity of the columns.
+     */
+    private void grow() {
+        int capacity = Math.max(this.deviceIds.length * 2, DEFAULT_CAPACITY);
+        long[] deviceIds = new long[capacity];
+        int[] droneIndices = new int[capacity];
+        int[] signalStrengths = new int[capacity];
+        long[] timestamps = new long[capacity];
+        System.arraycopy(this.deviceIds, 0, deviceIds, 0, this.size);
+        System.arraycopy(this.droneIndices, 0, droneIndices, 0, this.size);
+        System.arraycopy(this.signalStrengths, 0, signalStrengths, 0, this.size);
+        System.arraycopy(this.timestamps, 0, timestamps, 0, this.size);
+        this.deviceIds = deviceIds;
+        this.droneIndices = droneIndices;
+        this.signalStrengths = signalStrengths;
+        this.timestamps = timestamps;
+    }
+}
@@ -0,0 +1,107 @@
+package de.oscillation.kismet.connector;
+
+import java.util.UUID;
+
+/**
+ * Cursor over the measured values of a {@link KismetMeasuredValueBatch}, which provides access to the fields of the
+ * current measured value without creating any objects. The cursor is initially positioned before the first measured
+ * value, so {@link #next()} must be invoked before accessing the first value:
+ * 
+ * <pre>
+ * for (KismetMeasuredValueCursor cursor = batch.cursor(); cursor.next();) {
+ *     long deviceId = cursor.getDeviceId();
+ *     int signalStrength = cursor.getSignalStrength();
+ * }
+ * </pre>
+ * 
+ * @author Benedikt Meurer
+ * @see KismetMeasuredValueBatch#cursor()
+ */
+public class KismetMeasuredValueCursor {
+    /** The batch. */
+    private final KismetMeasuredValueBatch batch;
+
+    /** The index of the current measured value. */
+    private int index = -1;
+
+    /**
+     * Constructs a new cursor positioned before the first measured value of the specified <code>batch</code>.
+     * 
+     * @param batch the batch.
+     * @throws NullPointerException if <code>batch</code> is <code>null</code>.
+     */
+    public KismetMeasuredValueCursor(KismetMeasuredValueBatch batch) {
+        if (batch == null) {
+            throw new NullPointerException("batch must not be null");
+        }
+        this.batch = batch;
+    }
+
+    /**
+     * Advances the cursor to the next measured value.
+     * 
+     * @return <code>true</code> if there's another measured value, <code>false</code> otherwise.
+     */
+    public boolean next() {
+        if (this.index < this.batch.size()) {
+            ++this.index;
+        }
+        return this.index < this.batch.size();
+    }
+
+    /**
+     * Returns the index of the current measured value within the batch.
+     * 
+     * @return the index of the current measured value.
+     */
+    public int getIndex() {
+        return this.index;
+    }
+
+    /**
+     * Returns the EUI-48 address of the device of the current measured value.
+     * 
+     * @return the EUI-48 address in the lower 48 bits.
+     * @see KismetIdentifiers#toEUI48(long)
+     */
+    public long getDeviceId() {
+        return this.batch.getDeviceId(this.index);
+    }
+
+    /**
+     * Returns the index into the drone table of the drone of the current measured value.
+     * 
+     * @return the index into the drone table.
+     * @see KismetMeasuredValueBatch#getDrone(int)
+     */
+    public int getDroneIndex() {
+        return this.batch.getDroneIndex(this.index);
+    }
+
+    /**
+     * Returns the unique identifier of the drone of the current measured value.
+     * 
+     * @return the drone identifier.
+     */
+    public UUID getDroneId() {
+        return this.batch.getDroneId(this.index);
+    }
+
+    /**
+     * Returns the signal strength of the current measured value in dBm.
+     * 
+     * @return the signal strength.
+     */
+    public int getSignalStrength() {
+        return this.batch.getSignalStrength(this.index);
+    }
+
+    /**
+     * Returns the kismet server timestamp of the current measured value in seconds.
+     * 
+     * @return the kismet server timestamp.
+     */
+    public long getTimestamp() {
+        return this.batch.getTimestamp(this.index);
+    }
+}
@@ -0,0 +1,36 @@
+package de.oscillation.kismet.connector;
+
+/**
+ * The streaming alternative to the {@link KismetMessageService}, used to deliver the measured values from the kismet
+ * server as soon as they are parsed. The kismet resource adapter completes a micro-batch at the end of every read from
+ * the kismet server (in addition to the batching policy of the activation spec), and passes it to the listener as a
+ * {@link KismetMeasuredValueCursor}, so no {@link KismetMeasuredValue} is created unless the listener asks for it:
+ * 
+ * <pre>
+ * public void onMeasurements(KismetMeasuredValueCursor measuredValues, boolean afterGap) {
+ *     while (measuredValues.next()) {
+ *         if (measuredValues.getSignalStrength() &gt; threshold) {
+ *             alert(measuredValues.getDeviceId(), measuredValues.getDroneId());
+ *         }
+ *     }
+ * }
+ * </pre>
+ * 
+ * Measurement listeners receive the individual measured values only, so they cannot be combined with aggregation,
+ * positioning or event time (whose window bounds and late flag they could not see), and the expired values reported
+ * with delta delivery are not passed on.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetMeasuredValueCursor
+ */
+public interface KismetMeasurementListener {
+    /**
+     * Invoked on reception of a micro-batch of measured values from the kismet resource adapter. The cursor is
+     * positioned before the first measured value, and must not be used after the method returned.
+     * 
+     * @param measuredValues the cursor over the measured values.
+     * @param afterGap whether the connection to the kismet server was interrupted since the previous micro-batch.
+     * @throws NullPointerException if <code>measuredValues</code> is <code>null</code>.
+     */
+    public void onMeasurements(KismetMeasuredValueCursor measuredValues, boolean afterGap);
+}
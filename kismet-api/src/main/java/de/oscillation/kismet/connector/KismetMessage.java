@@ -1,6 +1,7 @@
 package de.oscillation.kismet.connector;
 
 import java.io.Serializable;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -16,15 +17,27 @@ public class KismetMessage implements Serializable {
     /** The serial version UID of this class. */
     private static final long serialVersionUID = 1L;
 
-    /** The mapping of known drone UUIDs to their configured names. */
-    private final Map<UUID, String> droneNames;
+    /** The registry of known drones. */
+    private final KismetDroneRegistry droneRegistry;
 
     /** The list of measured values. */
     private final List<KismetMeasuredValue> measuredValues;
 
+    /** The list of last measured values of expired (device, drone) pairs, or <code>null</code> if none. */
+    private final List<KismetMeasuredValue> expiredValues;
+
     /** The kismet server timestamp in seconds. */
     private final long timestamp;
 
+    /** Whether the connection to the kismet server was interrupted since the previous message was generated. */
+    private final boolean afterGap;
+
+    /** The compact representation of the measured values, created lazily if necessary. */
+    private transient KismetMeasuredValueBatch measuredValueBatch;
+
+    /** The compact representation of the expired values, created lazily if necessary. */
+    private transient KismetMeasuredValueBatch expiredValueBatch;
+
     /**
      * Constructs a new kismet message with the specified parameters.
      * 
@@ -35,15 +48,96 @@ public class KismetMessage implements Serializable {
      *             <code>null</code>.
      */
     public KismetMessage(Map<UUID, String> droneNames, List<KismetMeasuredValue> measuredValues, long timestamp) {
-        if (droneNames == null) {
-            throw new NullPointerException("droneNames must not be null");
+        this(KismetDroneRegistry.unversioned(droneNames), measuredValues, null, timestamp, false);
+    }
+
+    /**
+     * Constructs a new kismet message with the specified parameters.
+     * 
+     * @param droneRegistry the registry of known drones.
+     * @param measuredValues the list of measured values.
+     * @param expiredValues the list of last measured values of expired pairs, or <code>null</code> if none.
+     * @param timestamp the kismet server timestamp in seconds.
+     * @param afterGap whether the connection to the kismet server was interrupted since the previous message.
+     * @throws NullPointerException if either <code>droneRegistry</code> or <code>measuredValues</code> is
+     *             <code>null</code>.
+     */
+    private KismetMessage(KismetDroneRegistry droneRegistry, List<KismetMeasuredValue> measuredValues, List<KismetMeasuredValue> expiredValues, long timestamp, boolean afterGap) {
+        if (droneRegistry == null) {
+            throw new NullPointerException("droneRegistry must not be null");
         }
         if (measuredValues == null) {
             throw new NullPointerException("measuredValues must not be null");
         }
-        this.droneNames = droneNames;
+        this.droneRegistry = droneRegistry;
         this.measuredValues = measuredValues;
+        this.expiredValues = expiredValues;
         this.timestamp = timestamp;
+        this.afterGap = afterGap;
+    }
+
+    /**
+     * Constructs a new kismet message with the specified parameters. The list of measured values returned by
+     * {@link #getMeasuredValues()} is a lazy view of the <code>measuredValueBatch</code>.
+     * 
+     * @param droneNames the mapping of known drone UUIDs to their configured names.
+     * @param measuredValueBatch the batch of measured values.
+     * @param timestamp the kismet server timestamp in seconds.
+     * @throws NullPointerException if either <code>droneNames</code> or <code>measuredValueBatch</code> is
+     *             <code>null</code>.
+     */
+    public KismetMessage(Map<UUID, String> droneNames, KismetMeasuredValueBatch measuredValueBatch, long timestamp) {
+        this(KismetDroneRegistry.unversioned(droneNames), measuredValueBatch, timestamp);
+    }
+
+    /**
+     * Constructs a new kismet message with the specified parameters. The list of measured values returned by
+     * {@link #getMeasuredValues()} is a lazy view of the <code>measuredValueBatch</code>.
+     * 
+     * @param droneRegistry the registry of known drones.
+     * @param measuredValueBatch the batch of measured values.
+     * @param timestamp the kismet server timestamp in seconds.
+     * @throws NullPointerException if either <code>droneRegistry</code> or <code>measuredValueBatch</code> is
+     *             <code>null</code>.
+     */
+    public KismetMessage(KismetDroneRegistry droneRegistry, KismetMeasuredValueBatch measuredValueBatch, long timestamp) {
+        this(droneRegistry, measuredValueBatch.asList(), null, timestamp, false);
+        this.measuredValueBatch = measuredValueBatch;
+    }
+
+    /**
+     * Constructs a new kismet message with the specified parameters, which also reports the (device, drone) pairs
+     * that went silent. The lists returned by {@link #getMeasuredValues()} and {@link #getExpiredValues()} are lazy
+     * views of the batches.
+     * 
+     * @param droneRegistry the registry of known drones.
+     * @param measuredValueBatch the batch of measured values.
+     * @param expiredValueBatch the batch of last measured values of expired pairs.
+     * @param timestamp the kismet server timestamp in seconds.
+     * @throws NullPointerException if either <code>droneRegistry</code>, <code>measuredValueBatch</code> or
+     *             <code>expiredValueBatch</code> is <code>null</code>.
+     */
+    public KismetMessage(KismetDroneRegistry droneRegistry, KismetMeasuredValueBatch measuredValueBatch, KismetMeasuredValueBatch expiredValueBatch, long timestamp) {
+        this(droneRegistry, measuredValueBatch, expiredValueBatch, timestamp, false);
+    }
+
+    /**
+     * Constructs a new kismet message with the specified parameters, which also reports the (device, drone) pairs
+     * that went silent, and whether measured values may be missing before this message.
+     * 
+     * @param droneRegistry the registry of known drones.
+     * @param measuredValueBatch the batch of measured values.
+     * @param expiredValueBatch the batch of last measured values of expired pairs.
+     * @param timestamp the kismet server timestamp in seconds.
+     * @param afterGap whether the connection to the kismet server was interrupted since the previous message.
+     * @throws NullPointerException if either <code>droneRegistry</code>, <code>measuredValueBatch</code> or
+     *             <code>expiredValueBatch</code> is <code>null</code>.
+     * @see #isAfterGap()
+     */
+    public KismetMessage(KismetDroneRegistry droneRegistry, KismetMeasuredValueBatch measuredValueBatch, KismetMeasuredValueBatch expiredValueBatch, long timestamp, boolean afterGap) {
+        this(droneRegistry, measuredValueBatch.asList(), expiredValueBatch.size() > 0 ? expiredValueBatch.asList() : null, timestamp, afterGap);
+        this.measuredValueBatch = measuredValueBatch;
+        this.expiredValueBatch = expiredValueBatch;
     }
 
     /**
@@ -54,7 +148,29 @@ public class KismetMessage implements Serializable {
      * @return the mapping of drone UUIDs to their names.
      */
     public Map<UUID, String> getDroneNames() {
-        return this.droneNames;
+        return this.droneRegistry.getDroneNames();
+    }
+
+    /**
+     * Returns the registry of drones known at the point where this message was generated. Messages generated by the
+     * same connection share the registry until a drone is added or renamed.
+     * 
+     * @return the drone registry.
+     * @see #getDroneRegistryVersion()
+     */
+    public KismetDroneRegistry getDroneRegistry() {
+        return this.droneRegistry;
+    }
+
+    /**
+     * Returns the version of the registry of drones known at the point where this message was generated. The version
+     * only changes when a drone is added or renamed, so consumers can skip rebuilding their drone lookup tables as long
+     * as the version stays the same.
+     * 
+     * @return the drone registry version, or {@link KismetDroneRegistry#UNVERSIONED}.
+     */
+    public long getDroneRegistryVersion() {
+        return this.droneRegistry.getVersion();
     }
 
     /**
@@ -68,6 +184,53 @@ public class KismetMessage implements Serializable {
         return this.measuredValues;
     }
 
+    /**
+     * Returns the values measured by the kismet resource adapter since the last message was generated in their compact
+     * representation. Consumers that process large numbers of measured values should prefer this over
+     * {@link #getMeasuredValues()}, as it does not require a {@link KismetMeasuredValue} object per value.
+     * 
+     * @return the batch of measured values.
+     * @see KismetMeasuredValueBatch
+     */
+    public KismetMeasuredValueBatch getMeasuredValueBatch() {
+        KismetMeasuredValueBatch measuredValueBatch = this.measuredValueBatch;
+        if (measuredValueBatch == null) {
+            this.measuredValueBatch = measuredValueBatch = KismetMeasuredValueBatch.fromList(this.measuredValues);
+        }
+        return measuredValueBatch;
+    }
+
+    /**
+     * Returns the last values measured for the (device, drone) pairs that went silent since the last message was
+     * generated. Pairs only expire in delta delivery mode, in which a measured value is only delivered if it differs
+     * noticeably from the value delivered before for the same pair, so consumers should treat the last delivered
+     * value of a pair as current until the pair is reported here.
+     * 
+     * @return the list of last measured values of expired pairs, which is empty unless delta delivery is enabled.
+     * @see KismetMeasuredValue
+     */
+    public List<KismetMeasuredValue> getExpiredValues() {
+        if (this.expiredValues == null) {
+            return Collections.emptyList();
+        }
+        return this.expiredValues;
+    }
+
+    /**
+     * Returns the last values measured for the (device, drone) pairs that went silent since the last message was
+     * generated in their compact representation.
+     * 
+     * @return the batch of last measured values of expired pairs.
+     * @see #getExpiredValues()
+     */
+    public KismetMeasuredValueBatch getExpiredValueBatch() {
+        KismetMeasuredValueBatch expiredValueBatch = this.expiredValueBatch;
+        if (expiredValueBatch == null) {
+            this.expiredValueBatch = expiredValueBatch = KismetMeasuredValueBatch.fromList(this.getExpiredValues());
+        }
+        return expiredValueBatch;
+    }
+
     /**
      * Returns the kismet server timestamp in seconds at the time when this message was generated.
      * 
@@ -77,6 +240,29 @@ public class KismetMessage implements Serializable {
         return this.timestamp;
     }
 
+    /**
+     * Checks whether the connection to the kismet server was interrupted since the previous message was generated.
+     * The resource adapter reconnects automatically, but the values measured while the connection was down are lost,
+     * so consumers that track the state of devices (especially in delta delivery mode) should treat the state derived
+     * from earlier messages as stale.
+     * 
+     * @return <code>true</code> if measured values may be missing before this message, <code>false</code> otherwise.
+     */
+    public boolean isAfterGap() {
+        return this.afterGap;
+    }
+
+    /**
+     * Replaces this message with its compact serialized form. Since the method is private, it does not apply to
+     * subclasses, which keep the default serialized form.
+     * 
+     * @return the serialized form.
+     * @see KismetMessageCodec
+     */
+    private Object writeReplace() {
+        return new KismetSerializedForm(KismetSerializedForm.MESSAGE, this);
+    }
+
     /**
      * @see java.lang.Object#equals(java.lang.Object)
      */
@@ -87,7 +273,8 @@ public class KismetMessage implements Serializable {
         }
         else if (o instanceof KismetMessage) {
             KismetMessage msg = (KismetMessage) o;
-            if (this.droneNames.equals(msg.droneNames) && this.measuredValues.equals(msg.measuredValues) && this.timestamp == msg.timestamp) {
+            if (this.getDroneNames().equals(msg.getDroneNames()) && this.measuredValues.equals(msg.measuredValues)
+                && this.getExpiredValues().equals(msg.getExpiredValues()) && this.timestamp == msg.timestamp && this.afterGap == msg.afterGap) {
                 return true;
             }
         }
@@ -99,7 +286,7 @@ public class KismetMessage implements Serializable {
      */
     @Override
     public int hashCode() {
-        return this.droneNames.hashCode() ^ this.measuredValues.hashCode() ^ (int) this.timestamp ^ (int) (this.timestamp >> 32);
+        return this.getDroneNames().hashCode() ^ this.measuredValues.hashCode() ^ (int) this.timestamp ^ (int) (this.timestamp >> 32);
     }
 
     /**
@@ -109,9 +296,15 @@ public class KismetMessage implements Serializable {
     public String toString() {
         StringBuilder sb = new StringBuilder();
         sb.append(KismetMessage.class.getName());
-        sb.append("[droneNames=" + this.droneNames + "]");
+        sb.append("[droneNames=" + this.getDroneNames() + "]");
         sb.append("[measuredValues=" + this.measuredValues + "]");
+        if (this.expiredValues != null) {
+            sb.append("[expiredValues=" + this.expiredValues + "]");
+        }
         sb.append("[timestamp=" + this.timestamp + "]");
+        if (this.afterGap) {
+            sb.append("[afterGap=true]");
+        }
         return sb.toString();
     }
 }
@@ -0,0 +1,650 @@
+package de.oscillation.kismet.connector;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Compact, versioned binary format for {@link KismetMessage}s and {@link KismetMeasuredValue}s, which is also used as
+ * their serialized form. Compared to the default Java serialization, the format omits all class descriptors and
+ * object structure:
+ * <ul>
+ * <li>EUI-48 addresses are written as 6 bytes,</li>
+ * <li>drones are written once per message into a drone table, and referenced as varint indices into that table,</li>
+ * <li>signal strengths are written as a single byte (escaped to a varint if out of range), and</li>
+ * <li>timestamps are written as zig-zag varint deltas to the timestamp of the preceding value.</li>
+ * </ul>
+ * A measured value within a message thus typically takes 9 bytes. Every encoding starts with the version of the
+ * format, so readers can reject encodings they don't understand, and message encodings continue with a byte of flags
+ * (currently only {@link KismetMessage#isAfterGap()}). Encodings of version 1, which lack the flags, are still read.
+ * Encoding and decoding operate on byte arrays, and {@link #writeMessage(KismetMessage, DataOutput)} writes the
+ * encoding prefixed by its length, since the per-byte calls of streams such as <code>ObjectOutputStream</code> would
+ * otherwise dominate the costs. Only plain {@link KismetMessage}s are supported, subclasses such as
+ * {@link KismetAggregatedMessage} keep their default serialized form.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetMessage
+ * @see KismetMeasuredValue
+ */
+public final class KismetMessageCodec {
+    /** The version of the format. */
+    public static final int VERSION = 2;
+
+    /** The oldest version of the format that is still read. */
+    private static final int MIN_VERSION = 1;
+
+    /** The first version of the format whose message encodings carry flags. */
+    private static final int FLAGS_VERSION = 2;
+
+    /** The message flag that indicates that the message was generated after a gap in the connection. */
+    private static final int FLAG_AFTER_GAP = 0x01;
+
+    /** The character set of the drone names. */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** The signal strength byte that indicates that the signal strength follows as varint. */
+    private static final int ESCAPED_SIGNAL_STRENGTH = Byte.MIN_VALUE;
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private KismetMessageCodec() {
+    }
+
+    /**
+     * Encodes the specified <code>message</code> into a new byte array, for example for a JMS
+     * <code>BytesMessage</code>.
+     * 
+     * @param message the message to encode.
+     * @return the encoded message.
+     * @throws IllegalArgumentException if <code>message</code> is not a plain {@link KismetMessage}.
+     * @throws NullPointerException if <code>message</code> is <code>null</code>.
+     */
+    public static byte[] encode(KismetMessage message) {
+        if (message.getClass() != KismetMessage.class) {
+            throw new IllegalArgumentException("Invalid message class " + message.getClass().getName());
+        }
+        KismetDroneRegistry droneRegistry = message.getDroneRegistry();
+        KismetMeasuredValueBatch measuredValues = message.getMeasuredValueBatch();
+        KismetMeasuredValueBatch expiredValues = message.getExpiredValueBatch();
+
+        // Collect the drone table, starting with the drones of the registry
+        LinkedHashMap<UUID, Integer> drones = new LinkedHashMap<UUID, Integer>();
+        for (UUID droneId : droneRegistry.getDroneNames().keySet()) {
+            drones.put(droneId, drones.size());
+        }
+        int[] measuredDroneIndices = droneIndices(measuredValues, drones);
+        int[] expiredDroneIndices = droneIndices(expiredValues, drones);
+
+        Output out = new Output(64 + drones.size() * 32 + (measuredValues.size() + expiredValues.size()) * 10);
+        out.writeByte(VERSION);
+        out.writeByte(message.isAfterGap() ? FLAG_AFTER_GAP : 0);
+        out.writeVarLong(zigZag(message.getTimestamp()));
+        out.writeVarLong(zigZag(droneRegistry.getVersion()));
+        out.writeVarInt(drones.size());
+        for (UUID droneId : drones.keySet()) {
+            out.writeLong(droneId.getMostSignificantBits());
+            out.writeLong(droneId.getLeastSignificantBits());
+        }
+        out.writeVarInt(droneRegistry.size());
+        for (String name : droneRegistry.getDroneNames().values()) {
+            out.writeString(name);
+        }
+        writeBatch(out, measuredValues, measuredDroneIndices, message.getTimestamp());
+        writeBatch(out, expiredValues, expiredDroneIndices, message.getTimestamp());
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes a message from the specified byte array.
+     * 
+     * @param b the encoded message.
+     * @return the decoded message.
+     * @throws IOException if <code>b</code> is not a valid encoding.
+     * @throws NullPointerException if <code>b</code> is <code>null</code>.
+     */
+    public static KismetMessage decode(byte[] b) throws IOException {
+        Input in = new Input(b);
+        int flags = in.readVersion() >= FLAGS_VERSION ? in.readByte() & 0xff : 0;
+        if ((flags & ~FLAG_AFTER_GAP) != 0) {
+            throw new IOException("Invalid flags " + flags);
+        }
+        long timestamp = zigZagDecode(in.readVarLong());
+        long version = zigZagDecode(in.readVarLong());
+        UUID[] drones = new UUID[in.readSize(16)];
+        for (int i = 0; i < drones.length; ++i) {
+            drones[i] = KismetIdentifierCache.getDefault().getDroneId(in.readLong(), in.readLong());
+        }
+        int registrySize = in.readVarInt();
+        if (registrySize < 0 || registrySize > drones.length) {
+            throw new IOException("Invalid registry size " + registrySize);
+        }
+        HashMap<UUID, String> droneNames = new HashMap<UUID, String>();
+        for (int i = 0; i < registrySize; ++i) {
+            droneNames.put(drones[i], in.readString());
+        }
+        KismetDroneRegistry droneRegistry = KismetDroneRegistry.of(droneNames, version);
+        KismetMeasuredValueBatch measuredValues = readBatch(in, drones, timestamp);
+        KismetMeasuredValueBatch expiredValues = readBatch(in, drones, timestamp);
+        in.checkEnd();
+        return new KismetMessage(droneRegistry, measuredValues, expiredValues, timestamp, (flags & FLAG_AFTER_GAP) != 0);
+    }
+
+    /**
+     * Writes the encoding of the specified <code>message</code> to <code>out</code>, prefixed by its length.
+     * 
+     * @param message the message to write.
+     * @param out the output.
+     * @throws IOException in case of an I/O error.
+     * @throws IllegalArgumentException if <code>message</code> is not a plain {@link KismetMessage}.
+     * @throws NullPointerException if either <code>message</code> or <code>out</code> is <code>null</code>.
+     */
+    public static void writeMessage(KismetMessage message, DataOutput out) throws IOException {
+        writeFrame(out, encode(message));
+    }
+
+    /**
+     * Reads a message written by {@link #writeMessage(KismetMessage, DataOutput)} from <code>in</code>.
+     * 
+     * @param in the input.
+     * @return the message.
+     * @throws IOException in case of an I/O error, or if the input is not a valid encoding.
+     * @throws NullPointerException if <code>in</code> is <code>null</code>.
+     */
+    public static KismetMessage readMessage(DataInput in) throws IOException {
+        return decode(readFrame(in));
+    }
+
+    /**
+     * Encodes the specified <code>measuredValue</code> into a new byte array.
+     * 
+     * @param measuredValue the measured value to encode.
+     * @return the encoded measured value.
+     * @throws NullPointerException if <code>measuredValue</code> is <code>null</code>.
+     */
+    public static byte[] encode(KismetMeasuredValue measuredValue) {
+        Output out = new Output(32);
+        out.writeByte(VERSION);
+        out.writeDeviceId(KismetIdentifiers.toLong(measuredValue.getDeviceId()));
+        out.writeLong(measuredValue.getDroneId().getMostSignificantBits());
+        out.writeLong(measuredValue.getDroneId().getLeastSignificantBits());
+        out.writeSignalStrength(measuredValue.getSignalStrength());
+        out.writeVarLong(zigZag(measuredValue.getTimestamp()));
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes a measured value from the specified byte array.
+     * 
+     * @param b the encoded measured value.
+     * @return the decoded measured value.
+     * @throws IOException if <code>b</code> is not a valid encoding.
+     * @throws NullPointerException if <code>b</code> is <code>null</code>.
+     */
+    public static KismetMeasuredValue decodeMeasuredValue(byte[] b) throws IOException {
+        Input in = new Input(b);
+        in.readVersion();
+        long deviceId = in.readDeviceId();
+        UUID droneId = KismetIdentifierCache.getDefault().getDroneId(in.readLong(), in.readLong());
+        int signalStrength = in.readSignalStrength();
+        long timestamp = zigZagDecode(in.readVarLong());
+        in.checkEnd();
+        return new KismetMeasuredValue(KismetIdentifierCache.getDefault().getDeviceId(deviceId), droneId, signalStrength, timestamp);
+    }
+
+    /**
+     * Writes the encoding of the specified <code>measuredValue</code> to <code>out</code>, prefixed by its length.
+     * 
+     * @param measuredValue the measured value to write.
+     * @param out the output.
+     * @throws IOException in case of an I/O error.
+     * @throws NullPointerException if either <code>measuredValue</code> or <code>out</code> is <code>null</code>.
+     */
+    public static void writeMeasuredValue(KismetMeasuredValue measuredValue, DataOutput out) throws IOException {
+        writeFrame(out, encode(measuredValue));
+    }
+
+    /**
+     * Reads a measured value written by {@link #writeMeasuredValue(KismetMeasuredValue, DataOutput)} from
+     * <code>in</code>.
+     * 
+     * @param in the input.
+     * @return the measured value.
+     * @throws IOException in case of an I/O error, or if the input is not a valid encoding.
+     * @throws NullPointerException if <code>in</code> is <code>null</code>.
+     */
+    public static KismetMeasuredValue readMeasuredValue(DataInput in) throws IOException {
+        return decodeMeasuredValue(readFrame(in));
+    }
+
+    /**
+     * Writes the specified encoding to <code>out</code>, prefixed by its length.
+     * 
+     * @param out the output.
+     * @param b the encoding.
+     * @throws IOException in case of an I/O error.
+     */
+    private static void writeFrame(DataOutput out, byte[] b) throws IOException {
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    /**
+     * Reads an encoding written by {@link #writeFrame(DataOutput, byte[])} from <code>in</code>.
+     * 
+     * @param in the input.
+     * @return the encoding.
+     * @throws IOException in case of an I/O error, or if the length is negative.
+     */
+    private static byte[] readFrame(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Invalid length " + length);
+        }
+        byte[] b = new byte[length];
+        in.readFully(b);
+        return b;
+    }
+
+    /**
+     * Adds the drones of the specified <code>batch</code> to the drone table of the message, and returns the mapping
+     * of the drone indices of the batch to the indices into the drone table of the message.
+     * 
+     * @param batch the batch of measured values.
+     * @param drones the drone table of the message.
+     * @return the indices into the drone table of the message, indexed by the drone indices of the batch.
+     */
+    private static int[] droneIndices(KismetMeasuredValueBatch batch, Map<UUID, Integer> drones) {
+        int[] droneIndices = new int[batch.getDroneCount()];
+        for (int i = 0; i < droneIndices.length; ++i) {
+            UUID droneId = batch.getDrone(i);
+            Integer droneIndex = drones.get(droneId);
+            if (droneIndex == null) {
+                droneIndex = drones.size();
+                drones.put(droneId, droneIndex);
+            }
+            droneIndices[i] = droneIndex;
+        }
+        return droneIndices;
+    }
+
+    /**
+     * Writes the specified <code>batch</code> to <code>out</code>.
+     * 
+     * @param out the output.
+     * @param batch the batch of measured values.
+     * @param droneIndices the indices into the drone table of the message, indexed by the drone indices of the batch.
+     * @param timestamp the timestamp of the message, which the first timestamp is relative to.
+     */
+    private static void writeBatch(Output out, KismetMeasuredValueBatch batch, int[] droneIndices, long timestamp) {
+        int size = batch.size();
+        out.writeVarInt(size);
+        for (int i = 0; i < size; ++i) {
+            out.writeDeviceId(batch.getDeviceId(i));
+            out.writeVarInt(droneIndices[batch.getDroneIndex(i)]);
+            out.writeSignalStrength(batch.getSignalStrength(i));
+            long nextTimestamp = batch.getTimestamp(i);
+            out.writeVarLong(zigZag(nextTimestamp - timestamp));
+            timestamp = nextTimestamp;
+        }
+    }
+
+    /**
+     * Reads a batch from <code>in</code>.
+     * 
+     * @param in the input.
+     * @param drones the drone table of the message.
+     * @param timestamp the timestamp of the message, which the first timestamp is relative to.
+     * @return the batch of measured values.
+     * @throws IOException if the input is not a valid encoding.
+     */
+    private static KismetMeasuredValueBatch readBatch(Input in, UUID[] drones, long timestamp) throws IOException {
+        int size = in.readSize(9);
+        long[] deviceIds = new long[size];
+        int[] droneIndices = new int[size];
+        int[] signalStrengths = new int[size];
+        long[] timestamps = new long[size];
+        for (int i = 0; i < size; ++i) {
+            deviceIds[i] = in.readDeviceId();
+            int droneIndex = in.readVarInt();
+            if (droneIndex < 0 || droneIndex >= drones.length) {
+                throw new IOException("Invalid drone index " + droneIndex);
+            }
+            droneIndices[i] = droneIndex;
+            signalStrengths[i] = in.readSignalStrength();
+            timestamps[i] = timestamp += zigZagDecode(in.readVarLong());
+        }
+        return new KismetMeasuredValueBatch(drones, size, deviceIds, droneIndices, signalStrengths, timestamps);
+    }
+
+    /**
+     * Maps signed to unsigned values, so that values of small magnitude have short varint encodings.
+     * 
+     * @param n the signed value.
+     * @return the zig-zag encoded value.
+     */
+    private static long zigZag(long n) {
+        return (n << 1) ^ (n >> 63);
+    }
+
+    /**
+     * Reverses {@link #zigZag(long)}.
+     * 
+     * @param n the zig-zag encoded value.
+     * @return the signed value.
+     */
+    private static long zigZagDecode(long n) {
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    /**
+     * A growable byte array the encodings are written to.
+     */
+    private static final class Output {
+        /** The bytes written so far. */
+        private byte[] bytes;
+
+        /** The number of bytes written so far. */
+        private int length;
+
+        /**
+         * Constructs a new output with the specified initial <code>capacity</code>.
+         * 
+         * @param capacity the initial capacity in bytes.
+         */
+        Output(int capacity) {
+            this.bytes = new byte[capacity];
+        }
+
+        /**
+         * Ensures that <code>n</code> more bytes fit into the byte array.
+         * 
+         * @param n the number of bytes.
+         */
+        private void ensureCapacity(int n) {
+            if (this.length + n > this.bytes.length) {
+                this.bytes = Arrays.copyOf(this.bytes, Math.max(this.bytes.length * 2, this.length + n));
+            }
+        }
+
+        /**
+         * Writes a single byte.
+         * 
+         * @param b the byte in the lower 8 bits.
+         */
+        void writeByte(int b) {
+            ensureCapacity(1);
+            this.bytes[this.length++] = (byte) b;
+        }
+
+        /**
+         * Writes a <code>long</code> as 8 bytes in big-endian order.
+         * 
+         * @param n the value.
+         */
+        void writeLong(long n) {
+            ensureCapacity(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                this.bytes[this.length++] = (byte) (n >>> shift);
+            }
+        }
+
+        /**
+         * Writes the EUI-48 address in the lower 48 bits of <code>deviceId</code> as 6 bytes in big-endian order.
+         * 
+         * @param deviceId the EUI-48 address.
+         */
+        void writeDeviceId(long deviceId) {
+            ensureCapacity(6);
+            for (int shift = 40; shift >= 0; shift -= 8) {
+                this.bytes[this.length++] = (byte) (deviceId >>> shift);
+            }
+        }
+
+        /**
+         * Writes the specified <code>signalStrength</code> as single byte, or as escape byte followed by a zig-zag
+         * varint if it does not fit.
+         * 
+         * @param signalStrength the signal strength in dBm.
+         */
+        void writeSignalStrength(int signalStrength) {
+            if (signalStrength > ESCAPED_SIGNAL_STRENGTH && signalStrength <= Byte.MAX_VALUE) {
+                writeByte(signalStrength);
+            }
+            else {
+                writeByte(ESCAPED_SIGNAL_STRENGTH);
+                writeVarInt((signalStrength << 1) ^ (signalStrength >> 31));
+            }
+        }
+
+        /**
+         * Writes the specified value as unsigned varint, using 7 bits per byte.
+         * 
+         * @param n the value.
+         */
+        void writeVarInt(int n) {
+            writeVarLong(n & 0xffffffffL);
+        }
+
+        /**
+         * Writes the specified value as unsigned varint, using 7 bits per byte.
+         * 
+         * @param n the value.
+         */
+        void writeVarLong(long n) {
+            ensureCapacity(10);
+            while ((n & ~0x7fL) != 0) {
+                this.bytes[this.length++] = (byte) ((n & 0x7f) | 0x80);
+                n >>>= 7;
+            }
+            this.bytes[this.length++] = (byte) n;
+        }
+
+        /**
+         * Writes a nullable string as flag byte followed by its length and its UTF-8 bytes.
+         * 
+         * @param s the string, or <code>null</code>.
+         */
+        void writeString(String s) {
+            writeByte(s == null ? 0 : 1);
+            if (s != null) {
+                byte[] b = s.getBytes(UTF_8);
+                writeVarInt(b.length);
+                ensureCapacity(b.length);
+                System.arraycopy(b, 0, this.bytes, this.length, b.length);
+                this.length += b.length;
+            }
+        }
+
+        /**
+         * Returns a copy of the bytes written so far.
+         * 
+         * @return the bytes.
+         */
+        byte[] toByteArray() {
+            return Arrays.copyOf(this.bytes, this.length);
+        }
+    }
+
+    /**
+     * A byte array the encodings are read from.
+     */
+    private static final class Input {
+        /** The bytes. */
+        private final byte[] bytes;
+
+        /** The position of the next byte. */
+        private int position;
+
+        /**
+         * Constructs a new input for the specified <code>bytes</code>.
+         * 
+         * @param bytes the bytes.
+         */
+        Input(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        /**
+         * Ensures that <code>n</code> more bytes are available.
+         * 
+         * @param n the number of bytes.
+         * @throws IOException if the input ends before.
+         */
+        private void require(int n) throws IOException {
+            if (n > this.bytes.length - this.position) {
+                throw new IOException("Unexpected end of input");
+            }
+        }
+
+        /**
+         * Reads the version of the format, and checks that it is supported.
+         * 
+         * @return the version.
+         * @throws IOException if the version is not supported.
+         */
+        int readVersion() throws IOException {
+            int version = readByte() & 0xff;
+            if (version < MIN_VERSION || version > VERSION) {
+                throw new IOException("Invalid version " + version);
+            }
+            return version;
+        }
+
+        /**
+         * Checks that the input was read completely.
+         * 
+         * @throws IOException if there are bytes left.
+         */
+        void checkEnd() throws IOException {
+            if (this.position != this.bytes.length) {
+                throw new IOException("Unexpected " + (this.bytes.length - this.position) + " bytes after end of encoding");
+            }
+        }
+
+        /**
+         * Reads a single byte.
+         * 
+         * @return the byte.
+         * @throws IOException if the input ends before.
+         */
+        byte readByte() throws IOException {
+            require(1);
+            return this.bytes[this.position++];
+        }
+
+        /**
+         * Reads a <code>long</code> written by {@link Output#writeLong(long)}.
+         * 
+         * @return the value.
+         * @throws IOException if the input ends before.
+         */
+        long readLong() throws IOException {
+            require(8);
+            long n = 0;
+            for (int i = 0; i < 8; ++i) {
+                n = (n << 8) | (this.bytes[this.position++] & 0xff);
+            }
+            return n;
+        }
+
+        /**
+         * Reads an EUI-48 address written by {@link Output#writeDeviceId(long)}.
+         * 
+         * @return the EUI-48 address in the lower 48 bits.
+         * @throws IOException if the input ends before.
+         */
+        long readDeviceId() throws IOException {
+            require(6);
+            long deviceId = 0;
+            for (int i = 0; i < 6; ++i) {
+                deviceId = (deviceId << 8) | (this.bytes[this.position++] & 0xff);
+            }
+            return deviceId;
+        }
+
+        /**
+         * Reads a signal strength written by {@link Output#writeSignalStrength(int)}.
+         * 
+         * @return the signal strength in dBm.
+         * @throws IOException if the input ends before.
+         */
+        int readSignalStrength() throws IOException {
+            int signalStrength = readByte();
+            if (signalStrength == ESCAPED_SIGNAL_STRENGTH) {
+                int n = readVarInt();
+                signalStrength = (n >>> 1) ^ -(n & 1);
+            }
+            return signalStrength;
+        }
+
+        /**
+         * Reads an unsigned varint written by {@link Output#writeVarInt(int)}.
+         * 
+         * @return the value.
+         * @throws IOException if the input ends before, or the varint is too long.
+         */
+        int readVarInt() throws IOException {
+            long n = readVarLong();
+            if ((n >>> 32) != 0) {
+                throw new IOException("Invalid varint " + n);
+            }
+            return (int) n;
+        }
+
+        /**
+         * Reads an unsigned varint written by {@link Output#writeVarLong(long)}.
+         * 
+         * @return the value.
+         * @throws IOException if the input ends before, or the varint is too long.
+         */
+        long readVarLong() throws IOException {
+            long n = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                n |= (long) (b & 0x7f) << shift;
+                if (b >= 0) {
+                    return n;
+                }
+            }
+            throw new IOException("Invalid varint");
+        }
+
+        /**
+         * Reads a size, and checks it against the remaining input.
+         * 
+         * @param minBytesPerElement the minimum number of bytes of an element.
+         * @return the size.
+         * @throws IOException if the size is negative or exceeds the remaining input.
+         */
+        int readSize(int minBytesPerElement) throws IOException {
+            int size = readVarInt();
+            if (size < 0 || (long) size * minBytesPerElement > this.bytes.length - this.position) {
+                throw new IOException("Invalid size " + size);
+            }
+            return size;
+        }
+
+        /**
+         * Reads a nullable string written by {@link Output#writeString(String)}.
+         * 
+         * @return the string, or <code>null</code>.
+         * @throws IOException if the input ends before.
+         */
+        String readString() throws IOException {
+            if (readByte() == 0) {
+                return null;
+            }
+            int length = readSize(1);
+            String s = new String(this.bytes, this.position, length, UTF_8);
+            this.position += length;
+            return s;
+        }
+    }
+}
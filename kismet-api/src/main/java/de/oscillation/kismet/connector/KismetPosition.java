@@ -0,0 +1,171 @@
+package de.oscillation.kismet.connector;
+
+import java.io.Serializable;
+
+import de.benediktmeurer.eui4j.EUI48;
+
+/**
+ * Representation of the position of a device estimated from the signal strengths measured by several kismet drones
+ * with known coordinates. The coordinates are given in the planar coordinate system of the drone coordinates, usually
+ * in meters.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetPositionedMessage
+ */
+public final class KismetPosition implements Serializable {
+    /** The serial version UID of this class. */
+    private static final long serialVersionUID = 1L;
+
+    /** The extended unique identifier (EUI-48) of the device. */
+    private final EUI48 deviceId;
+
+    /** The x coordinate of the device. */
+    private final double x;
+
+    /** The y coordinate of the device. */
+    private final double y;
+
+    /** The estimated accuracy, i.e. the weighted root mean square distance error. */
+    private final double accuracy;
+
+    /** The number of drones the position was estimated from. */
+    private final int droneCount;
+
+    /** The kismet server timestamp of the most recent measured value in seconds. */
+    private final long timestamp;
+
+    /**
+     * Constructs a new position with the given parameters.
+     * 
+     * @param deviceId the extended unique identifier (EUI-48) of the device.
+     * @param x the x coordinate of the device.
+     * @param y the y coordinate of the device.
+     * @param accuracy the estimated accuracy in the unit of the coordinates.
+     * @param droneCount the number of drones the position was estimated from.
+     * @param timestamp the kismet server timestamp of the most recent measured value in seconds.
+     * @throws NullPointerException if <code>deviceId</code> is <code>null</code>.
+     */
+    public KismetPosition(EUI48 deviceId, double x, double y, double accuracy, int droneCount, long timestamp) {
+        if (deviceId == null) {
+            throw new NullPointerException("deviceId must not be null");
+        }
+        this.deviceId = deviceId;
+        this.x = x;
+        this.y = y;
+        this.accuracy = accuracy;
+        this.droneCount = droneCount;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Returns the unique identifier of the device.
+     * 
+     * @return the device identifier.
+     */
+    public EUI48 getDeviceId() {
+        return this.deviceId;
+    }
+
+    /**
+     * Returns the x coordinate of the device.
+     * 
+     * @return the x coordinate.
+     */
+    public double getX() {
+        return this.x;
+    }
+
+    /**
+     * Returns the y coordinate of the device.
+     * 
+     * @return the y coordinate.
+     */
+    public double getY() {
+        return this.y;
+    }
+
+    /**
+     * Returns the estimated accuracy of the position, which is the root mean square difference between the distances
+     * to the drones derived from the signal strengths and the distances to the drones from the position, weighted
+     * towards the nearer drones. A single drone only yields the distance, so the accuracy is the distance itself.
+     * 
+     * @return the accuracy in the unit of the coordinates, smaller is better.
+     */
+    public double getAccuracy() {
+        return this.accuracy;
+    }
+
+    /**
+     * Returns the number of drones the position was estimated from. At least three drones are required to locate
+     * the device unambiguously.
+     * 
+     * @return the number of drones.
+     */
+    public int getDroneCount() {
+        return this.droneCount;
+    }
+
+    /**
+     * Returns the kismet server timestamp of the most recent measured value the position was estimated from.
+     * 
+     * @return the timestamp in seconds.
+     */
+    public long getTimestamp() {
+        return this.timestamp;
+    }
+
+    /**
+     * @see Object#equals(Object)
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        else if (o instanceof KismetPosition) {
+            KismetPosition p = (KismetPosition) o;
+            if (this.deviceId.equals(p.deviceId) && Double.compare(this.x, p.x) == 0 && Double.compare(this.y, p.y) == 0
+                && Double.compare(this.accuracy, p.accuracy) == 0 && this.droneCount == p.droneCount && this.timestamp == p.timestamp) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @see Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+        long x = Double.doubleToLongBits(this.x);
+        long y = Double.doubleToLongBits(this.y);
+        int hash = 1;
+        hash = hash * 13 + this.deviceId.hashCode();
+        hash = hash * 13 + ((int) x ^ (int) (x >> 32));
+        hash = hash * 13 + ((int) y ^ (int) (y >> 32));
+        hash = hash * 13 + ((int) this.timestamp ^ (int) (this.timestamp >> 32));
+        return hash;
+    }
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("KismetPosition[deviceId=");
+        sb.append(this.deviceId);
+        sb.append(",x=");
+        sb.append(this.x);
+        sb.append(",y=");
+        sb.append(this.y);
+        sb.append(",accuracy=");
+        sb.append(this.accuracy);
+        sb.append(",droneCount=");
+        sb.append(this.droneCount);
+        sb.append(",timestamp=");
+        sb.append(this.timestamp);
+        sb.append(']');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,66 @@
+package de.oscillation.kismet.connector;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Represents a message send from the kismet resource adapter to the {@link KismetMessageService} when the activation
+ * is configured for positioning. Besides (or instead of) the measured values received since the previous message, the
+ * message carries the estimated positions of the devices that got new measured values since the previous message.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetPosition
+ */
+public class KismetPositionedMessage extends KismetMessage {
+    /** The serial version UID of this class. */
+    private static final long serialVersionUID = 1L;
+
+    /** The estimated positions of the devices. */
+    private final List<KismetPosition> positions;
+
+    /**
+     * Constructs a new positioned message with the specified parameters.
+     * 
+     * @param droneRegistry the registry of known drones.
+     * @param measuredValues the measured values, empty if only positions are delivered.
+     * @param positions the estimated positions of the devices.
+     * @param timestamp the kismet server timestamp in seconds.
+     * @param afterGap whether the connection to the kismet server was interrupted since the previous message.
+     * @throws NullPointerException if any of the parameters is <code>null</code>.
+     */
+    public KismetPositionedMessage(KismetDroneRegistry droneRegistry, KismetMeasuredValueBatch measuredValues, List<KismetPosition> positions, long timestamp,
+                                   boolean afterGap) {
+        super(droneRegistry, measuredValues, KismetMeasuredValueBatch.empty(), timestamp, afterGap);
+        if (positions == null) {
+            throw new NullPointerException("positions must not be null");
+        }
+        this.positions = Collections.unmodifiableList(new ArrayList<KismetPosition>(positions));
+    }
+
+    /**
+     * Returns the estimated positions of the devices that got new measured values since the previous message.
+     * 
+     * @return the unmodifiable list of positions.
+     */
+    public List<KismetPosition> getPositions() {
+        return this.positions;
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(KismetPositionedMessage.class.getName());
+        sb.append("[droneNames=" + getDroneNames() + "]");
+        sb.append("[measuredValues=" + getMeasuredValues() + "]");
+        sb.append("[positions=" + this.positions + "]");
+        sb.append("[timestamp=" + getTimestamp() + "]");
+        if (isAfterGap()) {
+            sb.append("[afterGap=true]");
+        }
+        return sb.toString();
+    }
+}
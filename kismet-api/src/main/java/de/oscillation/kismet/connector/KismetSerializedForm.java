@@ -0,0 +1,94 @@
+package de.oscillation.kismet.connector;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * The serialized form of {@link KismetMessage}s and {@link KismetMeasuredValue}s, which writes them in the format of
+ * the {@link KismetMessageCodec} instead of the default Java serialization. The objects replace themselves with an
+ * instance of this class when serialized, and the instance resolves to the decoded object when deserialized.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetMessageCodec
+ */
+final class KismetSerializedForm implements Externalizable {
+    /** The serial version UID of this class. */
+    private static final long serialVersionUID = 1L;
+
+    /** The type of a {@link KismetMessage}. */
+    static final byte MESSAGE = 1;
+
+    /** The type of a {@link KismetMeasuredValue}. */
+    static final byte MEASURED_VALUE = 2;
+
+    /** The type of the object. */
+    private byte type;
+
+    /** The object. */
+    private Object object;
+
+    /**
+     * Constructs an empty serialized form, which is required by {@link Externalizable}.
+     */
+    public KismetSerializedForm() {
+    }
+
+    /**
+     * Constructs the serialized form of the specified <code>object</code>.
+     * 
+     * @param type the type of the object.
+     * @param object the object.
+     */
+    KismetSerializedForm(byte type, Object object) {
+        this.type = type;
+        this.object = object;
+    }
+
+    /**
+     * @see java.io.Externalizable#writeExternal(java.io.ObjectOutput)
+     */
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        out.writeByte(this.type);
+        switch (this.type) {
+        case MESSAGE:
+            KismetMessageCodec.writeMessage((KismetMessage) this.object, out);
+            break;
+        case MEASURED_VALUE:
+            KismetMessageCodec.writeMeasuredValue((KismetMeasuredValue) this.object, out);
+            break;
+        default:
+            throw new InvalidObjectException("Invalid type " + this.type);
+        }
+    }
+
+    /**
+     * @see java.io.Externalizable#readExternal(java.io.ObjectInput)
+     */
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        this.type = in.readByte();
+        switch (this.type) {
+        case MESSAGE:
+            this.object = KismetMessageCodec.readMessage(in);
+            break;
+        case MEASURED_VALUE:
+            this.object = KismetMessageCodec.readMeasuredValue(in);
+            break;
+        default:
+            throw new InvalidObjectException("Invalid type " + this.type);
+        }
+    }
+
+    /**
+     * Resolves this serialized form to the decoded object.
+     * 
+     * @return the object.
+     */
+    private Object readResolve() {
+        return this.object;
+    }
+}
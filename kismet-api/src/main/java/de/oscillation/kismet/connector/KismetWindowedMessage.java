@@ -0,0 +1,98 @@
+package de.oscillation.kismet.connector;
+
+/**
+ * Represents a message send from the kismet resource adapter to the {@link KismetMessageService} when the activation
+ * is configured for event time batching. The message carries the measured values whose own kismet server timestamps
+ * fall into a single window, independent of when they were received, and is delivered once the window is complete.
+ * <p>
+ * Measured values that arrive after their window was delivered, or that are timestamped too far ahead of the kismet
+ * server time, are delivered separately in <em>late</em> messages, whose window spans the timestamps of the measured
+ * values they carry.
+ * 
+ * @author Benedikt Meurer
+ * @see #isLate()
+ */
+public class KismetWindowedMessage extends KismetMessage {
+    /** The serial version UID of this class. */
+    private static final long serialVersionUID = 1L;
+
+    /** The kismet server timestamp of the start of the window in seconds (inclusive). */
+    private final long windowStart;
+
+    /** The kismet server timestamp of the end of the window in seconds (exclusive). */
+    private final long windowEnd;
+
+    /** Whether the message carries the measured values that missed their windows. */
+    private final boolean late;
+
+    /**
+     * Constructs a new windowed message with the specified parameters.
+     * 
+     * @param droneRegistry the registry of known drones.
+     * @param measuredValues the measured values timestamped within the window.
+     * @param expiredValues the last measured values of the expired pairs timestamped within the window.
+     * @param windowStart the kismet server timestamp of the start of the window in seconds (inclusive).
+     * @param windowEnd the kismet server timestamp of the end of the window in seconds (exclusive).
+     * @param timestamp the kismet server timestamp in seconds.
+     * @param afterGap whether the connection to the kismet server was interrupted since the previous message.
+     * @param late whether the message carries the measured values that missed their windows.
+     * @throws NullPointerException if any of the parameters is <code>null</code>.
+     */
+    public KismetWindowedMessage(KismetDroneRegistry droneRegistry, KismetMeasuredValueBatch measuredValues, KismetMeasuredValueBatch expiredValues, long windowStart,
+                                 long windowEnd, long timestamp, boolean afterGap, boolean late) {
+        super(droneRegistry, measuredValues, expiredValues, timestamp, afterGap);
+        this.windowStart = windowStart;
+        this.windowEnd = windowEnd;
+        this.late = late;
+    }
+
+    /**
+     * Returns the kismet server timestamp of the start of the window in seconds (inclusive).
+     * 
+     * @return the start of the window.
+     */
+    public long getWindowStart() {
+        return this.windowStart;
+    }
+
+    /**
+     * Returns the kismet server timestamp of the end of the window in seconds (exclusive).
+     * 
+     * @return the end of the window.
+     */
+    public long getWindowEnd() {
+        return this.windowEnd;
+    }
+
+    /**
+     * Checks whether this message is a late message, i.e. carries the measured values that could not be assigned to
+     * an open window, instead of the measured values of a complete window.
+     * 
+     * @return <code>true</code> if this is a late message, <code>false</code> otherwise.
+     */
+    public boolean isLate() {
+        return this.late;
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(KismetWindowedMessage.class.getName());
+        sb.append("[droneNames=" + getDroneNames() + "]");
+        sb.append("[measuredValues=" + getMeasuredValues() + "]");
+        sb.append("[expiredValues=" + getExpiredValues() + "]");
+        sb.append("[windowStart=" + this.windowStart + "]");
+        sb.append("[windowEnd=" + this.windowEnd + "]");
+        sb.append("[timestamp=" + getTimestamp() + "]");
+        if (isAfterGap()) {
+            sb.append("[afterGap=true]");
+        }
+        if (this.late) {
+            sb.append("[late=true]");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,91 @@
+package de.oscillation.kismet.connector;
+
+import java.util.Timer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.resource.spi.BootstrapContext;
+import javax.resource.spi.XATerminator;
+import javax.resource.spi.work.ExecutionContext;
+import javax.resource.spi.work.Work;
+import javax.resource.spi.work.WorkContext;
+import javax.resource.spi.work.WorkException;
+import javax.resource.spi.work.WorkListener;
+import javax.resource.spi.work.WorkManager;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+/**
+ * Minimal bootstrap context for running the {@link KismetResourceAdapter} outside of an application server. Every
+ * work is run on a daemon thread from a pool, like the work manager of an application server would, so short works
+ * such as the parallel chunks of the positioning stage don't pay for starting threads; transactions and work contexts
+ * are not supported.
+ * 
+ * @author Benedikt Meurer
+ */
+final class KismetBenchmarkContext implements BootstrapContext, WorkManager {
+    private final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "KismetBenchmarkWork");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    @Override
+    public WorkManager getWorkManager() {
+        return this;
+    }
+
+    @Override
+    public XATerminator getXATerminator() {
+        return null;
+    }
+
+    @Override
+    public Timer createTimer() {
+        return new Timer(true);
+    }
+
+    @Override
+    public boolean isContextSupported(Class<? extends WorkContext> workContextClass) {
+        return false;
+    }
+
+    @Override
+    public TransactionSynchronizationRegistry getTransactionSynchronizationRegistry() {
+        return null;
+    }
+
+    @Override
+    public void doWork(Work work) throws WorkException {
+        work.run();
+    }
+
+    @Override
+    public void doWork(Work work, long startTimeout, ExecutionContext execContext, WorkListener workListener) throws WorkException {
+        doWork(work);
+    }
+
+    @Override
+    public long startWork(Work work) throws WorkException {
+        scheduleWork(work);
+        return UNKNOWN;
+    }
+
+    @Override
+    public long startWork(Work work, long startTimeout, ExecutionContext execContext, WorkListener workListener) throws WorkException {
+        return startWork(work);
+    }
+
+    @Override
+    public void scheduleWork(Work work) throws WorkException {
+        this.executor.execute(work);
+    }
+
+    @Override
+    public void scheduleWork(Work work, long startTimeout, ExecutionContext execContext, WorkListener workListener) throws WorkException {
+        scheduleWork(work);
+    }
+}
@@ -0,0 +1,156 @@
+package de.oscillation.kismet.connector;
+
+import java.util.UUID;
+
+/**
+ * Generates the synthetic kismet protocol sentences and measured values used by the benchmarks. The data is fully
+ * deterministic, so that results are comparable between runs.
+ * 
+ * @author Benedikt Meurer
+ */
+final class KismetBenchmarkData {
+    /** The number of distinct drones in the generated data. */
+    public static final int DRONES = 8;
+
+    /** The number of distinct devices in the generated data. */
+    public static final int DEVICES = 4096;
+
+    private KismetBenchmarkData() {
+    }
+
+    /**
+     * Returns the EUI-48 address of the device with the specified <code>index</code>.
+     * 
+     * @param index the index of the device.
+     * @return the EUI-48 address in the lower 48 bits.
+     */
+    public static long deviceId(int index) {
+        return 0x001122000000L | (index % DEVICES);
+    }
+
+    /**
+     * Returns the UUID of the drone with the specified <code>index</code>.
+     * 
+     * @param index the index of the drone.
+     * @return the UUID of the drone.
+     */
+    public static UUID droneId(int index) {
+        return new UUID(0x550e8400e29b41d4L, 0xa716446655440000L | (index % DRONES));
+    }
+
+    /**
+     * Returns the UUIDs of all drones.
+     * 
+     * @return the UUIDs indexed by drone index.
+     */
+    public static UUID[] drones() {
+        UUID[] drones = new UUID[DRONES];
+        for (int i = 0; i < drones.length; ++i) {
+            drones[i] = droneId(i);
+        }
+        return drones;
+    }
+
+    /**
+     * Returns the signal strength measured for the specified device <code>index</code>.
+     * 
+     * @param index the index of the device.
+     * @return the signal strength in dBm.
+     */
+    public static int signalStrength(int index) {
+        return -40 - (index % 50);
+    }
+
+    /**
+     * Returns a <code>*CLISRC:</code> sentence including the line terminator.
+     * 
+     * @param device the index of the device.
+     * @param drone the index of the drone.
+     * @param timestamp the kismet server timestamp in seconds.
+     * @return the sentence.
+     */
+    public static String clientSourceLine(int device, int drone, long timestamp) {
+        return "*CLISRC: 00:11:22:33:44:55 " + mac(deviceId(device)) + " " + droneId(drone) + " " + timestamp + " 12 " + signalStrength(device) + "\n";
+    }
+
+    /**
+     * Returns a <code>*SOURCE:</code> sentence describing a drone, including the line terminator.
+     * 
+     * @param drone the index of the drone.
+     * @return the sentence.
+     */
+    public static String sourceLine(int drone) {
+        return "*SOURCE: drone drone \001drone " + drone + "\001 6 " + droneId(drone) + "\n";
+    }
+
+    /**
+     * Returns a <code>*TIME:</code> sentence including the line terminator.
+     * 
+     * @param timestamp the kismet server timestamp in seconds.
+     * @return the sentence.
+     */
+    public static String timeLine(long timestamp) {
+        return "*TIME: " + timestamp + "\n";
+    }
+
+    /**
+     * Returns a chunk of sentences as sent by the kismet server for one second, that is a <code>*SOURCE:</code>
+     * sentence per drone, the specified number of <code>*CLISRC:</code> sentences, and a final <code>*TIME:</code>
+     * sentence.
+     * 
+     * @param lines the number of <code>*CLISRC:</code> sentences.
+     * @param timestamp the kismet server timestamp in seconds.
+     * @return the sentences.
+     */
+    public static String chunk(int lines, long timestamp) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < DRONES; ++i) {
+            sb.append(sourceLine(i));
+        }
+        for (int i = 0; i < lines; ++i) {
+            sb.append(clientSourceLine(i, i, timestamp));
+        }
+        sb.append(timeLine(timestamp));
+        return sb.toString();
+    }
+
+    /**
+     * Returns a batch of the specified number of measured values.
+     * 
+     * @param size the number of measured values.
+     * @param timestamp the kismet server timestamp in seconds.
+     * @return the batch.
+     */
+    public static KismetMeasuredValueBatch batch(int size, long timestamp) {
+        KismetMeasuredValueBatchBuilder builder = new KismetMeasuredValueBatchBuilder(size);
+        for (int i = 0; i < size; ++i) {
+            builder.add(deviceId(i), i % DRONES, signalStrength(i), timestamp);
+        }
+        return builder.build(drones());
+    }
+
+    /**
+     * Returns the registry naming all drones.
+     * 
+     * @return the drone registry.
+     */
+    public static KismetDroneRegistry droneRegistry() {
+        KismetDroneRegistry droneRegistry = KismetDroneRegistry.EMPTY;
+        for (int i = 0; i < DRONES; ++i) {
+            droneRegistry = droneRegistry.with(droneId(i), "drone " + i);
+        }
+        return droneRegistry;
+    }
+
+    private static String mac(long deviceId) {
+        StringBuilder sb = new StringBuilder(17);
+        for (int shift = 40; shift >= 0; shift -= 8) {
+            int b = (int) (deviceId >>> shift) & 0xff;
+            if (shift != 40) {
+                sb.append(':');
+            }
+            sb.append(Character.forDigit(b >>> 4, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString().toUpperCase();
+    }
+}
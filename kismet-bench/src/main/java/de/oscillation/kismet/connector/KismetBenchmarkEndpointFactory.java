@@ -0,0 +1,77 @@
+package de.oscillation.kismet.connector;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.resource.spi.endpoint.MessageEndpoint;
+import javax.resource.spi.endpoint.MessageEndpointFactory;
+import javax.transaction.xa.XAResource;
+
+/**
+ * Non-transacted message endpoint factory for the end-to-end benchmarks. Its endpoints count the delivered measured
+ * values and release a permit of the {@link #getDeliveries() deliveries} semaphore per message. The endpoints implement
+ * both listener interfaces, the activation spec decides which one is used.
+ * 
+ * @author Benedikt Meurer
+ */
+final class KismetBenchmarkEndpointFactory implements MessageEndpointFactory {
+    /** Released once per delivered message. */
+    private final Semaphore deliveries = new Semaphore(0);
+
+    /** The number of delivered measured values. */
+    private final AtomicLong measuredValues = new AtomicLong();
+
+    public Semaphore getDeliveries() {
+        return this.deliveries;
+    }
+
+    public long getMeasuredValues() {
+        return this.measuredValues.get();
+    }
+
+    @Override
+    public MessageEndpoint createEndpoint(XAResource xaResource) {
+        return new Endpoint();
+    }
+
+    @Override
+    public MessageEndpoint createEndpoint(XAResource xaResource, long timeout) {
+        return createEndpoint(xaResource);
+    }
+
+    @Override
+    public boolean isDeliveryTransacted(Method method) {
+        return false;
+    }
+
+    private final class Endpoint implements MessageEndpoint, KismetMessageService, KismetMeasurementListener {
+        @Override
+        public void onMessage(KismetMessage message) {
+            measuredValues.addAndGet(message.getMeasuredValueBatch().size());
+            deliveries.release();
+        }
+
+        @Override
+        public void onMeasurements(KismetMeasuredValueCursor cursor, boolean afterGap) {
+            long n = 0;
+            while (cursor.next()) {
+                ++n;
+            }
+            measuredValues.addAndGet(n);
+            deliveries.release();
+        }
+
+        @Override
+        public void beforeDelivery(Method method) {
+        }
+
+        @Override
+        public void afterDelivery() {
+        }
+
+        @Override
+        public void release() {
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package de.oscillation.kismet.connector;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the <code>benchmarks.jar</code>, which accepts the usual JMH command line options, but always adds
+ * the GC profiler, so that the allocation rate per operation is reported along with the timings of every benchmark.
+ * 
+ * @author Benedikt Meurer
+ */
+public final class KismetBenchmarks {
+    private KismetBenchmarks() {
+    }
+
+    /**
+     * Runs the benchmarks selected by the specified command line <code>args</code>.
+     * 
+     * @param args the JMH command line options.
+     * @throws CommandLineOptionException if the command line options are invalid.
+     * @throws IOException if the help cannot be printed.
+     * @throws RunnerException if the benchmarks fail.
+     */
+    public static void main(String[] args) throws CommandLineOptionException, IOException, RunnerException {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        if (commandLineOptions.shouldHelp()) {
+            commandLineOptions.showHelp();
+            return;
+        }
+        Runner runner = new Runner(new OptionsBuilder().parent(commandLineOptions).addProfiler(GCProfiler.class).build());
+        if (commandLineOptions.shouldList()) {
+            runner.list();
+        }
+        else {
+            runner.run();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package de.oscillation.kismet.connector;
+
+/**
+ * Protocol handler for the benchmarks, which folds the decoded sentences into a checksum, so that the JIT cannot
+ * eliminate the decoding, without allocating anything itself.
+ * 
+ * @author Benedikt Meurer
+ */
+final class KismetChecksumHandler implements KismetProtocolHandler {
+    private long checksum;
+
+    public long getChecksum() {
+        return this.checksum;
+    }
+
+    @Override
+    public void onClientSource(long deviceId, long droneIdMsb, long droneIdLsb, long timestamp, int signalStrength) {
+        this.checksum += deviceId ^ droneIdMsb ^ droneIdLsb ^ timestamp ^ signalStrength;
+    }
+
+    @Override
+    public void onSource(long droneIdMsb, long droneIdLsb, String name) {
+        this.checksum += droneIdMsb ^ droneIdLsb ^ name.length();
+    }
+
+    @Override
+    public void onTime(long timestamp) {
+        this.checksum += timestamp;
+    }
+}
@@ -0,0 +1,93 @@
+package de.oscillation.kismet.connector;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the complete path from the socket to <code>onMessage</code>: a {@link KismetResourceAdapter} is connected
+ * to an in-process {@link KismetSimulator} sending as fast as the connector reads, and every operation waits for the
+ * next message delivered to the message endpoint, so the throughput is reported in messages per second of
+ * <code>chunkSize</code> measured values each. With the {@link KismetMeasurementListener}, every read from the socket
+ * is delivered as a micro-batch of its own, so the throughput is reported in micro-batches per second.
+ * 
+ * @author Benedikt Meurer
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KismetEndToEndBenchmark {
+    @Param({ KismetResourceAdapter.BLOCKING_CONNECTION_MODE, KismetResourceAdapter.SELECTOR_CONNECTION_MODE })
+    public String connectionMode;
+
+    @Param({ "64", "1024" })
+    public int chunkSize;
+
+    @Param({ "false", "true" })
+    public boolean measurementListener;
+
+    private KismetSimulator simulator;
+
+    private KismetResourceAdapter resourceAdapter;
+
+    private KismetBenchmarkEndpointFactory endpointFactory;
+
+    private KismetActivationSpec activationSpec;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        this.simulator = new KismetSimulator();
+        this.simulator.setDrones(KismetBenchmarkData.DRONES);
+        this.simulator.setDevices(this.chunkSize);
+        this.simulator.setMeasuredValuesPerSecond(0);
+        this.simulator.start();
+
+        this.resourceAdapter = new KismetResourceAdapter();
+        this.resourceAdapter.setConnectionMode(this.connectionMode);
+        this.resourceAdapter.start(new KismetBenchmarkContext());
+
+        this.activationSpec = new KismetActivationSpec();
+        this.activationSpec.setServerName("127.0.0.1");
+        this.activationSpec.setPort(this.simulator.getLocalPortNumber());
+        // The selector connection mode doesn't support blocking the reader, so use the same policy for both modes
+        this.activationSpec.setOverflowPolicy(KismetOverflowPolicy.DROP_OLDEST.name());
+        this.activationSpec.setMeasurementListener(this.measurementListener);
+        this.activationSpec.setResourceAdapter(this.resourceAdapter);
+        this.endpointFactory = new KismetBenchmarkEndpointFactory();
+        this.resourceAdapter.endpointActivation(this.endpointFactory, this.activationSpec);
+    }
+
+    @Setup(Level.Iteration)
+    public void drain() {
+        // Don't count the messages that piled up between the iterations
+        this.endpointFactory.getDeliveries().drainPermits();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.resourceAdapter.endpointDeactivation(this.endpointFactory, this.activationSpec);
+        this.resourceAdapter.stop();
+        this.simulator.stop();
+    }
+
+    @Benchmark
+    public long deliver() throws InterruptedException {
+        this.endpointFactory.getDeliveries().acquire();
+        return this.endpointFactory.getMeasuredValues();
+    }
+}
@@ -0,0 +1,24 @@
+package de.oscillation.kismet.connector;
+
+/**
+ * Message sink for the benchmarks, which simply remembers the last message dispatched to it.
+ * 
+ * @author Benedikt Meurer
+ */
+final class KismetLastMessageSink implements KismetMessageSink {
+    private KismetMessage message;
+
+    public KismetMessage getMessage() {
+        return this.message;
+    }
+
+    @Override
+    public void dispatch(KismetMessage message) {
+        this.message = message;
+    }
+
+    @Override
+    public boolean wouldBlock() {
+        return false;
+    }
+}
@@ -0,0 +1,83 @@
+package de.oscillation.kismet.connector;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures <code>equals</code> and <code>hashCode</code> of {@link KismetMeasuredValue}s. The values compared are
+ * equal, but use distinct identifier instances, so that the comparison cannot take the identity shortcut of the
+ * identifiers.
+ * 
+ * @author Benedikt Meurer
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class KismetMeasuredValueBenchmark {
+    /** The number of measured values added to the hash set. */
+    private static final int SET_SIZE = 1024;
+
+    private KismetMeasuredValue measuredValue;
+
+    private KismetMeasuredValue equalMeasuredValue;
+
+    private KismetMeasuredValue otherMeasuredValue;
+
+    private KismetMeasuredValue[] measuredValues;
+
+    @Setup
+    public void setup() {
+        this.measuredValue = measuredValue(0, -42);
+        this.equalMeasuredValue = measuredValue(0, -42);
+        this.otherMeasuredValue = measuredValue(0, -43);
+        this.measuredValues = new KismetMeasuredValue[SET_SIZE];
+        for (int i = 0; i < SET_SIZE; ++i) {
+            this.measuredValues[i] = measuredValue(i, KismetBenchmarkData.signalStrength(i));
+        }
+    }
+
+    @Benchmark
+    public boolean equalsEqual() {
+        return this.measuredValue.equals(this.equalMeasuredValue);
+    }
+
+    @Benchmark
+    public boolean equalsOther() {
+        return this.measuredValue.equals(this.otherMeasuredValue);
+    }
+
+    @Benchmark
+    public int hashCodeOf() {
+        return this.measuredValue.hashCode();
+    }
+
+    @Benchmark
+    public int hashSet() {
+        Set<KismetMeasuredValue> set = new HashSet<KismetMeasuredValue>(2 * SET_SIZE);
+        for (KismetMeasuredValue measuredValue : this.measuredValues) {
+            set.add(measuredValue);
+        }
+        return set.size();
+    }
+
+    private static KismetMeasuredValue measuredValue(int index, int signalStrength) {
+        UUID droneId = KismetBenchmarkData.droneId(index);
+        return new KismetMeasuredValue(KismetIdentifiers.toEUI48(KismetBenchmarkData.deviceId(index)), new UUID(droneId.getMostSignificantBits(), droneId.getLeastSignificantBits()), signalStrength, 1350000000L);
+    }
+}
@@ -0,0 +1,93 @@
+package de.oscillation.kismet.connector;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the assembly of {@link KismetMessage}s by the {@link KismetMessageCollector} for different batch sizes,
+ * both for consumers of the primitive batch and for consumers of the list of {@link KismetMeasuredValue}s.
+ * 
+ * @author Benedikt Meurer
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class KismetMessageAssemblyBenchmark {
+    @Param({ "1", "64", "1024", "16384" })
+    public int batchSize;
+
+    private KismetLastMessageSink sink;
+
+    private KismetMessageCollector collector;
+
+    private long[] deviceIds;
+
+    private long[] droneIdMsbs;
+
+    private long[] droneIdLsbs;
+
+    private int[] signalStrengths;
+
+    private long timestamp;
+
+    @Setup
+    public void setup() {
+        this.sink = new KismetLastMessageSink();
+        this.collector = new KismetMessageCollector(this.sink, 0, 0L, 0, true, null);
+        for (int i = 0; i < KismetBenchmarkData.DRONES; ++i) {
+            UUID droneId = KismetBenchmarkData.droneId(i);
+            this.collector.onSource(droneId.getMostSignificantBits(), droneId.getLeastSignificantBits(), "drone " + i);
+        }
+        this.deviceIds = new long[this.batchSize];
+        this.droneIdMsbs = new long[this.batchSize];
+        this.droneIdLsbs = new long[this.batchSize];
+        this.signalStrengths = new int[this.batchSize];
+        for (int i = 0; i < this.batchSize; ++i) {
+            UUID droneId = KismetBenchmarkData.droneId(i);
+            this.deviceIds[i] = KismetBenchmarkData.deviceId(i);
+            this.droneIdMsbs[i] = droneId.getMostSignificantBits();
+            this.droneIdLsbs[i] = droneId.getLeastSignificantBits();
+            this.signalStrengths[i] = KismetBenchmarkData.signalStrength(i);
+        }
+        this.timestamp = 1350000000L;
+    }
+
+    @Benchmark
+    public KismetMessage assemble() {
+        return collect();
+    }
+
+    @Benchmark
+    public int assembleMeasuredValues() {
+        int signalStrength = 0;
+        for (KismetMeasuredValue measuredValue : collect().getMeasuredValues()) {
+            signalStrength += measuredValue.getSignalStrength();
+        }
+        return signalStrength;
+    }
+
+    private KismetMessage collect() {
+        long timestamp = ++this.timestamp;
+        KismetMessageCollector collector = this.collector;
+        for (int i = 0; i < this.batchSize; ++i) {
+            collector.onClientSource(this.deviceIds[i], this.droneIdMsbs[i], this.droneIdLsbs[i], timestamp, this.signalStrengths[i]);
+        }
+        collector.onTime(timestamp);
+        return this.sink.getMessage();
+    }
+}
@@ -0,0 +1,129 @@
+package de.oscillation.kismet.connector;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the Java serialization of {@link KismetMessage}s for different batch sizes, as performed when messages are
+ * passed to remote message endpoints, which uses the {@link KismetMessageCodec}. For comparison, the codec is also
+ * measured directly, and the default Java serialization of the message contents (the serialized form of messages
+ * before the codec was introduced) serves as baseline. The serialized sizes are reported by
+ * {@link KismetSerializedSizes}.
+ * 
+ * @author Benedikt Meurer
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class KismetMessageSerializationBenchmark {
+    @Param({ "1", "64", "1024", "16384" })
+    public int batchSize;
+
+    private KismetMessage message;
+
+    private ByteArrayOutputStream output;
+
+    private byte[] serialized;
+
+    private byte[] encoded;
+
+    private byte[] serializedContents;
+
+    @Setup
+    public void setup() throws IOException {
+        this.message = new KismetMessage(KismetBenchmarkData.droneRegistry(), KismetBenchmarkData.batch(this.batchSize, 1350000000L), 1350000000L);
+        this.output = new ByteArrayOutputStream();
+        this.serialized = serialize();
+        this.encoded = KismetMessageCodec.encode(this.message);
+        this.serializedContents = serializeContents();
+    }
+
+    @Benchmark
+    public byte[] writeMessage() throws IOException {
+        return serialize();
+    }
+
+    @Benchmark
+    public Object readMessage() throws ClassNotFoundException, IOException {
+        return deserialize(this.serialized);
+    }
+
+    @Benchmark
+    public byte[] encodeMessage() {
+        return KismetMessageCodec.encode(this.message);
+    }
+
+    @Benchmark
+    public Object decodeMessage() throws IOException {
+        return KismetMessageCodec.decode(this.encoded);
+    }
+
+    @Benchmark
+    public byte[] writeContents() throws IOException {
+        return serializeContents();
+    }
+
+    @Benchmark
+    public Object readContents() throws ClassNotFoundException, IOException {
+        ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(this.serializedContents));
+        try {
+            return KismetSerializedSizes.readContents(ois);
+        }
+        finally {
+            ois.close();
+        }
+    }
+
+    private byte[] serialize() throws IOException {
+        this.output.reset();
+        ObjectOutputStream oos = new ObjectOutputStream(this.output);
+        try {
+            oos.writeObject(this.message);
+        }
+        finally {
+            oos.close();
+        }
+        return this.output.toByteArray();
+    }
+
+    private byte[] serializeContents() throws IOException {
+        this.output.reset();
+        ObjectOutputStream oos = new ObjectOutputStream(this.output);
+        try {
+            KismetSerializedSizes.writeContents(oos, this.message);
+        }
+        finally {
+            oos.close();
+        }
+        return this.output.toByteArray();
+    }
+
+    private static Object deserialize(byte[] b) throws ClassNotFoundException, IOException {
+        ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(b));
+        try {
+            return ois.readObject();
+        }
+        finally {
+            ois.close();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package de.oscillation.kismet.connector;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures one second of the {@link KismetPositioningStage}, that is the measured values of every device from four
+ * drones followed by the solve of all devices, for different numbers of devices and with the solve spread over
+ * different numbers of work manager threads. The <code>incremental</code> benchmark updates only every tenth device
+ * per second, which is the common case of mostly stationary devices.
+ * 
+ * @author Benedikt Meurer
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class KismetPositioningBenchmark {
+    private static final int READINGS = 4;
+
+    private static final double AREA = 100.0;
+
+    @Param({ "1024", "10000", "50000" })
+    public int devices;
+
+    @Param({ "1", "4" })
+    public int parallelism;
+
+    private KismetLastMessageSink sink;
+
+    private KismetPositioningStage stage;
+
+    private long[] deviceIds;
+
+    private long[] droneIdMsbs;
+
+    private long[] droneIdLsbs;
+
+    private int[][] signalStrengths;
+
+    private long timestamp;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42L);
+        double[][] coordinates = new double[KismetBenchmarkData.DRONES][];
+        Map<UUID, double[]> droneCoordinates = new HashMap<UUID, double[]>();
+        for (int i = 0; i < KismetBenchmarkData.DRONES; ++i) {
+            coordinates[i] = new double[] { (i % 4) * AREA / 3, (i / 4) * AREA };
+            droneCoordinates.put(KismetBenchmarkData.droneId(i), coordinates[i]);
+        }
+        this.sink = new KismetLastMessageSink();
+        this.stage = new KismetPositioningStage(this.sink, droneCoordinates, -40.0, 2.5, 30L, false, new KismetBenchmarkContext(), this.parallelism);
+        this.deviceIds = new long[this.devices * READINGS];
+        this.droneIdMsbs = new long[this.devices * READINGS];
+        this.droneIdLsbs = new long[this.devices * READINGS];
+        this.signalStrengths = new int[2][this.devices * READINGS];
+        for (int i = 0, k = 0; i < this.devices; ++i) {
+            double x = random.nextDouble() * AREA;
+            double y = random.nextDouble() * AREA;
+            int drone = random.nextInt(KismetBenchmarkData.DRONES);
+            for (int j = 0; j < READINGS; ++j, ++k) {
+                // Every device is heard by four drones, with two sets of noisy readings alternating every second
+                int d = (drone + j * 3) % KismetBenchmarkData.DRONES;
+                UUID droneId = KismetBenchmarkData.droneId(d);
+                double dx = x - coordinates[d][0];
+                double dy = y - coordinates[d][1];
+                double distance = Math.max(1.0, Math.sqrt(dx * dx + dy * dy));
+                int signalStrength = (int) Math.round(-40.0 - 25.0 * Math.log10(distance));
+                this.deviceIds[k] = 0x021122000000L | i;
+                this.droneIdMsbs[k] = droneId.getMostSignificantBits();
+                this.droneIdLsbs[k] = droneId.getLeastSignificantBits();
+                this.signalStrengths[0][k] = signalStrength + random.nextInt(5) - 2;
+                this.signalStrengths[1][k] = signalStrength + random.nextInt(5) - 2;
+            }
+        }
+        this.timestamp = 1350000000L;
+        feed(1);
+    }
+
+    @Benchmark
+    public KismetMessage all() {
+        return feed(1);
+    }
+
+    @Benchmark
+    public KismetMessage incremental() {
+        return feed(10);
+    }
+
+    private KismetMessage feed(int stride) {
+        long timestamp = ++this.timestamp;
+        KismetPositioningStage stage = this.stage;
+        int[] signalStrengths = this.signalStrengths[(int) timestamp & 1];
+        for (int i = (int) (timestamp % stride); i < this.devices; i += stride) {
+            for (int k = i * READINGS, n = k + READINGS; k < n; ++k) {
+                stage.onClientSource(this.deviceIds[k], this.droneIdMsbs[k], this.droneIdLsbs[k], timestamp, signalStrengths[k]);
+            }
+        }
+        stage.onTime(timestamp);
+        return this.sink.getMessage();
+    }
+}
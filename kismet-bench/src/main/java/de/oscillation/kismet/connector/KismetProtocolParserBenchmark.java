@@ -0,0 +1,79 @@
+package de.oscillation.kismet.connector;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the {@link KismetProtocolParser} on single <code>*CLISRC:</code>, <code>*SOURCE:</code> and
+ * <code>*TIME:</code> lines, as well as on a chunk of mixed lines as received from the kismet server.
+ * 
+ * @author Benedikt Meurer
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class KismetProtocolParserBenchmark {
+    /** The number of CLISRC lines per chunk. */
+    private static final int CHUNK_LINES = 256;
+
+    private KismetChecksumHandler handler;
+
+    private KismetProtocolParser parser;
+
+    private byte[] clientSourceLine;
+
+    private byte[] sourceLine;
+
+    private byte[] timeLine;
+
+    private byte[] chunk;
+
+    @Setup
+    public void setup() {
+        Charset charset = Charset.forName("US-ASCII");
+        this.handler = new KismetChecksumHandler();
+        this.parser = new KismetProtocolParser(this.handler);
+        this.clientSourceLine = KismetBenchmarkData.clientSourceLine(0, 0, 1350000000L).getBytes(charset);
+        this.sourceLine = KismetBenchmarkData.sourceLine(0).getBytes(charset);
+        this.timeLine = KismetBenchmarkData.timeLine(1350000000L).getBytes(charset);
+        this.chunk = KismetBenchmarkData.chunk(CHUNK_LINES, 1350000000L).getBytes(charset);
+    }
+
+    @Benchmark
+    public long parseClientSource() throws KismetProtocolException {
+        this.parser.parseLine(this.clientSourceLine, 0, this.clientSourceLine.length - 1);
+        return this.handler.getChecksum();
+    }
+
+    @Benchmark
+    public long parseSource() throws KismetProtocolException {
+        this.parser.parseLine(this.sourceLine, 0, this.sourceLine.length - 1);
+        return this.handler.getChecksum();
+    }
+
+    @Benchmark
+    public long parseTime() throws KismetProtocolException {
+        this.parser.parseLine(this.timeLine, 0, this.timeLine.length - 1);
+        return this.handler.getChecksum();
+    }
+
+    @Benchmark
+    public long parseChunk() {
+        this.parser.parse(this.chunk, 0, this.chunk.length);
+        return this.handler.getChecksum();
+    }
+}
@@ -0,0 +1,73 @@
+package de.oscillation.kismet.connector;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Reports the serialized sizes of {@link KismetMessage}s for the batch sizes of the
+ * {@link KismetMessageSerializationBenchmark}, comparing the default Java serialization of the message contents, the
+ * Java serialization of the message (which uses the {@link KismetMessageCodec}), and the plain codec encoding. Run
+ * with <code>java -cp benchmarks.jar de.oscillation.kismet.connector.KismetSerializedSizes</code>.
+ * 
+ * @author Benedikt Meurer
+ */
+public final class KismetSerializedSizes {
+    /** The batch sizes to report. */
+    private static final int[] BATCH_SIZES = { 1, 64, 1024, 16384 };
+
+    private KismetSerializedSizes() {
+    }
+
+    /**
+     * Prints the serialized sizes in bytes for every batch size.
+     * 
+     * @param args ignored.
+     * @throws IOException if a message cannot be serialized.
+     */
+    public static void main(String[] args) throws IOException {
+        System.out.printf("%10s %14s %14s %14s %10s%n", "batchSize", "default", "serialized", "encoded", "ratio");
+        for (int batchSize : BATCH_SIZES) {
+            KismetMessage message = new KismetMessage(KismetBenchmarkData.droneRegistry(), KismetBenchmarkData.batch(batchSize, 1350000000L), 1350000000L);
+            ByteArrayOutputStream contents = new ByteArrayOutputStream();
+            ObjectOutputStream oos = new ObjectOutputStream(contents);
+            writeContents(oos, message);
+            oos.close();
+            ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+            oos = new ObjectOutputStream(serialized);
+            oos.writeObject(message);
+            oos.close();
+            int encoded = KismetMessageCodec.encode(message).length;
+            System.out.printf("%10d %14d %14d %14d %9.1fx%n", batchSize, contents.size(), serialized.size(), encoded, (double) contents.size() / serialized.size());
+        }
+    }
+
+    /**
+     * Writes the contents of the specified <code>message</code> with the default Java serialization, which is how
+     * messages were serialized before the {@link KismetMessageCodec} was introduced.
+     * 
+     * @param oos the object output stream.
+     * @param message the message.
+     * @throws IOException in case of an I/O error.
+     */
+    static void writeContents(ObjectOutputStream oos, KismetMessage message) throws IOException {
+        oos.writeObject(message.getDroneRegistry());
+        oos.writeObject(message.getMeasuredValueBatch());
+        oos.writeLong(message.getTimestamp());
+    }
+
+    /**
+     * Reads the contents of a message written by {@link #writeContents(ObjectOutputStream, KismetMessage)}.
+     * 
+     * @param ois the object input stream.
+     * @return the message.
+     * @throws ClassNotFoundException if a class of the contents cannot be found.
+     * @throws IOException in case of an I/O error.
+     */
+    static KismetMessage readContents(ObjectInputStream ois) throws ClassNotFoundException, IOException {
+        KismetDroneRegistry droneRegistry = (KismetDroneRegistry) ois.readObject();
+        KismetMeasuredValueBatch measuredValueBatch = (KismetMeasuredValueBatch) ois.readObject();
+        return new KismetMessage(droneRegistry, measuredValueBatch, ois.readLong());
+    }
+}
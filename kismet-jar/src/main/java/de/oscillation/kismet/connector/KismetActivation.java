@@ -0,0 +1,275 @@
+package de.oscillation.kismet.connector;
+
+import java.util.Timer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.resource.spi.endpoint.MessageEndpointFactory;
+import javax.resource.spi.work.WorkManager;
+
+/**
+ * Represents the processing pipeline of a message endpoint activation, which consists of the stages processing the
+ * sentences decoded from the kismet protocol and the {@link KismetMessageDispatcher}s delivering the resulting
+ * messages to the endpoint. The stages and the number of dispatchers are chosen according to the
+ * {@link KismetActivationSpec}, i.e. the {@link KismetMessageCollector}, the {@link KismetEventTimeCollector}, the
+ * {@link KismetAggregator} or the {@link KismetPositioningStage}, optionally preceded by the
+ * {@link KismetDeltaFilter}. Activations federating several kismet servers merge the streams of the kismet servers
+ * with a {@link KismetFederator} in front of the stages.
+ * Activations of {@link KismetMeasurementListener} endpoints always complete a batch at the end of every read.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetConnection
+ */
+public class KismetActivation {
+    /** The identifier of the next activation. */
+    private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+    /** The identifier of this activation, which is unique within the class loader of the resource adapter. */
+    private final int id = NEXT_ID.getAndIncrement();
+
+    /** The kismet activation specification. */
+    private final KismetActivationSpec activationSpec;
+
+    /** The factory for the kismet message listeners. */
+    private final MessageEndpointFactory endpointFactory;
+
+    /** The delivery stage of this activation. */
+    private final KismetMessageSink sink;
+
+    /** The dispatchers of the delivery stage, one per shard. */
+    private final KismetMessageDispatcher[] dispatchers;
+
+    /** The first stage of this activation after the merge, if any. */
+    private final KismetProtocolStage stage;
+
+    /** The collector completing the batches at the end of every read, or <code>null</code> if not batching on read. */
+    private final KismetMessageCollector readCollector;
+
+    /** The merge of the streams of the federated kismet servers, or <code>null</code> for a single kismet server. */
+    private final KismetFederator federator;
+
+    /** The filter for the measured values, or <code>null</code> if all measured values are passed on. */
+    private final KismetMeasurementFilter filter;
+
+    /**
+     * Constructs the processing pipeline for the specified <code>activationSpec</code> and
+     * <code>endpointFactory</code>, which solves the positions on the connection thread.
+     * 
+     * @param activationSpec the kismet activation specification.
+     * @param endpointFactory the message endpoint factory to handle the kismet messages.
+     * @param timer the timer used to enforce the batch latency limit.
+     * @throws IllegalArgumentException if the filter properties, the shard count, the federated servers or the drone
+     *             coordinates of the <code>activationSpec</code> are malformed.
+     * @throws NullPointerException if either <code>activationSpec</code> or <code>endpointFactory</code> is
+     *             <code>null</code>.
+     */
+    public KismetActivation(KismetActivationSpec activationSpec, MessageEndpointFactory endpointFactory, Timer timer) {
+        this(activationSpec, endpointFactory, timer, null);
+    }
+
+    /**
+     * Constructs the processing pipeline for the specified <code>activationSpec</code> and
+     * <code>endpointFactory</code>.
+     * 
+     * @param activationSpec the kismet activation specification.
+     * @param endpointFactory the message endpoint factory to handle the kismet messages.
+     * @param timer the timer used to enforce the batch latency limit.
+     * @param workManager the work manager solving the positions in parallel, or <code>null</code> to solve them on
+     *            the connection thread.
+     * @throws IllegalArgumentException if the filter properties, the shard count, the federated servers or the drone
+     *             coordinates of the <code>activationSpec</code> are malformed, or the <code>activationSpec</code> asks
+     *             for a {@link KismetMeasurementListener} together with aggregation, positioning or event time.
+     * @throws NullPointerException if either <code>activationSpec</code> or <code>endpointFactory</code> is
+     *             <code>null</code>.
+     */
+    public KismetActivation(KismetActivationSpec activationSpec, MessageEndpointFactory endpointFactory, Timer timer, WorkManager workManager) {
+        if (activationSpec == null) {
+            throw new NullPointerException("activationSpec must not be null");
+        }
+        if (endpointFactory == null) {
+            throw new NullPointerException("endpointFactory must not be null");
+        }
+        this.activationSpec = activationSpec;
+        this.endpointFactory = endpointFactory;
+        if (activationSpec.getShardCount() > 1) {
+            KismetShardedDispatcher sink = new KismetShardedDispatcher(activationSpec, endpointFactory);
+            this.sink = sink;
+            this.dispatchers = sink.getShards();
+        }
+        else {
+            KismetMessageDispatcher sink = new KismetMessageDispatcher(activationSpec, endpointFactory);
+            this.sink = sink;
+            this.dispatchers = new KismetMessageDispatcher[] { sink };
+        }
+        this.filter = KismetMeasurementFilter.fromActivationSpec(activationSpec);
+        boolean measurementListener = activationSpec.getMeasurementListener();
+        if (measurementListener
+            && (activationSpec.getPositioning() || activationSpec.getEventTime() || !KismetActivationSpec.NO_AGGREGATION.equals(activationSpec.getAggregation()))) {
+            throw new IllegalArgumentException("Aggregation, positioning and event time require a " + KismetMessageService.class.getName() + " endpoint");
+        }
+        KismetMessageCollector readCollector = null;
+        if (activationSpec.getPositioning()) {
+            KismetProtocolStage stage = new KismetPositioningStage(this.sink, activationSpec.getEffectiveDroneCoordinates(), activationSpec.getPositioningReferenceSignalStrength(),
+                                                                   activationSpec.getPositioningPathLossExponent(), activationSpec.getPositioningMaxAgeSeconds(),
+                                                                   activationSpec.getPositioningMeasuredValues(), workManager, activationSpec.getPositioningParallelism());
+            if (activationSpec.getDeltaDelivery()) {
+                stage = new KismetDeltaFilter(stage, activationSpec.getDeltaThresholdDb(), activationSpec.getDeltaHeartbeatSeconds(), activationSpec.getDeltaExpirySeconds());
+            }
+            this.stage = stage;
+        }
+        else if (activationSpec.getEventTime()) {
+            KismetProtocolStage stage = new KismetEventTimeCollector(this.sink, activationSpec.getEventTimeWindowSeconds(), activationSpec.getAllowedLatenessSeconds());
+            if (activationSpec.getDeltaDelivery()) {
+                stage = new KismetDeltaFilter(stage, activationSpec.getDeltaThresholdDb(), activationSpec.getDeltaHeartbeatSeconds(), activationSpec.getDeltaExpirySeconds());
+            }
+            this.stage = stage;
+        }
+        else if (KismetActivationSpec.NO_AGGREGATION.equals(activationSpec.getAggregation())) {
+            KismetMessageCollector collector = new KismetMessageCollector(this.sink, activationSpec, activationSpec.getBatchOnRead() || measurementListener, timer);
+            if (activationSpec.getBatchOnRead() || measurementListener) {
+                readCollector = collector;
+            }
+            KismetProtocolStage stage = collector;
+            if (activationSpec.getDeltaDelivery()) {
+                stage = new KismetDeltaFilter(stage, activationSpec.getDeltaThresholdDb(), activationSpec.getDeltaHeartbeatSeconds(), activationSpec.getDeltaExpirySeconds());
+            }
+            this.stage = stage;
+        }
+        else {
+            this.stage = new KismetAggregator(this.sink, activationSpec.getAggregationWindowSeconds(), activationSpec.getEffectiveAggregationSlideSeconds(),
+                                              activationSpec.getAllowedLatenessSeconds());
+        }
+        this.readCollector = readCollector;
+        int servers = activationSpec.getEffectiveServers().size();
+        this.federator = (servers > 1) ? new KismetFederator(this.stage, servers, activationSpec.getFederationMaxLagSeconds()) : null;
+    }
+
+    /**
+     * Returns the activationSpec of this <code>KismetActivation</code> object.
+     * 
+     * @return the activationSpec.
+     */
+    public KismetActivationSpec getActivationSpec() {
+        return this.activationSpec;
+    }
+
+    /**
+     * Returns the endpointFactory of this <code>KismetActivation</code> object.
+     * 
+     * @return the endpointFactory.
+     */
+    public MessageEndpointFactory getEndpointFactory() {
+        return this.endpointFactory;
+    }
+
+    /**
+     * Returns the identifier of this <code>KismetActivation</code> object, which names its management interfaces.
+     * 
+     * @return the identifier.
+     */
+    public int getId() {
+        return this.id;
+    }
+
+    /**
+     * Returns the dispatchers of this <code>KismetActivation</code> object, one per shard, which must be scheduled
+     * with the work manager.
+     * 
+     * @return the dispatchers.
+     */
+    public KismetMessageDispatcher[] getDispatchers() {
+        return this.dispatchers.clone();
+    }
+
+    /**
+     * Returns the first stage of this <code>KismetActivation</code> object, which receives the decoded sentences of
+     * the (first) kismet server.
+     * 
+     * @return the stage.
+     */
+    public KismetProtocolStage getStage() {
+        return getStage(0);
+    }
+
+    /**
+     * Returns the stage of this <code>KismetActivation</code> object, which receives the decoded sentences of the
+     * kismet server with the specified index into the federated servers of the activation spec.
+     * 
+     * @param server the index of the kismet server.
+     * @return the stage.
+     * @throws IndexOutOfBoundsException if <code>server</code> is out of range.
+     */
+    public KismetProtocolStage getStage(int server) {
+        if (this.federator != null) {
+            return this.federator.getInput(server);
+        }
+        if (server != 0) {
+            throw new IndexOutOfBoundsException("Invalid server " + server);
+        }
+        return this.stage;
+    }
+
+    /**
+     * Returns the merge of the streams of the federated kismet servers of this <code>KismetActivation</code> object.
+     * 
+     * @return the federator, or <code>null</code> if the activation is bound to a single kismet server.
+     */
+    public KismetFederator getFederator() {
+        return this.federator;
+    }
+
+    /**
+     * Returns the filter of this <code>KismetActivation</code> object, which is applied by the activation group of
+     * every connection of the activation, or by its parser if the activation is the only one of the connection.
+     * 
+     * @return the filter, or <code>null</code> if all measured values are passed on.
+     */
+    public KismetMeasurementFilter getFilter() {
+        return this.filter;
+    }
+
+    /**
+     * Invoked by the connections after the sentences of every read from a kismet server were parsed, which completes
+     * the current batch if the activation batches on read.
+     */
+    public void onReadComplete() {
+        if (this.readCollector != null) {
+            this.readCollector.onReadComplete();
+        }
+    }
+
+    /**
+     * Returns the number of measured values held by the stages of this activation, which were not handed to the
+     * dispatchers yet.
+     * 
+     * @return the number of pending measured values.
+     */
+    public int getPendingMeasurements() {
+        if (this.federator != null) {
+            return this.federator.getPendingCount();
+        }
+        return this.stage.getPendingCount();
+    }
+
+    /**
+     * Returns the number of messages waiting in the dispatchers of this activation.
+     * 
+     * @return the number of pending messages.
+     */
+    public int getPendingMessages() {
+        int pendingMessages = 0;
+        for (KismetMessageDispatcher dispatcher : this.dispatchers) {
+            pendingMessages += dispatcher.getPendingCount();
+        }
+        return pendingMessages;
+    }
+
+    /**
+     * Releases the stages and the dispatchers of this activation.
+     */
+    public void release() {
+        this.stage.release();
+        for (KismetMessageDispatcher dispatcher : this.dispatchers) {
+            dispatcher.release();
+        }
+    }
+}
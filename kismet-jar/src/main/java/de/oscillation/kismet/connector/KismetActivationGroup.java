@@ -0,0 +1,248 @@
+package de.oscillation.kismet.connector;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Fans the sentences decoded from a single kismet server connection out to all activations targeting that server.
+ * Every line is parsed only once, and then handed to the first stage of every activation whose filter accepts it, so
+ * every activation keeps its own filters and batching policy.
+ * <p>
+ * Activations may be added and removed while the connection is running. The drones announced by the kismet server are
+ * remembered and replayed to activations added later, since the kismet server announces every drone only once per
+ * connection. Activations federating several kismet servers are added with the input stage for the kismet server of
+ * the connection. The measured values are also recorded in the device state index of the resource adapter, if any,
+ * regardless of the filters of the activations. Note that all activations share the reader of the connection, so an
+ * activation whose dispatcher blocks delays the other activations as well.
+ * <p>
+ * As long as the group consists of a single activation and there's no device state index, the filter of the activation
+ * is pushed down into the parser of the connection, so that the measured values it rejects are not even decoded.
+ * Otherwise the group applies the filters itself, since a measured value rejected by one activation may still be
+ * needed by another one or the device state index.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetConnection
+ */
+public class KismetActivationGroup implements KismetProtocolHandler {
+    /** The activations together with the stages receiving the sentences. */
+    private final CopyOnWriteArrayList<Member> members = new CopyOnWriteArrayList<Member>();
+
+    /** The names of the drones announced by the kismet server so far. */
+    private final Map<UUID, String> droneNames = new LinkedHashMap<UUID, String>();
+
+    /** The device state index recording the measured values, or <code>null</code> if none. */
+    private volatile KismetDeviceStateIndex deviceStateIndex;
+
+    /** The filter pushed down into the parser of the connection, or <code>null</code> if none. */
+    private volatile KismetMeasurementFilter filter;
+
+    /**
+     * Adds the specified <code>activation</code> to this group, and replays the drones announced so far to it.
+     * 
+     * @param activation the activation to add.
+     * @throws NullPointerException if <code>activation</code> is <code>null</code>.
+     */
+    public void add(KismetActivation activation) {
+        add(activation, 0);
+    }
+
+    /**
+     * Adds the specified <code>activation</code> to this group, which feeds the input stage of the activation for
+     * the kismet server with the specified index, and replays the drones announced so far to it.
+     * 
+     * @param activation the activation to add.
+     * @param server the index of the kismet server of this group among the kismet servers of the activation.
+     * @throws IndexOutOfBoundsException if <code>server</code> is out of range.
+     * @throws NullPointerException if <code>activation</code> is <code>null</code>.
+     * @see KismetActivation#getStage(int)
+     */
+    public synchronized void add(KismetActivation activation, int server) {
+        if (activation == null) {
+            throw new NullPointerException("activation must not be null");
+        }
+        KismetProtocolStage stage = activation.getStage(server);
+        for (Map.Entry<UUID, String> entry : this.droneNames.entrySet()) {
+            stage.onSource(entry.getKey().getMostSignificantBits(), entry.getKey().getLeastSignificantBits(), entry.getValue());
+        }
+        this.members.add(new Member(activation, stage));
+        updateFilter();
+    }
+
+    /**
+     * Removes the specified <code>activation</code> from this group.
+     * 
+     * @param activation the activation to remove.
+     * @return <code>true</code> if the activation was removed, <code>false</code> if it was not part of this group.
+     */
+    public synchronized boolean remove(KismetActivation activation) {
+        for (Member member : this.members) {
+            if (member.activation == activation) {
+                this.members.remove(member);
+                updateFilter();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sets the device state index recording the measured values of this group to the specified
+     * <code>deviceStateIndex</code>.
+     * 
+     * @param deviceStateIndex the device state index, or <code>null</code> to record nothing.
+     */
+    public synchronized void setDeviceStateIndex(KismetDeviceStateIndex deviceStateIndex) {
+        this.deviceStateIndex = deviceStateIndex;
+        updateFilter();
+    }
+
+    /**
+     * Returns the filter to push down into the parser of the connection, which is the filter of the only activation
+     * in this group, unless the measured values are recorded in a device state index. Connections pass it to their
+     * parser before every read, since activations may be added and removed while the connection is running.
+     * 
+     * @return the filter, or <code>null</code> if the parser must pass on all measured values.
+     * @see KismetProtocolParser#setFilter(KismetMeasurementFilter)
+     */
+    public KismetMeasurementFilter getFilter() {
+        return this.filter;
+    }
+
+    /**
+     * Returns the number of activations in this group.
+     * 
+     * @return the number of activations.
+     */
+    public int size() {
+        return this.members.size();
+    }
+
+    /**
+     * Returns the number of drones announced by the kismet server so far.
+     * 
+     * @return the number of drones.
+     */
+    public synchronized int getDroneCount() {
+        return this.droneNames.size();
+    }
+
+    /**
+     * Returns the number of measured values held by the stages of the activations in this group, which were not
+     * handed to the dispatchers yet.
+     * 
+     * @return the number of pending measured values.
+     */
+    public long getPendingMeasurements() {
+        long pendingMeasurements = 0;
+        for (Member member : this.members) {
+            pendingMeasurements += member.activation.getPendingMeasurements();
+        }
+        return pendingMeasurements;
+    }
+
+    /**
+     * Returns the number of messages waiting in the dispatchers of the activations in this group.
+     * 
+     * @return the number of pending messages.
+     */
+    public long getPendingMessages() {
+        long pendingMessages = 0;
+        for (Member member : this.members) {
+            pendingMessages += member.activation.getPendingMessages();
+        }
+        return pendingMessages;
+    }
+
+    /**
+     * Invoked by the connection when it was re-established after the connection to the kismet server was lost.
+     * 
+     * @see KismetProtocolStage#onGap()
+     */
+    public void onGap() {
+        for (Member member : this.members) {
+            member.stage.onGap();
+        }
+    }
+
+    /**
+     * Invoked by the connection after the sentences of every read from the kismet server were parsed.
+     * 
+     * @see KismetActivation#onReadComplete()
+     */
+    public void onReadComplete() {
+        for (Member member : this.members) {
+            member.activation.onReadComplete();
+        }
+    }
+
+    /**
+     * @see KismetProtocolHandler#onClientSource(long, long, long, long, int)
+     */
+    @Override
+    public void onClientSource(long deviceId, long droneIdMsb, long droneIdLsb, long timestamp, int signalStrength) {
+        KismetDeviceStateIndex deviceStateIndex = this.deviceStateIndex;
+        if (deviceStateIndex != null) {
+            deviceStateIndex.onClientSource(deviceId, droneIdMsb, droneIdLsb, timestamp, signalStrength);
+        }
+        for (Member member : this.members) {
+            KismetMeasurementFilter filter = member.activation.getFilter();
+            if (filter == null
+                || (filter.acceptsDevice(deviceId) && filter.acceptsDrone(droneIdMsb, droneIdLsb) && filter.acceptsSignalStrength(signalStrength))) {
+                member.stage.onClientSource(deviceId, droneIdMsb, droneIdLsb, timestamp, signalStrength);
+            }
+        }
+    }
+
+    /**
+     * @see KismetProtocolHandler#onSource(long, long, String)
+     */
+    @Override
+    public synchronized void onSource(long droneIdMsb, long droneIdLsb, String name) {
+        this.droneNames.put(KismetIdentifierCache.getDefault().getDroneId(droneIdMsb, droneIdLsb), name);
+        for (Member member : this.members) {
+            member.stage.onSource(droneIdMsb, droneIdLsb, name);
+        }
+    }
+
+    /**
+     * @see KismetProtocolHandler#onTime(long)
+     */
+    @Override
+    public void onTime(long timestamp) {
+        for (Member member : this.members) {
+            member.stage.onTime(timestamp);
+        }
+    }
+
+    /**
+     * Determines the filter pushed down into the parser of the connection, after the activations or the device state
+     * index changed.
+     */
+    private void updateFilter() {
+        this.filter = this.members.size() == 1 && this.deviceStateIndex == null ? this.members.get(0).activation.getFilter() : null;
+    }
+
+    /**
+     * An activation in this group together with the stage receiving the sentences.
+     */
+    private static final class Member {
+        /** The activation. */
+        private final KismetActivation activation;
+
+        /** The stage receiving the sentences. */
+        private final KismetProtocolStage stage;
+
+        /**
+         * Constructs a new member with the specified parameters.
+         * 
+         * @param activation the activation.
+         * @param stage the stage receiving the sentences.
+         */
+        Member(KismetActivation activation, KismetProtocolStage stage) {
+            this.activation = activation;
+            this.stage = stage;
+        }
+    }
+}
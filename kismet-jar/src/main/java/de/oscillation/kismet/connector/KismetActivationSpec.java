@@ -1,6 +1,13 @@
 package de.oscillation.kismet.connector;
 
 import java.io.Serializable;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 
 import javax.resource.ResourceException;
 import javax.resource.spi.Activation;
@@ -14,11 +21,20 @@ import javax.resource.spi.ResourceAdapter;
  * 
  * @author Benedikt Meurer
  */
-@Activation(messageListeners = KismetMessageService.class)
+@Activation(messageListeners = { KismetMessageService.class, KismetMeasurementListener.class })
 public class KismetActivationSpec implements ActivationSpec, Serializable {
     /** The serial version UID of this class. */
     private static final long serialVersionUID = 1L;
 
+    /** The aggregation mode that delivers the individual measured values. */
+    public static final String NO_AGGREGATION = "none";
+
+    /** The aggregation mode that delivers statistics for non-overlapping windows. */
+    public static final String TUMBLING_AGGREGATION = "tumbling";
+
+    /** The aggregation mode that delivers statistics for overlapping windows. */
+    public static final String SLIDING_AGGREGATION = "sliding";
+
     /** The kismet server name. */
     @ConfigProperty(description = "Kismet server name")
     private String serverName = "localhost";
@@ -27,6 +43,158 @@ public class KismetActivationSpec implements ActivationSpec, Serializable {
     @ConfigProperty(description = "Kismet server port number")
     private Integer portNumber = 2501;
 
+    /** Whether only the protocol fields needed by the connector are requested from the kismet server. */
+    @ConfigProperty(description = "Whether only the protocol fields needed by the connector are requested from the kismet server", defaultValue = "true")
+    private Boolean fieldProjection = Boolean.TRUE;
+
+    /** The maximum number of messages buffered between the reader and the delivery stage. */
+    @ConfigProperty(description = "Maximum number of messages buffered between the reader and the delivery stage", defaultValue = "64")
+    private Integer bufferSize = 64;
+
+    /** The policy applied when the buffer between the reader and the delivery stage is full, or <code>null</code>. */
+    @ConfigProperty(description = "Policy applied when the message buffer is full, either block, drop-oldest or sample, by default block in blocking and drop-oldest in selector connection mode")
+    private String overflowPolicy;
+
+    /** The sample rate for the sample overflow policy. */
+    @ConfigProperty(description = "Keep every n-th message when the message buffer is full and the overflow policy is sample", defaultValue = "10")
+    private Integer sampleRate = 10;
+
+    /** The number of shards the messages are split into for parallel delivery. */
+    @ConfigProperty(description = "Number of shards the messages are split into by device for parallel delivery", defaultValue = "1")
+    private Integer shardCount = 1;
+
+    /** Whether the message endpoint is kept across deliveries. */
+    @ConfigProperty(description = "Whether the message endpoint is kept across deliveries instead of being created per message", defaultValue = "true")
+    private Boolean endpointReuse = Boolean.TRUE;
+
+    /** Whether the message endpoints implement the {@link KismetMeasurementListener}. */
+    @ConfigProperty(description = "Whether the message endpoints implement KismetMeasurementListener instead of KismetMessageService", defaultValue = "false")
+    private Boolean measurementListener = Boolean.FALSE;
+
+    /** The maximum number of measured values per message. */
+    @ConfigProperty(description = "Maximum number of measured values per message, 0 for no limit", defaultValue = "0")
+    private Integer maxBatchSize = 0;
+
+    /** The maximum time in milliseconds a measured value waits for delivery. */
+    @ConfigProperty(description = "Maximum time in milliseconds a measured value waits for delivery, 0 for no limit", defaultValue = "0")
+    private Long maxBatchLatencyMillis = 0L;
+
+    /** The minimum number of measured values for messages completed by TIME sentences, reads or the latency limit. */
+    @ConfigProperty(description = "Minimum number of measured values for messages completed by TIME sentences, reads or the latency limit", defaultValue = "0")
+    private Integer minBatchSize = 0;
+
+    /** Whether TIME sentences from the kismet server complete the current batch. */
+    @ConfigProperty(description = "Whether TIME sentences from the kismet server complete the current batch", defaultValue = "true")
+    private Boolean batchOnTime = Boolean.TRUE;
+
+    /** Whether the end of every read from the kismet server completes the current batch. */
+    @ConfigProperty(description = "Whether the end of every read from the kismet server completes the current batch, always set for KismetMeasurementListener endpoints", defaultValue = "false")
+    private Boolean batchOnRead = Boolean.FALSE;
+
+    /** The aggregation mode, either none, tumbling or sliding. */
+    @ConfigProperty(description = "Aggregation mode, either none, tumbling or sliding", defaultValue = NO_AGGREGATION)
+    private String aggregation = NO_AGGREGATION;
+
+    /** The length of the aggregation windows in seconds. */
+    @ConfigProperty(description = "Length of the aggregation windows in seconds", defaultValue = "10")
+    private Integer aggregationWindowSeconds = 10;
+
+    /** The distance between the starts of two sliding aggregation windows in seconds. */
+    @ConfigProperty(description = "Distance between the starts of two sliding aggregation windows in seconds, 0 for the window length", defaultValue = "0")
+    private Integer aggregationSlideSeconds = 0;
+
+    /** Whether only measured values carrying new information are delivered. */
+    @ConfigProperty(description = "Whether only measured values carrying new information are delivered", defaultValue = "false")
+    private Boolean deltaDelivery = Boolean.FALSE;
+
+    /** The minimum change of the signal strength in dB that is delivered in delta delivery mode. */
+    @ConfigProperty(description = "Minimum change of the signal strength in dB that is delivered in delta delivery mode", defaultValue = "3")
+    private Integer deltaThresholdDb = 3;
+
+    /** The interval in seconds after which a measured value is delivered regardless of its change in delta delivery mode. */
+    @ConfigProperty(description = "Interval in seconds after which a measured value is delivered regardless of its change in delta delivery mode, 0 for never", defaultValue = "60")
+    private Integer deltaHeartbeatSeconds = 60;
+
+    /** The interval in seconds after which a silent (device, drone) pair expires in delta delivery mode. */
+    @ConfigProperty(description = "Interval in seconds after which a silent (device, drone) pair expires in delta delivery mode, 0 for never", defaultValue = "300")
+    private Integer deltaExpirySeconds = 300;
+
+    /** The comma separated list of explicitly allowed device EUI-48 addresses. */
+    @ConfigProperty(description = "Comma separated list of explicitly allowed device EUI-48 addresses, empty for all devices")
+    private String deviceAllowList;
+
+    /** The comma separated list of denied device EUI-48 addresses. */
+    @ConfigProperty(description = "Comma separated list of denied device EUI-48 addresses")
+    private String deviceDenyList;
+
+    /** The comma separated list of allowed device address prefixes, such as vendor OUIs. */
+    @ConfigProperty(description = "Comma separated list of allowed device address prefixes of one to six octets, such as vendor OUIs")
+    private String devicePrefixes;
+
+    /** The comma separated list of selected drone UUIDs. */
+    @ConfigProperty(description = "Comma separated list of selected drone UUIDs, empty for all drones")
+    private String droneIds;
+
+    /** The minimum signal strength in dBm of the delivered measured values. */
+    @ConfigProperty(description = "Minimum signal strength in dBm of the delivered measured values, empty for no minimum")
+    private Integer minSignalStrength;
+
+    /** The directory of the capture to replay instead of connecting to the kismet server. */
+    @ConfigProperty(description = "Directory of a capture of the kismet server to replay instead of connecting to it, empty for a live connection")
+    private String replayDirectory;
+
+    /** The replay speed relative to the capture. */
+    @ConfigProperty(description = "Replay speed relative to the capture, 1 for real time, 0 for as fast as possible", defaultValue = "1.0")
+    private Double replaySpeed = 1.0;
+
+    /** The kismet servers whose streams are merged, or <code>null</code> for the server name and port number only. */
+    @ConfigProperty(description = "Comma-separated host[:port] list of kismet servers whose streams are merged and deduplicated, empty for serverName and portNumber only")
+    private String federatedServers;
+
+    /** The maximum time in seconds a federated kismet server may lag behind before the merge stops waiting for it. */
+    @ConfigProperty(description = "Maximum time in seconds a federated kismet server may lag behind the most advanced one before the merge stops waiting for it", defaultValue = "10")
+    private Integer federationMaxLagSeconds = 10;
+
+    /** Whether the positions of the devices are estimated and delivered. */
+    @ConfigProperty(description = "Whether the positions of the devices are estimated from the signal strengths measured by the drones with coordinates", defaultValue = "false")
+    private Boolean positioning = Boolean.FALSE;
+
+    /** The coordinates of the drones used for positioning. */
+    @ConfigProperty(description = "Semicolon-separated uuid=x,y list of drone coordinates used for positioning")
+    private String droneCoordinates;
+
+    /** The signal strength in dBm at the unit distance of the drone coordinates. */
+    @ConfigProperty(description = "Signal strength in dBm at the unit distance of the drone coordinates, used for positioning", defaultValue = "-40.0")
+    private Double positioningReferenceSignalStrength = -40.0;
+
+    /** The path loss exponent used for positioning. */
+    @ConfigProperty(description = "Path loss exponent used for positioning, 2 in free space and up to 4 indoors", defaultValue = "2.5")
+    private Double positioningPathLossExponent = 2.5;
+
+    /** The maximum age of the measured values used for positioning in seconds. */
+    @ConfigProperty(description = "Maximum age in seconds of the measured values used for positioning, relative to the latest measured value of the device", defaultValue = "30")
+    private Integer positioningMaxAgeSeconds = 30;
+
+    /** Whether the measured values are delivered along with the positions. */
+    @ConfigProperty(description = "Whether the measured values are delivered along with the positions", defaultValue = "true")
+    private Boolean positioningMeasuredValues = Boolean.TRUE;
+
+    /** The maximum number of work manager threads solving the positions in parallel. */
+    @ConfigProperty(description = "Maximum number of work manager threads solving the positions in parallel, 1 to solve on the connection thread", defaultValue = "1")
+    private Integer positioningParallelism = 1;
+
+    /** Whether the measured values are batched into windows by their own timestamps. */
+    @ConfigProperty(description = "Whether the measured values are batched into windows by their own kismet server timestamps instead of by arrival", defaultValue = "false")
+    private Boolean eventTime = Boolean.FALSE;
+
+    /** The length of the event time windows in seconds. */
+    @ConfigProperty(description = "Length of the event time windows in seconds", defaultValue = "1")
+    private Integer eventTimeWindowSeconds = 1;
+
+    /** The time in seconds the kismet server time must pass the end of a window before it is complete. */
+    @ConfigProperty(description = "Time in seconds the kismet server time must pass the end of an event time or aggregation window before the window is complete", defaultValue = "0")
+    private Integer allowedLatenessSeconds = 0;
+
     /** The resource adapter. */
     private ResourceAdapter resourceAdapter;
 
@@ -66,6 +234,903 @@ public class KismetActivationSpec implements ActivationSpec, Serializable {
         this.portNumber = portNumber;
     }
 
+    /**
+     * Returns the field projection flag of this <code>KismetActivationSpec</code> object.
+     * 
+     * @return whether only the protocol fields needed by the connector are requested from the kismet server.
+     */
+    public Boolean getFieldProjection() {
+        return this.fieldProjection;
+    }
+
+    /**
+     * Set the field projection flag of this <code>KismetActivationSpec</code> object to the specified
+     * <code>fieldProjection</code>. With field projection, the supported fields are queried via CAPABILITY command
+     * and only the needed fields are enabled, otherwise all fields are enabled. Activations targeting the same kismet
+     * server share the connection, which uses the setting of the first activation.
+     * 
+     * @param fieldProjection whether only the protocol fields needed by the connector are requested.
+     */
+    public void setFieldProjection(Boolean fieldProjection) {
+        this.fieldProjection = fieldProjection;
+    }
+
+    /**
+     * Returns the buffer size of this <code>KismetActivationSpec</code> object.
+     * 
+     * @return the maximum number of buffered messages.
+     */
+    public Integer getBufferSize() {
+        return this.bufferSize;
+    }
+
+    /**
+     * Set the buffer size of this <code>KismetActivationSpec</code> object to the specified <code>bufferSize</code>.
+     * 
+     * @param bufferSize the maximum number of buffered messages.
+     */
+    public void setBufferSize(Integer bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Returns the overflow policy of this <code>KismetActivationSpec</code> object.
+     * 
+     * @return the overflow policy, or <code>null</code> if unset.
+     * @see #getEffectiveOverflowPolicy()
+     */
+    public String getOverflowPolicy() {
+        return this.overflowPolicy;
+    }
+
+    /**
+     * Set the overflow policy of this <code>KismetActivationSpec</code> object to the specified
+     * <code>overflowPolicy</code>, either <code>block</code>, <code>drop-oldest</code> or <code>sample</code>. The
+     * <code>block</code> policy is not supported for live connections in selector connection mode. If unset, the
+     * policy depends on the connection mode of the resource adapter.
+     * 
+     * @param overflowPolicy the overflow policy, or <code>null</code> to use the default of the connection mode.
+     * @see KismetOverflowPolicy
+     */
+    public void setOverflowPolicy(String overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Returns the sample rate of this <code>KismetActivationSpec</code> object.
+     * 
+     * @return the sample rate.
+     */
+    public Integer getSampleRate() {
+        return this.sampleRate;
+    }
+
+    /**
+     * Set the sample rate of this <code>KismetActivationSpec</code> object to the specified <code>sampleRate</code>.
+     * 
+     * @param sampleRate the sample rate.
+     */
+    public void setSampleRate(Integer sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Returns the shard count of this <code>KismetActivationSpec</code> object.
+     * 
+     * @return the number of shards the messages are split into for parallel delivery.
+     */
+    public Integer getShardCount() {
+        return this.shardCount;
+    }
+
+    /**
+     * Set the shard count of this <code>KismetActivationSpec</code> object to the specified <code>shardCount</code>.
+     * With more than one shard, every message is split by device, and the shards are delivered concurrently to
+     * separate message endpoints, preserving the order per device. Each shard has its own buffer of
+     * {@link #getBufferSize()} messages.
+     * 
+     * @param shardCount the number of shards the messages are split into for parallel delivery.
+     */
+    public void setShardCount(Integer shardCount) {
+        this.shardCount = shardCount;
+    }
+
+    /**
+     * Returns the endpoint reuse flag of this <code>KismetActivationSpec</code> object.
+     * 
+     * @return whether the message endpoint is kept across deliveries.
+     */
+    public Boolean getEndpointReuse() {
+        return this.endpointReuse;
+    }
+
+    /**
+     * Set the endpoint reuse flag of this <code>KismetActivationSpec</code> object to the specified
+     * <code>endpointReuse</code>. Disable endpoint reuse for containers that require a fresh endpoint per
+     * delivery.
+     * 
+     * @param endpointReuse whether the message endpoint is kept across deliveries.
+     */
+    public void setEndpointReuse(Boolean endpointReuse) {
+        this.endpointReuse = endpointReuse;
+    }
+
+    /**
+     * Returns the measurement listener flag of this <code>KismetActivationSpec</code> object.
+     * 
+     * @return whether the message endpoints implement the {@link KismetMeasurementListener}.
+     */
+    public Boolean getMeasurementListener() {
+        return this.measurementListener;
+    }
+
+    /**
+     * Set the measurement listener flag of this <code>KismetActivationSpec</code> object to the specified
+     * <code>measurementListener</code>. Must be set for message endpoints implementing the
+     * {@link KismetMeasurementListener} instead of the {@link KismetMessageService}, which cannot be combined with
+     * aggregation, positioning or event time.
+     * 
+     * @param measurementListener whether the message endpoints implement the {@link KismetMeasurementListener}.
+     */
+    public void setMeasurementListener(Boolean measurementListener) {
+        this.measurementListener = measurementListener;
+    }
+
+    /**
+     * Returns the maximum batch size of this <code>KismetActivationSpec</code> object.
+     * 
+     * @return the maximum number of measured values per message, or <code>0</code> for no limit.
+     */
+    public Integer getMaxBatchSize() {
+        return this.maxBatchSize;
+    }
+
+    /**
+     * Set the maximum batch size of this <code>KismetActivationSpec</code> object to the specified
+     * <code>maxBatchSize</code>.
+     * 
+     * @param maxBatchSize the maximum number of measured values per message, or <code>0</code> for no limit.
+     */
+    public void setMaxBatchSize(Integer maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Returns the maximum batch latency of this <code>KismetActivationSpec</code> object.
+     * 
+     * @return the maximum time in milliseconds a measured value waits for delivery, or <code>0</code> for no limit.
+     */
+    public Long getMaxBatchLatencyMillis() {
+        return this.maxBatchLatencyMillis;
+    }
+
+    /**
+     * Set the maximum batch latency of this <code>KismetActivationSpec</code> object to the specified
+     * <code>maxBatchLatencyMillis</code>.
+     * 
+     * @param maxBatchLatencyMillis the maximum time in milliseconds a measured value waits for delivery, or
+     *            <code>0</code> for no limit.
+     */
+    public void setMaxBatchLatencyMillis(Long maxBatchLatencyMillis) {
+        this.maxBatchLatencyMillis = maxBatchLatencyMillis;
+    }
+
+    /**
+     * Returns the minimum batch size of this <code>KismetActivationSpec</code> object.
+     * 
+     * @return the minimum number of measured values for messages completed by TIME sentences, reads or the latency
+     *         limit.
+     */
+    public Integer getMinBatchSize() {
+        return this.minBatchSize;
+    }
+
+    /**
+     * Set the minimum batch size of this <code>KismetActivationSpec</code> object to the specified
+     * <code>minBatchSize</code>.
+     * 
+     * @param minBatchSize the minimum number of measured values for messages completed by TIME sentences, reads or the
+     *            latency limit.
+     */
+    public void setMinBatchSize(Integer minBatchSize) {
+        this.minBatchSize = minBatchSize;
+    }
+
+    /**
+     * Returns the batch on time flag of this <code>KismetActivationSpec</code> object.
+     * 
+     * @return whether TIME sentences from the kismet server complete the current batch.
+     */
+    public Boolean getBatchOnTime() {
+        return this.batchOnTime;
+    }
+
+    /**
+     * Set the batch on time flag of this <code>KismetActivationSpec</code> object to the specified
+     * <code>batchOnTime</code>.
+     * 
+     * @param batchOnTime whether TIME sentences from the kismet server complete the current batch.
+     */
+    public void setBatchOnTime(Boolean batchOnTime) {
+        this.batchOnTime = batchOnTime;
+    }
+
+    /**
+     * Returns the batch on read flag of this <code>KismetActivationSpec</code> object.
+     * 
+     * @return whether the end of every read from the kismet server completes the current batch.
+     */
+    public Boolean getBatchOnRead() {
+        return this.batchOnRead;
+    }
+
+    /**
+     * Set the batch on read flag of this <code>KismetActivationSpec</code> object to the specified
+     * <code>batchOnRead</code>. Batching on read delivers the measured values as soon as the bytes received from the
+     * kismet server are parsed, in as many messages as there are reads. The flag is implied for endpoints
+     * implementing the {@link KismetMeasurementListener}.
+     * 
+     * @param batchOnRead whether the end of every read from the kismet server completes the current batch.
+     */
+    public void setBatchOnRead(Boolean batchOnRead) {
+        this.batchOnRead = batchOnRead;
+    }
+
+    /**
+     * Returns the aggregation mode of this <code>KismetActivationSpec</code> object.
+     * 
+     * @return the aggregation mode, either {@link #NO_AGGREGATION}, {@link #TUMBLING_AGGREGATION} or
+     *         {@link #SLIDING_AGGREGATION}.
+     */
+    public String getAggregation() {
+        return this.aggregation;
+    }
+
+    /**
+     * Set the aggregation mode of this <code>KismetActivationSpec</code> object to the specified
+     * <code>aggregation</code>. In aggregation mode, the batching properties are ignored and one
+     * {@link KismetAggregatedMessage} is delivered per window.
+     * 
+     * @param aggregation the aggregation mode, either {@link #NO_AGGREGATION}, {@link #TUMBLING_AGGREGATION} or
+     *            {@link #SLIDING_AGGREGATION}.
+     */
+    public void setAggregation(String aggregation) {
+        this.aggregation = aggregation;
+    }
+
+    /**
+     * Returns the aggregation window length of this <code>KismetActivationSpec</code> object.
+     * 
+     * @return the length of the aggregation windows in seconds.
+     */
+    public Integer getAggregationWindowSeconds() {
+        return this.aggregationWindowSeconds;
+    }
+
+    /**
+     * Set the aggregation window length of this <code>KismetActivationSpec</code> object to the specified
+     * <code>aggregationWindowSeconds</code>.
+     * 
+     * @param aggregationWindowSeconds the length of the aggregation windows in seconds.
+     */
+    public void setAggregationWindowSeconds(Integer aggregationWindowSeconds) {
+        this.aggregationWindowSeconds = aggregationWindowSeconds;
+    }
+
+    /**
+     * Returns the aggregation slide of this <code>KismetActivationSpec</code> object.
+     * 
+     * @return the distance between the starts of two sliding aggregation windows in seconds, or <code>0</code> for
+     *         the window length.
+     */
+    public Integer getAggregationSlideSeconds() {
+        return this.aggregationSlideSeconds;
+    }
+
+    /**
+     * Set the aggregation slide of this <code>KismetActivationSpec</code> object to the specified
+     * <code>aggregationSlideSeconds</code>. The window length must be a multiple of the slide.
+     * 
+     * @param aggregationSlideSeconds the distance between the starts of two sliding aggregation windows in seconds,
+     *            or <code>0</code> for the window length.
+     */
+    public void setAggregationSlideSeconds(Integer aggregationSlideSeconds) {
+        this.aggregationSlideSeconds = aggregationSlideSeconds;
+    }
+
+    /**
+     * Returns the delta delivery flag of this <code>KismetActivationSpec</code> object.
+     * 
+     * @return whether only measured values carrying new information are delivered.
+     */
+    public Boolean getDeltaDelivery() {
+        return this.deltaDelivery;
+    }
+
+    /**
+     * Set the delta delivery flag of this <code>KismetActivationSpec</code> object to the specified
+     * <code>deltaDelivery</code>. In delta delivery mode, a measured value is only delivered if its (device, drone)
+     * pair is new, its signal strength changed by more than the threshold, or the heartbeat interval has passed, and
+     * silent pairs are reported via {@link KismetMessage#getExpiredValues()}.
+     * 
+     * @param deltaDelivery whether only measured values carrying new information are delivered.
+     */
+    public void setDeltaDelivery(Boolean deltaDelivery) {
+        this.deltaDelivery = deltaDelivery;
+    }
+
+    /**
+     * Returns the delta threshold of this <code>KismetActivationSpec</code> object.
+     * 
+     * @return the minimum change of the signal strength in dB that is delivered in delta delivery mode.
+     */
+    public Integer getDeltaThresholdDb() {
+        return this.deltaThresholdDb;
+    }
+
+    /**
+     * Set the delta threshold of this <code>KismetActivationSpec</code> object to the specified
+     * <code>deltaThresholdDb</code>.
+     * 
+     * @param deltaThresholdDb the minimum change of the signal strength in dB that is delivered in delta delivery
+     *            mode.
+     */
+    public void setDeltaThresholdDb(Integer deltaThresholdDb) {
+        this.deltaThresholdDb = deltaThresholdDb;
+    }
+
+    /**
+     * Returns the delta heartbeat interval of this <code>KismetActivationSpec</code> object.
+     * 
+     * @return the interval in seconds after which a measured value is delivered regardless of its change, or
+     *         <code>0</code> for never.
+     */
+    public Integer getDeltaHeartbeatSeconds() {
+        return this.deltaHeartbeatSeconds;
+    }
+
+    /**
+     * Set the delta heartbeat interval of this <code>KismetActivationSpec</code> object to the specified
+     * <code>deltaHeartbeatSeconds</code>.
+     * 
+     * @param deltaHeartbeatSeconds the interval in seconds after which a measured value is delivered regardless of
+     *            its change, or <code>0</code> for never.
+     */
+    public void setDeltaHeartbeatSeconds(Integer deltaHeartbeatSeconds) {
+        this.deltaHeartbeatSeconds = deltaHeartbeatSeconds;
+    }
+
+    /**
+     * Returns the delta expiry interval of this <code>KismetActivationSpec</code> object.
+     * 
+     * @return the interval in seconds after which a silent (device, drone) pair expires, or <code>0</code> for never.
+     */
+    public Integer getDeltaExpirySeconds() {
+        return this.deltaExpirySeconds;
+    }
+
+    /**
+     * Set the delta expiry interval of this <code>KismetActivationSpec</code> object to the specified
+     * <code>deltaExpirySeconds</code>.
+     * 
+     * @param deltaExpirySeconds the interval in seconds after which a silent (device, drone) pair expires, or
+     *            <code>0</code> for never.
+     */
+    public void setDeltaExpirySeconds(Integer deltaExpirySeconds) {
+        this.deltaExpirySeconds = deltaExpirySeconds;
+    }
+
+    /**
+     * Returns the device allow list of this <code>KismetActivationSpec</code> object.
+     * 
+     * @return the comma separated list of explicitly allowed device EUI-48 addresses.
+     */
+    public String getDeviceAllowList() {
+        return this.deviceAllowList;
+    }
+
+    /**
+     * Set the device allow list of this <code>KismetActivationSpec</code> object to the specified
+     * <code>deviceAllowList</code>. If either an allow list or prefixes are configured, only measured values for
+     * devices that are explicitly allowed or match one of the prefixes are delivered.
+     * 
+     * @param deviceAllowList the comma separated list of explicitly allowed device EUI-48 addresses.
+     */
+    public void setDeviceAllowList(String deviceAllowList) {
+        this.deviceAllowList = deviceAllowList;
+    }
+
+    /**
+     * Returns the device deny list of this <code>KismetActivationSpec</code> object.
+     * 
+     * @return the comma separated list of denied device EUI-48 addresses.
+     */
+    public String getDeviceDenyList() {
+        return this.deviceDenyList;
+    }
+
+    /**
+     * Set the device deny list of this <code>KismetActivationSpec</code> object to the specified
+     * <code>deviceDenyList</code>. Measured values for denied devices are never delivered.
+     * 
+     * @param deviceDenyList the comma separated list of denied device EUI-48 addresses.
+     */
+    public void setDeviceDenyList(String deviceDenyList) {
+        this.deviceDenyList = deviceDenyList;
+    }
+
+    /**
+     * Returns the device prefixes of this <code>KismetActivationSpec</code> object.
+     * 
+     * @return the comma separated list of allowed device address prefixes.
+     */
+    public String getDevicePrefixes() {
+        return this.devicePrefixes;
+    }
+
+    /**
+     * Set the device prefixes of this <code>KismetActivationSpec</code> object to the specified
+     * <code>devicePrefixes</code>, for example <code>00:1b:63,f0:d1:a9</code> to select two vendors by OUI.
+     * 
+     * @param devicePrefixes the comma separated list of allowed device address prefixes of one to six octets.
+     */
+    public void setDevicePrefixes(String devicePrefixes) {
+        this.devicePrefixes = devicePrefixes;
+    }
+
+    /**
+     * Returns the drone IDs of this <code>KismetActivationSpec</code> object.
+     * 
+     * @return the comma separated list of selected drone UUIDs.
+     */
+    public String getDroneIds() {
+        return this.droneIds;
+    }
+
+    /**
+     * Set the drone IDs of this <code>KismetActivationSpec</code> object to the specified <code>droneIds</code>. If
+     * drones are selected, only the measured values of these drones are delivered.
+     * 
+     * @param droneIds the comma separated list of selected drone UUIDs.
+     */
+    public void setDroneIds(String droneIds) {
+        this.droneIds = droneIds;
+    }
+
+    /**
+     * Returns the minimum signal strength of this <code>KismetActivationSpec</code> object.
+     * 
+     * @return the minimum signal strength in dBm, or <code>null</code> for no minimum.
+     */
+    public Integer getMinSignalStrength() {
+        return this.minSignalStrength;
+    }
+
+    /**
+     * Set the minimum signal strength of this <code>KismetActivationSpec</code> object to the specified
+     * <code>minSignalStrength</code>.
+     * 
+     * @param minSignalStrength the minimum signal strength in dBm, or <code>null</code> for no minimum.
+     */
+    public void setMinSignalStrength(Integer minSignalStrength) {
+        this.minSignalStrength = minSignalStrength;
+    }
+
+    /**
+     * Returns the replay directory of this <code>KismetActivationSpec</code> object.
+     * 
+     * @return the directory of the capture to replay, or <code>null</code> for a live connection.
+     */
+    public String getReplayDirectory() {
+        return this.replayDirectory;
+    }
+
+    /**
+     * Set the replay directory of this <code>KismetActivationSpec</code> object to the specified
+     * <code>replayDirectory</code>. If set, the segments captured from the kismet server identified by the server name
+     * and port number are replayed from this directory instead of connecting to the kismet server.
+     * 
+     * @param replayDirectory the directory of the capture to replay, or <code>null</code> for a live connection.
+     * @see KismetResourceAdapter#setCaptureDirectory(String)
+     */
+    public void setReplayDirectory(String replayDirectory) {
+        this.replayDirectory = replayDirectory;
+    }
+
+    /**
+     * Returns the replay speed of this <code>KismetActivationSpec</code> object.
+     * 
+     * @return the replay speed relative to the capture.
+     */
+    public Double getReplaySpeed() {
+        return this.replaySpeed;
+    }
+
+    /**
+     * Set the replay speed of this <code>KismetActivationSpec</code> object to the specified <code>replaySpeed</code>,
+     * for example <code>1</code> to replay in real time, <code>60</code> to replay an hour per minute, or
+     * <code>0</code> to replay as fast as the message endpoints accept the messages.
+     * 
+     * @param replaySpeed the replay speed relative to the capture.
+     */
+    public void setReplaySpeed(Double replaySpeed) {
+        this.replaySpeed = replaySpeed;
+    }
+
+    /**
+     * Returns the federated servers of this <code>KismetActivationSpec</code> object.
+     * 
+     * @return the comma-separated list of kismet servers, or <code>null</code> for the server name and port number
+     *         only.
+     */
+    public String getFederatedServers() {
+        return this.federatedServers;
+    }
+
+    /**
+     * Set the federated servers of this <code>KismetActivationSpec</code> object to the specified
+     * <code>federatedServers</code>, a comma-separated list of <code>host[:port]</code> entries, where the port
+     * defaults to the port number. If set, the activation connects to all listed kismet servers instead of the server
+     * name, merges their streams by kismet server time, and drops the measured values of the same (device, drone,
+     * timestamp) reported by more than one kismet server.
+     * 
+     * @param federatedServers the comma-separated list of kismet servers, or <code>null</code> for the server name and
+     *            port number only.
+     * @see KismetFederator
+     */
+    public void setFederatedServers(String federatedServers) {
+        this.federatedServers = federatedServers;
+    }
+
+    /**
+     * Returns the federation maximum lag of this <code>KismetActivationSpec</code> object.
+     * 
+     * @return the maximum lag in seconds.
+     */
+    public Integer getFederationMaxLagSeconds() {
+        return this.federationMaxLagSeconds;
+    }
+
+    /**
+     * Set the federation maximum lag of this <code>KismetActivationSpec</code> object to the specified
+     * <code>federationMaxLagSeconds</code>. The merge waits for every federated kismet server whose time lags no more
+     * than this behind the most advanced kismet server, so this bounds the delay added by an unreachable kismet server,
+     * while the measured values of kismet servers lagging further behind are dropped as late.
+     * 
+     * @param federationMaxLagSeconds the maximum lag in seconds.
+     */
+    public void setFederationMaxLagSeconds(Integer federationMaxLagSeconds) {
+        this.federationMaxLagSeconds = federationMaxLagSeconds;
+    }
+
+    /**
+     * Returns the positioning flag of this <code>KismetActivationSpec</code> object.
+     * 
+     * @return whether the positions of the devices are estimated and delivered.
+     */
+    public Boolean getPositioning() {
+        return this.positioning;
+    }
+
+    /**
+     * Set the positioning flag of this <code>KismetActivationSpec</code> object to the specified
+     * <code>positioning</code>. In positioning mode, the positions of the devices are estimated from the signal
+     * strengths measured by the drones with coordinates, and delivered via {@link KismetPositionedMessage} with every
+     * TIME sentence. Positioning cannot be combined with aggregation, and ignores the batching properties.
+     * 
+     * @param positioning whether the positions of the devices are estimated and delivered.
+     * @see KismetPositioningStage
+     */
+    public void setPositioning(Boolean positioning) {
+        this.positioning = positioning;
+    }
+
+    /**
+     * Returns the drone coordinates of this <code>KismetActivationSpec</code> object.
+     * 
+     * @return the semicolon-separated list of drone coordinates.
+     */
+    public String getDroneCoordinates() {
+        return this.droneCoordinates;
+    }
+
+    /**
+     * Set the drone coordinates of this <code>KismetActivationSpec</code> object to the specified
+     * <code>droneCoordinates</code>, a semicolon-separated list of <code>uuid=x,y</code> entries in a planar coordinate
+     * system, usually in meters. Drones without coordinates are not used for positioning.
+     * 
+     * @param droneCoordinates the semicolon-separated list of drone coordinates.
+     */
+    public void setDroneCoordinates(String droneCoordinates) {
+        this.droneCoordinates = droneCoordinates;
+    }
+
+    /**
+     * Returns the positioning reference signal strength of this <code>KismetActivationSpec</code> object.
+     * 
+     * @return the signal strength in dBm at the unit distance of the drone coordinates.
+     */
+    public Double getPositioningReferenceSignalStrength() {
+        return this.positioningReferenceSignalStrength;
+    }
+
+    /**
+     * Set the positioning reference signal strength of this <code>KismetActivationSpec</code> object to the specified
+     * <code>positioningReferenceSignalStrength</code>.
+     * 
+     * @param positioningReferenceSignalStrength the signal strength in dBm at the unit distance of the drone
+     *            coordinates.
+     */
+    public void setPositioningReferenceSignalStrength(Double positioningReferenceSignalStrength) {
+        this.positioningReferenceSignalStrength = positioningReferenceSignalStrength;
+    }
+
+    /**
+     * Returns the positioning path loss exponent of this <code>KismetActivationSpec</code> object.
+     * 
+     * @return the path loss exponent.
+     */
+    public Double getPositioningPathLossExponent() {
+        return this.positioningPathLossExponent;
+    }
+
+    /**
+     * Set the positioning path loss exponent of this <code>KismetActivationSpec</code> object to the specified
+     * <code>positioningPathLossExponent</code>.
+     * 
+     * @param positioningPathLossExponent the path loss exponent.
+     */
+    public void setPositioningPathLossExponent(Double positioningPathLossExponent) {
+        this.positioningPathLossExponent = positioningPathLossExponent;
+    }
+
+    /**
+     * Returns the positioning maximum age of this <code>KismetActivationSpec</code> object.
+     * 
+     * @return the maximum age of the measured values used for positioning in seconds.
+     */
+    public Integer getPositioningMaxAgeSeconds() {
+        return this.positioningMaxAgeSeconds;
+    }
+
+    /**
+     * Set the positioning maximum age of this <code>KismetActivationSpec</code> object to the specified
+     * <code>positioningMaxAgeSeconds</code>. Measured values older than this relative to the latest measured value of
+     * the device are not used, and devices without measured values for this long are forgotten.
+     * 
+     * @param positioningMaxAgeSeconds the maximum age of the measured values used for positioning in seconds.
+     */
+    public void setPositioningMaxAgeSeconds(Integer positioningMaxAgeSeconds) {
+        this.positioningMaxAgeSeconds = positioningMaxAgeSeconds;
+    }
+
+    /**
+     * Returns the positioning measured values flag of this <code>KismetActivationSpec</code> object.
+     * 
+     * @return whether the measured values are delivered along with the positions.
+     */
+    public Boolean getPositioningMeasuredValues() {
+        return this.positioningMeasuredValues;
+    }
+
+    /**
+     * Set the positioning measured values flag of this <code>KismetActivationSpec</code> object to the specified
+     * <code>positioningMeasuredValues</code>.
+     * 
+     * @param positioningMeasuredValues whether the measured values are delivered along with the positions.
+     */
+    public void setPositioningMeasuredValues(Boolean positioningMeasuredValues) {
+        this.positioningMeasuredValues = positioningMeasuredValues;
+    }
+
+    /**
+     * Returns the positioning parallelism of this <code>KismetActivationSpec</code> object.
+     * 
+     * @return the maximum number of work manager threads solving the positions in parallel.
+     */
+    public Integer getPositioningParallelism() {
+        return this.positioningParallelism;
+    }
+
+    /**
+     * Set the positioning parallelism of this <code>KismetActivationSpec</code> object to the specified
+     * <code>positioningParallelism</code>. With more than one thread, large numbers of devices are split into chunks
+     * that are solved in parallel by the work manager of the resource adapter.
+     * 
+     * @param positioningParallelism the maximum number of work manager threads solving the positions in parallel, or
+     *            <code>1</code> to solve on the connection thread.
+     */
+    public void setPositioningParallelism(Integer positioningParallelism) {
+        this.positioningParallelism = positioningParallelism;
+    }
+
+    /**
+     * Returns the event time flag of this <code>KismetActivationSpec</code> object.
+     * 
+     * @return whether the measured values are batched into windows by their own kismet server timestamps.
+     */
+    public Boolean getEventTime() {
+        return this.eventTime;
+    }
+
+    /**
+     * Set the event time flag of this <code>KismetActivationSpec</code> object to the specified
+     * <code>eventTime</code>. With event time batching, the batching properties are ignored and one
+     * {@link KismetWindowedMessage} is delivered per complete window, while the measured values that miss their
+     * windows are delivered in late messages.
+     * 
+     * @param eventTime whether the measured values are batched into windows by their own kismet server timestamps.
+     */
+    public void setEventTime(Boolean eventTime) {
+        this.eventTime = eventTime;
+    }
+
+    /**
+     * Returns the event time window length of this <code>KismetActivationSpec</code> object.
+     * 
+     * @return the length of the event time windows in seconds.
+     */
+    public Integer getEventTimeWindowSeconds() {
+        return this.eventTimeWindowSeconds;
+    }
+
+    /**
+     * Set the event time window length of this <code>KismetActivationSpec</code> object to the specified
+     * <code>eventTimeWindowSeconds</code>.
+     * 
+     * @param eventTimeWindowSeconds the length of the event time windows in seconds.
+     */
+    public void setEventTimeWindowSeconds(Integer eventTimeWindowSeconds) {
+        this.eventTimeWindowSeconds = eventTimeWindowSeconds;
+    }
+
+    /**
+     * Returns the allowed lateness of this <code>KismetActivationSpec</code> object.
+     * 
+     * @return the time in seconds the kismet server time must pass the end of a window before it is complete.
+     */
+    public Integer getAllowedLatenessSeconds() {
+        return this.allowedLatenessSeconds;
+    }
+
+    /**
+     * Set the allowed lateness of this <code>KismetActivationSpec</code> object to the specified
+     * <code>allowedLatenessSeconds</code>. The watermark of the event time and aggregation windows trails the kismet
+     * server time reported by <code>*TIME:</code> sentences by the allowed lateness, so measured values relayed late
+     * by the drones still make it into their windows, at the price of delivering every window that much later.
+     * 
+     * @param allowedLatenessSeconds the time in seconds the kismet server time must pass the end of a window before
+     *            it is complete.
+     */
+    public void setAllowedLatenessSeconds(Integer allowedLatenessSeconds) {
+        this.allowedLatenessSeconds = allowedLatenessSeconds;
+    }
+
+    /**
+     * Returns the addresses of the kismet servers of the activation, which are the federated servers if set, and the
+     * server name and port number otherwise. The addresses are not resolved.
+     * 
+     * @return the unresolved addresses of the kismet servers.
+     * @throws IllegalArgumentException if the federated servers are malformed.
+     */
+    List<InetSocketAddress> getEffectiveServers() {
+        if (this.federatedServers == null || this.federatedServers.trim().length() == 0) {
+            return Collections.singletonList(InetSocketAddress.createUnresolved(this.serverName, this.portNumber));
+        }
+        List<InetSocketAddress> servers = new ArrayList<InetSocketAddress>();
+        for (String server : this.federatedServers.split(",")) {
+            server = server.trim();
+            String host = server;
+            int port = this.portNumber;
+            int colon = server.lastIndexOf(':');
+            if (server.startsWith("[")) {
+                // IPv6 literal with optional port
+                int bracket = server.indexOf(']');
+                if (bracket < 0 || (bracket + 1 < server.length() && bracket + 1 != colon)) {
+                    throw new IllegalArgumentException("Invalid server " + server);
+                }
+                host = server.substring(1, bracket);
+                colon = (colon > bracket) ? colon : -1;
+            }
+            else if (colon != server.indexOf(':')) {
+                // IPv6 literal without port
+                colon = -1;
+            }
+            else if (colon >= 0) {
+                host = server.substring(0, colon);
+            }
+            if (colon >= 0) {
+                try {
+                    port = Integer.parseInt(server.substring(colon + 1));
+                }
+                catch (NumberFormatException exn) {
+                    throw new IllegalArgumentException("Invalid server " + server, exn);
+                }
+            }
+            if (host.length() == 0 || port <= 0 || port > 65535) {
+                throw new IllegalArgumentException("Invalid server " + server);
+            }
+            InetSocketAddress address = InetSocketAddress.createUnresolved(host, port);
+            if (servers.contains(address)) {
+                throw new IllegalArgumentException("Duplicate server " + server);
+            }
+            servers.add(address);
+        }
+        return servers;
+    }
+
+    /**
+     * Returns the overflow policy applied by the dispatchers. If the overflow policy is unset, live connections of a
+     * resource adapter in selector connection mode drop the oldest messages, since the selector threads must not
+     * block, and all other connections block the reader.
+     * 
+     * @return the overflow policy.
+     * @throws IllegalArgumentException if the overflow policy is malformed.
+     */
+    KismetOverflowPolicy getEffectiveOverflowPolicy() {
+        if (this.overflowPolicy != null) {
+            return KismetOverflowPolicy.fromString(this.overflowPolicy);
+        }
+        if (this.resourceAdapter instanceof KismetResourceAdapter
+            && KismetResourceAdapter.SELECTOR_CONNECTION_MODE.equals(((KismetResourceAdapter) this.resourceAdapter).getConnectionMode())
+            && (this.replayDirectory == null || this.replayDirectory.length() == 0)) {
+            return KismetOverflowPolicy.DROP_OLDEST;
+        }
+        return KismetOverflowPolicy.BLOCK;
+    }
+
+    /**
+     * Returns the coordinates of the drones used for positioning.
+     * 
+     * @return the coordinates as <code>{x, y}</code>, indexed by drone UUID.
+     * @throws IllegalArgumentException if the drone coordinates are malformed.
+     */
+    Map<UUID, double[]> getEffectiveDroneCoordinates() {
+        Map<UUID, double[]> coordinates = new HashMap<UUID, double[]>();
+        if (this.droneCoordinates == null || this.droneCoordinates.trim().length() == 0) {
+            return coordinates;
+        }
+        for (String entry : this.droneCoordinates.split(";")) {
+            entry = entry.trim();
+            if (entry.length() == 0) {
+                continue;
+            }
+            int equals = entry.indexOf('=');
+            String[] xy = (equals < 0) ? new String[0] : entry.substring(equals + 1).split(",");
+            if (xy.length != 2) {
+                throw new IllegalArgumentException("Invalid drone coordinates " + entry);
+            }
+            try {
+                UUID droneId = UUID.fromString(entry.substring(0, equals).trim());
+                double x = Double.parseDouble(xy[0].trim());
+                double y = Double.parseDouble(xy[1].trim());
+                if (Double.isNaN(x) || Double.isInfinite(x) || Double.isNaN(y) || Double.isInfinite(y)) {
+                    throw new IllegalArgumentException("Invalid drone coordinates " + entry);
+                }
+                if (coordinates.put(droneId, new double[] { x, y }) != null) {
+                    throw new IllegalArgumentException("Duplicate drone coordinates " + entry);
+                }
+            }
+            catch (NumberFormatException exn) {
+                throw new IllegalArgumentException("Invalid drone coordinates " + entry, exn);
+            }
+        }
+        return coordinates;
+    }
+
+    /**
+     * Returns the distance between the starts of two aggregation windows, which equals the window length unless
+     * sliding windows with an explicit slide are configured.
+     * 
+     * @return the effective aggregation slide in seconds.
+     */
+    int getEffectiveAggregationSlideSeconds() {
+        if (SLIDING_AGGREGATION.equals(this.aggregation) && this.aggregationSlideSeconds > 0) {
+            return this.aggregationSlideSeconds;
+        }
+        return this.aggregationWindowSeconds;
+    }
+
     /**
      * @see javax.resource.spi.ResourceAdapterAssociation#getResourceAdapter()
      */
@@ -96,5 +1161,145 @@ public class KismetActivationSpec implements ActivationSpec, Serializable {
         if (this.portNumber <= 0 || this.portNumber >= 65536) {
             throw new InvalidPropertyException("Invalid portNumber " + this.portNumber);
         }
+        if (this.fieldProjection == null) {
+            throw new InvalidPropertyException("fieldProjection must not be null");
+        }
+        if (this.bufferSize == null || this.bufferSize <= 0) {
+            throw new InvalidPropertyException("Invalid bufferSize " + this.bufferSize);
+        }
+        try {
+            if (this.overflowPolicy != null) {
+                KismetOverflowPolicy.fromString(this.overflowPolicy);
+            }
+        }
+        catch (IllegalArgumentException exn) {
+            throw new InvalidPropertyException("Invalid overflowPolicy " + this.overflowPolicy, exn);
+        }
+        if (this.sampleRate == null || this.sampleRate <= 0) {
+            throw new InvalidPropertyException("Invalid sampleRate " + this.sampleRate);
+        }
+        if (this.shardCount == null || this.shardCount <= 0) {
+            throw new InvalidPropertyException("Invalid shardCount " + this.shardCount);
+        }
+        if (this.endpointReuse == null) {
+            throw new InvalidPropertyException("endpointReuse must not be null");
+        }
+        if (this.measurementListener == null) {
+            throw new InvalidPropertyException("measurementListener must not be null");
+        }
+        if (this.maxBatchSize == null || this.maxBatchSize < 0) {
+            throw new InvalidPropertyException("Invalid maxBatchSize " + this.maxBatchSize);
+        }
+        if (this.maxBatchLatencyMillis == null || this.maxBatchLatencyMillis < 0) {
+            throw new InvalidPropertyException("Invalid maxBatchLatencyMillis " + this.maxBatchLatencyMillis);
+        }
+        if (this.minBatchSize == null || this.minBatchSize < 0 || (this.maxBatchSize > 0 && this.minBatchSize > this.maxBatchSize)) {
+            throw new InvalidPropertyException("Invalid minBatchSize " + this.minBatchSize);
+        }
+        if (this.batchOnTime == null) {
+            throw new InvalidPropertyException("batchOnTime must not be null");
+        }
+        if (this.batchOnRead == null) {
+            throw new InvalidPropertyException("batchOnRead must not be null");
+        }
+        if (!this.batchOnTime && !this.batchOnRead && this.maxBatchSize == 0 && this.maxBatchLatencyMillis == 0) {
+            throw new InvalidPropertyException("At least one of batchOnTime, batchOnRead, maxBatchSize or maxBatchLatencyMillis must be set");
+        }
+        if (!NO_AGGREGATION.equals(this.aggregation) && !TUMBLING_AGGREGATION.equals(this.aggregation) && !SLIDING_AGGREGATION.equals(this.aggregation)) {
+            throw new InvalidPropertyException("Invalid aggregation " + this.aggregation);
+        }
+        if (this.aggregationWindowSeconds == null || this.aggregationWindowSeconds <= 0) {
+            throw new InvalidPropertyException("Invalid aggregationWindowSeconds " + this.aggregationWindowSeconds);
+        }
+        if (this.aggregationSlideSeconds == null || this.aggregationSlideSeconds < 0
+            || (this.aggregationSlideSeconds > 0 && this.aggregationWindowSeconds % this.aggregationSlideSeconds != 0)) {
+            throw new InvalidPropertyException("Invalid aggregationSlideSeconds " + this.aggregationSlideSeconds);
+        }
+        if (this.deltaDelivery == null) {
+            throw new InvalidPropertyException("deltaDelivery must not be null");
+        }
+        if (this.deltaDelivery && !NO_AGGREGATION.equals(this.aggregation)) {
+            throw new InvalidPropertyException("deltaDelivery cannot be combined with aggregation " + this.aggregation);
+        }
+        if (this.deltaThresholdDb == null || this.deltaThresholdDb < 0) {
+            throw new InvalidPropertyException("Invalid deltaThresholdDb " + this.deltaThresholdDb);
+        }
+        if (this.deltaHeartbeatSeconds == null || this.deltaHeartbeatSeconds < 0) {
+            throw new InvalidPropertyException("Invalid deltaHeartbeatSeconds " + this.deltaHeartbeatSeconds);
+        }
+        if (this.deltaExpirySeconds == null || this.deltaExpirySeconds < 0) {
+            throw new InvalidPropertyException("Invalid deltaExpirySeconds " + this.deltaExpirySeconds);
+        }
+        if (this.replaySpeed == null || !(this.replaySpeed >= 0) || this.replaySpeed.isInfinite()) {
+            throw new InvalidPropertyException("Invalid replaySpeed " + this.replaySpeed);
+        }
+        if (this.federationMaxLagSeconds == null || this.federationMaxLagSeconds < 0) {
+            throw new InvalidPropertyException("Invalid federationMaxLagSeconds " + this.federationMaxLagSeconds);
+        }
+        try {
+            getEffectiveServers();
+        }
+        catch (IllegalArgumentException exn) {
+            throw new InvalidPropertyException("Invalid federatedServers: " + exn.getMessage(), exn);
+        }
+        if (this.positioning == null) {
+            throw new InvalidPropertyException("positioning must not be null");
+        }
+        if (this.positioning && !NO_AGGREGATION.equals(this.aggregation)) {
+            throw new InvalidPropertyException("positioning cannot be combined with aggregation " + this.aggregation);
+        }
+        if (this.positioningReferenceSignalStrength == null || this.positioningReferenceSignalStrength.isNaN() || this.positioningReferenceSignalStrength.isInfinite()) {
+            throw new InvalidPropertyException("Invalid positioningReferenceSignalStrength " + this.positioningReferenceSignalStrength);
+        }
+        if (this.positioningPathLossExponent == null || !(this.positioningPathLossExponent > 0) || this.positioningPathLossExponent.isInfinite()) {
+            throw new InvalidPropertyException("Invalid positioningPathLossExponent " + this.positioningPathLossExponent);
+        }
+        if (this.positioningMaxAgeSeconds == null || this.positioningMaxAgeSeconds <= 0) {
+            throw new InvalidPropertyException("Invalid positioningMaxAgeSeconds " + this.positioningMaxAgeSeconds);
+        }
+        if (this.positioningMeasuredValues == null) {
+            throw new InvalidPropertyException("positioningMeasuredValues must not be null");
+        }
+        if (this.positioningParallelism == null || this.positioningParallelism <= 0) {
+            throw new InvalidPropertyException("Invalid positioningParallelism " + this.positioningParallelism);
+        }
+        try {
+            if (this.positioning && getEffectiveDroneCoordinates().isEmpty()) {
+                throw new InvalidPropertyException("droneCoordinates must be set for positioning");
+            }
+        }
+        catch (IllegalArgumentException exn) {
+            throw new InvalidPropertyException("Invalid droneCoordinates: " + exn.getMessage(), exn);
+        }
+        if (this.eventTime == null) {
+            throw new InvalidPropertyException("eventTime must not be null");
+        }
+        if (this.eventTime && !NO_AGGREGATION.equals(this.aggregation)) {
+            throw new InvalidPropertyException("eventTime cannot be combined with aggregation " + this.aggregation);
+        }
+        if (this.eventTime && this.positioning) {
+            throw new InvalidPropertyException("eventTime cannot be combined with positioning");
+        }
+        if (this.eventTimeWindowSeconds == null || this.eventTimeWindowSeconds <= 0) {
+            throw new InvalidPropertyException("Invalid eventTimeWindowSeconds " + this.eventTimeWindowSeconds);
+        }
+        if (this.allowedLatenessSeconds == null || this.allowedLatenessSeconds < 0) {
+            throw new InvalidPropertyException("Invalid allowedLatenessSeconds " + this.allowedLatenessSeconds);
+        }
+        if (this.measurementListener && !NO_AGGREGATION.equals(this.aggregation)) {
+            throw new InvalidPropertyException("measurementListener cannot be combined with aggregation " + this.aggregation);
+        }
+        if (this.measurementListener && this.positioning) {
+            throw new InvalidPropertyException("measurementListener cannot be combined with positioning");
+        }
+        if (this.measurementListener && this.eventTime) {
+            throw new InvalidPropertyException("measurementListener cannot be combined with eventTime");
+        }
+        try {
+            KismetMeasurementFilter.fromActivationSpec(this);
+        }
+        catch (IllegalArgumentException exn) {
+            throw new InvalidPropertyException("Invalid filter: " + exn.getMessage(), exn);
+        }
     }
 }
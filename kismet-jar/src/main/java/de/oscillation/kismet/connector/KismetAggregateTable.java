@@ -0,0 +1,203 @@
+package de.oscillation.kismet.connector;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Accumulates the signal strength statistics per (device, drone) pair in primitive columns. The pairs are looked up in
+ * an open addressing hash table keyed on a single <code>long</code>, which packs the 48 bit EUI-48 address of the
+ * device and the 16 bit index of the drone. Instances of this class are not thread-safe.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetAggregator
+ * @see KismetAggregateBatch
+ */
+public class KismetAggregateTable {
+    /** The initial number of pairs. */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** The number of pairs. */
+    private int size;
+
+    /** The hash table, mapping to pair index plus one, or <code>0</code> for empty slots. */
+    private int[] table = new int[INITIAL_CAPACITY * 2];
+
+    /** The packed keys of the pairs. */
+    private long[] keys = new long[INITIAL_CAPACITY];
+
+    /** The number of measured values. */
+    private int[] counts = new int[INITIAL_CAPACITY];
+
+    /** The minimum signal strengths in dBm. */
+    private int[] minSignalStrengths = new int[INITIAL_CAPACITY];
+
+    /** The maximum signal strengths in dBm. */
+    private int[] maxSignalStrengths = new int[INITIAL_CAPACITY];
+
+    /** The sums of the signal strengths in dBm. */
+    private long[] sumSignalStrengths = new long[INITIAL_CAPACITY];
+
+    /** The last signal strengths in dBm. */
+    private int[] lastSignalStrengths = new int[INITIAL_CAPACITY];
+
+    /** The kismet server timestamps of the first measured values in seconds. */
+    private long[] firstTimestamps = new long[INITIAL_CAPACITY];
+
+    /** The kismet server timestamps of the last measured values in seconds. */
+    private long[] lastTimestamps = new long[INITIAL_CAPACITY];
+
+    /**
+     * Returns the number of (device, drone) pairs in this table.
+     * 
+     * @return the number of pairs.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Adds a single measured value to the statistics of its (device, drone) pair.
+     * 
+     * @param deviceId the EUI-48 address of the device in the lower 48 bits.
+     * @param droneIndex the index of the drone into the drone table.
+     * @param signalStrength the signal strength in dBm.
+     * @param timestamp the kismet server timestamp in seconds.
+     */
+    public void add(long deviceId, int droneIndex, int signalStrength, long timestamp) {
+        merge(key(deviceId, droneIndex), 1, signalStrength, signalStrength, signalStrength, signalStrength, timestamp, timestamp);
+    }
+
+    /**
+     * Merges the statistics of all pairs of the specified <code>table</code> into this table.
+     * 
+     * @param table the table to merge.
+     */
+    public void addAll(KismetAggregateTable table) {
+        for (int i = 0; i < table.size; ++i) {
+            merge(table.keys[i], table.counts[i], table.minSignalStrengths[i], table.maxSignalStrengths[i], table.sumSignalStrengths[i],
+                  table.lastSignalStrengths[i], table.firstTimestamps[i], table.lastTimestamps[i]);
+        }
+    }
+
+    /**
+     * Builds an aggregate batch from the statistics in this table.
+     * 
+     * @param drones the drone table for the drone indices.
+     * @return the aggregate batch.
+     */
+    public KismetAggregateBatch toBatch(UUID[] drones) {
+        int n = this.size;
+        long[] deviceIds = new long[n];
+        int[] droneIndices = new int[n];
+        for (int i = 0; i < n; ++i) {
+            deviceIds[i] = this.keys[i] & 0xffffffffffffL;
+            droneIndices[i] = (int) (this.keys[i] >>> 48);
+        }
+        return new KismetAggregateBatch(drones, n, deviceIds, droneIndices, Arrays.copyOf(this.counts, n), Arrays.copyOf(this.minSignalStrengths, n),
+                                        Arrays.copyOf(this.maxSignalStrengths, n), Arrays.copyOf(this.sumSignalStrengths, n),
+                                        Arrays.copyOf(this.lastSignalStrengths, n), Arrays.copyOf(this.firstTimestamps, n),
+                                        Arrays.copyOf(this.lastTimestamps, n));
+    }
+
+    /**
+     * Packs the device and drone of a pair into a single key.
+     * 
+     * @param deviceId the EUI-48 address of the device in the lower 48 bits.
+     * @param droneIndex the index of the drone into the drone table.
+     * @return the packed key.
+     */
+    static long key(long deviceId, int droneIndex) {
+        return (deviceId & 0xffffffffffffL) | ((long) droneIndex << 48);
+    }
+
+    /**
+     * Computes the hash code of a packed key.
+     * 
+     * @param key the packed key.
+     * @return the hash code.
+     */
+    static int hash(long key) {
+        long h = key * 0x9e3779b97f4a7c15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Merges partial statistics into the statistics of the pair with the specified <code>key</code>.
+     * 
+     * @param key the packed key of the pair.
+     * @param count the number of measured values.
+     * @param min the minimum signal strength in dBm.
+     * @param max the maximum signal strength in dBm.
+     * @param sum the sum of the signal strengths in dBm.
+     * @param last the last signal strength in dBm.
+     * @param firstTimestamp the kismet server timestamp of the first measured value in seconds.
+     * @param lastTimestamp the kismet server timestamp of the last measured value in seconds.
+     */
+    private void merge(long key, int count, int min, int max, long sum, int last, long firstTimestamp, long lastTimestamp) {
+        int mask = this.table.length - 1;
+        int slot = hash(key) & mask;
+        for (int index; (index = this.table[slot] - 1) >= 0; slot = (slot + 1) & mask) {
+            if (this.keys[index] == key) {
+                this.counts[index] += count;
+                this.minSignalStrengths[index] = Math.min(this.minSignalStrengths[index], min);
+                this.maxSignalStrengths[index] = Math.max(this.maxSignalStrengths[index], max);
+                this.sumSignalStrengths[index] += sum;
+                if (lastTimestamp >= this.lastTimestamps[index]) {
+                    this.lastSignalStrengths[index] = last;
+                    this.lastTimestamps[index] = lastTimestamp;
+                }
+                this.firstTimestamps[index] = Math.min(this.firstTimestamps[index], firstTimestamp);
+                return;
+            }
+        }
+        int index = this.size++;
+        if (index == this.keys.length) {
+            grow();
+        }
+        this.keys[index] = key;
+        this.counts[index] = count;
+        this.minSignalStrengths[index] = min;
+        this.maxSignalStrengths[index] = max;
+        this.sumSignalStrengths[index] = sum;
+        this.lastSignalStrengths[index] = last;
+        this.firstTimestamps[index] = firstTimestamp;
+        this.lastTimestamps[index] = lastTimestamp;
+        if (this.size * 2 > this.table.length) {
+            rehash();
+        }
+        else {
+            this.table[slot] = index + 1;
+        }
+    }
+
+    /**
+     * Doubles the capacity of the columns.
+     */
+    private void grow() {
+        int capacity = this.keys.length * 2;
+        this.keys = Arrays.copyOf(this.keys, capacity);
+        this.counts = Arrays.copyOf(this.counts, capacity);
+        this.minSignalStrengths = Arrays.copyOf(this.minSignalStrengths, capacity);
+        this.maxSignalStrengths = Arrays.copyOf(this.maxSignalStrengths, capacity);
+        this.sumSignalStrengths = Arrays.copyOf(this.sumSignalStrengths, capacity);
+        this.lastSignalStrengths = Arrays.copyOf(this.lastSignalStrengths, capacity);
+        this.firstTimestamps = Arrays.copyOf(this.firstTimestamps, capacity);
+        this.lastTimestamps = Arrays.copyOf(this.lastTimestamps, capacity);
+    }
+
+    /**
+     * Rebuilds the hash table with twice the capacity.
+     */
+    private void rehash() {
+        int[] table = new int[this.table.length * 2];
+        int mask = table.length - 1;
+        for (int index = 0; index < this.size; ++index) {
+            int slot = hash(this.keys[index]) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = index + 1;
+        }
+        this.table = table;
+    }
+}
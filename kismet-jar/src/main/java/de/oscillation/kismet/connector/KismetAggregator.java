@@ -0,0 +1,249 @@
+package de.oscillation.kismet.connector;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aggregates the measured values into signal strength statistics per (device, drone) pair and window, and hands a
+ * {@link KismetAggregatedMessage} per window to the {@link KismetMessageSink}. Windows are keyed on the kismet
+ * server timestamps of the measured values, and are closed once a <code>*TIME:</code> sentence reports a kismet server
+ * time at or beyond the end of the window plus the allowed lateness. Windows without any measured values are skipped.
+ * <p>
+ * Both tumbling and sliding windows are supported. Internally, measured values are accumulated in panes with the
+ * length of the slide, and every window is assembled from its panes when it is closed, so every measured value is
+ * accumulated only once independent of the number of windows it belongs to. Measured values for windows that were
+ * already closed are dropped and counted as late. Instances of this class must only be fed by a single connection.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetActivationSpec#getAggregation()
+ */
+public class KismetAggregator implements KismetProtocolStage {
+    /** The delivery stage for the aggregated messages. */
+    private final KismetMessageSink dispatcher;
+
+    /** The length of a window in seconds. */
+    private final long windowSeconds;
+
+    /** The length of a pane, i.e. the distance between the starts of two windows, in seconds. */
+    private final long slideSeconds;
+
+    /** The time in seconds the kismet server time must pass the end of a window before it is closed. */
+    private final long allowedLatenessSeconds;
+
+    /** The number of panes per window. */
+    private final long panesPerWindow;
+
+    /** The panes by pane number. */
+    private final TreeMap<Long, KismetAggregateTable> panes = new TreeMap<Long, KismetAggregateTable>();
+
+    /** The drones referenced by the measured values. */
+    private final KismetDroneTable droneTable = new KismetDroneTable();
+
+    /** The registry of known drones, which is shared by the messages until a drone is added or renamed. */
+    private KismetDroneRegistry droneRegistry = KismetDroneRegistry.EMPTY;
+
+    /** The pane number of the end of the next window to close, or <code>Long.MIN_VALUE</code> if unknown. */
+    private long nextWindowEnd = Long.MIN_VALUE;
+
+    /** The number of measured values dropped because their windows were already closed. */
+    private long lateCount;
+
+    /** The number of aggregates in the open panes, updated with every TIME sentence. */
+    private volatile int pendingCount;
+
+    /** Whether the connection was interrupted since the last window was delivered. */
+    private boolean afterGap;
+
+    /**
+     * Constructs a new aggregator with the specified parameters.
+     * 
+     * @param dispatcher the delivery stage for the aggregated messages.
+     * @param windowSeconds the length of a window in seconds.
+     * @param slideSeconds the distance between the starts of two windows in seconds, equal to
+     *            <code>windowSeconds</code> for tumbling windows.
+     * @throws IllegalArgumentException if either <code>windowSeconds</code> or <code>slideSeconds</code> is not
+     *             positive, or <code>windowSeconds</code> is not a multiple of <code>slideSeconds</code>.
+     * @throws NullPointerException if <code>dispatcher</code> is <code>null</code>.
+     */
+    public KismetAggregator(KismetMessageSink dispatcher, long windowSeconds, long slideSeconds) {
+        this(dispatcher, windowSeconds, slideSeconds, 0L);
+    }
+
+    /**
+     * Constructs a new aggregator with the specified parameters, which waits for measured values relayed late.
+     * 
+     * @param dispatcher the delivery stage for the aggregated messages.
+     * @param windowSeconds the length of a window in seconds.
+     * @param slideSeconds the distance between the starts of two windows in seconds, equal to
+     *            <code>windowSeconds</code> for tumbling windows.
+     * @param allowedLatenessSeconds the time in seconds the kismet server time must pass the end of a window before it
+     *            is closed.
+     * @throws IllegalArgumentException if either <code>windowSeconds</code> or <code>slideSeconds</code> is not
+     *             positive, <code>windowSeconds</code> is not a multiple of <code>slideSeconds</code>, or
+     *             <code>allowedLatenessSeconds</code> is negative.
+     * @throws NullPointerException if <code>dispatcher</code> is <code>null</code>.
+     */
+    public KismetAggregator(KismetMessageSink dispatcher, long windowSeconds, long slideSeconds, long allowedLatenessSeconds) {
+        if (dispatcher == null) {
+            throw new NullPointerException("dispatcher must not be null");
+        }
+        if (windowSeconds <= 0) {
+            throw new IllegalArgumentException("Invalid windowSeconds " + windowSeconds);
+        }
+        if (slideSeconds <= 0 || windowSeconds % slideSeconds != 0) {
+            throw new IllegalArgumentException("Invalid slideSeconds " + slideSeconds);
+        }
+        if (allowedLatenessSeconds < 0) {
+            throw new IllegalArgumentException("Invalid allowedLatenessSeconds " + allowedLatenessSeconds);
+        }
+        this.dispatcher = dispatcher;
+        this.windowSeconds = windowSeconds;
+        this.slideSeconds = slideSeconds;
+        this.allowedLatenessSeconds = allowedLatenessSeconds;
+        this.panesPerWindow = windowSeconds / slideSeconds;
+    }
+
+    /**
+     * @see KismetProtocolHandler#onClientSource(long, long, long, long, int)
+     */
+    @Override
+    public void onClientSource(long deviceId, long droneIdMsb, long droneIdLsb, long timestamp, int signalStrength) {
+        long pane = floorDiv(timestamp, this.slideSeconds);
+        if (this.nextWindowEnd != Long.MIN_VALUE && pane + this.panesPerWindow < this.nextWindowEnd) {
+            // All windows containing the pane were already closed
+            ++this.lateCount;
+            return;
+        }
+        KismetAggregateTable table = this.panes.get(pane);
+        if (table == null) {
+            table = new KismetAggregateTable();
+            this.panes.put(pane, table);
+        }
+        table.add(deviceId, this.droneTable.indexOf(droneIdMsb, droneIdLsb), signalStrength, timestamp);
+    }
+
+    /**
+     * @see KismetProtocolHandler#onSource(long, long, String)
+     */
+    @Override
+    public void onSource(long droneIdMsb, long droneIdLsb, String name) {
+        this.droneRegistry = this.droneRegistry.with(KismetIdentifierCache.getDefault().getDroneId(droneIdMsb, droneIdLsb), name);
+    }
+
+    /**
+     * @see KismetProtocolHandler#onTime(long)
+     */
+    @Override
+    public void onTime(long timestamp) {
+        // Close all windows ending at or before the kismet server time less the allowed lateness
+        long limit = floorDiv(timestamp - this.allowedLatenessSeconds, this.slideSeconds);
+        while (this.nextWindowEnd <= limit) {
+            if (this.panes.isEmpty()) {
+                this.nextWindowEnd = limit + 1;
+                break;
+            }
+            long first = this.panes.firstKey();
+            if (first >= this.nextWindowEnd) {
+                // Skip the empty windows up to the first window containing the first pane
+                this.nextWindowEnd = Math.min(first, limit) + 1;
+                if (first >= limit) {
+                    break;
+                }
+            }
+            closeWindow(this.nextWindowEnd);
+            this.nextWindowEnd++;
+        }
+        int pendingCount = 0;
+        for (KismetAggregateTable table : this.panes.values()) {
+            pendingCount += table.size();
+        }
+        this.pendingCount = pendingCount;
+    }
+
+    /**
+     * Ignored, since the aggregates only describe the measured values within their windows.
+     * 
+     * @see KismetProtocolStage#onExpire(long, long, long, long, int)
+     */
+    @Override
+    public void onExpire(long deviceId, long droneIdMsb, long droneIdLsb, long timestamp, int signalStrength) {
+    }
+
+    /**
+     * Marks the next delivered window, which is the first window that may lack measured values because of the gap.
+     * 
+     * @see KismetProtocolStage#onGap()
+     */
+    @Override
+    public void onGap() {
+        this.afterGap = true;
+    }
+
+    /**
+     * @see KismetProtocolStage#release()
+     */
+    @Override
+    public void release() {
+    }
+
+    /**
+     * Returns the number of aggregates in the open panes as of the last TIME sentence.
+     * 
+     * @see KismetProtocolStage#getPendingCount()
+     */
+    @Override
+    public int getPendingCount() {
+        return this.pendingCount;
+    }
+
+    /**
+     * Returns the number of measured values dropped so far, because their windows were already closed.
+     * 
+     * @return the number of late measured values.
+     */
+    public long getLateCount() {
+        return this.lateCount;
+    }
+
+    /**
+     * Assembles the window ending at the specified pane number from its panes, hands it to the delivery stage, and
+     * discards the oldest pane of the window, which is not part of any later window.
+     * 
+     * @param end the pane number of the end of the window (exclusive).
+     */
+    private void closeWindow(long end) {
+        long start = end - this.panesPerWindow;
+        Map<Long, KismetAggregateTable> window = this.panes.subMap(start, end);
+        if (!window.isEmpty()) {
+            KismetAggregateTable aggregates;
+            if (this.panesPerWindow == 1) {
+                aggregates = window.values().iterator().next();
+            }
+            else {
+                aggregates = new KismetAggregateTable();
+                for (KismetAggregateTable pane : window.values()) {
+                    aggregates.addAll(pane);
+                }
+            }
+            if (aggregates.size() > 0) {
+                this.dispatcher.dispatch(new KismetAggregatedMessage(this.droneRegistry, aggregates.toBatch(this.droneTable.snapshot()),
+                                                                     start * this.slideSeconds, start * this.slideSeconds + this.windowSeconds,
+                                                                     end * this.slideSeconds, this.afterGap));
+                this.afterGap = false;
+            }
+        }
+        this.panes.headMap(start + 1).clear();
+    }
+
+    /**
+     * Divides <code>x</code> by <code>y</code>, rounding towards negative infinity.
+     * 
+     * @param x the dividend.
+     * @param y the positive divisor.
+     * @return the quotient rounded towards negative infinity.
+     */
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        return (x % y < 0) ? q - 1 : q;
+    }
+}
@@ -0,0 +1,80 @@
+package de.oscillation.kismet.connector;
+
+import java.util.Random;
+
+/**
+ * Computes the delays between the attempts to re-establish a lost connection to a kismet server. The delay starts at
+ * the initial delay and doubles with every failed attempt up to the maximum delay. Every delay is jittered randomly
+ * between half and all of its nominal value, so that the connections to many kismet servers (or of many resource
+ * adapters to the same kismet server) that were lost at the same time do not reconnect in lockstep. Instances of this
+ * class are not thread-safe.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetResourceAdapter#getReconnectInitialDelayMillis()
+ * @see KismetResourceAdapter#getReconnectMaxDelayMillis()
+ */
+public class KismetBackoff {
+    /** The default initial delay in milliseconds. */
+    public static final long DEFAULT_INITIAL_DELAY_MILLIS = 1000L;
+
+    /** The default maximum delay in milliseconds. */
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 60000L;
+
+    /** The initial delay in milliseconds. */
+    private final long initialDelayMillis;
+
+    /** The maximum delay in milliseconds. */
+    private final long maxDelayMillis;
+
+    /** The source of the jitter. */
+    private final Random random = new Random();
+
+    /** The nominal value of the next delay in milliseconds. */
+    private long delayMillis;
+
+    /**
+     * Constructs a new backoff with the default delays.
+     */
+    public KismetBackoff() {
+        this(DEFAULT_INITIAL_DELAY_MILLIS, DEFAULT_MAX_DELAY_MILLIS);
+    }
+
+    /**
+     * Constructs a new backoff with the specified delays.
+     * 
+     * @param initialDelayMillis the initial delay in milliseconds.
+     * @param maxDelayMillis the maximum delay in milliseconds.
+     * @throws IllegalArgumentException if <code>initialDelayMillis</code> is not positive, or
+     *             <code>maxDelayMillis</code> is less than <code>initialDelayMillis</code>.
+     */
+    public KismetBackoff(long initialDelayMillis, long maxDelayMillis) {
+        if (initialDelayMillis <= 0) {
+            throw new IllegalArgumentException("Invalid initialDelayMillis " + initialDelayMillis);
+        }
+        if (maxDelayMillis < initialDelayMillis) {
+            throw new IllegalArgumentException("Invalid maxDelayMillis " + maxDelayMillis);
+        }
+        this.initialDelayMillis = initialDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.delayMillis = initialDelayMillis;
+    }
+
+    /**
+     * Returns the delay before the next attempt, and doubles the nominal value of the following delay.
+     * 
+     * @return the jittered delay in milliseconds.
+     */
+    public long nextDelayMillis() {
+        long delayMillis = this.delayMillis;
+        this.delayMillis = (delayMillis > this.maxDelayMillis / 2) ? this.maxDelayMillis : delayMillis * 2;
+        long halfDelayMillis = delayMillis / 2;
+        return delayMillis - halfDelayMillis + (long) (this.random.nextDouble() * (halfDelayMillis + 1));
+    }
+
+    /**
+     * Resets the delay to the initial delay. Invoked when the connection was established.
+     */
+    public void reset() {
+        this.delayMillis = this.initialDelayMillis;
+    }
+}
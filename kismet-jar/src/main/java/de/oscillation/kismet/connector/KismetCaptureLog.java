@@ -0,0 +1,297 @@
+package de.oscillation.kismet.connector;
+
+import static java.util.logging.Level.WARNING;
+import static java.util.logging.Logger.getLogger;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+import javax.resource.spi.work.Work;
+import javax.resource.spi.work.WorkException;
+import javax.resource.spi.work.WorkManager;
+
+/**
+ * Appends the raw bytes received from a kismet server, together with their time of reception, to rolling
+ * memory-mapped segment files, so that the stream can later be fed back through the pipeline by a
+ * {@link KismetReplayConnection}.
+ * <p>
+ * Every segment starts with the magic number and the format version, followed by records consisting of the
+ * {@link System#currentTimeMillis()} of the reception, the number of bytes, and the bytes themselves. Every
+ * (re)connect to the kismet server is recorded as a session start record with a negative number of bytes, so the replay
+ * can start from scratch just like the connection did. Segments are preallocated to the segment size and zero-filled,
+ * so a record with zero bytes marks the end of the segment, which also holds for segments left behind by a crashed
+ * capture. Chunks that do not fit into the current segment are split across segments, which is harmless since the
+ * parser processes a stream anyway. Segments of version 1 have no session start records.
+ * <p>
+ * The segments of a kismet server are named after its server name and port number followed by a sequence number, so
+ * they sort in capture order, and a new capture continues after the segments already present in the directory.
+ * Failing to write a segment disables the capture instead of terminating the connection. Closed segments are flushed
+ * to disk by the work manager, so that the connection never waits for the disk. Instances of this class are
+ * thread-safe.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetReplayConnection
+ * @see KismetResourceAdapter#getCaptureDirectory()
+ */
+public class KismetCaptureLog {
+    /** The magic number at the start of every segment (<code>KCAP</code>). */
+    static final int MAGIC = 0x4b434150;
+
+    /** The version of the segment format. */
+    static final int VERSION = 2;
+
+    /** The oldest version of the segment format that can still be replayed. */
+    static final int MIN_VERSION = 1;
+
+    /** The number of bytes of the record that marks the start of a new session with the kismet server. */
+    static final int SESSION_START = -1;
+
+    /** The size of the segment header in bytes. */
+    static final int SEGMENT_HEADER_SIZE = 8;
+
+    /** The size of the record header in bytes. */
+    static final int RECORD_HEADER_SIZE = 12;
+
+    /** The file name suffix of the segments. */
+    static final String SUFFIX = ".kcap";
+
+    /** The directory of the segments. */
+    private final File directory;
+
+    /** The file name prefix of the segments. */
+    private final String prefix;
+
+    /** The size of a segment in bytes. */
+    private final int segmentSize;
+
+    /** The work manager flushing the closed segments, or <code>null</code> to leave them to the operating system. */
+    private final WorkManager workManager;
+
+    /** The logger. */
+    private final Logger logger = getLogger(KismetCaptureLog.class.getName());
+
+    /** The sequence number of the next segment. */
+    private long nextSequence;
+
+    /** The file of the current segment, or <code>null</code> if no segment was started yet. */
+    private RandomAccessFile file;
+
+    /** The mapping of the current segment, or <code>null</code> if no segment was started yet. */
+    private MappedByteBuffer segment;
+
+    /** Whether this log was closed. */
+    private boolean closed;
+
+    /**
+     * Constructs a new capture log for the specified kismet server in the specified <code>directory</code>, which is
+     * created if necessary.
+     * 
+     * @param directory the directory of the segments.
+     * @param serverName the kismet server name.
+     * @param portNumber the kismet server port number.
+     * @param segmentSize the size of a segment in bytes.
+     * @param workManager the work manager flushing the closed segments, or <code>null</code> to leave them to the
+     *            operating system.
+     * @throws IllegalArgumentException if <code>segmentSize</code> cannot hold a record.
+     * @throws IOException if the <code>directory</code> cannot be created.
+     * @throws NullPointerException if either <code>directory</code> or <code>serverName</code> is <code>null</code>.
+     */
+    public KismetCaptureLog(File directory, String serverName, int portNumber, int segmentSize, WorkManager workManager) throws IOException {
+        if (directory == null) {
+            throw new NullPointerException("directory must not be null");
+        }
+        if (serverName == null) {
+            throw new NullPointerException("serverName must not be null");
+        }
+        if (segmentSize <= SEGMENT_HEADER_SIZE + RECORD_HEADER_SIZE) {
+            throw new IllegalArgumentException("Invalid segmentSize " + segmentSize);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Failed to create capture directory " + directory);
+        }
+        this.directory = directory;
+        this.prefix = prefix(serverName, portNumber);
+        this.segmentSize = segmentSize;
+        this.workManager = workManager;
+        File[] segments = segments(directory, serverName, portNumber);
+        if (segments.length > 0) {
+            this.nextSequence = sequenceOf(segments[segments.length - 1], this.prefix) + 1;
+        }
+    }
+
+    /**
+     * Appends the specified chunk of bytes received from the kismet server.
+     * 
+     * @param receiveMillis the {@link System#currentTimeMillis()} when the bytes were received.
+     * @param b the buffer containing the bytes.
+     * @param off the offset of the first byte in <code>b</code>.
+     * @param len the number of bytes.
+     */
+    public synchronized void append(long receiveMillis, byte[] b, int off, int len) {
+        try {
+            while (len > 0 && !this.closed) {
+                if (this.segment == null || this.segment.remaining() <= RECORD_HEADER_SIZE) {
+                    roll();
+                }
+                int n = Math.min(len, this.segment.remaining() - RECORD_HEADER_SIZE);
+                this.segment.putLong(receiveMillis).putInt(n).put(b, off, n);
+                off += n;
+                len -= n;
+            }
+        }
+        catch (IOException exn) {
+            this.logger.log(WARNING, "Failed to write kismet capture segment, disabling capture", exn);
+            close();
+        }
+    }
+
+    /**
+     * Appends a session start record, which marks that the connection to the kismet server was (re)established, so
+     * that the following chunks start from scratch.
+     * 
+     * @param connectMillis the {@link System#currentTimeMillis()} when the connection was established.
+     */
+    public synchronized void appendSessionStart(long connectMillis) {
+        try {
+            if (!this.closed) {
+                if (this.segment == null || this.segment.remaining() <= RECORD_HEADER_SIZE) {
+                    roll();
+                }
+                this.segment.putLong(connectMillis).putInt(SESSION_START);
+            }
+        }
+        catch (IOException exn) {
+            this.logger.log(WARNING, "Failed to write kismet capture segment, disabling capture", exn);
+            close();
+        }
+    }
+
+    /**
+     * Closes the current segment and stops the capture. Further chunks are ignored.
+     */
+    public synchronized void close() {
+        this.closed = true;
+        closeSegment();
+    }
+
+    /**
+     * Closes the current segment, if any, and starts the next one.
+     * 
+     * @throws IOException in case of an I/O error.
+     */
+    private void roll() throws IOException {
+        closeSegment();
+        File file = new File(this.directory, this.prefix + String.format("%016d", this.nextSequence++) + SUFFIX);
+        this.file = new RandomAccessFile(file, "rw");
+        this.segment = this.file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, this.segmentSize);
+        this.segment.putInt(MAGIC).putInt(VERSION);
+        this.logger.info("Capturing kismet server connection to " + file);
+    }
+
+    /**
+     * Closes the current segment, if any, and hands its mapping to the work manager to be flushed. The mapping itself
+     * is released by the garbage collector, since Java offers no way to unmap a file explicitly.
+     */
+    private void closeSegment() {
+        if (this.segment != null) {
+            force(this.segment);
+            this.segment = null;
+        }
+        if (this.file != null) {
+            try {
+                this.file.close();
+            }
+            catch (IOException exn) {
+                this.logger.log(WARNING, "Failed to close kismet capture segment", exn);
+            }
+            this.file = null;
+        }
+    }
+
+    /**
+     * Flushes the specified closed <code>segment</code> to disk on a thread of the work manager. If there's no work
+     * manager or it rejects the work, the segment is left to the operating system, which writes it back eventually.
+     * 
+     * @param segment the mapping of the closed segment.
+     */
+    private void force(final MappedByteBuffer segment) {
+        if (this.workManager == null) {
+            return;
+        }
+        try {
+            this.workManager.scheduleWork(new Work() {
+                @Override
+                public void run() {
+                    segment.force();
+                }
+
+                @Override
+                public void release() {
+                }
+            });
+        }
+        catch (WorkException exn) {
+            this.logger.log(WARNING, "Failed to schedule flush of kismet capture segment", exn);
+        }
+    }
+
+    /**
+     * Returns the file name prefix of the segments of the specified kismet server.
+     * 
+     * @param serverName the kismet server name.
+     * @param portNumber the kismet server port number.
+     * @return the file name prefix.
+     */
+    static String prefix(String serverName, int portNumber) {
+        return serverName.replaceAll("[^A-Za-z0-9.-]", "_") + "_" + portNumber + "-";
+    }
+
+    /**
+     * Returns the segments of the specified kismet server in the specified <code>directory</code>, in capture order.
+     * 
+     * @param directory the directory of the segments.
+     * @param serverName the kismet server name.
+     * @param portNumber the kismet server port number.
+     * @return the segment files, which is empty if there are none.
+     */
+    static File[] segments(File directory, String serverName, int portNumber) {
+        final String prefix = prefix(serverName, portNumber);
+        File[] segments = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && sequenceOf(file, prefix) >= 0;
+            }
+        });
+        if (segments == null) {
+            return new File[0];
+        }
+        Arrays.sort(segments);
+        return segments;
+    }
+
+    /**
+     * Returns the sequence number of the specified segment <code>file</code>.
+     * 
+     * @param file the segment file.
+     * @param prefix the file name prefix of the segments.
+     * @return the sequence number, or <code>-1</code> if the file is no segment with the specified prefix.
+     */
+    private static long sequenceOf(File file, String prefix) {
+        String name = file.getName();
+        if (name.length() == prefix.length() + 16 + SUFFIX.length() && name.startsWith(prefix) && name.endsWith(SUFFIX)) {
+            try {
+                return Long.parseLong(name.substring(prefix.length(), prefix.length() + 16));
+            }
+            catch (NumberFormatException exn) {
+                // Not a segment
+            }
+        }
+        return -1;
+    }
+}
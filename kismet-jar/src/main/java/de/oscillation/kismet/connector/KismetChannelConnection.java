@@ -0,0 +1,453 @@
+package de.oscillation.kismet.connector;
+
+import static java.util.logging.Level.WARNING;
+import static java.util.logging.Logger.getLogger;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.logging.Logger;
+
+import javax.resource.spi.work.Work;
+import javax.resource.spi.work.WorkException;
+import javax.resource.spi.work.WorkManager;
+
+/**
+ * Represents a non-blocking connection to a kismet server, which is served by a {@link KismetSelectorEngine} together
+ * with the connections to other kismet servers. The engine performs all I/O on behalf of the connection, including the
+ * non-blocking connect, so the connection does not occupy a thread of its own. Only the lookup of the kismet server
+ * name, which may block, is performed by the work manager before every attempt. Whenever the connection is lost or
+ * cannot be established within the connect timeout, the timer re-establishes it after a jittered exponential backoff,
+ * the subscription is negotiated anew, and the activations are notified about the gap, until the connection is
+ * released.
+ * 
+ * @see KismetSelectorEngine
+ * @see KismetBackoff
+ * @author Benedikt Meurer
+ */
+public class KismetChannelConnection implements KismetConnection {
+    /** The character set used for the commands sent to the kismet server. */
+    private static final Charset CHARSET = Charset.forName("US-ASCII");
+
+    /** The kismet server name. */
+    private final String serverName;
+
+    /** The kismet server port number. */
+    private final int portNumber;
+
+    /** Whether only the protocol fields needed by the connector are requested. */
+    private final boolean fieldProjection;
+
+    /** The selector engine serving this connection. */
+    private final KismetSelectorEngine engine;
+
+    /** The timer used to enforce the connect timeout and to re-establish the connection. */
+    private final Timer timer;
+
+    /** The work manager looking up the kismet server name. */
+    private final WorkManager workManager;
+
+    /** The logger. */
+    private final Logger logger = getLogger(KismetChannelConnection.class.getName());
+
+    /** The activations sharing this connection. */
+    private final KismetActivationGroup activations = new KismetActivationGroup();
+
+    /** The capture of the received bytes, or <code>null</code> if the connection is not captured. */
+    private final KismetCaptureLog capture;
+
+    /** The connect timeout in milliseconds, or <code>0</code> for no timeout. */
+    private final int connectTimeoutMillis;
+
+    /** The delays between the attempts to re-establish the connection. */
+    private final KismetBackoff backoff;
+
+    /** The metrics of this connection. */
+    private final KismetConnectionMetrics metrics;
+
+    /** The current kismet server connection channel, or <code>null</code> between two attempts. */
+    private SocketChannel channel;
+
+    /** The pending task enforcing the connect timeout or re-establishing the connection, if any. */
+    private TimerTask task;
+
+    /** Whether the connection was established before, only accessed by the engine. */
+    private boolean established;
+
+    /** Whether bytes were received from the current channel, only accessed by the engine. */
+    private boolean receiving;
+
+    /** Whether this connection was released. */
+    private boolean released;
+
+    /** The subscription of the current channel, only accessed by the engine once the channel is registered. */
+    private KismetSubscription subscription;
+
+    /** The parser of the current channel, only accessed by the engine once the channel is registered. */
+    private KismetProtocolParser parser;
+
+    /** The pending output to the kismet server, only accessed by the engine once the channel is registered. */
+    private ByteBuffer output;
+
+    /**
+     * Constructs a new connection to the specified kismet server with the default connect timeout and backoff, and
+     * starts to establish it via the selector <code>engine</code>. The activations must be added to the connection
+     * right away.
+     * 
+     * @param serverName the kismet server name.
+     * @param portNumber the kismet server port number.
+     * @param fieldProjection whether only the protocol fields needed by the connector are requested.
+     * @param engine the selector engine that serves the connection.
+     * @param timer the timer used to enforce the connect timeout and to re-establish the connection.
+     * @param workManager the work manager looking up the kismet server name.
+     * @throws NullPointerException if either <code>serverName</code>, <code>engine</code>, <code>timer</code> or
+     *             <code>workManager</code> is <code>null</code>.
+     */
+    public KismetChannelConnection(String serverName, int portNumber, boolean fieldProjection, KismetSelectorEngine engine, Timer timer, WorkManager workManager) {
+        this(serverName, portNumber, fieldProjection, engine, timer, workManager, null, DEFAULT_CONNECT_TIMEOUT_MILLIS, new KismetBackoff());
+    }
+
+    /**
+     * Constructs a new connection to the specified kismet server, which appends the received bytes to the specified
+     * <code>capture</code>, and starts to establish it via the selector <code>engine</code>. The activations must be
+     * added to the connection right away.
+     * 
+     * @param serverName the kismet server name.
+     * @param portNumber the kismet server port number.
+     * @param fieldProjection whether only the protocol fields needed by the connector are requested.
+     * @param engine the selector engine that serves the connection.
+     * @param timer the timer used to enforce the connect timeout and to re-establish the connection.
+     * @param workManager the work manager looking up the kismet server name.
+     * @param capture the capture of the received bytes, which is closed with the connection, or <code>null</code>.
+     * @param connectTimeoutMillis the connect timeout in milliseconds, or <code>0</code> for no timeout.
+     * @param backoff the delays between the attempts to re-establish the connection.
+     * @throws IllegalArgumentException if <code>connectTimeoutMillis</code> is negative.
+     * @throws NullPointerException if either <code>serverName</code>, <code>engine</code>, <code>timer</code>,
+     *             <code>workManager</code> or <code>backoff</code> is <code>null</code>.
+     */
+    public KismetChannelConnection(String serverName, int portNumber, boolean fieldProjection, KismetSelectorEngine engine, Timer timer, WorkManager workManager,
+                                   KismetCaptureLog capture, int connectTimeoutMillis, KismetBackoff backoff) {
+        if (serverName == null) {
+            throw new NullPointerException("serverName must not be null");
+        }
+        if (engine == null) {
+            throw new NullPointerException("engine must not be null");
+        }
+        if (timer == null) {
+            throw new NullPointerException("timer must not be null");
+        }
+        if (workManager == null) {
+            throw new NullPointerException("workManager must not be null");
+        }
+        if (connectTimeoutMillis < 0) {
+            throw new IllegalArgumentException("Invalid connectTimeoutMillis " + connectTimeoutMillis);
+        }
+        if (backoff == null) {
+            throw new NullPointerException("backoff must not be null");
+        }
+        this.serverName = serverName;
+        this.portNumber = portNumber;
+        this.fieldProjection = fieldProjection;
+        this.engine = engine;
+        this.timer = timer;
+        this.workManager = workManager;
+        this.capture = capture;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.backoff = backoff;
+        this.metrics = new KismetConnectionMetrics(this);
+        this.engine.register(this);
+        resolve();
+    }
+
+    /**
+     * Hands the lookup of the kismet server name to the work manager, which then starts the next attempt to establish
+     * the connection. The lookup may block, so it must neither be performed by the timer, which is shared, nor while
+     * holding the monitor of the connection.
+     */
+    private void resolve() {
+        try {
+            this.workManager.scheduleWork(new Work() {
+                @Override
+                public void run() {
+                    connect(new InetSocketAddress(KismetChannelConnection.this.serverName, KismetChannelConnection.this.portNumber));
+                }
+
+                @Override
+                public void release() {
+                }
+            });
+        }
+        catch (WorkException exn) {
+            synchronized (this) {
+                if (!this.released) {
+                    disconnect(String.valueOf(exn));
+                }
+            }
+        }
+    }
+
+    /**
+     * Opens a new channel, starts the non-blocking connect to the specified <code>address</code>, and hands the channel
+     * to the engine, which completes the connect. Every channel uses a parser and subscription of its own, since the
+     * kismet server starts from scratch with every connection.
+     * 
+     * @param address the address of the kismet server, which was looked up by the work manager.
+     */
+    private synchronized void connect(InetSocketAddress address) {
+        if (this.released) {
+            return;
+        }
+        this.task = null;
+        if (address.isUnresolved()) {
+            disconnect("Failed to resolve kismet server name " + this.serverName);
+            return;
+        }
+        this.subscription = new KismetSubscription(this.fieldProjection);
+        this.parser = new KismetProtocolParser(this.activations, this.subscription);
+        this.output = ByteBuffer.wrap(this.subscription.takePendingCommands().getBytes(CHARSET));
+        try {
+            this.channel = SocketChannel.open();
+            this.channel.configureBlocking(false);
+            this.channel.connect(address);
+        }
+        catch (IOException exn) {
+            disconnect(String.valueOf(exn));
+            return;
+        }
+        if (this.connectTimeoutMillis > 0) {
+            final SocketChannel channel = this.channel;
+            schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    onConnectTimeout(channel);
+                }
+            }, this.connectTimeoutMillis);
+        }
+        this.engine.watch(this);
+    }
+
+    /**
+     * Invoked by the timer when the connect timeout elapsed for the specified <code>channel</code>.
+     * 
+     * @param channel the channel.
+     */
+    private synchronized void onConnectTimeout(SocketChannel channel) {
+        if (channel == this.channel && channel.isConnectionPending()) {
+            disconnect("Connect timed out after " + this.connectTimeoutMillis + " ms");
+        }
+    }
+
+    /**
+     * Closes the current channel, if any, and schedules the next attempt to establish the connection.
+     * 
+     * @param reason the reason the connection was lost.
+     */
+    private void disconnect(String reason) {
+        close();
+        this.metrics.onDisconnected(reason);
+        long delayMillis = this.backoff.nextDelayMillis();
+        this.logger.warning("Lost kismet server connection to " + this.serverName + " on port " + this.portNumber + " (" + reason + "), reconnecting in " + delayMillis + " ms");
+        schedule(new TimerTask() {
+            @Override
+            public void run() {
+                resolve();
+            }
+        }, delayMillis);
+    }
+
+    /**
+     * Closes the current channel, if any, and cancels the pending task, if any.
+     */
+    private void close() {
+        if (this.task != null) {
+            this.task.cancel();
+            this.task = null;
+        }
+        if (this.channel != null) {
+            try {
+                // Try to close the connection channel
+                this.channel.close();
+            }
+            catch (IOException exn) {
+                this.logger.log(WARNING, "Failed to close kismet server connection", exn);
+            }
+            this.channel = null;
+        }
+    }
+
+    /**
+     * Schedules the specified <code>task</code> as the pending task.
+     * 
+     * @param task the task.
+     * @param delayMillis the delay in milliseconds.
+     */
+    private void schedule(TimerTask task, long delayMillis) {
+        try {
+            this.timer.schedule(task, delayMillis);
+            this.task = task;
+        }
+        catch (IllegalStateException exn) {
+            // The timer was cancelled, since the resource adapter is stopping
+        }
+    }
+
+    /**
+     * Returns the current kismet server connection channel.
+     * 
+     * @return the channel, or <code>null</code> between two attempts.
+     */
+    synchronized SocketChannel getChannel() {
+        return this.channel;
+    }
+
+    /**
+     * Invoked by the engine when the specified <code>channel</code> was connected, before anything is read from it.
+     * 
+     * @param channel the connected channel.
+     */
+    void onConnected(SocketChannel channel) {
+        synchronized (this) {
+            if (channel != this.channel) {
+                return;
+            }
+            if (this.task != null) {
+                this.task.cancel();
+                this.task = null;
+            }
+        }
+        if (this.established) {
+            // Tell the activations that they missed the sentences while the connection was down
+            this.activations.onGap();
+        }
+        this.established = true;
+        this.receiving = false;
+        if (this.capture != null) {
+            this.capture.appendSessionStart(System.currentTimeMillis());
+        }
+        this.metrics.onConnected();
+        this.logger.info("Successfully established new kismet server connection to " + this.serverName + " on port " + this.portNumber);
+    }
+
+    /**
+     * Invoked by the engine when the specified <code>channel</code> failed or was closed by the kismet server. Ignored
+     * if the channel was already replaced or the connection was released.
+     * 
+     * @param channel the channel.
+     * @param reason the reason the connection was lost.
+     */
+    synchronized void onDisconnected(SocketChannel channel, String reason) {
+        if (channel == this.channel && !this.released) {
+            disconnect(reason);
+        }
+    }
+
+    /**
+     * Checks whether there's pending output to the kismet server.
+     * 
+     * @return <code>true</code> if there's pending output, <code>false</code> otherwise.
+     */
+    boolean hasPendingOutput() {
+        return this.output.hasRemaining();
+    }
+
+    /**
+     * Writes as much pending output to the kismet server as possible without blocking. Invoked by the engine when the
+     * channel is writable.
+     * 
+     * @param channel the channel.
+     * @throws IOException in case of an I/O error.
+     */
+    void write(SocketChannel channel) throws IOException {
+        channel.write(this.output);
+    }
+
+    /**
+     * Passes the next chunk of bytes received from the kismet server to the parser, and queues the commands resulting
+     * from the subscription negotiation, if any. Invoked by the engine when the channel was readable.
+     * 
+     * @param b the buffer containing the bytes.
+     * @param off the offset of the first byte in <code>b</code>.
+     * @param len the number of bytes to parse.
+     */
+    void parse(byte[] b, int off, int len) {
+        if (!this.receiving) {
+            // Back off from scratch once the kismet server actually talks to us, so servers dropping connections
+            // right away are not hammered
+            synchronized (this) {
+                this.backoff.reset();
+            }
+            this.receiving = true;
+        }
+        if (this.capture != null) {
+            this.capture.append(System.currentTimeMillis(), b, off, len);
+        }
+        this.parser.setFilter(this.activations.getFilter());
+        this.parser.parse(b, off, len);
+        this.activations.onReadComplete();
+        this.metrics.onRead(len, this.parser);
+        if (this.subscription.hasPendingCommands()) {
+            // Queue the commands completing the subscription negotiated by the parser
+            byte[] commands = this.subscription.takePendingCommands().getBytes(CHARSET);
+            ByteBuffer output = ByteBuffer.allocate(this.output.remaining() + commands.length);
+            output.put(this.output).put(commands).flip();
+            this.output = output;
+        }
+    }
+
+    /**
+     * Closes the current channel, if any, and stops re-establishing the connection.
+     * 
+     * @see KismetConnection#release()
+     */
+    @Override
+    public void release() {
+        synchronized (this) {
+            if (this.released) {
+                return;
+            }
+            this.released = true;
+            this.metrics.onTerminated("Connection released");
+            close();
+        }
+        if (this.capture != null) {
+            this.capture.close();
+        }
+        this.engine.deregister(this);
+    }
+
+    /**
+     * @see KismetConnection#getServerName()
+     */
+    @Override
+    public String getServerName() {
+        return this.serverName;
+    }
+
+    /**
+     * @see KismetConnection#getPortNumber()
+     */
+    @Override
+    public int getPortNumber() {
+        return this.portNumber;
+    }
+
+    /**
+     * @see KismetConnection#getActivations()
+     */
+    @Override
+    public KismetActivationGroup getActivations() {
+        return this.activations;
+    }
+
+    /**
+     * @see KismetConnection#getMetrics()
+     */
+    @Override
+    public KismetConnectionMetrics getMetrics() {
+        return this.metrics;
+    }
+}
@@ -0,0 +1,49 @@
+package de.oscillation.kismet.connector;
+
+/**
+ * Common interface of the connections to kismet servers established by the kismet resource adapter, independent of
+ * the engine that performs the actual I/O. There's at most one connection per kismet server, which is shared by all
+ * activations targeting that server. Live connections re-establish themselves when the connection to the kismet
+ * server is lost, so they are only closed when the last activation is removed.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetServerConnection
+ * @see KismetChannelConnection
+ */
+public interface KismetConnection {
+    /** The default connect timeout in milliseconds. */
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 10000;
+
+    /**
+     * Returns the name of the kismet server of this connection.
+     * 
+     * @return the serverName.
+     */
+    public String getServerName();
+
+    /**
+     * Returns the port number of the kismet server of this connection.
+     * 
+     * @return the portNumber.
+     */
+    public int getPortNumber();
+
+    /**
+     * Returns the activations sharing this connection.
+     * 
+     * @return the activations.
+     */
+    public KismetActivationGroup getActivations();
+
+    /**
+     * Returns the metrics of this connection.
+     * 
+     * @return the metrics.
+     */
+    public KismetConnectionMetrics getMetrics();
+
+    /**
+     * Closes this connection to the kismet server.
+     */
+    public void release();
+}
@@ -0,0 +1,385 @@
+package de.oscillation.kismet.connector;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+/**
+ * Instrumentation of a single {@link KismetConnection}. The reader thread of the connection hands the counters of its
+ * {@link KismetProtocolParser} over once per chunk read, so the per-sentence hot path only increments plain fields of
+ * the parser, and the shared counters are striped to keep the reader and the management interface apart.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetConnectionMetricsMBean
+ */
+public class KismetConnectionMetrics implements KismetConnectionMetricsMBean {
+    /** The domain of the object names of the connector's MBeans. */
+    static final String DOMAIN = "de.oscillation.kismet.connector";
+
+    /** The connection. */
+    private final KismetConnection connection;
+
+    /** The name of the MBean. */
+    private final ObjectName objectName;
+
+    /** The number of bytes read. */
+    private final KismetStripedCounter bytesRead = new KismetStripedCounter();
+
+    /** The number of CLISRC sentences. */
+    private final KismetStripedCounter clientSourceLines = new KismetStripedCounter();
+
+    /** The number of SOURCE sentences. */
+    private final KismetStripedCounter sourceLines = new KismetStripedCounter();
+
+    /** The number of TIME sentences. */
+    private final KismetStripedCounter timeLines = new KismetStripedCounter();
+
+    /** The number of malformed sentences. */
+    private final KismetStripedCounter parseErrors = new KismetStripedCounter();
+
+    /** The number of CLISRC sentences already handed over, only accessed by the reader thread. */
+    private long flushedClientSourceLines;
+
+    /** The number of SOURCE sentences already handed over, only accessed by the reader thread. */
+    private long flushedSourceLines;
+
+    /** The number of TIME sentences already handed over, only accessed by the reader thread. */
+    private long flushedTimeLines;
+
+    /** The number of malformed sentences already handed over, only accessed by the reader thread. */
+    private long flushedParseErrors;
+
+    /** The kismet server timestamp of the last TIME sentence. */
+    private volatile long lastKismetTimestamp;
+
+    /** The {@link System#currentTimeMillis()} of the last read. */
+    private volatile long lastReadMillis = System.currentTimeMillis();
+
+    /** The reason the connection was terminated, or <code>null</code> until it is released. */
+    private volatile String terminationReason;
+
+    /** Whether the connection is currently established. */
+    private volatile boolean connected;
+
+    /** The number of times the connection was established. */
+    private final AtomicLong connectCount = new AtomicLong();
+
+    /** The reason the connection was last lost (or could not be established), or <code>null</code> if it was never lost. */
+    private volatile String lastDisconnectReason;
+
+    /** The number of bytes read at the last sample. */
+    private long sampledBytesRead;
+
+    /** The number of CLISRC sentences at the last sample. */
+    private long sampledClientSourceLines;
+
+    /** The number of SOURCE sentences at the last sample. */
+    private long sampledSourceLines;
+
+    /** The number of TIME sentences at the last sample. */
+    private long sampledTimeLines;
+
+    /** The number of bytes read during the last second. */
+    private volatile long bytesReadPerSecond;
+
+    /** The number of CLISRC sentences during the last second. */
+    private volatile long clientSourceLinesPerSecond;
+
+    /** The number of SOURCE sentences during the last second. */
+    private volatile long sourceLinesPerSecond;
+
+    /** The number of TIME sentences during the last second. */
+    private volatile long timeLinesPerSecond;
+
+    /**
+     * Constructs new metrics for the specified <code>connection</code>.
+     * 
+     * @param connection the connection.
+     * @throws NullPointerException if <code>connection</code> is <code>null</code>.
+     */
+    public KismetConnectionMetrics(KismetConnection connection) {
+        this(connection, connection.getServerName() + ":" + connection.getPortNumber());
+    }
+
+    /**
+     * Constructs new metrics for the specified <code>connection</code>, registered under the specified
+     * <code>name</code>.
+     * 
+     * @param connection the connection.
+     * @param name the value of the <code>name</code> key of the object name.
+     * @throws NullPointerException if either <code>connection</code> or <code>name</code> is <code>null</code>.
+     */
+    public KismetConnectionMetrics(KismetConnection connection, String name) {
+        if (connection == null) {
+            throw new NullPointerException("connection must not be null");
+        }
+        if (name == null) {
+            throw new NullPointerException("name must not be null");
+        }
+        this.connection = connection;
+        try {
+            this.objectName = new ObjectName(DOMAIN + ":type=KismetConnection,name=" + ObjectName.quote(name));
+        }
+        catch (MalformedObjectNameException exn) {
+            throw new IllegalArgumentException("Invalid name " + name, exn);
+        }
+    }
+
+    /**
+     * Returns the name under which these metrics are registered with the MBean server.
+     * 
+     * @return the object name.
+     */
+    public ObjectName getObjectName() {
+        return this.objectName;
+    }
+
+    /**
+     * Invoked by the reader thread after a chunk of <code>bytes</code> was passed to the <code>parser</code>.
+     * 
+     * @param bytes the number of bytes read.
+     * @param parser the parser of the connection.
+     */
+    void onRead(int bytes, KismetProtocolParser parser) {
+        this.bytesRead.add(bytes);
+        long clientSourceLines = parser.getClientSourceLines();
+        this.clientSourceLines.add(clientSourceLines - this.flushedClientSourceLines);
+        this.flushedClientSourceLines = clientSourceLines;
+        long sourceLines = parser.getSourceLines();
+        this.sourceLines.add(sourceLines - this.flushedSourceLines);
+        this.flushedSourceLines = sourceLines;
+        long timeLines = parser.getTimeLines();
+        if (timeLines != this.flushedTimeLines) {
+            this.timeLines.add(timeLines - this.flushedTimeLines);
+            this.flushedTimeLines = timeLines;
+            this.lastKismetTimestamp = parser.getLastTimestamp();
+        }
+        long parseErrors = parser.getParseErrors();
+        this.parseErrors.add(parseErrors - this.flushedParseErrors);
+        this.flushedParseErrors = parseErrors;
+        this.lastReadMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Invoked by the reader thread when the connection was established, before the first chunk is read with the new
+     * <code>parser</code> of the connection.
+     */
+    void onConnected() {
+        this.flushedClientSourceLines = 0;
+        this.flushedSourceLines = 0;
+        this.flushedTimeLines = 0;
+        this.flushedParseErrors = 0;
+        this.lastReadMillis = System.currentTimeMillis();
+        this.connectCount.incrementAndGet();
+        this.connected = true;
+    }
+
+    /**
+     * Invoked when the connection was lost (or could not be established), but will be re-established.
+     * 
+     * @param reason the reason the connection was lost.
+     */
+    void onDisconnected(String reason) {
+        this.connected = false;
+        this.lastDisconnectReason = reason;
+    }
+
+    /**
+     * Invoked when the connection was terminated for good. Only the first reason is kept.
+     * 
+     * @param reason the reason the connection was terminated.
+     */
+    void onTerminated(String reason) {
+        if (this.terminationReason == null) {
+            this.terminationReason = reason;
+        }
+        this.connected = false;
+    }
+
+    /**
+     * Samples the counters to update the rates. Invoked once per second by the resource adapter.
+     */
+    synchronized void sample() {
+        long bytesRead = this.bytesRead.sum();
+        this.bytesReadPerSecond = bytesRead - this.sampledBytesRead;
+        this.sampledBytesRead = bytesRead;
+        long clientSourceLines = this.clientSourceLines.sum();
+        this.clientSourceLinesPerSecond = clientSourceLines - this.sampledClientSourceLines;
+        this.sampledClientSourceLines = clientSourceLines;
+        long sourceLines = this.sourceLines.sum();
+        this.sourceLinesPerSecond = sourceLines - this.sampledSourceLines;
+        this.sampledSourceLines = sourceLines;
+        long timeLines = this.timeLines.sum();
+        this.timeLinesPerSecond = timeLines - this.sampledTimeLines;
+        this.sampledTimeLines = timeLines;
+    }
+
+    /**
+     * @see KismetConnectionMetricsMBean#getServerName()
+     */
+    @Override
+    public String getServerName() {
+        return this.connection.getServerName();
+    }
+
+    /**
+     * @see KismetConnectionMetricsMBean#getPortNumber()
+     */
+    @Override
+    public int getPortNumber() {
+        return this.connection.getPortNumber();
+    }
+
+    /**
+     * @see KismetConnectionMetricsMBean#isConnected()
+     */
+    @Override
+    public boolean isConnected() {
+        return this.connected;
+    }
+
+    /**
+     * @see KismetConnectionMetricsMBean#getTerminationReason()
+     */
+    @Override
+    public String getTerminationReason() {
+        return this.terminationReason;
+    }
+
+    /**
+     * @see KismetConnectionMetricsMBean#getReconnectCount()
+     */
+    @Override
+    public long getReconnectCount() {
+        return Math.max(this.connectCount.get() - 1, 0);
+    }
+
+    /**
+     * @see KismetConnectionMetricsMBean#getLastDisconnectReason()
+     */
+    @Override
+    public String getLastDisconnectReason() {
+        return this.lastDisconnectReason;
+    }
+
+    /**
+     * @see KismetConnectionMetricsMBean#getMillisSinceLastRead()
+     */
+    @Override
+    public long getMillisSinceLastRead() {
+        return System.currentTimeMillis() - this.lastReadMillis;
+    }
+
+    /**
+     * @see KismetConnectionMetricsMBean#getBytesRead()
+     */
+    @Override
+    public long getBytesRead() {
+        return this.bytesRead.sum();
+    }
+
+    /**
+     * @see KismetConnectionMetricsMBean#getBytesReadPerSecond()
+     */
+    @Override
+    public long getBytesReadPerSecond() {
+        return this.bytesReadPerSecond;
+    }
+
+    /**
+     * @see KismetConnectionMetricsMBean#getClientSourceLines()
+     */
+    @Override
+    public long getClientSourceLines() {
+        return this.clientSourceLines.sum();
+    }
+
+    /**
+     * @see KismetConnectionMetricsMBean#getClientSourceLinesPerSecond()
+     */
+    @Override
+    public long getClientSourceLinesPerSecond() {
+        return this.clientSourceLinesPerSecond;
+    }
+
+    /**
+     * @see KismetConnectionMetricsMBean#getSourceLines()
+     */
+    @Override
+    public long getSourceLines() {
+        return this.sourceLines.sum();
+    }
+
+    /**
+     * @see KismetConnectionMetricsMBean#getSourceLinesPerSecond()
+     */
+    @Override
+    public long getSourceLinesPerSecond() {
+        return this.sourceLinesPerSecond;
+    }
+
+    /**
+     * @see KismetConnectionMetricsMBean#getTimeLines()
+     */
+    @Override
+    public long getTimeLines() {
+        return this.timeLines.sum();
+    }
+
+    /**
+     * @see KismetConnectionMetricsMBean#getTimeLinesPerSecond()
+     */
+    @Override
+    public long getTimeLinesPerSecond() {
+        return this.timeLinesPerSecond;
+    }
+
+    /**
+     * @see KismetConnectionMetricsMBean#getParseErrors()
+     */
+    @Override
+    public long getParseErrors() {
+        return this.parseErrors.sum();
+    }
+
+    /**
+     * @see KismetConnectionMetricsMBean#getLastKismetTimestamp()
+     */
+    @Override
+    public long getLastKismetTimestamp() {
+        return this.lastKismetTimestamp;
+    }
+
+    /**
+     * @see KismetConnectionMetricsMBean#getDroneCount()
+     */
+    @Override
+    public int getDroneCount() {
+        return this.connection.getActivations().getDroneCount();
+    }
+
+    /**
+     * @see KismetConnectionMetricsMBean#getActivationCount()
+     */
+    @Override
+    public int getActivationCount() {
+        return this.connection.getActivations().size();
+    }
+
+    /**
+     * @see KismetConnectionMetricsMBean#getPendingMeasurements()
+     */
+    @Override
+    public long getPendingMeasurements() {
+        return this.connection.getActivations().getPendingMeasurements();
+    }
+
+    /**
+     * @see KismetConnectionMetricsMBean#getPendingMessages()
+     */
+    @Override
+    public long getPendingMessages() {
+        return this.connection.getActivations().getPendingMessages();
+    }
+}
@@ -0,0 +1,160 @@
+package de.oscillation.kismet.connector;
+
+/**
+ * Management interface of a connection to a kismet server, registered with the platform MBean server as
+ * <code>de.oscillation.kismet.connector:type=KismetConnection,name="server:port"</code>. Rates are sampled once per
+ * second.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetConnectionMetrics
+ */
+public interface KismetConnectionMetricsMBean {
+    /**
+     * Returns the kismet server name.
+     * 
+     * @return the kismet server name.
+     */
+    public String getServerName();
+
+    /**
+     * Returns the kismet server port number.
+     * 
+     * @return the kismet server port number.
+     */
+    public int getPortNumber();
+
+    /**
+     * Checks whether the connection is established.
+     * 
+     * @return <code>true</code> while the connection is established, <code>false</code> while it is (re)connecting
+     *         or once it was terminated.
+     */
+    public boolean isConnected();
+
+    /**
+     * Returns the reason the connection was terminated, or <code>null</code> while it is in use.
+     * 
+     * @return the reason the connection was terminated, or <code>null</code> while it is in use.
+     */
+    public String getTerminationReason();
+
+    /**
+     * Returns the number of times the connection was re-established after it was lost.
+     * 
+     * @return the number of reconnects.
+     */
+    public long getReconnectCount();
+
+    /**
+     * Returns the reason the connection was last lost (or could not be established), or <code>null</code> if it was
+     * never lost.
+     * 
+     * @return the reason the connection was last lost, or <code>null</code> if it was never lost.
+     */
+    public String getLastDisconnectReason();
+
+    /**
+     * Returns the time in milliseconds since bytes were last read from the kismet server.
+     * 
+     * @return the time in milliseconds since bytes were last read from the kismet server.
+     */
+    public long getMillisSinceLastRead();
+
+    /**
+     * Returns the number of bytes read from the kismet server.
+     * 
+     * @return the number of bytes read from the kismet server.
+     */
+    public long getBytesRead();
+
+    /**
+     * Returns the number of bytes read from the kismet server during the last second.
+     * 
+     * @return the number of bytes read from the kismet server during the last second.
+     */
+    public long getBytesReadPerSecond();
+
+    /**
+     * Returns the number of CLISRC sentences received.
+     * 
+     * @return the number of CLISRC sentences received.
+     */
+    public long getClientSourceLines();
+
+    /**
+     * Returns the number of CLISRC sentences received during the last second.
+     * 
+     * @return the number of CLISRC sentences received during the last second.
+     */
+    public long getClientSourceLinesPerSecond();
+
+    /**
+     * Returns the number of SOURCE sentences received.
+     * 
+     * @return the number of SOURCE sentences received.
+     */
+    public long getSourceLines();
+
+    /**
+     * Returns the number of SOURCE sentences received during the last second.
+     * 
+     * @return the number of SOURCE sentences received during the last second.
+     */
+    public long getSourceLinesPerSecond();
+
+    /**
+     * Returns the number of TIME sentences received.
+     * 
+     * @return the number of TIME sentences received.
+     */
+    public long getTimeLines();
+
+    /**
+     * Returns the number of TIME sentences received during the last second.
+     * 
+     * @return the number of TIME sentences received during the last second.
+     */
+    public long getTimeLinesPerSecond();
+
+    /**
+     * Returns the number of malformed sentences received.
+     * 
+     * @return the number of malformed sentences received.
+     */
+    public long getParseErrors();
+
+    /**
+     * Returns the kismet server timestamp of the last TIME sentence in seconds, or <code>0</code> if none was seen.
+     * 
+     * @return the kismet server timestamp of the last TIME sentence in seconds, or <code>0</code> if none was seen.
+     */
+    public long getLastKismetTimestamp();
+
+    /**
+     * Returns the number of drones announced by the kismet server.
+     * 
+     * @return the number of drones announced by the kismet server.
+     */
+    public int getDroneCount();
+
+    /**
+     * Returns the number of activations sharing the connection.
+     * 
+     * @return the number of activations sharing the connection.
+     */
+    public int getActivationCount();
+
+    /**
+     * Returns the number of measurements collected by the activations, but not yet handed to the dispatchers.
+     * 
+     * @return the number of measurements collected by the activations, but not yet handed to the dispatchers.
+     */
+    public long getPendingMeasurements();
+
+    /**
+     * Returns the number of messages waiting for delivery in the dispatchers of the activations.
+     * 
+     * @return the number of messages waiting for delivery in the dispatchers of the activations.
+     */
+    public long getPendingMessages();
+}
@@ -0,0 +1,284 @@
+package de.oscillation.kismet.connector;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Forwards only those measured values to the next stage that carry new information. A measured value is forwarded if
+ * its (device, drone) pair is new, if its signal strength differs from the last forwarded signal strength of the pair
+ * by more than the threshold, or if the last forwarded measured value of the pair is older than the heartbeat
+ * interval. Pairs without measured values for the expiry interval are removed, and reported to the next stage via
+ * {@link KismetProtocolStage#onExpire(long, long, long, long, int)}.
+ * <p>
+ * The state per pair is kept in primitive columns, which are looked up in an open addressing hash table keyed on a
+ * single <code>long</code> that packs the 48 bit EUI-48 address of the device and the 16 bit index of the drone. All
+ * intervals are measured in kismet server time. Instances of this class must only be fed by a single connection.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetActivationSpec#getDeltaDelivery()
+ */
+public class KismetDeltaFilter implements KismetProtocolStage {
+    /** The initial number of pairs. */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** The next stage. */
+    private final KismetProtocolStage next;
+
+    /** The minimum change of the signal strength in dB that is forwarded. */
+    private final int thresholdDb;
+
+    /** The interval in seconds after which a measured value is forwarded regardless of its change, or <code>0</code>. */
+    private final long heartbeatSeconds;
+
+    /** The interval in seconds after which a silent pair expires, or <code>0</code> if pairs never expire. */
+    private final long expirySeconds;
+
+    /** The drones referenced by the pairs. */
+    private final KismetDroneTable droneTable = new KismetDroneTable();
+
+    /** The number of pairs. */
+    private int size;
+
+    /** The hash table, mapping to pair index plus one, or <code>0</code> for empty slots. */
+    private int[] table = new int[INITIAL_CAPACITY * 2];
+
+    /** The packed keys of the pairs. */
+    private long[] keys = new long[INITIAL_CAPACITY];
+
+    /** The last forwarded signal strengths in dBm. */
+    private int[] forwardedSignalStrengths = new int[INITIAL_CAPACITY];
+
+    /** The kismet server timestamps of the last forwarded measured values in seconds. */
+    private long[] forwardedTimestamps = new long[INITIAL_CAPACITY];
+
+    /** The last received signal strengths in dBm. */
+    private int[] lastSignalStrengths = new int[INITIAL_CAPACITY];
+
+    /** The kismet server timestamps of the last received measured values in seconds. */
+    private long[] lastTimestamps = new long[INITIAL_CAPACITY];
+
+    /** The kismet server time in seconds at which the next pair may expire. */
+    private long nextExpiry = Long.MAX_VALUE;
+
+    /** The number of suppressed measured values. */
+    private long suppressedCount;
+
+    /**
+     * Constructs a new delta filter with the specified parameters.
+     * 
+     * @param next the next stage.
+     * @param thresholdDb the minimum change of the signal strength in dB that is forwarded.
+     * @param heartbeatSeconds the interval in seconds after which a measured value is forwarded regardless of its
+     *            change, or <code>0</code> to forward changes only.
+     * @param expirySeconds the interval in seconds after which a silent pair expires, or <code>0</code> if pairs
+     *            never expire.
+     * @throws IllegalArgumentException if any of the parameters is negative.
+     * @throws NullPointerException if <code>next</code> is <code>null</code>.
+     */
+    public KismetDeltaFilter(KismetProtocolStage next, int thresholdDb, long heartbeatSeconds, long expirySeconds) {
+        if (next == null) {
+            throw new NullPointerException("next must not be null");
+        }
+        if (thresholdDb < 0) {
+            throw new IllegalArgumentException("Invalid thresholdDb " + thresholdDb);
+        }
+        if (heartbeatSeconds < 0) {
+            throw new IllegalArgumentException("Invalid heartbeatSeconds " + heartbeatSeconds);
+        }
+        if (expirySeconds < 0) {
+            throw new IllegalArgumentException("Invalid expirySeconds " + expirySeconds);
+        }
+        this.next = next;
+        this.thresholdDb = thresholdDb;
+        this.heartbeatSeconds = heartbeatSeconds;
+        this.expirySeconds = expirySeconds;
+    }
+
+    /**
+     * @see KismetProtocolHandler#onClientSource(long, long, long, long, int)
+     */
+    @Override
+    public void onClientSource(long deviceId, long droneIdMsb, long droneIdLsb, long timestamp, int signalStrength) {
+        long key = KismetAggregateTable.key(deviceId, this.droneTable.indexOf(droneIdMsb, droneIdLsb));
+        int mask = this.table.length - 1;
+        int slot = KismetAggregateTable.hash(key) & mask;
+        for (int index; (index = this.table[slot] - 1) >= 0; slot = (slot + 1) & mask) {
+            if (this.keys[index] == key) {
+                this.lastSignalStrengths[index] = signalStrength;
+                this.lastTimestamps[index] = timestamp;
+                if (Math.abs(signalStrength - this.forwardedSignalStrengths[index]) > this.thresholdDb
+                    || (this.heartbeatSeconds > 0 && timestamp - this.forwardedTimestamps[index] >= this.heartbeatSeconds)) {
+                    this.forwardedSignalStrengths[index] = signalStrength;
+                    this.forwardedTimestamps[index] = timestamp;
+                    this.next.onClientSource(deviceId, droneIdMsb, droneIdLsb, timestamp, signalStrength);
+                }
+                else {
+                    ++this.suppressedCount;
+                }
+                return;
+            }
+        }
+
+        // New pair, always forwarded
+        int index = this.size++;
+        if (index == this.keys.length) {
+            grow();
+        }
+        this.keys[index] = key;
+        this.forwardedSignalStrengths[index] = signalStrength;
+        this.forwardedTimestamps[index] = timestamp;
+        this.lastSignalStrengths[index] = signalStrength;
+        this.lastTimestamps[index] = timestamp;
+        if (this.size * 2 > this.table.length) {
+            rehash(this.table.length * 2);
+        }
+        else {
+            this.table[slot] = index + 1;
+        }
+        if (this.expirySeconds > 0) {
+            this.nextExpiry = Math.min(this.nextExpiry, timestamp + this.expirySeconds);
+        }
+        this.next.onClientSource(deviceId, droneIdMsb, droneIdLsb, timestamp, signalStrength);
+    }
+
+    /**
+     * @see KismetProtocolHandler#onSource(long, long, String)
+     */
+    @Override
+    public void onSource(long droneIdMsb, long droneIdLsb, String name) {
+        this.next.onSource(droneIdMsb, droneIdLsb, name);
+    }
+
+    /**
+     * @see KismetProtocolHandler#onTime(long)
+     */
+    @Override
+    public void onTime(long timestamp) {
+        if (timestamp >= this.nextExpiry) {
+            expire(timestamp);
+        }
+        this.next.onTime(timestamp);
+    }
+
+    /**
+     * @see KismetProtocolStage#onExpire(long, long, long, long, int)
+     */
+    @Override
+    public void onExpire(long deviceId, long droneIdMsb, long droneIdLsb, long timestamp, int signalStrength) {
+        this.next.onExpire(deviceId, droneIdMsb, droneIdLsb, timestamp, signalStrength);
+    }
+
+    /**
+     * Forgets all pairs without reporting them as expired, so that the first measured value of every pair after the
+     * gap is forwarded again, since consumers are expected to discard the state derived from earlier messages.
+     * 
+     * @see KismetProtocolStage#onGap()
+     */
+    @Override
+    public void onGap() {
+        Arrays.fill(this.table, 0);
+        this.size = 0;
+        this.nextExpiry = Long.MAX_VALUE;
+        this.next.onGap();
+    }
+
+    /**
+     * @see KismetProtocolStage#release()
+     */
+    @Override
+    public void release() {
+        this.next.release();
+    }
+
+    /**
+     * @see KismetProtocolStage#getPendingCount()
+     */
+    @Override
+    public int getPendingCount() {
+        return this.next.getPendingCount();
+    }
+
+    /**
+     * Returns the number of (device, drone) pairs currently tracked by this filter.
+     * 
+     * @return the number of pairs.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the number of measured values suppressed so far, because they did not carry new information.
+     * 
+     * @return the number of suppressed measured values.
+     */
+    public long getSuppressedCount() {
+        return this.suppressedCount;
+    }
+
+    /**
+     * Removes all pairs that went silent for the expiry interval and reports them to the next stage. The surviving
+     * pairs are compacted in place and the hash table is rebuilt, which costs no more than the scan itself.
+     * 
+     * @param timestamp the current kismet server timestamp in seconds.
+     */
+    private void expire(long timestamp) {
+        long nextExpiry = Long.MAX_VALUE;
+        int size = 0;
+        for (int index = 0; index < this.size; ++index) {
+            long expiry = this.lastTimestamps[index] + this.expirySeconds;
+            if (expiry <= timestamp) {
+                long key = this.keys[index];
+                UUID droneId = this.droneTable.get((int) (key >>> 48));
+                this.next.onExpire(key & 0xffffffffffffL, droneId.getMostSignificantBits(), droneId.getLeastSignificantBits(), this.lastTimestamps[index],
+                                   this.lastSignalStrengths[index]);
+            }
+            else {
+                if (size != index) {
+                    this.keys[size] = this.keys[index];
+                    this.forwardedSignalStrengths[size] = this.forwardedSignalStrengths[index];
+                    this.forwardedTimestamps[size] = this.forwardedTimestamps[index];
+                    this.lastSignalStrengths[size] = this.lastSignalStrengths[index];
+                    this.lastTimestamps[size] = this.lastTimestamps[index];
+                }
+                nextExpiry = Math.min(nextExpiry, expiry);
+                ++size;
+            }
+        }
+        this.nextExpiry = nextExpiry;
+        if (size != this.size) {
+            this.size = size;
+            rehash(this.table.length);
+        }
+    }
+
+    /**
+     * Doubles the capacity of the columns.
+     */
+    private void grow() {
+        int capacity = this.keys.length * 2;
+        this.keys = Arrays.copyOf(this.keys, capacity);
+        this.forwardedSignalStrengths = Arrays.copyOf(this.forwardedSignalStrengths, capacity);
+        this.forwardedTimestamps = Arrays.copyOf(this.forwardedTimestamps, capacity);
+        this.lastSignalStrengths = Arrays.copyOf(this.lastSignalStrengths, capacity);
+        this.lastTimestamps = Arrays.copyOf(this.lastTimestamps, capacity);
+    }
+
+    /**
+     * Rebuilds the hash table with the specified <code>capacity</code>.
+     * 
+     * @param capacity the number of slots, a power of two.
+     */
+    private void rehash(int capacity) {
+        int[] table = new int[capacity];
+        int mask = capacity - 1;
+        for (int index = 0; index < this.size; ++index) {
+            int slot = KismetAggregateTable.hash(this.keys[index]) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = index + 1;
+        }
+        this.table = table;
+    }
+}
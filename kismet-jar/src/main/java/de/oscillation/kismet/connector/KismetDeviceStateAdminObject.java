@@ -0,0 +1,115 @@
+package de.oscillation.kismet.connector;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import javax.resource.ResourceException;
+import javax.resource.spi.AdministeredObject;
+import javax.resource.spi.ResourceAdapter;
+import javax.resource.spi.ResourceAdapterAssociation;
+
+import de.benediktmeurer.eui4j.EUI48;
+
+/**
+ * The administered object providing the {@link KismetDeviceStateService} of the kismet resource adapter, which is
+ * bound to JNDI by the application server and looked up or injected by the applications. All queries are answered by
+ * the device state index of the associated resource adapter.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetDeviceStateIndex
+ * @see KismetResourceAdapter#getDeviceStateCapacity()
+ */
+@AdministeredObject(adminObjectInterfaces = KismetDeviceStateService.class)
+public class KismetDeviceStateAdminObject implements KismetDeviceStateService, ResourceAdapterAssociation, Serializable {
+    /** The serial version UID of this class. */
+    private static final long serialVersionUID = 1L;
+
+    /** The resource adapter. */
+    private transient KismetResourceAdapter resourceAdapter;
+
+    /**
+     * Returns the device state index of the associated resource adapter.
+     * 
+     * @return the device state index.
+     * @throws IllegalStateException if the administered object is not associated with a started resource adapter that
+     *             maintains the device state.
+     */
+    private KismetDeviceStateIndex getIndex() {
+        KismetResourceAdapter resourceAdapter = this.resourceAdapter;
+        KismetDeviceStateIndex index = (resourceAdapter == null) ? null : resourceAdapter.getDeviceStateIndex();
+        if (index == null) {
+            throw new IllegalStateException("Kismet device state not available, check deviceStateCapacity of the kismet resource adapter");
+        }
+        return index;
+    }
+
+    /**
+     * @see KismetDeviceStateService#getDevices()
+     */
+    @Override
+    public Set<EUI48> getDevices() {
+        return getIndex().getDevices();
+    }
+
+    /**
+     * @see KismetDeviceStateService#getDeviceCount()
+     */
+    @Override
+    public int getDeviceCount() {
+        return getIndex().getDeviceCount();
+    }
+
+    /**
+     * @see KismetDeviceStateService#getLatestValue(EUI48, UUID)
+     */
+    @Override
+    public KismetMeasuredValue getLatestValue(EUI48 deviceId, UUID droneId) {
+        return getIndex().getLatestValue(deviceId, droneId);
+    }
+
+    /**
+     * @see KismetDeviceStateService#getLatestValues(EUI48)
+     */
+    @Override
+    public Map<UUID, KismetMeasuredValue> getLatestValues(EUI48 deviceId) {
+        return getIndex().getLatestValues(deviceId);
+    }
+
+    /**
+     * @see KismetDeviceStateService#getLatestValuesByDrone(UUID)
+     */
+    @Override
+    public Map<EUI48, KismetMeasuredValue> getLatestValuesByDrone(UUID droneId) {
+        return getIndex().getLatestValuesByDrone(droneId);
+    }
+
+    /**
+     * @see KismetDeviceStateService#getRecentValues(EUI48)
+     */
+    @Override
+    public List<KismetMeasuredValue> getRecentValues(EUI48 deviceId) {
+        return getIndex().getRecentValues(deviceId);
+    }
+
+    /**
+     * @see javax.resource.spi.ResourceAdapterAssociation#getResourceAdapter()
+     */
+    @Override
+    public ResourceAdapter getResourceAdapter() {
+        return this.resourceAdapter;
+    }
+
+    /**
+     * @see javax.resource.spi.ResourceAdapterAssociation#setResourceAdapter(javax.resource.spi.ResourceAdapter)
+     */
+    @Override
+    public void setResourceAdapter(ResourceAdapter resourceAdapter) throws ResourceException {
+        if (resourceAdapter != null && !(resourceAdapter instanceof KismetResourceAdapter)) {
+            throw new ResourceException("Expected " + KismetResourceAdapter.class.getName() + ", but got " + resourceAdapter.getClass().getName());
+        }
+        this.resourceAdapter = (KismetResourceAdapter) resourceAdapter;
+    }
+}
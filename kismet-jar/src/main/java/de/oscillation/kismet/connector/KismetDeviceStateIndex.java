@@ -0,0 +1,361 @@
+package de.oscillation.kismet.connector;
+
+import static java.util.logging.Logger.getLogger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Logger;
+
+import de.benediktmeurer.eui4j.EUI48;
+
+/**
+ * The live state of the devices seen on all kismet server connections of a resource adapter, fed with every measured
+ * value decoded by the connections (before the filters of the activations), and queried via
+ * {@link KismetDeviceStateAdminObject}.
+ * <p>
+ * Every device keeps the latest measured value per drone and a ring of its most recent measured values, and every
+ * drone references the latest measured values of the devices it has seen, so both lookups are answered without
+ * scanning. The state is held in concurrent hash maps and volatile fields, so queries never block the connections, and
+ * the connections only contend when they report the same device. Measured values identical to the latest measured
+ * value of their device and drone (for example reported by several federated kismet servers) are recorded only once.
+ * <p>
+ * The number of devices is bounded by the capacity; further devices are ignored until others are evicted. Devices and
+ * drone entries not updated within the time-to-live are evicted by {@link #sweep(long)}, which also advances the
+ * coarse clock used to stamp the updates, so the connections need not read the system clock per measured value.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetResourceAdapter#getDeviceStateCapacity()
+ */
+public class KismetDeviceStateIndex implements KismetDeviceStateService {
+    /** Orders measured values by descending timestamp. */
+    private static final Comparator<KismetMeasuredValue> MOST_RECENT_FIRST = new Comparator<KismetMeasuredValue>() {
+        @Override
+        public int compare(KismetMeasuredValue value1, KismetMeasuredValue value2) {
+            long timestamp1 = value1.getTimestamp();
+            long timestamp2 = value2.getTimestamp();
+            return (timestamp1 < timestamp2) ? 1 : (timestamp1 == timestamp2) ? 0 : -1;
+        }
+    };
+
+    /** The maximum number of devices. */
+    private final int capacity;
+
+    /** The number of recent measured values retained per device. */
+    private final int historySize;
+
+    /** The time-to-live of devices and drone entries in milliseconds. */
+    private final long ttlMillis;
+
+    /** The logger. */
+    private final Logger logger = getLogger(KismetDeviceStateIndex.class.getName());
+
+    /** The identifier cache, which provides the canonical device and drone identifiers without allocation. */
+    private final KismetIdentifierCache identifierCache = KismetIdentifierCache.getDefault();
+
+    /** The states of the devices, indexed by device. */
+    private final ConcurrentHashMap<EUI48, DeviceState> devices = new ConcurrentHashMap<EUI48, DeviceState>();
+
+    /** The latest measured values of the devices seen by the drones, indexed by drone and device. */
+    private final ConcurrentHashMap<UUID, ConcurrentHashMap<EUI48, Latest>> drones = new ConcurrentHashMap<UUID, ConcurrentHashMap<EUI48, Latest>>();
+
+    /** The number of devices. */
+    private final AtomicInteger deviceCount = new AtomicInteger();
+
+    /** The number of measured values ignored, because the capacity was exhausted. */
+    private final KismetStripedCounter rejectedCount = new KismetStripedCounter();
+
+    /** The coarse clock in milliseconds, advanced by {@link #sweep(long)}. */
+    private volatile long clockMillis = System.currentTimeMillis();
+
+    /** Whether the capacity was exhausted since the last sweep, to log only once. */
+    private volatile boolean full;
+
+    /**
+     * Constructs a new device state index with the specified parameters.
+     * 
+     * @param capacity the maximum number of devices.
+     * @param historySize the number of recent measured values retained per device.
+     * @param ttlSeconds the time-to-live of devices and drone entries in seconds.
+     * @throws IllegalArgumentException if any of the parameters is not positive.
+     */
+    public KismetDeviceStateIndex(int capacity, int historySize, int ttlSeconds) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+        if (historySize <= 0) {
+            throw new IllegalArgumentException("Invalid historySize " + historySize);
+        }
+        if (ttlSeconds <= 0) {
+            throw new IllegalArgumentException("Invalid ttlSeconds " + ttlSeconds);
+        }
+        this.capacity = capacity;
+        this.historySize = historySize;
+        this.ttlMillis = ttlSeconds * 1000L;
+    }
+
+    /**
+     * Records a measured value decoded by a kismet server connection. May be invoked concurrently by all connections.
+     * 
+     * @param deviceId the EUI-48 address of the device in the lower 48 bits.
+     * @param droneIdMsb the most significant 64 bits of the drone UUID.
+     * @param droneIdLsb the least significant 64 bits of the drone UUID.
+     * @param timestamp the kismet server timestamp in seconds.
+     * @param signalStrength the signal strength in dBm.
+     */
+    public void onClientSource(long deviceId, long droneIdMsb, long droneIdLsb, long timestamp, int signalStrength) {
+        long clockMillis = this.clockMillis;
+        EUI48 device = this.identifierCache.getDeviceId(deviceId);
+        DeviceState state = this.devices.get(device);
+        if (state == null) {
+            if (this.deviceCount.get() >= this.capacity) {
+                this.rejectedCount.increment();
+                if (!this.full) {
+                    this.full = true;
+                    this.logger.warning("Kismet device state capacity of " + this.capacity + " devices exhausted, ignoring new devices");
+                }
+                return;
+            }
+            DeviceState newState = new DeviceState(this.historySize, clockMillis);
+            state = this.devices.putIfAbsent(device, newState);
+            if (state == null) {
+                this.deviceCount.incrementAndGet();
+                state = newState;
+            }
+        }
+        if (state.seenMillis != clockMillis) {
+            state.seenMillis = clockMillis;
+        }
+
+        UUID drone = this.identifierCache.getDroneId(droneIdMsb, droneIdLsb);
+        Latest latest = state.latest.get(drone);
+        if (latest == null) {
+            Latest newLatest = new Latest(clockMillis);
+            latest = state.latest.putIfAbsent(drone, newLatest);
+            if (latest == null) {
+                latest = newLatest;
+                ConcurrentHashMap<EUI48, Latest> droneDevices = this.drones.get(drone);
+                if (droneDevices == null) {
+                    ConcurrentHashMap<EUI48, Latest> newDroneDevices = new ConcurrentHashMap<EUI48, Latest>();
+                    droneDevices = this.drones.putIfAbsent(drone, newDroneDevices);
+                    if (droneDevices == null) {
+                        droneDevices = newDroneDevices;
+                    }
+                }
+                droneDevices.put(device, latest);
+            }
+        }
+        if (latest.seenMillis != clockMillis) {
+            latest.seenMillis = clockMillis;
+        }
+        KismetMeasuredValue value = latest.value;
+        if (value != null && (value.getTimestamp() > timestamp || (value.getTimestamp() == timestamp && value.getSignalStrength() == signalStrength))) {
+            // Same or older measured value, reported by another kismet server or out of order
+            return;
+        }
+        value = new KismetMeasuredValue(device, drone, signalStrength, timestamp);
+        latest.value = value;
+        state.add(value);
+    }
+
+    /**
+     * Evicts the devices and drone entries not updated within the time-to-live, and advances the coarse clock. Invoked
+     * periodically by the timer of the resource adapter.
+     * 
+     * @param nowMillis the current time in milliseconds.
+     */
+    public void sweep(long nowMillis) {
+        this.clockMillis = nowMillis;
+        long cutoffMillis = nowMillis - this.ttlMillis;
+        for (Map.Entry<EUI48, DeviceState> entry : this.devices.entrySet()) {
+            DeviceState state = entry.getValue();
+            if (state.seenMillis < cutoffMillis) {
+                if (this.devices.remove(entry.getKey(), state)) {
+                    this.deviceCount.decrementAndGet();
+                }
+            }
+            else {
+                for (Map.Entry<UUID, Latest> latestEntry : state.latest.entrySet()) {
+                    if (latestEntry.getValue().seenMillis < cutoffMillis) {
+                        state.latest.remove(latestEntry.getKey(), latestEntry.getValue());
+                    }
+                }
+            }
+        }
+        for (ConcurrentHashMap<EUI48, Latest> droneDevices : this.drones.values()) {
+            for (Map.Entry<EUI48, Latest> entry : droneDevices.entrySet()) {
+                if (entry.getValue().seenMillis < cutoffMillis) {
+                    droneDevices.remove(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        if (this.full && this.deviceCount.get() < this.capacity) {
+            this.full = false;
+        }
+    }
+
+    /**
+     * Returns the number of measured values ignored so far, because the capacity was exhausted.
+     * 
+     * @return the number of rejected measured values.
+     */
+    public long getRejectedCount() {
+        return this.rejectedCount.sum();
+    }
+
+    /**
+     * @see KismetDeviceStateService#getDevices()
+     */
+    @Override
+    public Set<EUI48> getDevices() {
+        return new HashSet<EUI48>(this.devices.keySet());
+    }
+
+    /**
+     * @see KismetDeviceStateService#getDeviceCount()
+     */
+    @Override
+    public int getDeviceCount() {
+        return this.deviceCount.get();
+    }
+
+    /**
+     * @see KismetDeviceStateService#getLatestValue(EUI48, UUID)
+     */
+    @Override
+    public KismetMeasuredValue getLatestValue(EUI48 deviceId, UUID droneId) {
+        if (droneId == null) {
+            throw new NullPointerException("droneId must not be null");
+        }
+        DeviceState state = this.devices.get(deviceId);
+        if (state != null) {
+            Latest latest = state.latest.get(droneId);
+            if (latest != null) {
+                return latest.value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @see KismetDeviceStateService#getLatestValues(EUI48)
+     */
+    @Override
+    public Map<UUID, KismetMeasuredValue> getLatestValues(EUI48 deviceId) {
+        Map<UUID, KismetMeasuredValue> values = new HashMap<UUID, KismetMeasuredValue>();
+        DeviceState state = this.devices.get(deviceId);
+        if (state != null) {
+            for (Map.Entry<UUID, Latest> entry : state.latest.entrySet()) {
+                KismetMeasuredValue value = entry.getValue().value;
+                if (value != null) {
+                    values.put(entry.getKey(), value);
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @see KismetDeviceStateService#getLatestValuesByDrone(UUID)
+     */
+    @Override
+    public Map<EUI48, KismetMeasuredValue> getLatestValuesByDrone(UUID droneId) {
+        Map<EUI48, KismetMeasuredValue> values = new HashMap<EUI48, KismetMeasuredValue>();
+        ConcurrentHashMap<EUI48, Latest> droneDevices = this.drones.get(droneId);
+        if (droneDevices != null) {
+            for (Map.Entry<EUI48, Latest> entry : droneDevices.entrySet()) {
+                KismetMeasuredValue value = entry.getValue().value;
+                if (value != null) {
+                    values.put(entry.getKey(), value);
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @see KismetDeviceStateService#getRecentValues(EUI48)
+     */
+    @Override
+    public List<KismetMeasuredValue> getRecentValues(EUI48 deviceId) {
+        List<KismetMeasuredValue> values = new ArrayList<KismetMeasuredValue>(this.historySize);
+        DeviceState state = this.devices.get(deviceId);
+        if (state != null) {
+            for (int i = 0; i < state.recent.length(); ++i) {
+                KismetMeasuredValue value = state.recent.get(i);
+                if (value != null) {
+                    values.add(value);
+                }
+            }
+            Collections.sort(values, MOST_RECENT_FIRST);
+        }
+        return values;
+    }
+
+    /**
+     * The state of a single device.
+     */
+    private static final class DeviceState {
+        /** The latest measured values of the device, indexed by drone. */
+        private final ConcurrentHashMap<UUID, Latest> latest = new ConcurrentHashMap<UUID, Latest>(8);
+
+        /** The ring of the most recent measured values of the device. */
+        private final AtomicReferenceArray<KismetMeasuredValue> recent;
+
+        /** The position of the next measured value in the ring. */
+        private final AtomicInteger next = new AtomicInteger();
+
+        /** The value of the coarse clock when the device was last seen. */
+        private volatile long seenMillis;
+
+        /**
+         * Constructs a new device state with the specified parameters.
+         * 
+         * @param historySize the number of recent measured values retained.
+         * @param seenMillis the value of the coarse clock when the device was first seen.
+         */
+        DeviceState(int historySize, long seenMillis) {
+            this.recent = new AtomicReferenceArray<KismetMeasuredValue>(historySize);
+            this.seenMillis = seenMillis;
+        }
+
+        /**
+         * Adds the specified <code>value</code> to the ring of the most recent measured values, replacing the oldest.
+         * 
+         * @param value the measured value.
+         */
+        void add(KismetMeasuredValue value) {
+            this.recent.set((this.next.getAndIncrement() & Integer.MAX_VALUE) % this.recent.length(), value);
+        }
+    }
+
+    /**
+     * The latest measured value of a device reported by a drone, shared by the state of the device and the index of
+     * the drone.
+     */
+    private static final class Latest {
+        /** The latest measured value, or <code>null</code> until the first one is recorded. */
+        private volatile KismetMeasuredValue value;
+
+        /** The value of the coarse clock when the drone last reported the device. */
+        private volatile long seenMillis;
+
+        /**
+         * Constructs a new entry without measured value.
+         * 
+         * @param seenMillis the value of the coarse clock when the drone first reported the device.
+         */
+        Latest(long seenMillis) {
+            this.seenMillis = seenMillis;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package de.oscillation.kismet.connector;
+
+import java.net.InetSocketAddress;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+/**
+ * Instrumentation of a single {@link KismetMessageDispatcher}, i.e. one shard of the delivery stage of a
+ * {@link KismetActivation}. The dispatcher already maintains its counters, so everything is read on demand.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetDispatcherMetricsMBean
+ */
+public class KismetDispatcherMetrics implements KismetDispatcherMetricsMBean {
+    /** The activation. */
+    private final KismetActivation activation;
+
+    /** The dispatcher of the shard. */
+    private final KismetMessageDispatcher dispatcher;
+
+    /** The index of the shard. */
+    private final int shard;
+
+    /** The name of the MBean. */
+    private final ObjectName objectName;
+
+    /**
+     * Constructs new metrics for the shard with the specified index of the delivery stage of the specified
+     * <code>activation</code>.
+     * 
+     * @param activation the activation.
+     * @param shard the index of the shard.
+     * @throws IndexOutOfBoundsException if <code>shard</code> is out of range.
+     * @throws NullPointerException if <code>activation</code> is <code>null</code>.
+     */
+    public KismetDispatcherMetrics(KismetActivation activation, int shard) {
+        if (activation == null) {
+            throw new NullPointerException("activation must not be null");
+        }
+        this.activation = activation;
+        this.dispatcher = activation.getDispatchers()[shard];
+        this.shard = shard;
+        this.objectName = objectName(activation, shard);
+    }
+
+    /**
+     * Returns the name under which the metrics of the shard with the specified index of the delivery stage of the
+     * specified <code>activation</code> are registered with the MBean server.
+     * 
+     * @param activation the activation.
+     * @param shard the index of the shard.
+     * @return the object name.
+     */
+    static ObjectName objectName(KismetActivation activation, int shard) {
+        try {
+            return new ObjectName(KismetConnectionMetrics.DOMAIN + ":type=KismetDispatcher,activation=" + activation.getId() + ",shard=" + shard);
+        }
+        catch (MalformedObjectNameException exn) {
+            throw new IllegalArgumentException("Invalid shard " + shard, exn);
+        }
+    }
+
+    /**
+     * Returns the name under which these metrics are registered with the MBean server.
+     * 
+     * @return the object name.
+     */
+    public ObjectName getObjectName() {
+        return this.objectName;
+    }
+
+    /**
+     * @see KismetDispatcherMetricsMBean#getServers()
+     */
+    @Override
+    public String getServers() {
+        StringBuilder sb = new StringBuilder();
+        for (InetSocketAddress server : this.activation.getActivationSpec().getEffectiveServers()) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(server.getHostName()).append(':').append(server.getPort());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @see KismetDispatcherMetricsMBean#getShard()
+     */
+    @Override
+    public int getShard() {
+        return this.shard;
+    }
+
+    /**
+     * @see KismetDispatcherMetricsMBean#getOverflowPolicy()
+     */
+    @Override
+    public String getOverflowPolicy() {
+        return this.activation.getActivationSpec().getEffectiveOverflowPolicy().name().toLowerCase().replace('_', '-');
+    }
+
+    /**
+     * @see KismetDispatcherMetricsMBean#getPendingMessages()
+     */
+    @Override
+    public int getPendingMessages() {
+        return this.dispatcher.getPendingCount();
+    }
+
+    /**
+     * @see KismetDispatcherMetricsMBean#getDispatchedMessages()
+     */
+    @Override
+    public long getDispatchedMessages() {
+        return this.dispatcher.getDispatchedCount();
+    }
+
+    /**
+     * @see KismetDispatcherMetricsMBean#getDeliveredMessages()
+     */
+    @Override
+    public long getDeliveredMessages() {
+        return this.dispatcher.getDeliveredCount();
+    }
+
+    /**
+     * @see KismetDispatcherMetricsMBean#getDroppedMessages()
+     */
+    @Override
+    public long getDroppedMessages() {
+        return this.dispatcher.getDroppedCount();
+    }
+
+    /**
+     * @see KismetDispatcherMetricsMBean#getBlockedCount()
+     */
+    @Override
+    public long getBlockedCount() {
+        return this.dispatcher.getBlockedCount();
+    }
+
+    /**
+     * @see KismetDispatcherMetricsMBean#getMeanDeliveryNanos()
+     */
+    @Override
+    public long getMeanDeliveryNanos() {
+        return this.dispatcher.getMeanDeliveryNanos();
+    }
+
+    /**
+     * @see KismetDispatcherMetricsMBean#getMaxDeliveryNanos()
+     */
+    @Override
+    public long getMaxDeliveryNanos() {
+        return this.dispatcher.getMaxDeliveryNanos();
+    }
+
+    /**
+     * @see KismetDispatcherMetricsMBean#getMeanEndpointOverheadNanos()
+     */
+    @Override
+    public long getMeanEndpointOverheadNanos() {
+        return this.dispatcher.getMeanEndpointOverheadNanos();
+    }
+
+    /**
+     * @see KismetDispatcherMetricsMBean#getEndpointCount()
+     */
+    @Override
+    public long getEndpointCount() {
+        return this.dispatcher.getEndpointCount();
+    }
+}
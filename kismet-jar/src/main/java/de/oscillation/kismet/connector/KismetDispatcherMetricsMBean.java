@@ -0,0 +1,95 @@
+package de.oscillation.kismet.connector;
+
+/**
+ * Management interface of a shard of the delivery stage of an activation, registered with the platform MBean server as
+ * <code>de.oscillation.kismet.connector:type=KismetDispatcher,activation=id,shard=index</code>. Activations without
+ * sharding have a single shard <code>0</code>.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetDispatcherMetrics
+ */
+public interface KismetDispatcherMetricsMBean {
+    /**
+     * Returns the kismet servers of the activation, as comma separated list of <code>server:port</code> pairs.
+     * 
+     * @return the kismet servers of the activation.
+     */
+    public String getServers();
+
+    /**
+     * Returns the index of the shard.
+     * 
+     * @return the index of the shard.
+     */
+    public int getShard();
+
+    /**
+     * Returns the overflow policy of the activation.
+     * 
+     * @return the overflow policy of the activation.
+     */
+    public String getOverflowPolicy();
+
+    /**
+     * Returns the number of messages waiting for delivery in the buffer of the shard.
+     * 
+     * @return the number of messages waiting for delivery in the buffer of the shard.
+     */
+    public int getPendingMessages();
+
+    /**
+     * Returns the number of messages handed to the shard.
+     * 
+     * @return the number of messages handed to the shard.
+     */
+    public long getDispatchedMessages();
+
+    /**
+     * Returns the number of messages delivered to the message endpoints.
+     * 
+     * @return the number of messages delivered to the message endpoints.
+     */
+    public long getDeliveredMessages();
+
+    /**
+     * Returns the number of messages dropped, because the buffer of the shard was full.
+     * 
+     * @return the number of messages dropped, because the buffer of the shard was full.
+     */
+    public long getDroppedMessages();
+
+    /**
+     * Returns the number of times the reader was blocked, because the buffer of the shard was full.
+     * 
+     * @return the number of times the reader was blocked, because the buffer of the shard was full.
+     */
+    public long getBlockedCount();
+
+    /**
+     * Returns the mean time in nanoseconds spent delivering a message to a message endpoint.
+     * 
+     * @return the mean time in nanoseconds spent delivering a message to a message endpoint.
+     */
+    public long getMeanDeliveryNanos();
+
+    /**
+     * Returns the maximum time in nanoseconds spent delivering a single message to a message endpoint.
+     * 
+     * @return the maximum time in nanoseconds spent delivering a single message to a message endpoint.
+     */
+    public long getMaxDeliveryNanos();
+
+    /**
+     * Returns the mean time in nanoseconds the endpoint lifecycle of the container added to the delivery of a message.
+     * 
+     * @return the mean time in nanoseconds the endpoint lifecycle of the container added to the delivery of a message.
+     */
+    public long getMeanEndpointOverheadNanos();
+
+    /**
+     * Returns the number of message endpoints created by the shard.
+     * 
+     * @return the number of message endpoints created by the shard.
+     */
+    public long getEndpointCount();
+}
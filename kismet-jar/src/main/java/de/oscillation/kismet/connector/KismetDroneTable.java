@@ -0,0 +1,163 @@
+package de.oscillation.kismet.connector;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Grow-only table of the drones seen on a kismet server connection, which assigns a stable index to every drone. The
+ * drones are looked up by the primitive representation of their UUIDs, so no objects are created for known drones.
+ * The table is small (kismet setups have a few dozen drones at most), so it uses linear probing in a pair of
+ * <code>long</code> arrays. Instances of this class are not thread-safe.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetMeasuredValueBatch
+ */
+public class KismetDroneTable {
+    /** The most significant bits of the UUIDs in the hash table. */
+    private long[] msbs = new long[32];
+
+    /** The least significant bits of the UUIDs in the hash table. */
+    private long[] lsbs = new long[32];
+
+    /** The drone indices in the hash table, or <code>-1</code> for empty slots. */
+    private int[] indices = newIndices(32);
+
+    /** The drones in the order of their indices. */
+    private UUID[] drones = new UUID[8];
+
+    /** The number of drones. */
+    private int size;
+
+    /** The snapshot of the drone table, or <code>null</code> if the table changed since the last snapshot. */
+    private UUID[] snapshot;
+
+    /**
+     * Returns the index of the drone with the specified UUID, adding it to the table if necessary.
+     * 
+     * @param msb the most significant 64 bits of the drone UUID.
+     * @param lsb the least significant 64 bits of the drone UUID.
+     * @return the index of the drone.
+     */
+    public int indexOf(long msb, long lsb) {
+        int mask = this.indices.length - 1;
+        for (int slot = hash(msb, lsb) & mask;; slot = (slot + 1) & mask) {
+            int index = this.indices[slot];
+            if (index < 0) {
+                return add(slot, msb, lsb);
+            }
+            else if (this.msbs[slot] == msb && this.lsbs[slot] == lsb) {
+                return index;
+            }
+        }
+    }
+
+    /**
+     * Returns the drone with the specified <code>index</code>.
+     * 
+     * @param index the index of the drone.
+     * @return the drone UUID.
+     * @throws IndexOutOfBoundsException if <code>index</code> is out of range.
+     */
+    public UUID get(int index) {
+        if (index < 0 || index >= this.size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+        }
+        return this.drones[index];
+    }
+
+    /**
+     * Returns the number of drones in this table.
+     * 
+     * @return the number of drones.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns a snapshot of the drones in the order of their indices. The same array is returned until another drone
+     * is added, so the snapshot must not be modified.
+     * 
+     * @return the drones in the order of their indices.
+     */
+    public UUID[] snapshot() {
+        UUID[] snapshot = this.snapshot;
+        if (snapshot == null) {
+            this.snapshot = snapshot = Arrays.copyOf(this.drones, this.size);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Adds a new drone in the empty <code>slot</code>.
+     * 
+     * @param slot the empty slot in the hash table.
+     * @param msb the most significant 64 bits of the drone UUID.
+     * @param lsb the least significant 64 bits of the drone UUID.
+     * @return the index of the new drone.
+     */
+    private int add(int slot, long msb, long lsb) {
+        int index = this.size++;
+        if (index == this.drones.length) {
+            this.drones = Arrays.copyOf(this.drones, index * 2);
+        }
+        this.drones[index] = KismetIdentifierCache.getDefault().getDroneId(msb, lsb);
+        this.msbs[slot] = msb;
+        this.lsbs[slot] = lsb;
+        this.indices[slot] = index;
+        this.snapshot = null;
+        if (this.size * 2 > this.indices.length) {
+            rehash();
+        }
+        return index;
+    }
+
+    /**
+     * Doubles the size of the hash table.
+     */
+    private void rehash() {
+        int capacity = this.indices.length * 2;
+        int mask = capacity - 1;
+        long[] msbs = new long[capacity];
+        long[] lsbs = new long[capacity];
+        int[] indices = newIndices(capacity);
+        for (int i = 0; i < this.size; ++i) {
+            long msb = this.drones[i].getMostSignificantBits();
+            long lsb = this.drones[i].getLeastSignificantBits();
+            int slot = hash(msb, lsb) & mask;
+            while (indices[slot] >= 0) {
+                slot = (slot + 1) & mask;
+            }
+            msbs[slot] = msb;
+            lsbs[slot] = lsb;
+            indices[slot] = i;
+        }
+        this.msbs = msbs;
+        this.lsbs = lsbs;
+        this.indices = indices;
+    }
+
+    /**
+     * Computes the hash code of a drone UUID.
+     * 
+     * @param msb the most significant 64 bits of the drone UUID.
+     * @param lsb the least significant 64 bits of the drone UUID.
+     * @return the hash code.
+     */
+    private static int hash(long msb, long lsb) {
+        long h = (msb ^ lsb) * 0x9e3779b97f4a7c15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Allocates a new index array with all slots empty.
+     * 
+     * @param capacity the capacity.
+     * @return the index array.
+     */
+    private static int[] newIndices(int capacity) {
+        int[] indices = new int[capacity];
+        Arrays.fill(indices, -1);
+        return indices;
+    }
+}
@@ -0,0 +1,289 @@
+package de.oscillation.kismet.connector;
+
+import java.util.UUID;
+
+/**
+ * Collects the measured values decoded from the kismet protocol into windows keyed on their own kismet server
+ * timestamps, and hands a {@link KismetWindowedMessage} per complete window to the {@link KismetMessageSink}. The
+ * watermark trails the kismet server time reported by <code>*TIME:</code> sentences by the allowed lateness, and every
+ * window ending at or before the watermark is complete. Windows without any measured values are skipped.
+ * <p>
+ * The open windows are kept in a ring indexed by window number, which covers the allowed lateness plus a minute ahead
+ * of the watermark, so assigning a measured value to its window and closing a window are both constant time. Measured
+ * values for windows that were already closed, or that are too far ahead to fit into the ring, are collected
+ * separately and handed to the sink as late message with every <code>*TIME:</code> sentence. Instances of this class
+ * must only be fed by a single connection.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetActivationSpec#getEventTime()
+ * @see KismetActivationSpec#getAllowedLatenessSeconds()
+ */
+public class KismetEventTimeCollector implements KismetProtocolStage {
+    /** The time in seconds ahead of the watermark covered by the ring of open windows. */
+    private static final long AHEAD_SECONDS = 60;
+
+    /** The delivery stage for the windowed messages. */
+    private final KismetMessageSink dispatcher;
+
+    /** The length of a window in seconds. */
+    private final long windowSeconds;
+
+    /** The time in seconds the kismet server time must pass the end of a window before it is complete. */
+    private final long allowedLatenessSeconds;
+
+    /** The open windows, indexed by window number modulo the length of the ring. */
+    private final Window[] windows;
+
+    /** The measured values that missed their windows since the last TIME sentence. */
+    private final Window lateWindow = new Window();
+
+    /** The drones referenced by the measured values. */
+    private final KismetDroneTable droneTable = new KismetDroneTable();
+
+    /** The registry of known drones, which is shared by the messages until a drone is added or renamed. */
+    private KismetDroneRegistry droneRegistry = KismetDroneRegistry.EMPTY;
+
+    /** The number of the oldest open window, or <code>Long.MIN_VALUE</code> if unknown. */
+    private long firstWindow = Long.MIN_VALUE;
+
+    /** The number of measured values in the open windows. */
+    private int size;
+
+    /** The number of measured values in the open windows, updated with every TIME sentence. */
+    private volatile int pendingCount;
+
+    /** The number of measured values that arrived after their windows were closed. */
+    private long lateCount;
+
+    /** The number of measured values that were too far ahead of the watermark. */
+    private long earlyCount;
+
+    /** Whether the connection was interrupted since the last message was delivered. */
+    private boolean afterGap;
+
+    /**
+     * Constructs a new event time collector with the specified parameters.
+     * 
+     * @param dispatcher the delivery stage for the windowed messages.
+     * @param windowSeconds the length of a window in seconds.
+     * @param allowedLatenessSeconds the time in seconds the kismet server time must pass the end of a window before it
+     *            is complete.
+     * @throws IllegalArgumentException if <code>windowSeconds</code> is not positive, or
+     *             <code>allowedLatenessSeconds</code> is negative.
+     * @throws NullPointerException if <code>dispatcher</code> is <code>null</code>.
+     */
+    public KismetEventTimeCollector(KismetMessageSink dispatcher, long windowSeconds, long allowedLatenessSeconds) {
+        if (dispatcher == null) {
+            throw new NullPointerException("dispatcher must not be null");
+        }
+        if (windowSeconds <= 0) {
+            throw new IllegalArgumentException("Invalid windowSeconds " + windowSeconds);
+        }
+        if (allowedLatenessSeconds < 0) {
+            throw new IllegalArgumentException("Invalid allowedLatenessSeconds " + allowedLatenessSeconds);
+        }
+        this.dispatcher = dispatcher;
+        this.windowSeconds = windowSeconds;
+        this.allowedLatenessSeconds = allowedLatenessSeconds;
+        long windows = (allowedLatenessSeconds + AHEAD_SECONDS + windowSeconds - 1) / windowSeconds + 1;
+        if (windows > (1 << 20)) {
+            throw new IllegalArgumentException("Invalid allowedLatenessSeconds " + allowedLatenessSeconds);
+        }
+        int capacity = 1;
+        while (capacity < windows) {
+            capacity <<= 1;
+        }
+        this.windows = new Window[capacity];
+    }
+
+    /**
+     * @see KismetProtocolHandler#onClientSource(long, long, long, long, int)
+     */
+    @Override
+    public void onClientSource(long deviceId, long droneIdMsb, long droneIdLsb, long timestamp, int signalStrength) {
+        window(timestamp).measuredValues.add(deviceId, this.droneTable.indexOf(droneIdMsb, droneIdLsb), signalStrength, timestamp);
+    }
+
+    /**
+     * @see KismetProtocolStage#onExpire(long, long, long, long, int)
+     */
+    @Override
+    public void onExpire(long deviceId, long droneIdMsb, long droneIdLsb, long timestamp, int signalStrength) {
+        window(timestamp).expiredValues.add(deviceId, this.droneTable.indexOf(droneIdMsb, droneIdLsb), signalStrength, timestamp);
+    }
+
+    /**
+     * @see KismetProtocolHandler#onSource(long, long, String)
+     */
+    @Override
+    public void onSource(long droneIdMsb, long droneIdLsb, String name) {
+        this.droneRegistry = this.droneRegistry.with(KismetIdentifierCache.getDefault().getDroneId(droneIdMsb, droneIdLsb), name);
+    }
+
+    /**
+     * Advances the watermark to the specified kismet server time less the allowed lateness, delivers the windows
+     * ending at or before the watermark, and then the measured values that missed their windows, if any.
+     * 
+     * @see KismetProtocolHandler#onTime(long)
+     */
+    @Override
+    public void onTime(long timestamp) {
+        long end = floorDiv(timestamp - this.allowedLatenessSeconds, this.windowSeconds);
+        if (this.firstWindow == Long.MIN_VALUE) {
+            this.firstWindow = end;
+        }
+        for (long window = this.firstWindow, n = Math.min(end, this.firstWindow + this.windows.length); window < n; ++window) {
+            Window w = this.windows[(int) window & (this.windows.length - 1)];
+            if (w != null && w.size() > 0) {
+                this.size -= w.size();
+                dispatch(w, window * this.windowSeconds, (window + 1) * this.windowSeconds, timestamp, false);
+            }
+        }
+        if (end > this.firstWindow) {
+            this.firstWindow = end;
+        }
+        if (this.lateWindow.size() > 0) {
+            dispatch(this.lateWindow, this.lateWindow.start, this.lateWindow.end, timestamp, true);
+        }
+        this.pendingCount = this.size;
+    }
+
+    /**
+     * Marks the next delivered message, which is the first message that may lack measured values because of the gap.
+     * 
+     * @see KismetProtocolStage#onGap()
+     */
+    @Override
+    public void onGap() {
+        this.afterGap = true;
+    }
+
+    /**
+     * @see KismetProtocolStage#release()
+     */
+    @Override
+    public void release() {
+    }
+
+    /**
+     * Returns the number of measured values in the open windows as of the last TIME sentence.
+     * 
+     * @see KismetProtocolStage#getPendingCount()
+     */
+    @Override
+    public int getPendingCount() {
+        return this.pendingCount;
+    }
+
+    /**
+     * Returns the number of measured values that arrived after their windows were closed so far.
+     * 
+     * @return the number of late measured values.
+     */
+    public long getLateCount() {
+        return this.lateCount;
+    }
+
+    /**
+     * Returns the number of measured values that were timestamped too far ahead of the watermark so far.
+     * 
+     * @return the number of early measured values.
+     */
+    public long getEarlyCount() {
+        return this.earlyCount;
+    }
+
+    /**
+     * Returns the window for a measured value with the specified kismet server <code>timestamp</code>, which is the
+     * late window if the measured value does not belong to an open window.
+     * 
+     * @param timestamp the kismet server timestamp in seconds.
+     * @return the window.
+     */
+    private Window window(long timestamp) {
+        long window = floorDiv(timestamp, this.windowSeconds);
+        if (this.firstWindow == Long.MIN_VALUE) {
+            // The windows within the allowed lateness before the first measured value are still open
+            this.firstWindow = window - (this.allowedLatenessSeconds + this.windowSeconds - 1) / this.windowSeconds;
+        }
+        if (window < this.firstWindow || window - this.firstWindow >= this.windows.length) {
+            if (window < this.firstWindow) {
+                ++this.lateCount;
+            }
+            else {
+                ++this.earlyCount;
+            }
+            Window w = this.lateWindow;
+            if (w.size() == 0 || window * this.windowSeconds < w.start) {
+                w.start = window * this.windowSeconds;
+            }
+            if (w.size() == 0 || (window + 1) * this.windowSeconds > w.end) {
+                w.end = (window + 1) * this.windowSeconds;
+            }
+            return w;
+        }
+        int index = (int) window & (this.windows.length - 1);
+        Window w = this.windows[index];
+        if (w == null) {
+            w = new Window();
+            this.windows[index] = w;
+        }
+        this.size++;
+        return w;
+    }
+
+    /**
+     * Hands the values of the specified window as message to the delivery stage, and empties the window.
+     * 
+     * @param window the window.
+     * @param start the kismet server timestamp of the start of the window in seconds (inclusive).
+     * @param end the kismet server timestamp of the end of the window in seconds (exclusive).
+     * @param timestamp the kismet server timestamp of the TIME sentence in seconds.
+     * @param late whether the window holds the measured values that missed their windows.
+     */
+    private void dispatch(Window window, long start, long end, long timestamp, boolean late) {
+        UUID[] drones = this.droneTable.snapshot();
+        KismetMeasuredValueBatch measuredValues = window.measuredValues.build(drones);
+        KismetMeasuredValueBatch expiredValues = (window.expiredValues.size() > 0) ? window.expiredValues.build(drones) : KismetMeasuredValueBatch.empty();
+        this.dispatcher.dispatch(new KismetWindowedMessage(this.droneRegistry, measuredValues, expiredValues, start, end, timestamp, this.afterGap, late));
+        this.afterGap = false;
+    }
+
+    /**
+     * Divides <code>x</code> by <code>y</code>, rounding towards negative infinity.
+     * 
+     * @param x the dividend.
+     * @param y the positive divisor.
+     * @return the quotient rounded towards negative infinity.
+     */
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        return (x % y < 0) ? q - 1 : q;
+    }
+
+    /**
+     * The measured and expired values of a window.
+     */
+    private static final class Window {
+        /** The measured values. */
+        final KismetMeasuredValueBatchBuilder measuredValues = new KismetMeasuredValueBatchBuilder();
+
+        /** The last measured values of the expired pairs. */
+        final KismetMeasuredValueBatchBuilder expiredValues = new KismetMeasuredValueBatchBuilder();
+
+        /** The kismet server timestamp of the start of the late window in seconds (inclusive). */
+        long start;
+
+        /** The kismet server timestamp of the end of the late window in seconds (exclusive). */
+        long end;
+
+        /**
+         * Returns the number of measured and expired values in this window.
+         * 
+         * @return the number of values.
+         */
+        int size() {
+            return this.measuredValues.size() + this.expiredValues.size();
+        }
+    }
+}
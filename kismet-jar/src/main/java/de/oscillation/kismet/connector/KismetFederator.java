@@ -0,0 +1,366 @@
+package de.oscillation.kismet.connector;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Merges the sentences of several kismet servers into a single stream ordered by kismet server time, and removes the
+ * measured values of the same (device, drone, timestamp) reported by more than one kismet server, for activations
+ * that federate kismet servers with overlapping drones.
+ * <p>
+ * Every kismet server feeds an input of its own, and the <code>*TIME:</code> sentences of a kismet server advance its
+ * watermark. Measured values are buffered per timestamp until the merged watermark, the minimum of the watermarks of
+ * all kismet servers, passes their timestamp, and are then handed to the next stage in timestamp order, followed by a
+ * TIME sentence with the merged watermark. Kismet servers lagging more than the maximum lag behind the most advanced
+ * kismet server (including servers that are not connected) are not waited for, and their measured values that arrive
+ * after the merged watermark passed their timestamp are dropped as late. Duplicates are detected with one
+ * {@link KismetLongSet} per kismet server and buffered timestamp, so the dedup window slides with the merged
+ * watermark and only spans the buffered timestamps, while repeated measured values from the same kismet server pass.
+ * <p>
+ * The inputs may be fed concurrently by the connections to the kismet servers, and are serialized by the federator.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetActivationSpec#getFederatedServers()
+ */
+public class KismetFederator {
+    /** The next stage. */
+    private final KismetProtocolStage next;
+
+    /** The maximum time in seconds a kismet server may lag behind before the merge stops waiting for it. */
+    private final long maxLagSeconds;
+
+    /** The inputs, one per kismet server. */
+    private final Input[] inputs;
+
+    /** The watermarks of the kismet servers, or <code>Long.MIN_VALUE</code> before their first TIME sentence. */
+    private final long[] watermarks;
+
+    /** The drones referenced by the buffered measured values. */
+    private final KismetDroneTable droneTable = new KismetDroneTable();
+
+    /** The buffered measured values by timestamp. */
+    private final TreeMap<Long, Bucket> buckets = new TreeMap<Long, Bucket>();
+
+    /** The merged watermark, i.e. all measured values with smaller timestamps were handed to the next stage. */
+    private long watermark = Long.MIN_VALUE;
+
+    /** The number of measured values dropped because they were reported by another kismet server before. */
+    private long duplicateCount;
+
+    /** The number of measured values dropped because the merged watermark already passed their timestamp. */
+    private long lateCount;
+
+    /** The number of buffered measured values. */
+    private volatile int pendingCount;
+
+    /**
+     * Constructs a new federator with the specified parameters.
+     * 
+     * @param next the next stage.
+     * @param servers the number of kismet servers.
+     * @param maxLagSeconds the maximum time in seconds a kismet server may lag behind the most advanced kismet server
+     *            before the merge stops waiting for it.
+     * @throws IllegalArgumentException if either <code>servers</code> is not positive, or <code>maxLagSeconds</code>
+     *             is negative.
+     * @throws NullPointerException if <code>next</code> is <code>null</code>.
+     */
+    public KismetFederator(KismetProtocolStage next, int servers, long maxLagSeconds) {
+        if (next == null) {
+            throw new NullPointerException("next must not be null");
+        }
+        if (servers <= 0) {
+            throw new IllegalArgumentException("Invalid servers " + servers);
+        }
+        if (maxLagSeconds < 0) {
+            throw new IllegalArgumentException("Invalid maxLagSeconds " + maxLagSeconds);
+        }
+        this.next = next;
+        this.maxLagSeconds = maxLagSeconds;
+        this.inputs = new Input[servers];
+        for (int i = 0; i < servers; ++i) {
+            this.inputs[i] = new Input(i);
+        }
+        this.watermarks = new long[servers];
+        Arrays.fill(this.watermarks, Long.MIN_VALUE);
+    }
+
+    /**
+     * Returns the input for the kismet server with the specified <code>index</code>.
+     * 
+     * @param index the index of the kismet server.
+     * @return the input stage.
+     * @throws IndexOutOfBoundsException if <code>index</code> is out of range.
+     */
+    public KismetProtocolStage getInput(int index) {
+        return this.inputs[index];
+    }
+
+    /**
+     * Returns the number of measured values buffered by this federator and held by the following stages.
+     * 
+     * @return the number of pending measured values.
+     */
+    public int getPendingCount() {
+        return this.pendingCount + this.next.getPendingCount();
+    }
+
+    /**
+     * Returns the number of measured values dropped so far, because they were reported by another kismet server before.
+     * 
+     * @return the number of duplicates.
+     */
+    public synchronized long getDuplicateCount() {
+        return this.duplicateCount;
+    }
+
+    /**
+     * Returns the number of measured values dropped so far, because the merged watermark already passed their
+     * timestamp.
+     * 
+     * @return the number of late measured values.
+     */
+    public synchronized long getLateCount() {
+        return this.lateCount;
+    }
+
+    /**
+     * Buffers a measured value reported by the kismet server with the specified index, unless it is late or was
+     * reported by another kismet server before.
+     * 
+     * @param server the index of the kismet server.
+     * @param deviceId the EUI-48 address of the device in the lower 48 bits.
+     * @param droneIdMsb the most significant 64 bits of the drone UUID.
+     * @param droneIdLsb the least significant 64 bits of the drone UUID.
+     * @param timestamp the kismet server timestamp in seconds.
+     * @param signalStrength the signal strength in dBm.
+     */
+    private synchronized void onClientSource(int server, long deviceId, long droneIdMsb, long droneIdLsb, long timestamp, int signalStrength) {
+        if (timestamp < this.watermark) {
+            this.lateCount++;
+            return;
+        }
+        Bucket bucket = this.buckets.get(timestamp);
+        if (bucket == null) {
+            bucket = new Bucket(this.inputs.length);
+            this.buckets.put(timestamp, bucket);
+        }
+        if (bucket.add(server, KismetAggregateTable.key(deviceId, this.droneTable.indexOf(droneIdMsb, droneIdLsb)), signalStrength)) {
+            this.pendingCount++;
+        }
+        else {
+            this.duplicateCount++;
+        }
+    }
+
+    /**
+     * Advances the watermark of the kismet server with the specified index, and hands the measured values passed by the
+     * merged watermark to the next stage.
+     * 
+     * @param server the index of the kismet server.
+     * @param timestamp the kismet server timestamp in seconds.
+     */
+    private synchronized void onTime(int server, long timestamp) {
+        if (timestamp <= this.watermarks[server]) {
+            return;
+        }
+        this.watermarks[server] = timestamp;
+
+        // Determine the merged watermark, ignoring the kismet servers lagging behind
+        long maxWatermark = Long.MIN_VALUE;
+        for (long watermark : this.watermarks) {
+            maxWatermark = Math.max(maxWatermark, watermark);
+        }
+        long watermark = Long.MAX_VALUE;
+        for (long serverWatermark : this.watermarks) {
+            if (serverWatermark != Long.MIN_VALUE && serverWatermark >= maxWatermark - this.maxLagSeconds) {
+                watermark = Math.min(watermark, serverWatermark);
+            }
+        }
+        if (watermark <= this.watermark) {
+            return;
+        }
+        this.watermark = watermark;
+
+        // Release the buffered measured values in timestamp order
+        int pendingCount = this.pendingCount;
+        for (Iterator<Map.Entry<Long, Bucket>> it = this.buckets.headMap(watermark).entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Long, Bucket> entry = it.next();
+            long bucketTimestamp = entry.getKey();
+            Bucket bucket = entry.getValue();
+            for (int i = 0; i < bucket.size; ++i) {
+                long key = bucket.keys[i];
+                UUID droneId = this.droneTable.get((int) (key >>> 48));
+                this.next.onClientSource(key & 0xffffffffffffL, droneId.getMostSignificantBits(), droneId.getLeastSignificantBits(), bucketTimestamp,
+                                         bucket.signalStrengths[i]);
+            }
+            pendingCount -= bucket.size;
+            it.remove();
+        }
+        this.pendingCount = pendingCount;
+        this.next.onTime(watermark);
+    }
+
+    /**
+     * Forwards a drone announced by any of the kismet servers to the next stage.
+     * 
+     * @param droneIdMsb the most significant 64 bits of the drone UUID.
+     * @param droneIdLsb the least significant 64 bits of the drone UUID.
+     * @param name the name of the drone.
+     */
+    private synchronized void onSource(long droneIdMsb, long droneIdLsb, String name) {
+        this.next.onSource(droneIdMsb, droneIdLsb, name);
+    }
+
+    /**
+     * Forwards an expired pair to the next stage.
+     * 
+     * @param deviceId the EUI-48 address of the device in the lower 48 bits.
+     * @param droneIdMsb the most significant 64 bits of the drone UUID.
+     * @param droneIdLsb the least significant 64 bits of the drone UUID.
+     * @param timestamp the kismet server timestamp of the last measured value in seconds.
+     * @param signalStrength the last signal strength in dBm.
+     */
+    private synchronized void onExpire(long deviceId, long droneIdMsb, long droneIdLsb, long timestamp, int signalStrength) {
+        this.next.onExpire(deviceId, droneIdMsb, droneIdLsb, timestamp, signalStrength);
+    }
+
+    /**
+     * Forwards a gap in the stream of any of the kismet servers to the next stage, since the merged stream lacks the
+     * measured values of that kismet server as well.
+     */
+    private synchronized void onGap() {
+        this.next.onGap();
+    }
+
+    /**
+     * The input for a single kismet server.
+     */
+    private final class Input implements KismetProtocolStage {
+        /** The index of the kismet server. */
+        private final int server;
+
+        /**
+         * Constructs a new input for the kismet server with the specified index.
+         * 
+         * @param server the index of the kismet server.
+         */
+        Input(int server) {
+            this.server = server;
+        }
+
+        /**
+         * @see KismetProtocolHandler#onClientSource(long, long, long, long, int)
+         */
+        @Override
+        public void onClientSource(long deviceId, long droneIdMsb, long droneIdLsb, long timestamp, int signalStrength) {
+            KismetFederator.this.onClientSource(this.server, deviceId, droneIdMsb, droneIdLsb, timestamp, signalStrength);
+        }
+
+        /**
+         * @see KismetProtocolHandler#onSource(long, long, String)
+         */
+        @Override
+        public void onSource(long droneIdMsb, long droneIdLsb, String name) {
+            KismetFederator.this.onSource(droneIdMsb, droneIdLsb, name);
+        }
+
+        /**
+         * @see KismetProtocolHandler#onTime(long)
+         */
+        @Override
+        public void onTime(long timestamp) {
+            KismetFederator.this.onTime(this.server, timestamp);
+        }
+
+        /**
+         * @see KismetProtocolStage#onExpire(long, long, long, long, int)
+         */
+        @Override
+        public void onExpire(long deviceId, long droneIdMsb, long droneIdLsb, long timestamp, int signalStrength) {
+            KismetFederator.this.onExpire(deviceId, droneIdMsb, droneIdLsb, timestamp, signalStrength);
+        }
+
+        /**
+         * @see KismetProtocolStage#onGap()
+         */
+        @Override
+        public void onGap() {
+            KismetFederator.this.onGap();
+        }
+
+        /**
+         * @see KismetProtocolStage#getPendingCount()
+         */
+        @Override
+        public int getPendingCount() {
+            return KismetFederator.this.getPendingCount();
+        }
+
+        /**
+         * Ignored, since the federator is released with the activation.
+         * 
+         * @see KismetProtocolStage#release()
+         */
+        @Override
+        public void release() {
+        }
+    }
+
+    /**
+     * The measured values buffered for a single timestamp.
+     */
+    private static final class Bucket {
+        /** The packed keys per kismet server, created lazily. */
+        private final KismetLongSet[] keySets;
+
+        /** The packed keys of the measured values in order of arrival. */
+        private long[] keys = new long[16];
+
+        /** The signal strengths of the measured values in dBm. */
+        private int[] signalStrengths = new int[16];
+
+        /** The number of measured values. */
+        private int size;
+
+        /**
+         * Constructs a new bucket for the specified number of kismet servers.
+         * 
+         * @param servers the number of kismet servers.
+         */
+        Bucket(int servers) {
+            this.keySets = new KismetLongSet[servers];
+        }
+
+        /**
+         * Adds a measured value reported by the kismet server with the specified index, unless another kismet server
+         * reported the same pair for this timestamp before.
+         * 
+         * @param server the index of the kismet server.
+         * @param key the packed key of the pair.
+         * @param signalStrength the signal strength in dBm.
+         * @return <code>true</code> if the measured value was added, <code>false</code> if it is a duplicate.
+         */
+        boolean add(int server, long key, int signalStrength) {
+            for (int i = 0; i < this.keySets.length; ++i) {
+                if (i != server && this.keySets[i] != null && this.keySets[i].contains(key)) {
+                    return false;
+                }
+            }
+            if (this.keySets[server] == null) {
+                this.keySets[server] = new KismetLongSet();
+            }
+            this.keySets[server].add(key);
+            if (this.size == this.keys.length) {
+                this.keys = Arrays.copyOf(this.keys, this.size * 2);
+                this.signalStrengths = Arrays.copyOf(this.signalStrengths, this.size * 2);
+            }
+            this.keys[this.size] = key;
+            this.signalStrengths[this.size] = signalStrength;
+            this.size++;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package de.oscillation.kismet.connector;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Concurrent histogram of non-negative values with log-linear buckets in the style of HdrHistogram: values below
+ * <code>64</code> are counted exactly, larger values in 32 buckets per power of two, so every value is reported with
+ * a relative error of at most about 3%, at a fixed footprint of less than 2000 buckets for the whole range of
+ * <code>long</code>. Recording a value never allocates and never blocks.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetResourceAdapterMetrics
+ */
+public class KismetHistogram {
+    /** The number of bits of the values that determine the bucket within a power of two, plus one. */
+    private static final int SUB_BUCKET_BITS = 6;
+
+    /** The number of values counted exactly. */
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /** The number of buckets needed to cover all non-negative long values. */
+    private static final int BUCKET_COUNT = bucketOf(Long.MAX_VALUE) + 1;
+
+    /** The number of recorded values per bucket. */
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+    /** The number of recorded values. */
+    private final KismetStripedCounter count = new KismetStripedCounter();
+
+    /** The sum of the recorded values. */
+    private final KismetStripedCounter sum = new KismetStripedCounter();
+
+    /** The maximum recorded value. */
+    private volatile long max;
+
+    /**
+     * Records the specified <code>value</code>. Negative values are recorded as <code>0</code>.
+     * 
+     * @param value the value.
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        this.buckets.getAndIncrement(bucketOf(value));
+        this.count.increment();
+        this.sum.add(value);
+        if (value > this.max) {
+            // Racy, but a lost update only affects the maximum if two threads record new maxima at the same time
+            this.max = value;
+        }
+    }
+
+    /**
+     * Returns the number of recorded values.
+     * 
+     * @return the number of recorded values.
+     */
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    /**
+     * Returns the mean of the recorded values.
+     * 
+     * @return the mean, or <code>0</code> if no value was recorded.
+     */
+    public long getMean() {
+        long count = this.count.sum();
+        return count > 0 ? this.sum.sum() / count : 0;
+    }
+
+    /**
+     * Returns the maximum recorded value.
+     * 
+     * @return the maximum, or <code>0</code> if no value was recorded.
+     */
+    public long getMax() {
+        return this.max;
+    }
+
+    /**
+     * Returns the value at the specified <code>percentile</code>, i.e. the highest value equivalent to the bucket
+     * containing the recorded value below which the specified percentage of the recorded values falls.
+     * 
+     * @param percentile the percentile between <code>0</code> and <code>100</code>.
+     * @return the value at the percentile, or <code>0</code> if no value was recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            counts[i] = this.buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100.0, Math.max(0.0, percentile)) / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestEquivalentValue(i), this.max);
+            }
+        }
+        return this.max;
+    }
+
+    /**
+     * Returns the bucket of the specified non-negative <code>value</code>.
+     * 
+     * @param value the value.
+     * @return the index of the bucket.
+     */
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return (shift << (SUB_BUCKET_BITS - 1)) + (int) (value >>> shift);
+    }
+
+    /**
+     * Returns the highest value counted in the specified <code>bucket</code>.
+     * 
+     * @param bucket the index of the bucket.
+     * @return the highest value of the bucket.
+     */
+    static long highestEquivalentValue(int bucket) {
+        if (bucket < SUB_BUCKET_COUNT) {
+            return bucket;
+        }
+        int shift = (bucket >>> (SUB_BUCKET_BITS - 1)) - 1;
+        long subBucket = bucket - ((long) shift << (SUB_BUCKET_BITS - 1));
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,97 @@
+package de.oscillation.kismet.connector;
+
+/**
+ * Set of primitive <code>long</code> values, based on an open addressing hash table with linear probing, so that
+ * lookups neither allocate nor depend on the number of elements. Elements can only be added, never removed. Instances
+ * of this class are not thread-safe, but may be shared once fully populated.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetMeasurementFilter
+ */
+public class KismetLongSet {
+    /** The initial number of slots. */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** The slots of the hash table, <code>0</code> for empty slots. */
+    private long[] table = new long[INITIAL_CAPACITY];
+
+    /** The number of non-zero elements. */
+    private int size;
+
+    /** Whether the set contains <code>0</code>, which cannot be stored in the hash table. */
+    private boolean containsZero;
+
+    /**
+     * Adds the specified <code>value</code> to this set.
+     * 
+     * @param value the value to add.
+     * @return <code>true</code> if the value was added, <code>false</code> if it was already present.
+     */
+    public boolean add(long value) {
+        if (value == 0) {
+            boolean added = !this.containsZero;
+            this.containsZero = true;
+            return added;
+        }
+        int mask = this.table.length - 1;
+        int slot = KismetAggregateTable.hash(value) & mask;
+        for (long element; (element = this.table[slot]) != 0; slot = (slot + 1) & mask) {
+            if (element == value) {
+                return false;
+            }
+        }
+        this.table[slot] = value;
+        if (++this.size * 2 > this.table.length) {
+            rehash();
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether this set contains the specified <code>value</code>.
+     * 
+     * @param value the value to look up.
+     * @return <code>true</code> if the value is present, <code>false</code> otherwise.
+     */
+    public boolean contains(long value) {
+        if (value == 0) {
+            return this.containsZero;
+        }
+        long[] table = this.table;
+        int mask = table.length - 1;
+        int slot = KismetAggregateTable.hash(value) & mask;
+        for (long element; (element = table[slot]) != 0; slot = (slot + 1) & mask) {
+            if (element == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of elements in this set.
+     * 
+     * @return the number of elements.
+     */
+    public int size() {
+        return this.containsZero ? this.size + 1 : this.size;
+    }
+
+    /**
+     * Rebuilds the hash table with twice the capacity.
+     */
+    private void rehash() {
+        long[] table = new long[this.table.length * 2];
+        int mask = table.length - 1;
+        for (long element : this.table) {
+            if (element != 0) {
+                int slot = KismetAggregateTable.hash(element) & mask;
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = element;
+            }
+        }
+        this.table = table;
+    }
+}
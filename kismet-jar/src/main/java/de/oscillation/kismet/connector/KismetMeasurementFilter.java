@@ -0,0 +1,240 @@
+package de.oscillation.kismet.connector;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Declarative filter for the measured values, which is evaluated by the {@link KismetProtocolParser} against the raw
+ * fields of a <code>*CLISRC:</code> sentence, before any object is allocated for it, if the activation is the only one
+ * of its connection, and otherwise by the {@link KismetActivationGroup} before the measured value is handed to the
+ * activation. A measured value is accepted if its device is not denied, and is either explicitly allowed or matches
+ * one of the allowed address prefixes (if any allow list or prefix is configured), if its drone is one of the selected
+ * drones (if any are selected), and if its signal strength reaches the configured floor.
+ * <p>
+ * Device addresses are looked up in {@link KismetLongSet}s, and address prefixes of one to six octets are looked up
+ * in a single set per configured prefix length, so the cost of a lookup does not depend on the number of entries.
+ * Instances of this class are immutable.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetActivationSpec#getDeviceAllowList()
+ * @see KismetActivationSpec#getDeviceDenyList()
+ * @see KismetActivationSpec#getDevicePrefixes()
+ * @see KismetActivationSpec#getDroneIds()
+ * @see KismetActivationSpec#getMinSignalStrength()
+ */
+public final class KismetMeasurementFilter {
+    /** The explicitly allowed devices, or <code>null</code> if none. */
+    private final KismetLongSet allowedDevices;
+
+    /** The denied devices, or <code>null</code> if none. */
+    private final KismetLongSet deniedDevices;
+
+    /** The allowed address prefixes, tagged with their length in octets in the upper 16 bits, or <code>null</code>. */
+    private final KismetLongSet allowedPrefixes;
+
+    /** The bit mask of the allowed address prefix lengths in octets. */
+    private final int allowedPrefixLengths;
+
+    /** The most significant 64 bits of the selected drones, or <code>null</code> if all drones are selected. */
+    private final long[] droneIdMsbs;
+
+    /** The least significant 64 bits of the selected drones, or <code>null</code> if all drones are selected. */
+    private final long[] droneIdLsbs;
+
+    /** The minimum signal strength in dBm. */
+    private final int minSignalStrength;
+
+    /**
+     * Constructs a new filter from the textual representations of its parameters.
+     * 
+     * @param deviceAllowList the comma separated list of explicitly allowed EUI-48 addresses, or <code>null</code>.
+     * @param deviceDenyList the comma separated list of denied EUI-48 addresses, or <code>null</code>.
+     * @param devicePrefixes the comma separated list of allowed address prefixes of one to six octets, such as the
+     *            three octet OUI of a vendor, or <code>null</code>.
+     * @param droneIds the comma separated list of selected drone UUIDs, or <code>null</code> for all drones.
+     * @param minSignalStrength the minimum signal strength in dBm, or <code>null</code> for no minimum.
+     * @throws IllegalArgumentException if any of the lists contains a malformed entry.
+     */
+    public KismetMeasurementFilter(String deviceAllowList, String deviceDenyList, String devicePrefixes, String droneIds, Integer minSignalStrength) {
+        this.allowedDevices = parseDevices(deviceAllowList);
+        this.deniedDevices = parseDevices(deviceDenyList);
+        KismetLongSet allowedPrefixes = null;
+        int allowedPrefixLengths = 0;
+        for (String entry : split(devicePrefixes)) {
+            if (allowedPrefixes == null) {
+                allowedPrefixes = new KismetLongSet();
+            }
+            int length = (entry.length() + 1) / 3;
+            allowedPrefixes.add(prefixKey(parseOctets(entry, 1, 6), length));
+            allowedPrefixLengths |= 1 << length;
+        }
+        this.allowedPrefixes = allowedPrefixes;
+        this.allowedPrefixLengths = allowedPrefixLengths;
+        String[] drones = split(droneIds);
+        if (drones.length > 0) {
+            this.droneIdMsbs = new long[drones.length];
+            this.droneIdLsbs = new long[drones.length];
+            for (int i = 0; i < drones.length; ++i) {
+                UUID droneId = UUID.fromString(drones[i]);
+                this.droneIdMsbs[i] = droneId.getMostSignificantBits();
+                this.droneIdLsbs[i] = droneId.getLeastSignificantBits();
+            }
+        }
+        else {
+            this.droneIdMsbs = null;
+            this.droneIdLsbs = null;
+        }
+        this.minSignalStrength = (minSignalStrength != null) ? minSignalStrength : Integer.MIN_VALUE;
+    }
+
+    /**
+     * Constructs the filter configured by the specified <code>activationSpec</code>.
+     * 
+     * @param activationSpec the kismet activation specification.
+     * @return the filter, or <code>null</code> if the <code>activationSpec</code> does not configure any filter.
+     * @throws IllegalArgumentException if any of the filter properties is malformed.
+     */
+    public static KismetMeasurementFilter fromActivationSpec(KismetActivationSpec activationSpec) {
+        KismetMeasurementFilter filter = new KismetMeasurementFilter(activationSpec.getDeviceAllowList(), activationSpec.getDeviceDenyList(),
+                                                                     activationSpec.getDevicePrefixes(), activationSpec.getDroneIds(),
+                                                                     activationSpec.getMinSignalStrength());
+        if (filter.allowedDevices == null && filter.deniedDevices == null && filter.allowedPrefixes == null && filter.droneIdMsbs == null
+            && filter.minSignalStrength == Integer.MIN_VALUE) {
+            return null;
+        }
+        return filter;
+    }
+
+    /**
+     * Checks whether measured values of the specified device are accepted.
+     * 
+     * @param deviceId the EUI-48 address of the device in the lower 48 bits.
+     * @return <code>true</code> if the device is accepted, <code>false</code> otherwise.
+     */
+    public boolean acceptsDevice(long deviceId) {
+        if (this.deniedDevices != null && this.deniedDevices.contains(deviceId)) {
+            return false;
+        }
+        if (this.allowedDevices == null && this.allowedPrefixes == null) {
+            return true;
+        }
+        if (this.allowedDevices != null && this.allowedDevices.contains(deviceId)) {
+            return true;
+        }
+        if (this.allowedPrefixes != null) {
+            for (int length = 1; length <= 6; ++length) {
+                if ((this.allowedPrefixLengths & (1 << length)) != 0
+                    && this.allowedPrefixes.contains(prefixKey(deviceId >>> ((6 - length) * 8), length))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether measured values of the specified drone are accepted.
+     * 
+     * @param droneIdMsb the most significant 64 bits of the drone UUID.
+     * @param droneIdLsb the least significant 64 bits of the drone UUID.
+     * @return <code>true</code> if the drone is accepted, <code>false</code> otherwise.
+     */
+    public boolean acceptsDrone(long droneIdMsb, long droneIdLsb) {
+        if (this.droneIdMsbs == null) {
+            return true;
+        }
+        // The number of drones is small, so a linear scan beats any hashing
+        for (int i = 0; i < this.droneIdMsbs.length; ++i) {
+            if (this.droneIdMsbs[i] == droneIdMsb && this.droneIdLsbs[i] == droneIdLsb) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether measured values with the specified signal strength are accepted.
+     * 
+     * @param signalStrength the signal strength in dBm.
+     * @return <code>true</code> if the signal strength is accepted, <code>false</code> otherwise.
+     */
+    public boolean acceptsSignalStrength(int signalStrength) {
+        return signalStrength >= this.minSignalStrength;
+    }
+
+    /**
+     * Tags an address prefix with its length, so that prefixes of different lengths can share a single set.
+     * 
+     * @param prefix the address prefix in the lower bits.
+     * @param length the length of the prefix in octets.
+     * @return the tagged prefix.
+     */
+    private static long prefixKey(long prefix, int length) {
+        return prefix | ((long) length << 48);
+    }
+
+    /**
+     * Parses a comma separated list of EUI-48 addresses into a set.
+     * 
+     * @param list the comma separated list, or <code>null</code>.
+     * @return the set of addresses, or <code>null</code> if the list is empty.
+     * @throws IllegalArgumentException if the list contains a malformed address.
+     */
+    private static KismetLongSet parseDevices(String list) {
+        KismetLongSet set = null;
+        for (String entry : split(list)) {
+            if (set == null) {
+                set = new KismetLongSet();
+            }
+            set.add(parseOctets(entry, 6, 6));
+        }
+        return set;
+    }
+
+    /**
+     * Parses a sequence of hexadecimal octets separated by colons or dashes, such as <code>00:11:22</code>.
+     * 
+     * @param s the string to parse.
+     * @param minLength the minimum number of octets.
+     * @param maxLength the maximum number of octets.
+     * @return the octets in the lower bits.
+     * @throws IllegalArgumentException if the string is malformed.
+     */
+    private static long parseOctets(String s, int minLength, int maxLength) {
+        int length = (s.length() + 1) / 3;
+        if (s.length() != length * 3 - 1 || length < minLength || length > maxLength) {
+            throw new IllegalArgumentException("Invalid address " + s);
+        }
+        long value = 0;
+        for (int i = 0; i < s.length(); i += 3) {
+            int hi = Character.digit(s.charAt(i), 16);
+            int lo = Character.digit(s.charAt(i + 1), 16);
+            char separator = (i + 2 < s.length()) ? s.charAt(i + 2) : ':';
+            if (hi < 0 || lo < 0 || (separator != ':' && separator != '-')) {
+                throw new IllegalArgumentException("Invalid address " + s);
+            }
+            value = (value << 8) | (hi << 4) | lo;
+        }
+        return value;
+    }
+
+    /**
+     * Splits a comma separated list into its trimmed, non-empty entries.
+     * 
+     * @param list the comma separated list, or <code>null</code>.
+     * @return the entries.
+     */
+    private static String[] split(String list) {
+        if (list == null || list.trim().length() == 0) {
+            return new String[0];
+        }
+        String[] entries = list.trim().split("\\s*,\\s*");
+        int n = 0;
+        for (String entry : entries) {
+            if (entry.length() > 0) {
+                entries[n++] = entry;
+            }
+        }
+        return (n == entries.length) ? entries : Arrays.copyOf(entries, n);
+    }
+}
@@ -0,0 +1,390 @@
+package de.oscillation.kismet.connector;
+
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Collects the drones and measured values decoded from the kismet protocol, and hands them as {@link KismetMessage}
+ * to the {@link KismetMessageSink} whenever the current batch is complete. A batch is complete when the kismet
+ * server sends a <code>*TIME:</code> sentence (unless disabled), at the end of every read from the kismet server (if
+ * enabled), when it reaches the maximum batch size, or when its oldest measured value has waited for the maximum batch
+ * latency, whichever comes first. Batches completed by a <code>*TIME:</code> sentence, a read or the latency limit are
+ * held back until they reach the minimum batch size.
+ * <p>
+ * The collector must only be fed by a single connection, but may be flushed concurrently by the timer. The timer never
+ * waits for the lock held by the connection, which may be blocked by the delivery stage, but retries later instead, and
+ * the pending count is published without the lock as well.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetServerConnection
+ * @see KismetActivationSpec#getMaxBatchSize()
+ * @see KismetActivationSpec#getMaxBatchLatencyMillis()
+ * @see KismetActivationSpec#getMinBatchSize()
+ * @see KismetActivationSpec#getBatchOnTime()
+ * @see KismetActivationSpec#getBatchOnRead()
+ */
+public class KismetMessageCollector implements KismetProtocolStage {
+    /** The delivery stage for the collected messages. */
+    private final KismetMessageSink dispatcher;
+
+    /** The maximum number of measured values per message, or <code>0</code> for no limit. */
+    private final int maxBatchSize;
+
+    /** The maximum time in milliseconds a measured value waits for delivery, or <code>0</code> for no limit. */
+    private final long maxBatchLatencyMillis;
+
+    /** The minimum number of measured values for messages completed by TIME sentences, reads or the latency limit. */
+    private final int minBatchSize;
+
+    /** Whether TIME sentences complete the current batch. */
+    private final boolean batchOnTime;
+
+    /** Whether the end of every read from the kismet server completes the current batch. */
+    private final boolean batchOnRead;
+
+    /** The timer used to enforce the latency limit, or <code>null</code> if there's no latency limit. */
+    private final Timer timer;
+
+    /** The lock guarding the current batch, which is held while handing a message to the delivery stage. */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** The registry of known drones, which is shared by the messages until a drone is added or renamed. */
+    private KismetDroneRegistry droneRegistry = KismetDroneRegistry.EMPTY;
+
+    /** The drones referenced by the measured values. */
+    private final KismetDroneTable droneTable = new KismetDroneTable();
+
+    /** The values measured since the last message was delivered. */
+    private final KismetMeasuredValueBatchBuilder measuredValues = new KismetMeasuredValueBatchBuilder();
+
+    /** The last values measured for the pairs expired since the last message was delivered. */
+    private final KismetMeasuredValueBatchBuilder expiredValues = new KismetMeasuredValueBatchBuilder();
+
+    /** The last kismet server timestamp received via TIME sentence. */
+    private long timestamp;
+
+    /** The pending task enforcing the latency limit for the current batch, if any. */
+    private TimerTask latencyTask;
+
+    /** Whether the connection was interrupted since the last message was delivered. */
+    private boolean afterGap;
+
+    /** The number of values in the current batch, which is readable without the lock. */
+    private volatile int pendingCount;
+
+    /**
+     * Constructs a new collector, which hands its messages to the specified <code>dispatcher</code> whenever the
+     * kismet server sends a <code>*TIME:</code> sentence.
+     * 
+     * @param dispatcher the delivery stage for the collected messages.
+     * @throws NullPointerException if <code>dispatcher</code> is <code>null</code>.
+     */
+    public KismetMessageCollector(KismetMessageSink dispatcher) {
+        this(dispatcher, 0, 0L, 0, true, false, null);
+    }
+
+    /**
+     * Constructs a new collector, which hands its messages to the specified <code>dispatcher</code> according to the
+     * batching policy of the <code>activationSpec</code>.
+     * 
+     * @param dispatcher the delivery stage for the collected messages.
+     * @param activationSpec the kismet activation specification.
+     * @param timer the timer used to enforce the latency limit.
+     * @throws NullPointerException if <code>dispatcher</code> is <code>null</code>, or the <code>activationSpec</code>
+     *             specifies a latency limit, but <code>timer</code> is <code>null</code>.
+     */
+    public KismetMessageCollector(KismetMessageSink dispatcher, KismetActivationSpec activationSpec, Timer timer) {
+        this(dispatcher, activationSpec, activationSpec.getBatchOnRead(), timer);
+    }
+
+    /**
+     * Constructs a new collector, which hands its messages to the specified <code>dispatcher</code> according to the
+     * batching policy of the <code>activationSpec</code>, but completes batches at the end of every read as specified
+     * by <code>batchOnRead</code>.
+     * 
+     * @param dispatcher the delivery stage for the collected messages.
+     * @param activationSpec the kismet activation specification.
+     * @param batchOnRead whether the end of every read from the kismet server completes the current batch.
+     * @param timer the timer used to enforce the latency limit.
+     * @throws NullPointerException if <code>dispatcher</code> is <code>null</code>, or the <code>activationSpec</code>
+     *             specifies a latency limit, but <code>timer</code> is <code>null</code>.
+     */
+    public KismetMessageCollector(KismetMessageSink dispatcher, KismetActivationSpec activationSpec, boolean batchOnRead, Timer timer) {
+        this(dispatcher, activationSpec.getMaxBatchSize(), activationSpec.getMaxBatchLatencyMillis(), activationSpec.getMinBatchSize(), activationSpec.getBatchOnTime(), batchOnRead,
+             timer);
+    }
+
+    /**
+     * Constructs a new collector with the specified batching policy.
+     * 
+     * @param dispatcher the delivery stage for the collected messages.
+     * @param maxBatchSize the maximum number of measured values per message, or <code>0</code> for no limit.
+     * @param maxBatchLatencyMillis the maximum time in milliseconds a measured value waits for delivery, or
+     *            <code>0</code> for no limit.
+     * @param minBatchSize the minimum number of measured values for messages completed by TIME sentences or the
+     *            latency limit.
+     * @param batchOnTime whether TIME sentences complete the current batch.
+     * @param timer the timer used to enforce the latency limit.
+     * @throws NullPointerException if <code>dispatcher</code> is <code>null</code>, or
+     *             <code>maxBatchLatencyMillis</code> is positive, but <code>timer</code> is <code>null</code>.
+     */
+    public KismetMessageCollector(KismetMessageSink dispatcher, int maxBatchSize, long maxBatchLatencyMillis, int minBatchSize, boolean batchOnTime, Timer timer) {
+        this(dispatcher, maxBatchSize, maxBatchLatencyMillis, minBatchSize, batchOnTime, false, timer);
+    }
+
+    /**
+     * Constructs a new collector with the specified batching policy.
+     * 
+     * @param dispatcher the delivery stage for the collected messages.
+     * @param maxBatchSize the maximum number of measured values per message, or <code>0</code> for no limit.
+     * @param maxBatchLatencyMillis the maximum time in milliseconds a measured value waits for delivery, or
+     *            <code>0</code> for no limit.
+     * @param minBatchSize the minimum number of measured values for messages completed by TIME sentences, reads or the
+     *            latency limit.
+     * @param batchOnTime whether TIME sentences complete the current batch.
+     * @param batchOnRead whether the end of every read from the kismet server completes the current batch.
+     * @param timer the timer used to enforce the latency limit.
+     * @throws NullPointerException if <code>dispatcher</code> is <code>null</code>, or
+     *             <code>maxBatchLatencyMillis</code> is positive, but <code>timer</code> is <code>null</code>.
+     */
+    public KismetMessageCollector(KismetMessageSink dispatcher, int maxBatchSize, long maxBatchLatencyMillis, int minBatchSize, boolean batchOnTime, boolean batchOnRead,
+                                  Timer timer) {
+        if (dispatcher == null) {
+            throw new NullPointerException("dispatcher must not be null");
+        }
+        if (maxBatchLatencyMillis > 0 && timer == null) {
+            throw new NullPointerException("timer must not be null");
+        }
+        this.dispatcher = dispatcher;
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchLatencyMillis = maxBatchLatencyMillis;
+        this.minBatchSize = minBatchSize;
+        this.batchOnTime = batchOnTime;
+        this.batchOnRead = batchOnRead;
+        this.timer = maxBatchLatencyMillis > 0 ? timer : null;
+    }
+
+    /**
+     * @see KismetProtocolHandler#onClientSource(long, long, long, long, int)
+     */
+    @Override
+    public void onClientSource(long deviceId, long droneIdMsb, long droneIdLsb, long timestamp, int signalStrength) {
+        this.lock.lock();
+        try {
+            // Collect the measured value
+            this.measuredValues.add(deviceId, this.droneTable.indexOf(droneIdMsb, droneIdLsb), signalStrength, timestamp);
+            onCollect();
+        }
+        finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * @see KismetProtocolStage#onExpire(long, long, long, long, int)
+     */
+    @Override
+    public void onExpire(long deviceId, long droneIdMsb, long droneIdLsb, long timestamp, int signalStrength) {
+        this.lock.lock();
+        try {
+            // Collect the last measured value of the expired pair
+            this.expiredValues.add(deviceId, this.droneTable.indexOf(droneIdMsb, droneIdLsb), signalStrength, timestamp);
+            onCollect();
+        }
+        finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * @see KismetProtocolHandler#onSource(long, long, String)
+     */
+    @Override
+    public void onSource(long droneIdMsb, long droneIdLsb, String name) {
+        this.lock.lock();
+        try {
+            // Insert the drone into the drone registry (creating a new version only if something changed)
+            this.droneRegistry = this.droneRegistry.with(KismetIdentifierCache.getDefault().getDroneId(droneIdMsb, droneIdLsb), name);
+        }
+        finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * @see KismetProtocolHandler#onTime(long)
+     */
+    @Override
+    public void onTime(long timestamp) {
+        this.lock.lock();
+        try {
+            this.timestamp = timestamp;
+            if (this.batchOnTime && size() >= this.minBatchSize) {
+                flush();
+            }
+        }
+        finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Completes the current batch at the end of a read from the kismet server, if the collector batches on read and
+     * the batch reached the minimum batch size.
+     */
+    public void onReadComplete() {
+        this.lock.lock();
+        try {
+            if (this.batchOnRead && size() >= Math.max(this.minBatchSize, 1)) {
+                flush();
+            }
+        }
+        finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Delivers the values collected before the gap, if any, so that only the message containing the values received
+     * after the gap reports it.
+     * 
+     * @see KismetProtocolStage#onGap()
+     */
+    @Override
+    public void onGap() {
+        this.lock.lock();
+        try {
+            if (size() > 0) {
+                flush();
+            }
+            this.afterGap = true;
+        }
+        finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Cancels the pending latency task, if any.
+     * 
+     * @see KismetProtocolStage#release()
+     */
+    @Override
+    public void release() {
+        this.lock.lock();
+        try {
+            if (this.latencyTask != null) {
+                this.latencyTask.cancel();
+                this.latencyTask = null;
+            }
+        }
+        finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of values in the current batch without acquiring the lock, which the connection may hold
+     * while blocked by the delivery stage.
+     * 
+     * @see KismetProtocolStage#getPendingCount()
+     */
+    @Override
+    public int getPendingCount() {
+        return this.pendingCount;
+    }
+
+    /**
+     * Invoked by the timer when the oldest measured value of the current batch reached the latency limit. If the
+     * connection holds the lock, i.e. it is busy or blocked by the delivery stage, the timer retries after the latency
+     * limit instead of waiting, since the timer thread is shared.
+     * 
+     * @param task the latency task.
+     */
+    private void onLatencyLimit(final TimerTask task) {
+        if (!this.lock.tryLock()) {
+            this.timer.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    onLatencyLimit(task);
+                }
+            }, this.maxBatchLatencyMillis);
+            return;
+        }
+        try {
+            if (this.latencyTask == task) {
+                this.latencyTask = null;
+                if (size() >= Math.max(this.minBatchSize, 1) && !this.dispatcher.wouldBlock()) {
+                    flush();
+                }
+                else if (size() > 0) {
+                    // Wait for the batch to reach the minimum batch size (or the delivery stage to catch up,
+                    // since the timer thread is shared and must not block)
+                    scheduleLatencyTask();
+                }
+            }
+        }
+        finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Completes the current batch if it reached the maximum batch size, and otherwise starts enforcing the latency
+     * limit for it. Invoked whenever a value was added to the current batch.
+     */
+    private void onCollect() {
+        this.pendingCount = size();
+        if (this.maxBatchSize > 0 && size() >= this.maxBatchSize) {
+            flush();
+        }
+        else if (this.timer != null && this.latencyTask == null) {
+            scheduleLatencyTask();
+        }
+    }
+
+    /**
+     * Returns the number of values in the current batch, including the expired values.
+     * 
+     * @return the batch size.
+     */
+    private int size() {
+        return this.measuredValues.size() + this.expiredValues.size();
+    }
+
+    /**
+     * Schedules the task enforcing the latency limit for the current batch.
+     */
+    private void scheduleLatencyTask() {
+        this.latencyTask = new TimerTask() {
+            @Override
+            public void run() {
+                onLatencyLimit(this);
+            }
+        };
+        this.timer.schedule(this.latencyTask, this.maxBatchLatencyMillis);
+    }
+
+    /**
+     * Hands the collected data as message to the delivery stage, and starts a new batch. The message carries the last
+     * kismet server timestamp received via TIME sentence.
+     */
+    private void flush() {
+        if (this.latencyTask != null) {
+            this.latencyTask.cancel();
+            this.latencyTask = null;
+        }
+        UUID[] drones = this.droneTable.snapshot();
+        KismetMeasuredValueBatch measuredValueBatch = this.measuredValues.build(drones);
+        if (this.expiredValues.size() > 0 || this.afterGap) {
+            this.dispatcher.dispatch(new KismetMessage(this.droneRegistry, measuredValueBatch, this.expiredValues.build(drones), this.timestamp, this.afterGap));
+            this.afterGap = false;
+        }
+        else {
+            this.dispatcher.dispatch(new KismetMessage(this.droneRegistry, measuredValueBatch, this.timestamp));
+        }
+        this.pendingCount = 0;
+    }
+}
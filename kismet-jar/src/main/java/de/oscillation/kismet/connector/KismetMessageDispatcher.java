@@ -0,0 +1,527 @@
+package de.oscillation.kismet.connector;
+
+import static java.util.logging.Level.WARNING;
+import static java.util.logging.Logger.getLogger;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+import javax.resource.spi.endpoint.MessageEndpoint;
+import javax.resource.spi.endpoint.MessageEndpointFactory;
+import javax.resource.spi.work.Work;
+
+/**
+ * The delivery stage of a kismet server connection. The reader stage hands the assembled messages to the dispatcher
+ * via {@link #dispatch(KismetMessage)}, and the dispatcher delivers them to the message endpoints on its own thread, so
+ * a slow message endpoint does not stall the socket reads. Reader and dispatcher are joined by a bounded
+ * {@link KismetRingBuffer}, and the {@link KismetOverflowPolicy} decides what happens when it is full.
+ * <p>
+ * The listener method is chosen by the activation spec, and checked for transacted delivery, only once per dispatcher.
+ * Endpoints implementing the {@link KismetMessageService} receive the messages as they are, while endpoints
+ * implementing the {@link KismetMeasurementListener} receive a cursor over the measured values of every message. With
+ * endpoint reuse, the dispatcher keeps a single message endpoint across deliveries and only replaces it after a failed
+ * delivery, and non-transacted deliveries invoke the listener method directly without the <code>beforeDelivery</code>
+ * and <code>afterDelivery</code> calls. The time spent in the container's endpoint lifecycle is measured separately
+ * from the time spent in the listener method.
+ * <p>
+ * Every message is stamped with {@link System#nanoTime()} when the reader dispatches it, i.e. when its batch was
+ * completed, and the time until the listener method returned is recorded in the {@link KismetResourceAdapterMetrics}.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetMessageCollector
+ * @see KismetOverflowPolicy
+ */
+public class KismetMessageDispatcher implements Work, KismetMessageSink {
+    /** The maximum time in nanoseconds that the reader or the dispatcher park before checking again. */
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /** The listener method of the {@link KismetMessageService}. */
+    private static final Method ON_MESSAGE;
+
+    /** The listener method of the {@link KismetMeasurementListener}. */
+    private static final Method ON_MEASUREMENTS;
+
+    static {
+        try {
+            ON_MESSAGE = KismetMessageService.class.getMethod("onMessage", KismetMessage.class);
+            ON_MEASUREMENTS = KismetMeasurementListener.class.getMethod("onMeasurements", KismetMeasuredValueCursor.class, boolean.class);
+        }
+        catch (NoSuchMethodException exn) {
+            throw new ExceptionInInitializerError(exn);
+        }
+    }
+
+    /** The factory for the kismet message listeners. */
+    private final MessageEndpointFactory endpointFactory;
+
+    /** The policy applied when the buffer is full. */
+    private final KismetOverflowPolicy overflowPolicy;
+
+    /** The sample rate for the {@link KismetOverflowPolicy#SAMPLE} policy. */
+    private final int sampleRate;
+
+    /** Whether the message endpoint is kept across deliveries. */
+    private final boolean endpointReuse;
+
+    /** The listener method implemented by the message endpoints, determined once per dispatcher. */
+    private final Method listenerMethod;
+
+    /** Whether the deliveries are transacted, determined once per dispatcher. */
+    private final boolean deliveryTransacted;
+
+    /** The message endpoint kept across deliveries, only accessed by the dispatcher thread. */
+    private MessageEndpoint endpoint;
+
+    /** The buffer between the reader and the dispatcher. */
+    private final KismetRingBuffer<Delivery> buffer;
+
+    /** The metrics to record the deliveries in, or <code>null</code> if the deliveries are not recorded. */
+    private volatile KismetResourceAdapterMetrics metrics;
+
+    /** The logger. */
+    private final Logger logger = getLogger(KismetMessageDispatcher.class.getName());
+
+    /** The number of messages dispatched by the reader. */
+    private final AtomicLong dispatchedCount = new AtomicLong();
+
+    /** The number of messages delivered to the message endpoints. */
+    private final AtomicLong deliveredCount = new AtomicLong();
+
+    /** The number of messages dropped because of the overflow policy. */
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    /** The number of times the reader was blocked because the buffer was full. */
+    private final AtomicLong blockedCount = new AtomicLong();
+
+    /** The total time in nanoseconds spent delivering messages to the message endpoints. */
+    private final AtomicLong deliveryNanos = new AtomicLong();
+
+    /** The maximum time in nanoseconds spent delivering a single message to a message endpoint. */
+    private volatile long maxDeliveryNanos;
+
+    /** The total time in nanoseconds spent in the endpoint lifecycle, excluding the listener method. */
+    private final AtomicLong endpointOverheadNanos = new AtomicLong();
+
+    /** The number of message endpoints created. */
+    private final AtomicLong endpointCount = new AtomicLong();
+
+    /** The number of consecutive messages offered to the full buffer (for sampling). */
+    private long overflowCount;
+
+    /** The reader thread, while it is blocked on the full buffer. */
+    private volatile Thread blockedReader;
+
+    /** The dispatcher thread, while it is waiting for messages. */
+    private volatile Thread waitingDispatcher;
+
+    /** Whether this dispatcher was released. */
+    private volatile boolean released;
+
+    /**
+     * Constructs a new dispatcher with the specified parameters.
+     * 
+     * @param endpointFactory the message endpoint factory to handle the kismet messages.
+     * @param bufferSize the maximum number of buffered messages.
+     * @param overflowPolicy the policy applied when the buffer is full.
+     * @param sampleRate the sample rate for the {@link KismetOverflowPolicy#SAMPLE} policy.
+     * @throws IllegalArgumentException if either <code>bufferSize</code> or <code>sampleRate</code> is not positive.
+     * @throws NullPointerException if either <code>endpointFactory</code> or <code>overflowPolicy</code> is
+     *             <code>null</code>.
+     */
+    public KismetMessageDispatcher(MessageEndpointFactory endpointFactory, int bufferSize, KismetOverflowPolicy overflowPolicy, int sampleRate) {
+        this(endpointFactory, bufferSize, overflowPolicy, sampleRate, true);
+    }
+
+    /**
+     * Constructs a new dispatcher with the specified parameters.
+     * 
+     * @param endpointFactory the message endpoint factory to handle the kismet messages.
+     * @param bufferSize the maximum number of buffered messages.
+     * @param overflowPolicy the policy applied when the buffer is full.
+     * @param sampleRate the sample rate for the {@link KismetOverflowPolicy#SAMPLE} policy.
+     * @param endpointReuse whether the message endpoint is kept across deliveries.
+     * @throws IllegalArgumentException if either <code>bufferSize</code> or <code>sampleRate</code> is not positive.
+     * @throws NullPointerException if either <code>endpointFactory</code> or <code>overflowPolicy</code> is
+     *             <code>null</code>.
+     */
+    public KismetMessageDispatcher(MessageEndpointFactory endpointFactory, int bufferSize, KismetOverflowPolicy overflowPolicy, int sampleRate, boolean endpointReuse) {
+        this(endpointFactory, bufferSize, overflowPolicy, sampleRate, endpointReuse, false);
+    }
+
+    /**
+     * Constructs a new dispatcher with the specified parameters.
+     * 
+     * @param endpointFactory the message endpoint factory to handle the kismet messages.
+     * @param bufferSize the maximum number of buffered messages.
+     * @param overflowPolicy the policy applied when the buffer is full.
+     * @param sampleRate the sample rate for the {@link KismetOverflowPolicy#SAMPLE} policy.
+     * @param endpointReuse whether the message endpoint is kept across deliveries.
+     * @param measurementListener whether the message endpoints implement the {@link KismetMeasurementListener}
+     *            instead of the {@link KismetMessageService}.
+     * @throws IllegalArgumentException if either <code>bufferSize</code> or <code>sampleRate</code> is not positive,
+     *             or the <code>endpointFactory</code> does not support the listener method.
+     * @throws NullPointerException if either <code>endpointFactory</code> or <code>overflowPolicy</code> is
+     *             <code>null</code>.
+     */
+    public KismetMessageDispatcher(MessageEndpointFactory endpointFactory, int bufferSize, KismetOverflowPolicy overflowPolicy, int sampleRate, boolean endpointReuse,
+                                   boolean measurementListener) {
+        if (endpointFactory == null) {
+            throw new NullPointerException("endpointFactory must not be null");
+        }
+        if (overflowPolicy == null) {
+            throw new NullPointerException("overflowPolicy must not be null");
+        }
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("Invalid sampleRate " + sampleRate);
+        }
+        this.endpointFactory = endpointFactory;
+        this.overflowPolicy = overflowPolicy;
+        this.sampleRate = sampleRate;
+        this.endpointReuse = endpointReuse;
+        this.buffer = new KismetRingBuffer<Delivery>(bufferSize);
+        this.listenerMethod = measurementListener ? ON_MEASUREMENTS : ON_MESSAGE;
+        try {
+            this.deliveryTransacted = endpointFactory.isDeliveryTransacted(this.listenerMethod);
+        }
+        catch (NoSuchMethodException exn) {
+            throw new IllegalArgumentException("Invalid listener method " + this.listenerMethod, exn);
+        }
+    }
+
+    /**
+     * Constructs a new dispatcher for the specified <code>activationSpec</code>.
+     * 
+     * @param activationSpec the kismet activation specification.
+     * @param endpointFactory the message endpoint factory to handle the kismet messages.
+     */
+    public KismetMessageDispatcher(KismetActivationSpec activationSpec, MessageEndpointFactory endpointFactory) {
+        this(endpointFactory, activationSpec.getBufferSize(), activationSpec.getEffectiveOverflowPolicy(), activationSpec.getSampleRate(),
+             activationSpec.getEndpointReuse(), activationSpec.getMeasurementListener());
+    }
+
+    /**
+     * Checks whether the message endpoints of this dispatcher implement the {@link KismetMeasurementListener} instead
+     * of the {@link KismetMessageService}.
+     * 
+     * @return <code>true</code> if the endpoints are measurement listeners, <code>false</code> otherwise.
+     */
+    public boolean isMeasurementListener() {
+        return this.listenerMethod == ON_MEASUREMENTS;
+    }
+
+    /**
+     * Sets the metrics to record the deliveries in. Must be invoked before the dispatcher is scheduled.
+     * 
+     * @param metrics the resource adapter metrics, or <code>null</code> to not record the deliveries.
+     */
+    public void setMetrics(KismetResourceAdapterMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @see KismetMessageSink#dispatch(KismetMessage)
+     */
+    @Override
+    public void dispatch(KismetMessage kismetMessage) {
+        Delivery message = new Delivery(kismetMessage, System.nanoTime());
+        this.dispatchedCount.incrementAndGet();
+        if (this.buffer.offer(message)) {
+            this.overflowCount = 0;
+        }
+        else {
+            switch (this.overflowPolicy) {
+            case BLOCK:
+                this.blockedCount.incrementAndGet();
+                this.blockedReader = Thread.currentThread();
+                while (!this.buffer.offer(message)) {
+                    if (this.released) {
+                        this.droppedCount.incrementAndGet();
+                        break;
+                    }
+                    LockSupport.parkNanos(this, PARK_NANOS);
+                }
+                this.blockedReader = null;
+                break;
+            case DROP_OLDEST:
+                if (this.buffer.overwrite(message)) {
+                    this.droppedCount.incrementAndGet();
+                }
+                break;
+            case SAMPLE:
+                if (this.overflowCount++ % this.sampleRate == 0) {
+                    if (this.buffer.overwrite(message)) {
+                        this.droppedCount.incrementAndGet();
+                    }
+                }
+                else {
+                    this.droppedCount.incrementAndGet();
+                }
+                break;
+            }
+        }
+        Thread dispatcher = this.waitingDispatcher;
+        if (dispatcher != null) {
+            LockSupport.unpark(dispatcher);
+        }
+    }
+
+    /**
+     * Checks whether {@link #dispatch(KismetMessage)} would currently block, because the buffer is full and the
+     * overflow policy is {@link KismetOverflowPolicy#BLOCK}.
+     * 
+     * @return <code>true</code> if dispatching would block, <code>false</code> otherwise.
+     */
+    @Override
+    public boolean wouldBlock() {
+        return this.overflowPolicy == KismetOverflowPolicy.BLOCK && this.buffer.size() >= this.buffer.capacity();
+    }
+
+    /**
+     * @see java.lang.Runnable#run()
+     */
+    @Override
+    public void run() {
+        while (!this.released) {
+            Delivery message = this.buffer.poll();
+            if (message == null) {
+                // Wait for the reader to dispatch further messages
+                this.waitingDispatcher = Thread.currentThread();
+                if (this.buffer.size() == 0 && !this.released) {
+                    LockSupport.parkNanos(this, PARK_NANOS);
+                }
+                this.waitingDispatcher = null;
+                continue;
+            }
+            Thread reader = this.blockedReader;
+            if (reader != null) {
+                LockSupport.unpark(reader);
+            }
+            deliver(message.message);
+            KismetResourceAdapterMetrics metrics = this.metrics;
+            if (metrics != null) {
+                metrics.onDelivery(batchSize(message.message), System.nanoTime() - message.dispatchNanos);
+            }
+        }
+        releaseEndpoint();
+    }
+
+    /**
+     * Delivers the specified <code>message</code> to a message endpoint.
+     * 
+     * @param message the message to deliver.
+     */
+    private void deliver(KismetMessage message) {
+        long start = System.nanoTime();
+        long listenerNanos = 0;
+        boolean delivered = false;
+        try {
+            // Prepare to send the message using our configured message endpoint factory
+            MessageEndpoint messageEndpoint = this.endpoint;
+            if (messageEndpoint == null) {
+                messageEndpoint = this.endpointFactory.createEndpoint(null);
+                this.endpointCount.incrementAndGet();
+                this.endpoint = messageEndpoint;
+            }
+            if (this.deliveryTransacted) {
+                messageEndpoint.beforeDelivery(this.listenerMethod);
+            }
+            try {
+                // Send the message to the endpoint
+                long listenerStart = System.nanoTime();
+                try {
+                    if (this.listenerMethod == ON_MESSAGE) {
+                        if (!(messageEndpoint instanceof KismetMessageService)) {
+                            throw new IllegalStateException("Message endpoint does not implement " + KismetMessageService.class.getName());
+                        }
+                        ((KismetMessageService) messageEndpoint).onMessage(message);
+                    }
+                    else {
+                        if (!(messageEndpoint instanceof KismetMeasurementListener)) {
+                            throw new IllegalStateException("Message endpoint does not implement " + KismetMeasurementListener.class.getName());
+                        }
+                        ((KismetMeasurementListener) messageEndpoint).onMeasurements(message.getMeasuredValueBatch().cursor(), message.isAfterGap());
+                    }
+                }
+                finally {
+                    listenerNanos = System.nanoTime() - listenerStart;
+                }
+                this.deliveredCount.incrementAndGet();
+                delivered = true;
+            }
+            finally {
+                if (this.deliveryTransacted) {
+                    messageEndpoint.afterDelivery();
+                }
+            }
+        }
+        catch (Exception exn) {
+            this.logger.log(WARNING, "Failed to pass kismet message to endpoint", exn);
+        }
+        finally {
+            if (!this.endpointReuse || !delivered) {
+                // The container may have invalidated the endpoint after a failure
+                releaseEndpoint();
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        this.deliveryNanos.addAndGet(nanos);
+        this.endpointOverheadNanos.addAndGet(nanos - listenerNanos);
+        if (nanos > this.maxDeliveryNanos) {
+            this.maxDeliveryNanos = nanos;
+        }
+    }
+
+    /**
+     * Returns the number of measurements (or aggregates) of the specified <code>message</code>.
+     * 
+     * @param message the message.
+     * @return the batch size of the message.
+     */
+    private static int batchSize(KismetMessage message) {
+        if (message instanceof KismetAggregatedMessage) {
+            return ((KismetAggregatedMessage) message).getAggregates().size();
+        }
+        return message.getMeasuredValues().size() + message.getExpiredValues().size();
+    }
+
+    /**
+     * Releases the message endpoint kept by this dispatcher, if any.
+     */
+    private void releaseEndpoint() {
+        MessageEndpoint messageEndpoint = this.endpoint;
+        if (messageEndpoint != null) {
+            this.endpoint = null;
+            try {
+                messageEndpoint.release();
+            }
+            catch (RuntimeException exn) {
+                this.logger.log(WARNING, "Failed to release kismet message endpoint", exn);
+            }
+        }
+    }
+
+    /**
+     * @see javax.resource.spi.work.Work#release()
+     */
+    @Override
+    public void release() {
+        this.released = true;
+        Thread dispatcher = this.waitingDispatcher;
+        if (dispatcher != null) {
+            LockSupport.unpark(dispatcher);
+        }
+        Thread reader = this.blockedReader;
+        if (reader != null) {
+            LockSupport.unpark(reader);
+        }
+    }
+
+    /**
+     * Returns the number of messages dispatched by the reader so far.
+     * 
+     * @return the number of dispatched messages.
+     */
+    public long getDispatchedCount() {
+        return this.dispatchedCount.get();
+    }
+
+    /**
+     * Returns the number of messages delivered to the message endpoints so far.
+     * 
+     * @return the number of delivered messages.
+     */
+    public long getDeliveredCount() {
+        return this.deliveredCount.get();
+    }
+
+    /**
+     * Returns the number of messages dropped so far, because the buffer was full.
+     * 
+     * @return the number of dropped messages.
+     */
+    public long getDroppedCount() {
+        return this.droppedCount.get();
+    }
+
+    /**
+     * Returns the number of times the reader was blocked so far, because the buffer was full.
+     * 
+     * @return the number of times the reader was blocked.
+     */
+    public long getBlockedCount() {
+        return this.blockedCount.get();
+    }
+
+    /**
+     * Returns the mean time in nanoseconds spent delivering a message to a message endpoint so far.
+     * 
+     * @return the mean delivery latency in nanoseconds, or <code>0</code> if no message was delivered yet.
+     */
+    public long getMeanDeliveryNanos() {
+        long count = this.deliveredCount.get();
+        return (count > 0) ? this.deliveryNanos.get() / count : 0;
+    }
+
+    /**
+     * Returns the maximum time in nanoseconds spent delivering a single message to a message endpoint so far.
+     * 
+     * @return the maximum delivery latency in nanoseconds.
+     */
+    public long getMaxDeliveryNanos() {
+        return this.maxDeliveryNanos;
+    }
+
+    /**
+     * Returns the mean time in nanoseconds the container's endpoint lifecycle added to the delivery of a message so
+     * far, i.e. the delivery latency excluding the time spent in the listener method.
+     * 
+     * @return the mean endpoint overhead in nanoseconds, or <code>0</code> if no message was delivered yet.
+     */
+    public long getMeanEndpointOverheadNanos() {
+        long count = this.deliveredCount.get();
+        return (count > 0) ? this.endpointOverheadNanos.get() / count : 0;
+    }
+
+    /**
+     * Returns the number of message endpoints created by this dispatcher so far.
+     * 
+     * @return the number of endpoints.
+     */
+    public long getEndpointCount() {
+        return this.endpointCount.get();
+    }
+
+    /**
+     * Returns the number of messages currently waiting for delivery.
+     * 
+     * @return the number of pending messages.
+     */
+    public int getPendingCount() {
+        return this.buffer.size();
+    }
+
+    /**
+     * A message waiting in the buffer, together with the time it was dispatched.
+     */
+    private static final class Delivery {
+        /** The message. */
+        final KismetMessage message;
+
+        /** The {@link System#nanoTime()} when the message was dispatched. */
+        final long dispatchNanos;
+
+        /**
+         * Constructs a new delivery for the specified <code>message</code>.
+         * 
+         * @param message the message.
+         * @param dispatchNanos the {@link System#nanoTime()} when the message was dispatched.
+         */
+        Delivery(KismetMessage message, long dispatchNanos) {
+            this.message = message;
+            this.dispatchNanos = dispatchNanos;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package de.oscillation.kismet.connector;
+
+/**
+ * The receiving end of the messages assembled by the stages of an activation, which delivers them to the message
+ * endpoints.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetMessageDispatcher
+ * @see KismetShardedDispatcher
+ */
+public interface KismetMessageSink {
+    /**
+     * Hands the specified <code>message</code> to the delivery stage. Must not be invoked concurrently, and may block
+     * depending on the overflow policy.
+     * 
+     * @param message the message to deliver.
+     */
+    public void dispatch(KismetMessage message);
+
+    /**
+     * Checks whether {@link #dispatch(KismetMessage)} would currently block.
+     * 
+     * @return <code>true</code> if dispatching would block, <code>false</code> otherwise.
+     */
+    public boolean wouldBlock();
+}
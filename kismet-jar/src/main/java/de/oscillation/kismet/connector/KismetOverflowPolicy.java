@@ -0,0 +1,33 @@
+package de.oscillation.kismet.connector;
+
+/**
+ * The policies available to handle an overloaded message endpoint, i.e. when the delivery of messages cannot keep up
+ * with the kismet server and the buffer between the reader and the delivery stage is full.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetActivationSpec#getOverflowPolicy()
+ * @see KismetMessageDispatcher
+ */
+public enum KismetOverflowPolicy {
+    /** Block the reader until there's room in the buffer (no messages are lost). */
+    BLOCK,
+
+    /** Drop the oldest buffered message to make room for the new one. */
+    DROP_OLDEST,
+
+    /** Only keep every n-th new message, dropping the oldest buffered message to make room for it. */
+    SAMPLE;
+
+    /**
+     * Returns the overflow policy for the specified <code>name</code>, ignoring case and accepting dashes instead of
+     * underscores.
+     * 
+     * @param name the name of the overflow policy.
+     * @return the overflow policy.
+     * @throws IllegalArgumentException if there's no overflow policy with the specified <code>name</code>.
+     * @throws NullPointerException if <code>name</code> is <code>null</code>.
+     */
+    public static KismetOverflowPolicy fromString(String name) {
+        return valueOf(name.trim().toUpperCase().replace('-', '_'));
+    }
+}
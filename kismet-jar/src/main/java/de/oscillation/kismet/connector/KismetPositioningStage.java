@@ -0,0 +1,529 @@
+package de.oscillation.kismet.connector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.resource.spi.work.Work;
+import javax.resource.spi.work.WorkException;
+import javax.resource.spi.work.WorkManager;
+
+/**
+ * Estimates the positions of the devices from the signal strengths measured by drones with known coordinates, and
+ * hands a {@link KismetPositionedMessage} per <code>*TIME:</code> sentence to the {@link KismetMessageSink}, with the
+ * positions of the devices that got new measured values since the previous message, and optionally the measured values
+ * themselves.
+ * <p>
+ * The latest signal strength per drone is kept for every device, and only the devices with new measured values are
+ * solved again, starting from their previous positions (see {@link KismetTrilateration}). Measured values older than
+ * the maximum age relative to the latest measured value of the device are not used, and devices without measured
+ * values for the maximum age are forgotten. Measured values of drones without coordinates are only passed on.
+ * <p>
+ * The devices are solved on the thread of the connection, or split into chunks that are solved in parallel by the
+ * work manager and the thread of the connection. Every chunk is claimed by the first thread to get to it, so the thread
+ * of the connection solves the chunks the work manager did not start yet itself, and only waits for the chunks being
+ * solved by other threads. The work manager is only used if there are enough devices to solve, since the hand-off
+ * costs more than solving a few devices.
+ * Instances of this class must only be fed by a single connection.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetActivationSpec#getPositioning()
+ */
+public class KismetPositioningStage implements KismetProtocolStage {
+    /** The initial number of devices. */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** The minimum number of devices solved per chunk. */
+    private static final int MIN_CHUNK_SIZE = 512;
+
+    /** The delivery stage for the positioned messages. */
+    private final KismetMessageSink dispatcher;
+
+    /** The coordinates of the drones as <code>{x, y}</code>, indexed by drone UUID. */
+    private final Map<UUID, double[]> droneCoordinates;
+
+    /** The signal strength in dBm at the unit distance. */
+    private final double referenceSignalStrength;
+
+    /** The path loss exponent. */
+    private final double pathLossExponent;
+
+    /** The maximum age of the measured values used in seconds. */
+    private final long maxAgeSeconds;
+
+    /** The measured values delivered along with the positions, or <code>null</code> if only positions are delivered. */
+    private final KismetMeasuredValueBatchBuilder measuredValues;
+
+    /** The work manager solving the chunks in parallel, or <code>null</code> to solve on the connection thread. */
+    private final WorkManager workManager;
+
+    /** The maximum number of chunks solved in parallel. */
+    private final int parallelism;
+
+    /** The drones referenced by the measured values. */
+    private final KismetDroneTable droneTable = new KismetDroneTable();
+
+    /** The registry of known drones, which is shared by the messages until a drone is added or renamed. */
+    private KismetDroneRegistry droneRegistry = KismetDroneRegistry.EMPTY;
+
+    /** The x coordinates of the drones by drone index, <code>NaN</code> for drones without coordinates. */
+    private double[] droneXs = new double[0];
+
+    /** The y coordinates of the drones by drone index, <code>NaN</code> for drones without coordinates. */
+    private double[] droneYs = new double[0];
+
+    /** The number of devices. */
+    private int size;
+
+    /** The hash table, mapping to device index plus one, or <code>0</code> for empty slots. */
+    private int[] table = new int[INITIAL_CAPACITY * 2];
+
+    /** The devices. */
+    private Device[] devices = new Device[INITIAL_CAPACITY];
+
+    /** The devices with new measured values since the last message. */
+    private Device[] dirty = new Device[INITIAL_CAPACITY];
+
+    /** The number of devices with new measured values since the last message. */
+    private int dirtyCount;
+
+    /** The kismet server time in seconds at which the silent devices are forgotten next. */
+    private long nextEviction = Long.MIN_VALUE;
+
+    /** The number of devices with new measured values since the last message, updated with every new device. */
+    private volatile int pendingCount;
+
+    /** Whether the connection was interrupted since the last message was delivered. */
+    private boolean afterGap;
+
+    /**
+     * Constructs a new positioning stage with the specified parameters.
+     * 
+     * @param dispatcher the delivery stage for the positioned messages.
+     * @param droneCoordinates the coordinates of the drones as <code>{x, y}</code>, indexed by drone UUID.
+     * @param referenceSignalStrength the signal strength in dBm at the unit distance.
+     * @param pathLossExponent the path loss exponent, <code>2</code> in free space.
+     * @param maxAgeSeconds the maximum age of the measured values used in seconds.
+     * @param deliverMeasuredValues whether the measured values are delivered along with the positions.
+     * @param workManager the work manager solving the devices in parallel, or <code>null</code> to solve on the thread
+     *            of the connection.
+     * @param parallelism the maximum number of chunks solved in parallel.
+     * @throws IllegalArgumentException if either <code>pathLossExponent</code>, <code>maxAgeSeconds</code> or
+     *             <code>parallelism</code> is not positive.
+     * @throws NullPointerException if either <code>dispatcher</code> or <code>droneCoordinates</code> is
+     *             <code>null</code>.
+     */
+    public KismetPositioningStage(KismetMessageSink dispatcher, Map<UUID, double[]> droneCoordinates, double referenceSignalStrength, double pathLossExponent,
+                                  long maxAgeSeconds, boolean deliverMeasuredValues, WorkManager workManager, int parallelism) {
+        if (dispatcher == null) {
+            throw new NullPointerException("dispatcher must not be null");
+        }
+        if (droneCoordinates == null) {
+            throw new NullPointerException("droneCoordinates must not be null");
+        }
+        if (!(pathLossExponent > 0)) {
+            throw new IllegalArgumentException("Invalid pathLossExponent " + pathLossExponent);
+        }
+        if (maxAgeSeconds <= 0) {
+            throw new IllegalArgumentException("Invalid maxAgeSeconds " + maxAgeSeconds);
+        }
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Invalid parallelism " + parallelism);
+        }
+        this.dispatcher = dispatcher;
+        this.droneCoordinates = droneCoordinates;
+        this.referenceSignalStrength = referenceSignalStrength;
+        this.pathLossExponent = pathLossExponent;
+        this.maxAgeSeconds = maxAgeSeconds;
+        this.measuredValues = deliverMeasuredValues ? new KismetMeasuredValueBatchBuilder() : null;
+        this.workManager = workManager;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @see KismetProtocolHandler#onClientSource(long, long, long, long, int)
+     */
+    @Override
+    public void onClientSource(long deviceId, long droneIdMsb, long droneIdLsb, long timestamp, int signalStrength) {
+        int droneIndex = this.droneTable.indexOf(droneIdMsb, droneIdLsb);
+        if (this.measuredValues != null) {
+            this.measuredValues.add(deviceId, droneIndex, signalStrength, timestamp);
+        }
+        if (droneIndex >= this.droneXs.length) {
+            resolveDrones();
+        }
+        if (Double.isNaN(this.droneXs[droneIndex])) {
+            // Drone without coordinates
+            return;
+        }
+        Device device = device(deviceId);
+        device.update(droneIndex, signalStrength, timestamp);
+        if (!device.dirty) {
+            device.dirty = true;
+            if (this.dirtyCount == this.dirty.length) {
+                this.dirty = Arrays.copyOf(this.dirty, this.dirtyCount * 2);
+            }
+            this.dirty[this.dirtyCount++] = device;
+            this.pendingCount = this.dirtyCount;
+        }
+    }
+
+    /**
+     * @see KismetProtocolHandler#onSource(long, long, String)
+     */
+    @Override
+    public void onSource(long droneIdMsb, long droneIdLsb, String name) {
+        this.droneRegistry = this.droneRegistry.with(KismetIdentifierCache.getDefault().getDroneId(droneIdMsb, droneIdLsb), name);
+    }
+
+    /**
+     * Solves the devices with new measured values, and delivers their positions.
+     * 
+     * @see KismetProtocolHandler#onTime(long)
+     */
+    @Override
+    public void onTime(long timestamp) {
+        if (this.dirtyCount > 0 || (this.measuredValues != null && this.measuredValues.size() > 0)) {
+            solve(this.dirty, this.dirtyCount);
+            KismetIdentifierCache identifierCache = KismetIdentifierCache.getDefault();
+            List<KismetPosition> positions = new ArrayList<KismetPosition>(this.dirtyCount);
+            for (int i = 0; i < this.dirtyCount; ++i) {
+                Device device = this.dirty[i];
+                if (device.droneCount > 0) {
+                    positions.add(new KismetPosition(identifierCache.getDeviceId(device.deviceId), device.position[0], device.position[1], device.accuracy,
+                                                     device.droneCount, device.lastTimestamp));
+                }
+                device.dirty = false;
+                this.dirty[i] = null;
+            }
+            this.dirtyCount = 0;
+            this.pendingCount = 0;
+            KismetMeasuredValueBatch measuredValues = (this.measuredValues != null) ? this.measuredValues.build(this.droneTable.snapshot())
+                                                                                     : KismetMeasuredValueBatch.empty();
+            this.dispatcher.dispatch(new KismetPositionedMessage(this.droneRegistry, measuredValues, positions, timestamp, this.afterGap));
+            this.afterGap = false;
+        }
+        if (timestamp >= this.nextEviction) {
+            evict(timestamp - this.maxAgeSeconds);
+            this.nextEviction = timestamp + this.maxAgeSeconds;
+        }
+    }
+
+    /**
+     * Ignored, since silent devices are forgotten after the maximum age.
+     * 
+     * @see KismetProtocolStage#onExpire(long, long, long, long, int)
+     */
+    @Override
+    public void onExpire(long deviceId, long droneIdMsb, long droneIdLsb, long timestamp, int signalStrength) {
+    }
+
+    /**
+     * Forgets all devices, since their signal strengths may have changed arbitrarily during the gap, and marks the
+     * next delivered message.
+     * 
+     * @see KismetProtocolStage#onGap()
+     */
+    @Override
+    public void onGap() {
+        for (int i = 0; i < this.dirtyCount; ++i) {
+            this.dirty[i] = null;
+        }
+        this.dirtyCount = 0;
+        this.pendingCount = 0;
+        Arrays.fill(this.devices, 0, this.size, null);
+        Arrays.fill(this.table, 0);
+        this.size = 0;
+        this.afterGap = true;
+    }
+
+    /**
+     * @see KismetProtocolStage#release()
+     */
+    @Override
+    public void release() {
+    }
+
+    /**
+     * Returns the number of devices with new measured values since the last message.
+     * 
+     * @see KismetProtocolStage#getPendingCount()
+     */
+    @Override
+    public int getPendingCount() {
+        return this.pendingCount;
+    }
+
+    /**
+     * Returns the number of devices currently tracked by this stage.
+     * 
+     * @return the number of devices.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Looks up the coordinates of the drones added to the drone table since the last lookup.
+     */
+    private void resolveDrones() {
+        int from = this.droneXs.length;
+        int to = this.droneTable.size();
+        this.droneXs = Arrays.copyOf(this.droneXs, to);
+        this.droneYs = Arrays.copyOf(this.droneYs, to);
+        for (int i = from; i < to; ++i) {
+            double[] coordinates = this.droneCoordinates.get(this.droneTable.get(i));
+            this.droneXs[i] = (coordinates != null) ? coordinates[0] : Double.NaN;
+            this.droneYs[i] = (coordinates != null) ? coordinates[1] : Double.NaN;
+        }
+    }
+
+    /**
+     * Returns the state of the specified device, adding it if necessary.
+     * 
+     * @param deviceId the EUI-48 address of the device in the lower 48 bits.
+     * @return the device.
+     */
+    private Device device(long deviceId) {
+        int mask = this.table.length - 1;
+        int slot = KismetAggregateTable.hash(deviceId) & mask;
+        for (int index; (index = this.table[slot] - 1) >= 0; slot = (slot + 1) & mask) {
+            if (this.devices[index].deviceId == deviceId) {
+                return this.devices[index];
+            }
+        }
+        int index = this.size++;
+        if (index == this.devices.length) {
+            this.devices = Arrays.copyOf(this.devices, index * 2);
+        }
+        Device device = new Device(deviceId);
+        this.devices[index] = device;
+        if (this.size * 2 > this.table.length) {
+            rehash(this.table.length * 2);
+        }
+        else {
+            this.table[slot] = index + 1;
+        }
+        return device;
+    }
+
+    /**
+     * Forgets the devices without measured values since the specified kismet server time. The surviving devices are
+     * compacted in place and the hash table is rebuilt.
+     * 
+     * @param cutoff the kismet server time in seconds.
+     */
+    private void evict(long cutoff) {
+        int size = 0;
+        for (int index = 0; index < this.size; ++index) {
+            Device device = this.devices[index];
+            if (device.lastTimestamp >= cutoff) {
+                this.devices[size++] = device;
+            }
+        }
+        if (size != this.size) {
+            Arrays.fill(this.devices, size, this.size, null);
+            this.size = size;
+            rehash(this.table.length);
+        }
+    }
+
+    /**
+     * Rebuilds the hash table with the specified <code>capacity</code>.
+     * 
+     * @param capacity the new capacity, a power of two.
+     */
+    private void rehash(int capacity) {
+        int[] table = new int[capacity];
+        int mask = capacity - 1;
+        for (int index = 0; index < this.size; ++index) {
+            int slot = KismetAggregateTable.hash(this.devices[index].deviceId) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = index + 1;
+        }
+        this.table = table;
+    }
+
+    /**
+     * Solves the specified devices, in parallel chunks if there are enough devices and a work manager.
+     * 
+     * @param devices the devices to solve.
+     * @param n the number of devices.
+     */
+    private void solve(final Device[] devices, final int n) {
+        int chunks = (this.workManager == null) ? 1 : Math.min(this.parallelism, (n + MIN_CHUNK_SIZE - 1) / MIN_CHUNK_SIZE);
+        if (chunks <= 1) {
+            solve(devices, 0, n);
+            return;
+        }
+        final int chunkSize = (n + chunks - 1) / chunks;
+        final int count = chunks;
+        final AtomicInteger nextChunk = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(chunks);
+        final Runnable claim = new Runnable() {
+            @Override
+            public void run() {
+                // Claim and solve chunks until all chunks are claimed
+                for (int chunk; (chunk = nextChunk.getAndIncrement()) < count;) {
+                    try {
+                        solve(devices, chunk * chunkSize, Math.min(n, (chunk + 1) * chunkSize));
+                    }
+                    finally {
+                        latch.countDown();
+                    }
+                }
+            }
+        };
+        for (int i = 1; i < chunks; ++i) {
+            try {
+                this.workManager.scheduleWork(new Work() {
+                    @Override
+                    public void run() {
+                        claim.run();
+                    }
+
+                    @Override
+                    public void release() {
+                    }
+                });
+            }
+            catch (WorkException exn) {
+                // Leave the chunks to the threads already claiming them
+                break;
+            }
+        }
+        claim.run();
+
+        // Wait for the chunks claimed by the work manager, which must not be abandoned while they update the devices
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            }
+            catch (InterruptedException exn) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Solves the devices in the specified range. Only reads the state of the stage that does not change while solving,
+     * so several ranges may be solved concurrently.
+     * 
+     * @param devices the devices to solve.
+     * @param from the index of the first device (inclusive).
+     * @param to the index of the last device (exclusive).
+     */
+    private void solve(Device[] devices, int from, int to) {
+        double[] droneXs = this.droneXs;
+        double[] droneYs = this.droneYs;
+        int capacity = 8;
+        double[] xs = new double[capacity];
+        double[] ys = new double[capacity];
+        double[] distances = new double[capacity];
+        for (int i = from; i < to; ++i) {
+            Device device = devices[i];
+            if (device.size > capacity) {
+                capacity = device.size;
+                xs = new double[capacity];
+                ys = new double[capacity];
+                distances = new double[capacity];
+            }
+            long cutoff = device.lastTimestamp - this.maxAgeSeconds;
+            int n = 0;
+            for (int j = 0; j < device.size; ++j) {
+                if (device.timestamps[j] >= cutoff) {
+                    int droneIndex = device.droneIndices[j];
+                    xs[n] = droneXs[droneIndex];
+                    ys[n] = droneYs[droneIndex];
+                    distances[n] = KismetTrilateration.distance(device.signalStrengths[j], this.referenceSignalStrength, this.pathLossExponent);
+                    ++n;
+                }
+            }
+            device.droneCount = n;
+            if (n > 0) {
+                device.accuracy = KismetTrilateration.solve(xs, ys, distances, n, device.position);
+            }
+        }
+    }
+
+    /**
+     * The state of a single device, i.e. the latest signal strength per drone and the last estimated position.
+     */
+    private static final class Device {
+        /** The EUI-48 address of the device in the lower 48 bits. */
+        private final long deviceId;
+
+        /** The last estimated position as <code>{x, y}</code>, <code>NaN</code>s before the first estimate. */
+        private final double[] position = { Double.NaN, Double.NaN };
+
+        /** The indices of the drones that measured the device. */
+        private int[] droneIndices = new int[4];
+
+        /** The latest signal strengths per drone in dBm. */
+        private int[] signalStrengths = new int[4];
+
+        /** The kismet server timestamps of the latest measured values per drone in seconds. */
+        private long[] timestamps = new long[4];
+
+        /** The number of drones that measured the device. */
+        private int size;
+
+        /** The kismet server timestamp of the latest measured value in seconds. */
+        private long lastTimestamp = Long.MIN_VALUE;
+
+        /** The accuracy of the last estimated position. */
+        private double accuracy;
+
+        /** The number of drones the last position was estimated from. */
+        private int droneCount;
+
+        /** Whether the device got new measured values since the last message. */
+        private boolean dirty;
+
+        /**
+         * Constructs a new device state.
+         * 
+         * @param deviceId the EUI-48 address of the device in the lower 48 bits.
+         */
+        Device(long deviceId) {
+            this.deviceId = deviceId;
+        }
+
+        /**
+         * Records the specified measured value.
+         * 
+         * @param droneIndex the index of the drone.
+         * @param signalStrength the signal strength in dBm.
+         * @param timestamp the kismet server timestamp in seconds.
+         */
+        void update(int droneIndex, int signalStrength, long timestamp) {
+            int i = 0;
+            while (i < this.size && this.droneIndices[i] != droneIndex) {
+                ++i;
+            }
+            if (i == this.size) {
+                if (i == this.droneIndices.length) {
+                    this.droneIndices = Arrays.copyOf(this.droneIndices, i * 2);
+                    this.signalStrengths = Arrays.copyOf(this.signalStrengths, i * 2);
+                    this.timestamps = Arrays.copyOf(this.timestamps, i * 2);
+                }
+                this.droneIndices[i] = droneIndex;
+                this.size++;
+            }
+            this.signalStrengths[i] = signalStrength;
+            this.timestamps[i] = timestamp;
+            this.lastTimestamp = Math.max(this.lastTimestamp, timestamp);
+        }
+    }
+}
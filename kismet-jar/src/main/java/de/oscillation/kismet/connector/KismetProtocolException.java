@@ -0,0 +1,23 @@
+package de.oscillation.kismet.connector;
+
+import java.io.IOException;
+
+/**
+ * Thrown by the {@link KismetProtocolParser} to indicate that a sentence received from the kismet server is malformed.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetProtocolParser
+ */
+public class KismetProtocolException extends IOException {
+    /** The serial version UID of this class. */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructs a new protocol exception with the specified detail <code>message</code>.
+     * 
+     * @param message the detail message.
+     */
+    public KismetProtocolException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,38 @@
+package de.oscillation.kismet.connector;
+
+/**
+ * Callback interface for the sentences decoded by the {@link KismetProtocolParser}. All identifiers are passed as
+ * primitive values, so that handlers can decide for themselves whether (and when) to allocate objects for them.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetProtocolParser
+ */
+public interface KismetProtocolHandler {
+    /**
+     * Invoked for every <code>*CLISRC:</code> sentence received from the kismet server.
+     * 
+     * @param deviceId the EUI-48 address of the device in the lower 48 bits.
+     * @param droneIdMsb the most significant 64 bits of the drone UUID.
+     * @param droneIdLsb the least significant 64 bits of the drone UUID.
+     * @param timestamp the kismet server timestamp in seconds.
+     * @param signalStrength the signal strength in dBm.
+     */
+    public void onClientSource(long deviceId, long droneIdMsb, long droneIdLsb, long timestamp, int signalStrength);
+
+    /**
+     * Invoked for every <code>*SOURCE:</code> sentence received from the kismet server that describes a drone.
+     * Sentences for other kinds of sources are ignored by the parser.
+     * 
+     * @param droneIdMsb the most significant 64 bits of the drone UUID.
+     * @param droneIdLsb the least significant 64 bits of the drone UUID.
+     * @param name the configured name of the drone.
+     */
+    public void onSource(long droneIdMsb, long droneIdLsb, String name);
+
+    /**
+     * Invoked for every <code>*TIME:</code> sentence received from the kismet server.
+     * 
+     * @param timestamp the kismet server timestamp in seconds.
+     */
+    public void onTime(long timestamp);
+}
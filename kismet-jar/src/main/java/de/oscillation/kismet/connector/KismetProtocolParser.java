@@ -0,0 +1,737 @@
+package de.oscillation.kismet.connector;
+
+import static java.util.logging.Level.WARNING;
+import static java.util.logging.Logger.getLogger;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+/**
+ * Parser for the kismet client/server protocol, which operates directly on the bytes received from the kismet server.
+ * The parser splits the incoming bytes into lines and decodes the <code>*CLISRC:</code>, <code>*SOURCE:</code> and
+ * <code>*TIME:</code> sentences in place, without creating intermediate strings for the individual fields. EUI-48
+ * addresses, UUIDs and numbers are passed to the {@link KismetProtocolHandler} as primitive values, all other
+ * sentences are silently ignored.
+ * <p>
+ * The fields of the CLISRC and SOURCE sentences are decoded according to a field layout, which is either the default
+ * layout of the kismet server, or the layout negotiated by the {@link KismetSubscription} from the
+ * <code>*CAPABILITY:</code> sentences. Fields not needed by the connector are skipped. If a filter is set, every
+ * field of a CLISRC sentence is checked against it as soon as it is decoded, and the remainder of a rejected sentence
+ * is skipped without passing anything to the handler.
+ * <p>
+ * Malformed sentences are logged and skipped, they do not affect the processing of the following sentences. Instances
+ * of this class are not thread-safe, every connection must use its own parser.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetProtocolHandler
+ */
+public class KismetProtocolParser {
+    /** The character set used for the string fields of the kismet protocol. */
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /** The header of the CLISRC sentence. */
+    private static final byte[] CLISRC = "*CLISRC:".getBytes(CHARSET);
+
+    /** The header of the SOURCE sentence. */
+    private static final byte[] SOURCE = "*SOURCE:".getBytes(CHARSET);
+
+    /** The header of the TIME sentence. */
+    private static final byte[] TIME = "*TIME:".getBytes(CHARSET);
+
+    /** The header of the CAPABILITY sentence. */
+    private static final byte[] CAPABILITY = "*CAPABILITY:".getBytes(CHARSET);
+
+    /** The interface and type of drone sources. */
+    private static final byte[] DRONE = "drone".getBytes(CHARSET);
+
+    /** The maximum length of a single line, longer lines are discarded. */
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    /** The code for fields that are skipped. */
+    private static final byte SKIP_FIELD = 0;
+
+    /** The code for the <code>mac</code> field. */
+    private static final byte MAC_FIELD = 1;
+
+    /** The code for the <code>uuid</code> field. */
+    private static final byte UUID_FIELD = 2;
+
+    /** The code for the <code>lasttime</code> field. */
+    private static final byte LASTTIME_FIELD = 3;
+
+    /** The code for the <code>signal_dbm</code> field. */
+    private static final byte SIGNAL_FIELD = 4;
+
+    /** The code for the <code>interface</code> field. */
+    private static final byte INTERFACE_FIELD = 5;
+
+    /** The code for the <code>type</code> field. */
+    private static final byte TYPE_FIELD = 6;
+
+    /** The code for the <code>username</code> field. */
+    private static final byte USERNAME_FIELD = 7;
+
+    /** The handler for the decoded sentences. */
+    private final KismetProtocolHandler handler;
+
+    /** The subscription negotiating the field layouts, or <code>null</code> if the default layouts are used. */
+    private final KismetSubscription subscription;
+
+    /** The filter for the measured values, or <code>null</code> if all measured values are passed on. */
+    private KismetMeasurementFilter filter;
+
+    /** The names of the CLISRC fields in the order sent by the kismet server. */
+    private String[] clientSourceFields;
+
+    /** The codes of the CLISRC fields in the order sent by the kismet server. */
+    private byte[] clientSourceLayout;
+
+    /** The names of the SOURCE fields in the order sent by the kismet server. */
+    private String[] sourceFields;
+
+    /** The codes of the SOURCE fields in the order sent by the kismet server. */
+    private byte[] sourceLayout;
+
+    /** The logger. */
+    private final Logger logger = getLogger(KismetProtocolParser.class.getName());
+
+    /** The buffer for a line that spans multiple chunks of input. */
+    private byte[] pending = new byte[256];
+
+    /** The number of bytes in the <code>pending</code> buffer. */
+    private int pendingLength;
+
+    /** Whether the remainder of the current line is discarded, because the line is too long. */
+    private boolean discarding;
+
+    /** The buffer of the line that is currently being parsed. */
+    private byte[] buffer;
+
+    /** The start of the line that is currently being parsed. */
+    private int start;
+
+    /** The current position within the line that is currently being parsed. */
+    private int position;
+
+    /** The end of the line that is currently being parsed. */
+    private int limit;
+
+    /** The start of the current token. */
+    private int tokenStart;
+
+    /** The end of the current token. */
+    private int tokenEnd;
+
+    /** The most significant 64 bits of the last UUID parsed. */
+    private long uuidMsb;
+
+    /** The least significant 64 bits of the last UUID parsed. */
+    private long uuidLsb;
+
+    /** The number of malformed sentences seen so far. */
+    private long parseErrors;
+
+    /** The number of measured values rejected by the filter so far. */
+    private long filtered;
+
+    /** The number of CLISRC sentences seen so far. */
+    private long clientSourceLines;
+
+    /** The number of SOURCE sentences seen so far. */
+    private long sourceLines;
+
+    /** The number of TIME sentences seen so far. */
+    private long timeLines;
+
+    /** The kismet server timestamp of the last TIME sentence, or <code>0</code> if none was seen yet. */
+    private long lastTimestamp;
+
+    /**
+     * Constructs a new parser, which passes the decoded sentences to the specified <code>handler</code>.
+     * 
+     * @param handler the handler for the decoded sentences.
+     * @throws NullPointerException if <code>handler</code> is <code>null</code>.
+     */
+    public KismetProtocolParser(KismetProtocolHandler handler) {
+        this(handler, null);
+    }
+
+    /**
+     * Constructs a new parser, which passes the decoded sentences to the specified <code>handler</code>, decoding the
+     * sentences according to the field layouts negotiated by the specified <code>subscription</code>.
+     * 
+     * @param handler the handler for the decoded sentences.
+     * @param subscription the subscription negotiating the field layouts, or <code>null</code> to use the default
+     *            layouts.
+     * @throws NullPointerException if <code>handler</code> is <code>null</code>.
+     */
+    public KismetProtocolParser(KismetProtocolHandler handler, KismetSubscription subscription) {
+        if (handler == null) {
+            throw new NullPointerException("handler must not be null");
+        }
+        this.handler = handler;
+        this.subscription = subscription;
+        setLayout(KismetSubscription.CLIENT_SOURCE_PROTOCOL, KismetSubscription.DEFAULT_CLIENT_SOURCE_LAYOUT);
+        setLayout(KismetSubscription.SOURCE_PROTOCOL, KismetSubscription.DEFAULT_SOURCE_LAYOUT);
+    }
+
+    /**
+     * Configures the field layout of the sentences of the specified <code>protocol</code>. Fields that are not needed
+     * by the connector are skipped, fields following the last needed field are ignored.
+     * 
+     * @param protocol the name of the protocol, either {@link KismetSubscription#CLIENT_SOURCE_PROTOCOL} or
+     *            {@link KismetSubscription#SOURCE_PROTOCOL}.
+     * @param fields the names of the fields in the order sent by the kismet server.
+     * @throws IllegalArgumentException if the <code>protocol</code> is not supported.
+     */
+    public void setLayout(String protocol, String[] fields) {
+        boolean clientSource = KismetSubscription.CLIENT_SOURCE_PROTOCOL.equals(protocol);
+        if (!clientSource && !KismetSubscription.SOURCE_PROTOCOL.equals(protocol)) {
+            throw new IllegalArgumentException("Unsupported protocol " + protocol);
+        }
+        byte[] layout = new byte[fields.length];
+        int length = 0;
+        for (int i = 0; i < fields.length; ++i) {
+            layout[i] = fieldCode(fields[i], clientSource);
+            if (layout[i] != SKIP_FIELD) {
+                length = i + 1;
+            }
+        }
+        if (clientSource) {
+            this.clientSourceFields = fields;
+            this.clientSourceLayout = Arrays.copyOf(layout, length);
+        }
+        else {
+            this.sourceFields = fields;
+            this.sourceLayout = Arrays.copyOf(layout, length);
+        }
+    }
+
+    /**
+     * Parses the next chunk of bytes received from the kismet server. The chunk does not need to be aligned to line
+     * boundaries, an incomplete line at the end of the chunk is kept until the remaining bytes arrive.
+     * 
+     * @param b the buffer containing the bytes.
+     * @param off the offset of the first byte in <code>b</code>.
+     * @param len the number of bytes to parse.
+     */
+    public void parse(byte[] b, int off, int len) {
+        int end = off + len;
+        int lineStart = off;
+        for (int i = off; i < end; ++i) {
+            if (b[i] == '\n') {
+                if (this.pendingLength == 0 && !this.discarding) {
+                    // Fast path, the line is completely contained in the chunk
+                    parseLineSafely(b, lineStart, i - lineStart);
+                }
+                else {
+                    // Complete the pending line from the previous chunk(s)
+                    append(b, lineStart, i - lineStart);
+                    if (!this.discarding) {
+                        parseLineSafely(this.pending, 0, this.pendingLength);
+                    }
+                    this.pendingLength = 0;
+                    this.discarding = false;
+                }
+                lineStart = i + 1;
+            }
+        }
+        if (lineStart < end) {
+            append(b, lineStart, end - lineStart);
+        }
+    }
+
+    /**
+     * Parses a single line received from the kismet server, excluding the line terminator.
+     * 
+     * @param b the buffer containing the line.
+     * @param off the offset of the first byte of the line in <code>b</code>.
+     * @param len the length of the line.
+     * @throws KismetProtocolException if the line contains a malformed sentence.
+     */
+    public void parseLine(byte[] b, int off, int len) throws KismetProtocolException {
+        this.buffer = b;
+        this.start = off;
+        this.position = off;
+        this.limit = off + len;
+        if (nextToken()) {
+            if (tokenEquals(CLISRC)) {
+                this.clientSourceLines++;
+                parseClientSource();
+            }
+            else if (tokenEquals(SOURCE)) {
+                this.sourceLines++;
+                parseSource();
+            }
+            else if (tokenEquals(TIME)) {
+                this.timeLines++;
+                parseTime();
+            }
+            else if (tokenEquals(CAPABILITY)) {
+                parseCapability();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of malformed sentences seen by this parser so far.
+     * 
+     * @return the number of parse errors.
+     */
+    public long getParseErrors() {
+        return this.parseErrors;
+    }
+
+    /**
+     * Sets the filter of this parser to the specified <code>filter</code>, which applies to the following sentences.
+     * 
+     * @param filter the filter for the measured values, or <code>null</code> to pass on all measured values.
+     */
+    public void setFilter(KismetMeasurementFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Returns the number of measured values rejected by the filter of this parser so far.
+     * 
+     * @return the number of filtered measured values.
+     */
+    public long getFiltered() {
+        return this.filtered;
+    }
+
+    /**
+     * Returns the number of CLISRC sentences seen by this parser so far, including malformed and filtered ones.
+     * 
+     * @return the number of CLISRC sentences.
+     */
+    public long getClientSourceLines() {
+        return this.clientSourceLines;
+    }
+
+    /**
+     * Returns the number of SOURCE sentences seen by this parser so far, including malformed ones.
+     * 
+     * @return the number of SOURCE sentences.
+     */
+    public long getSourceLines() {
+        return this.sourceLines;
+    }
+
+    /**
+     * Returns the number of TIME sentences seen by this parser so far, including malformed ones.
+     * 
+     * @return the number of TIME sentences.
+     */
+    public long getTimeLines() {
+        return this.timeLines;
+    }
+
+    /**
+     * Returns the kismet server timestamp of the last TIME sentence seen by this parser.
+     * 
+     * @return the timestamp in seconds, or <code>0</code> if no TIME sentence was seen yet.
+     */
+    public long getLastTimestamp() {
+        return this.lastTimestamp;
+    }
+
+    /**
+     * Parses the body of a CLISRC sentence. The filter is applied to every field as soon as it is decoded, so that
+     * the remainder of a rejected sentence is skipped.
+     * 
+     * @throws KismetProtocolException if the sentence is malformed.
+     */
+    private void parseClientSource() throws KismetProtocolException {
+        KismetMeasurementFilter filter = this.filter;
+        byte[] layout = this.clientSourceLayout;
+        long deviceId = 0;
+        long timestamp = 0;
+        int signalStrength = 0;
+        int present = 0;
+        for (int i = 0; i < layout.length; ++i) {
+            requireToken(this.clientSourceFields[i]);
+            switch (layout[i]) {
+            case MAC_FIELD:
+                deviceId = parseDeviceId();
+                if (filter != null && !filter.acceptsDevice(deviceId)) {
+                    ++this.filtered;
+                    return;
+                }
+                break;
+            case UUID_FIELD:
+                parseUuid();
+                if (filter != null && !filter.acceptsDrone(this.uuidMsb, this.uuidLsb)) {
+                    ++this.filtered;
+                    return;
+                }
+                break;
+            case LASTTIME_FIELD:
+                timestamp = parseLong();
+                break;
+            case SIGNAL_FIELD:
+                signalStrength = parseInt();
+                if (filter != null && !filter.acceptsSignalStrength(signalStrength)) {
+                    ++this.filtered;
+                    return;
+                }
+                break;
+            default:
+                continue;
+            }
+            present |= 1 << layout[i];
+        }
+        if (present != ((1 << MAC_FIELD) | (1 << UUID_FIELD) | (1 << LASTTIME_FIELD) | (1 << SIGNAL_FIELD))) {
+            throw error("Missing fields in CLISRC layout");
+        }
+        this.handler.onClientSource(deviceId, this.uuidMsb, this.uuidLsb, timestamp, signalStrength);
+    }
+
+    /**
+     * Parses the body of a SOURCE sentence. Sentences that do not describe a drone are skipped as soon as either the
+     * interface or the type is decoded.
+     * 
+     * @throws KismetProtocolException if the sentence is malformed.
+     */
+    private void parseSource() throws KismetProtocolException {
+        byte[] layout = this.sourceLayout;
+        int nameStart = 0;
+        int nameEnd = 0;
+        int present = 0;
+        for (int i = 0; i < layout.length; ++i) {
+            requireToken(this.sourceFields[i]);
+            switch (layout[i]) {
+            case INTERFACE_FIELD:
+            case TYPE_FIELD:
+                if (!tokenEquals(DRONE)) {
+                    return;
+                }
+                break;
+            case USERNAME_FIELD:
+                nameStart = this.tokenStart;
+                nameEnd = this.tokenEnd;
+                break;
+            case UUID_FIELD:
+                parseUuid();
+                break;
+            default:
+                continue;
+            }
+            present |= 1 << layout[i];
+        }
+        if (present != ((1 << INTERFACE_FIELD) | (1 << TYPE_FIELD) | (1 << USERNAME_FIELD) | (1 << UUID_FIELD))) {
+            throw error("Missing fields in SOURCE layout");
+        }
+        this.handler.onSource(this.uuidMsb, this.uuidLsb, new String(this.buffer, nameStart, nameEnd - nameStart, CHARSET));
+    }
+
+    /**
+     * Parses the body of a CAPABILITY sentence, and configures the field layout negotiated by the subscription.
+     * 
+     * @throws KismetProtocolException if the sentence is malformed.
+     */
+    private void parseCapability() throws KismetProtocolException {
+        if (this.subscription == null) {
+            return;
+        }
+        requireToken("protocol");
+        String protocol = new String(this.buffer, this.tokenStart, this.tokenEnd - this.tokenStart, CHARSET);
+        requireToken("fields");
+        String[] capability = new String(this.buffer, this.tokenStart, this.tokenEnd - this.tokenStart, CHARSET).split(",");
+        String[] fields = this.subscription.onCapability(protocol, capability);
+        if (fields != null) {
+            setLayout(protocol, fields);
+        }
+    }
+
+    /**
+     * Parses the body of a TIME sentence.
+     * 
+     * @throws KismetProtocolException if the sentence is malformed.
+     */
+    private void parseTime() throws KismetProtocolException {
+        requireToken("timesec");
+        long timestamp = parseLong();
+        this.lastTimestamp = timestamp;
+        this.handler.onTime(timestamp);
+    }
+
+    /**
+     * Parses the current token as EUI-48 address of the form <code>00:11:22:33:44:55</code>.
+     * 
+     * @return the EUI-48 address in the lower 48 bits.
+     * @throws KismetProtocolException if the token is not a valid EUI-48 address.
+     */
+    private long parseDeviceId() throws KismetProtocolException {
+        if (this.tokenEnd - this.tokenStart != 17) {
+            throw error("Invalid EUI-48 address");
+        }
+        long value = 0;
+        for (int i = this.tokenStart; i < this.tokenEnd; i += 3) {
+            int hi = hexDigit(this.buffer[i]);
+            int lo = hexDigit(this.buffer[i + 1]);
+            if (hi < 0 || lo < 0 || (i + 2 < this.tokenEnd && this.buffer[i + 2] != ':')) {
+                throw error("Invalid EUI-48 address");
+            }
+            value = (value << 8) | (hi << 4) | lo;
+        }
+        return value;
+    }
+
+    /**
+     * Parses the current token as UUID of the form <code>01234567-89ab-cdef-0123-456789abcdef</code>, and stores the
+     * result in <code>uuidMsb</code> and <code>uuidLsb</code>.
+     * 
+     * @throws KismetProtocolException if the token is not a valid UUID.
+     */
+    private void parseUuid() throws KismetProtocolException {
+        if (this.tokenEnd - this.tokenStart != 36) {
+            throw error("Invalid UUID");
+        }
+        long msb = 0;
+        long lsb = 0;
+        int digits = 0;
+        for (int i = 0; i < 36; ++i) {
+            byte c = this.buffer[this.tokenStart + i];
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    throw error("Invalid UUID");
+                }
+                continue;
+            }
+            int digit = hexDigit(c);
+            if (digit < 0) {
+                throw error("Invalid UUID");
+            }
+            if (digits++ < 16) {
+                msb = (msb << 4) | digit;
+            }
+            else {
+                lsb = (lsb << 4) | digit;
+            }
+        }
+        this.uuidMsb = msb;
+        this.uuidLsb = lsb;
+    }
+
+    /**
+     * Parses the current token as signed decimal integer.
+     * 
+     * @return the integer value.
+     * @throws KismetProtocolException if the token is not a valid integer.
+     */
+    private int parseInt() throws KismetProtocolException {
+        long value = parseLong();
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw error("Integer out of range");
+        }
+        return (int) value;
+    }
+
+    /**
+     * Parses the current token as signed decimal long integer.
+     * 
+     * @return the long value.
+     * @throws KismetProtocolException if the token is not a valid long integer.
+     */
+    private long parseLong() throws KismetProtocolException {
+        int i = this.tokenStart;
+        boolean negative = i < this.tokenEnd && this.buffer[i] == '-';
+        if (negative) {
+            ++i;
+        }
+        if (i == this.tokenEnd || this.tokenEnd - i > 18) {
+            throw error("Invalid number");
+        }
+        long value = 0;
+        for (; i < this.tokenEnd; ++i) {
+            int digit = this.buffer[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw error("Invalid number");
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Maps the name of a field to its code.
+     * 
+     * @param field the name of the field.
+     * @param clientSource whether the field is part of the CLISRC protocol, otherwise of the SOURCE protocol.
+     * @return the code of the field, or {@link #SKIP_FIELD} if the field is not needed.
+     */
+    private static byte fieldCode(String field, boolean clientSource) {
+        if (field.equals("uuid")) {
+            return UUID_FIELD;
+        }
+        else if (clientSource) {
+            if (field.equals("mac")) {
+                return MAC_FIELD;
+            }
+            else if (field.equals("lasttime")) {
+                return LASTTIME_FIELD;
+            }
+            else if (field.equals("signal_dbm")) {
+                return SIGNAL_FIELD;
+            }
+        }
+        else {
+            if (field.equals("interface")) {
+                return INTERFACE_FIELD;
+            }
+            else if (field.equals("type")) {
+                return TYPE_FIELD;
+            }
+            else if (field.equals("username")) {
+                return USERNAME_FIELD;
+            }
+        }
+        return SKIP_FIELD;
+    }
+
+    /**
+     * Advances to the next token of the current line. Tokens are separated by spaces, string fields that may contain
+     * spaces are enclosed in <code>\001</code> characters by the kismet server.
+     * 
+     * @return <code>true</code> if there was another token, <code>false</code> otherwise.
+     */
+    private boolean nextToken() {
+        while (this.position < this.limit && this.buffer[this.position] == ' ') {
+            ++this.position;
+        }
+        if (this.position == this.limit) {
+            return false;
+        }
+        if (this.buffer[this.position] == '\001') {
+            this.tokenStart = ++this.position;
+            while (this.position < this.limit && this.buffer[this.position] != '\001') {
+                ++this.position;
+            }
+            this.tokenEnd = this.position;
+            if (this.position < this.limit) {
+                ++this.position;
+            }
+        }
+        else {
+            this.tokenStart = this.position;
+            while (this.position < this.limit && this.buffer[this.position] != ' ') {
+                ++this.position;
+            }
+            this.tokenEnd = this.position;
+        }
+        return true;
+    }
+
+    /**
+     * Advances to the next token of the current line, which must be present.
+     * 
+     * @param field the name of the field, used for the error message.
+     * @throws KismetProtocolException if there's no further token.
+     */
+    private void requireToken(String field) throws KismetProtocolException {
+        if (!nextToken()) {
+            throw error("Missing field " + field);
+        }
+    }
+
+    /**
+     * Checks whether the current token equals the specified <code>bytes</code>.
+     * 
+     * @param bytes the bytes to compare to.
+     * @return <code>true</code> if the token matches, <code>false</code> otherwise.
+     */
+    private boolean tokenEquals(byte[] bytes) {
+        if (this.tokenEnd - this.tokenStart != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; ++i) {
+            if (this.buffer[this.tokenStart + i] != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses a single line, logging and counting malformed sentences.
+     * 
+     * @param b the buffer containing the line.
+     * @param off the offset of the first byte of the line in <code>b</code>.
+     * @param len the length of the line.
+     */
+    private void parseLineSafely(byte[] b, int off, int len) {
+        if (len > 0 && b[off + len - 1] == '\r') {
+            --len;
+        }
+        try {
+            parseLine(b, off, len);
+        }
+        catch (KismetProtocolException exn) {
+            ++this.parseErrors;
+            this.logger.log(WARNING, "Skipping malformed kismet sentence", exn);
+        }
+        finally {
+            this.buffer = null;
+        }
+    }
+
+    /**
+     * Appends the specified bytes to the <code>pending</code> line buffer.
+     * 
+     * @param b the buffer containing the bytes.
+     * @param off the offset of the first byte in <code>b</code>.
+     * @param len the number of bytes to append.
+     */
+    private void append(byte[] b, int off, int len) {
+        if (this.discarding) {
+            return;
+        }
+        int length = this.pendingLength + len;
+        if (length > MAX_LINE_LENGTH) {
+            ++this.parseErrors;
+            this.logger.warning("Discarding kismet sentence exceeding " + MAX_LINE_LENGTH + " bytes");
+            this.pendingLength = 0;
+            this.discarding = true;
+            return;
+        }
+        if (length > this.pending.length) {
+            byte[] pending = new byte[Math.max(length, this.pending.length * 2)];
+            System.arraycopy(this.pending, 0, pending, 0, this.pendingLength);
+            this.pending = pending;
+        }
+        System.arraycopy(b, off, this.pending, this.pendingLength, len);
+        this.pendingLength = length;
+    }
+
+    /**
+     * Creates a new protocol exception for the current line.
+     * 
+     * @param message the detail message.
+     * @return the protocol exception.
+     */
+    private KismetProtocolException error(String message) {
+        return new KismetProtocolException(message + " in kismet sentence \""
+                                           + new String(this.buffer, this.start, this.limit - this.start, CHARSET) + "\"");
+    }
+
+    /**
+     * Returns the value of the hexadecimal digit <code>c</code>.
+     * 
+     * @param c the hexadecimal digit.
+     * @return the value of the digit, or <code>-1</code> if <code>c</code> is not a hexadecimal digit.
+     */
+    private static int hexDigit(byte c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        else if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        else if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,44 @@
+package de.oscillation.kismet.connector;
+
+/**
+ * A stage of the pipeline that processes the sentences decoded from the kismet protocol on behalf of an activation.
+ * Stages either transform the sentences and forward them to the next stage, or assemble them into messages for the
+ * {@link KismetMessageDispatcher}.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetActivation
+ */
+public interface KismetProtocolStage extends KismetProtocolHandler {
+    /**
+     * Invoked by a preceding stage when a (device, drone) pair went silent, i.e. no measured value was received for
+     * the pair within the expiry interval.
+     * 
+     * @param deviceId the EUI-48 address of the device in the lower 48 bits.
+     * @param droneIdMsb the most significant 64 bits of the drone UUID.
+     * @param droneIdLsb the least significant 64 bits of the drone UUID.
+     * @param timestamp the kismet server timestamp of the last measured value in seconds.
+     * @param signalStrength the last signal strength in dBm.
+     * @see KismetDeltaFilter
+     */
+    public void onExpire(long deviceId, long droneIdMsb, long droneIdLsb, long timestamp, int signalStrength);
+
+    /**
+     * Invoked by the connection when it was re-established after the connection to the kismet server was lost, so the
+     * sentences received before and after the invocation are not contiguous. The next message assembled from the
+     * following sentences reports the gap via {@link KismetMessage#isAfterGap()}.
+     */
+    public void onGap();
+
+    /**
+     * Returns the number of measured values currently held by this stage (and the following stages), which were not
+     * handed to the delivery stage yet. May be invoked from any thread, and may lag behind the reader.
+     * 
+     * @return the number of pending measured values.
+     */
+    public int getPendingCount();
+
+    /**
+     * Releases the resources held by this stage (and the following stages). Invoked when the activation is released.
+     */
+    public void release();
+}
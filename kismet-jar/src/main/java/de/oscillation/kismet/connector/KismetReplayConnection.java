@@ -0,0 +1,226 @@
+package de.oscillation.kismet.connector;
+
+import static java.util.logging.Level.SEVERE;
+import static java.util.logging.Logger.getLogger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import javax.resource.spi.work.Work;
+
+/**
+ * Replays the segments written by a {@link KismetCaptureLog} through the same parse and deliver pipeline as a live
+ * connection, either paced by the recorded times of reception (optionally sped up), or as fast as the activations
+ * accept the messages. The commands the parser negotiates with the (absent) kismet server are discarded, since the
+ * captured responses follow in the stream anyway. Every captured (re)connect starts with a fresh parser and
+ * subscription, and the activations are notified about the gap before every session but the first.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetCaptureLog
+ * @see KismetActivationSpec#getReplayDirectory()
+ */
+public class KismetReplayConnection implements Work, KismetConnection {
+    /** The maximum time in nanoseconds the replay sleeps before checking whether it was released. */
+    private static final long MAX_SLEEP_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /** The kismet server name of the capture. */
+    private final String serverName;
+
+    /** The kismet server port number of the capture. */
+    private final int portNumber;
+
+    /** The directory of the segments. */
+    private final File directory;
+
+    /** The replay speed relative to the capture, or <code>0</code> to replay as fast as possible. */
+    private final double speed;
+
+    /** The logger. */
+    private final Logger logger = getLogger(KismetReplayConnection.class.getName());
+
+    /** The activations sharing this connection. */
+    private final KismetActivationGroup activations = new KismetActivationGroup();
+
+    /** The metrics of this connection. */
+    private final KismetConnectionMetrics metrics;
+
+    /** Whether this connection was released. */
+    private volatile boolean released;
+
+    /**
+     * Constructs a new replay of the capture of the specified kismet server. The activations must be added to the
+     * connection before it is scheduled.
+     * 
+     * @param serverName the kismet server name of the capture.
+     * @param portNumber the kismet server port number of the capture.
+     * @param directory the directory of the segments.
+     * @param speed the replay speed relative to the capture, or <code>0</code> to replay as fast as possible.
+     * @throws IllegalArgumentException if <code>speed</code> is negative.
+     * @throws NullPointerException if either <code>serverName</code> or <code>directory</code> is <code>null</code>.
+     */
+    public KismetReplayConnection(String serverName, int portNumber, File directory, double speed) {
+        if (serverName == null) {
+            throw new NullPointerException("serverName must not be null");
+        }
+        if (directory == null) {
+            throw new NullPointerException("directory must not be null");
+        }
+        if (!(speed >= 0)) {
+            throw new IllegalArgumentException("Invalid speed " + speed);
+        }
+        this.serverName = serverName;
+        this.portNumber = portNumber;
+        this.directory = directory;
+        this.speed = speed;
+        this.metrics = new KismetConnectionMetrics(this, "replay:" + serverName + ":" + portNumber);
+    }
+
+    /**
+     * @see java.lang.Runnable#run()
+     */
+    @Override
+    public void run() {
+        File[] segments = KismetCaptureLog.segments(this.directory, this.serverName, this.portNumber);
+        this.metrics.onConnected();
+        this.logger.info("Replaying " + segments.length + " kismet capture segments of " + this.serverName + " on port " + this.portNumber + " from " + this.directory);
+        try {
+            long startNanos = System.nanoTime();
+            long firstMillis = Long.MIN_VALUE;
+            byte[] buffer = new byte[0];
+            boolean started = false;
+            KismetSubscription subscription = new KismetSubscription(true);
+            KismetProtocolParser parser = new KismetProtocolParser(this.activations, subscription);
+            for (int i = 0; i < segments.length && !this.released; ++i) {
+                MappedByteBuffer segment = map(segments[i]);
+                if (segment.remaining() < KismetCaptureLog.SEGMENT_HEADER_SIZE || segment.getInt() != KismetCaptureLog.MAGIC) {
+                    throw new IOException("Invalid kismet capture segment " + segments[i]);
+                }
+                int version = segment.getInt();
+                if (version < KismetCaptureLog.MIN_VERSION || version > KismetCaptureLog.VERSION) {
+                    throw new IOException("Unsupported version " + version + " of kismet capture segment " + segments[i]);
+                }
+                while (segment.remaining() > KismetCaptureLog.RECORD_HEADER_SIZE && !this.released) {
+                    long receiveMillis = segment.getLong();
+                    int n = segment.getInt();
+                    if (n == KismetCaptureLog.SESSION_START) {
+                        // The connection was (re)established, so start from scratch, dropping any partial sentence
+                        subscription = new KismetSubscription(true);
+                        parser = new KismetProtocolParser(this.activations, subscription);
+                        if (started) {
+                            // Tell the activations that they missed the sentences while the connection was down
+                            this.activations.onGap();
+                        }
+                        started = true;
+                        continue;
+                    }
+                    if (n <= 0) {
+                        // Zero-filled tail of the segment
+                        break;
+                    }
+                    if (n > segment.remaining()) {
+                        throw new IOException("Truncated kismet capture segment " + segments[i]);
+                    }
+                    if (this.speed > 0) {
+                        // Wait until the record is due relative to the first record
+                        if (firstMillis == Long.MIN_VALUE) {
+                            firstMillis = receiveMillis;
+                        }
+                        long dueNanos = startNanos + (long) (TimeUnit.MILLISECONDS.toNanos(receiveMillis - firstMillis) / this.speed);
+                        for (long delayNanos; (delayNanos = dueNanos - System.nanoTime()) > 0 && !this.released; ) {
+                            TimeUnit.NANOSECONDS.sleep(Math.min(delayNanos, MAX_SLEEP_NANOS));
+                        }
+                    }
+                    if (buffer.length < n) {
+                        buffer = new byte[n];
+                    }
+                    segment.get(buffer, 0, n);
+                    parser.setFilter(this.activations.getFilter());
+                    parser.parse(buffer, 0, n);
+                    started = true;
+                    this.activations.onReadComplete();
+                    this.metrics.onRead(n, parser);
+                    if (subscription.hasPendingCommands()) {
+                        // There's no kismet server to send the commands to
+                        subscription.takePendingCommands();
+                    }
+                }
+            }
+            if (!this.released) {
+                this.metrics.onTerminated("Replay completed");
+                this.logger.info("Replay of kismet capture from " + this.directory + " completed");
+            }
+        }
+        catch (InterruptedException exn) {
+            this.metrics.onTerminated("Replay interrupted");
+        }
+        catch (Exception exn) {
+            this.metrics.onTerminated(String.valueOf(exn));
+            this.logger.log(SEVERE, "Error in kismet capture replay, terminating replay", exn);
+        }
+    }
+
+    /**
+     * Maps the specified segment <code>file</code> into memory.
+     * 
+     * @param file the segment file.
+     * @return the mapping of the segment.
+     * @throws IOException in case of an I/O error.
+     */
+    private static MappedByteBuffer map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Stops the replay.
+     * 
+     * @see javax.resource.spi.work.Work#release()
+     */
+    @Override
+    public void release() {
+        this.metrics.onTerminated("Connection released");
+        this.released = true;
+    }
+
+    /**
+     * @see KismetConnection#getServerName()
+     */
+    @Override
+    public String getServerName() {
+        return this.serverName;
+    }
+
+    /**
+     * @see KismetConnection#getPortNumber()
+     */
+    @Override
+    public int getPortNumber() {
+        return this.portNumber;
+    }
+
+    /**
+     * @see KismetConnection#getActivations()
+     */
+    @Override
+    public KismetActivationGroup getActivations() {
+        return this.activations;
+    }
+
+    /**
+     * @see KismetConnection#getMetrics()
+     */
+    @Override
+    public KismetConnectionMetrics getMetrics() {
+        return this.metrics;
+    }
+}
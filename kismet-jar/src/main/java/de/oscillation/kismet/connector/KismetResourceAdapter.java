@@ -1,16 +1,28 @@
 package de.oscillation.kismet.connector;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.resource.NotSupportedException;
 import javax.resource.ResourceException;
 import javax.resource.spi.ActivationSpec;
 import javax.resource.spi.BootstrapContext;
+import javax.resource.spi.ConfigProperty;
 import javax.resource.spi.Connector;
 import javax.resource.spi.ResourceAdapter;
 import javax.resource.spi.ResourceAdapterInternalException;
+import javax.resource.spi.UnavailableException;
 import javax.resource.spi.endpoint.MessageEndpointFactory;
 import javax.resource.spi.work.WorkManager;
 import javax.transaction.xa.XAResource;
@@ -25,8 +37,60 @@ public class KismetResourceAdapter implements ResourceAdapter, Serializable {
     /** The serial version UID of this class. */
     private static final long serialVersionUID = 1L;
 
-    /** The list of active kismet server connections. */
-    private LinkedList<KismetServerConnection> connections = new LinkedList<KismetServerConnection>();
+    /** The connection mode using one blocking socket and thread per connection. */
+    public static final String BLOCKING_CONNECTION_MODE = "blocking";
+
+    /** The connection mode serving all connections from a fixed number of selector threads. */
+    public static final String SELECTOR_CONNECTION_MODE = "selector";
+
+    /** The connection mode. */
+    @ConfigProperty(description = "Connection mode, either blocking (one thread per connection) or selector (shared selector threads, requires a non-blocking overflow policy)", defaultValue = BLOCKING_CONNECTION_MODE)
+    private String connectionMode = BLOCKING_CONNECTION_MODE;
+
+    /** The number of selector threads used in selector connection mode. */
+    @ConfigProperty(description = "Number of selector threads used in selector connection mode", defaultValue = "1")
+    private Integer selectorThreads = 1;
+
+    /** The directory the received bytes are captured to, or <code>null</code> if nothing is captured. */
+    @ConfigProperty(description = "Directory the raw bytes received from the kismet servers are captured to, empty for no capture")
+    private String captureDirectory;
+
+    /** The size of the capture segments in bytes. */
+    @ConfigProperty(description = "Size of the memory-mapped capture segment files in bytes", defaultValue = "67108864")
+    private Integer captureSegmentSize = 64 * 1024 * 1024;
+
+    /** The connect timeout in milliseconds. */
+    @ConfigProperty(description = "Timeout in milliseconds for establishing a connection to a kismet server, 0 for no timeout", defaultValue = "10000")
+    private Integer connectTimeoutMillis = KismetConnection.DEFAULT_CONNECT_TIMEOUT_MILLIS;
+
+    /** The delay in milliseconds before the first attempt to re-establish a lost connection. */
+    @ConfigProperty(description = "Delay in milliseconds before the first attempt to re-establish a lost kismet server connection", defaultValue = "1000")
+    private Long reconnectInitialDelayMillis = KismetBackoff.DEFAULT_INITIAL_DELAY_MILLIS;
+
+    /** The maximum delay in milliseconds between two attempts to re-establish a lost connection. */
+    @ConfigProperty(description = "Maximum delay in milliseconds between two attempts to re-establish a lost kismet server connection", defaultValue = "60000")
+    private Long reconnectMaxDelayMillis = KismetBackoff.DEFAULT_MAX_DELAY_MILLIS;
+
+    /** The maximum number of devices in the device state index. */
+    @ConfigProperty(description = "Maximum number of devices whose live state is maintained for the KismetDeviceStateService, 0 to maintain no device state", defaultValue = "0")
+    private Integer deviceStateCapacity = 0;
+
+    /** The number of recent measured values retained per device in the device state index. */
+    @ConfigProperty(description = "Number of recent measured values retained per device in the device state", defaultValue = "8")
+    private Integer deviceStateHistorySize = 8;
+
+    /** The time-to-live in seconds of devices and drone entries in the device state index. */
+    @ConfigProperty(description = "Time in seconds after which devices and drones not seen anymore are evicted from the device state", defaultValue = "300")
+    private Integer deviceStateTtlSeconds = 300;
+
+    /** The active kismet server connections, indexed by server name and port number. */
+    private final ConcurrentHashMap<String, KismetConnection> connections = new ConcurrentHashMap<String, KismetConnection>();
+
+    /** The active message endpoint activations, indexed by message endpoint factory. */
+    private final ConcurrentHashMap<MessageEndpointFactory, KismetActivation> activations = new ConcurrentHashMap<MessageEndpointFactory, KismetActivation>();
+
+    /** The selector engines used in selector connection mode. */
+    private transient KismetSelectorEngine[] engines;
 
     /** The logger. */
     private Logger logger = Logger.getLogger(KismetResourceAdapter.class.getName());
@@ -34,13 +98,90 @@ public class KismetResourceAdapter implements ResourceAdapter, Serializable {
     /** The work manager. */
     private WorkManager workManager;
 
+    /** The timer used by the connections. */
+    private transient Timer timer;
+
+    /** The metrics of this resource adapter. */
+    private transient KismetResourceAdapterMetrics metrics;
+
+    /** The device state index, or <code>null</code> if no device state is maintained. */
+    private transient volatile KismetDeviceStateIndex deviceStateIndex;
+
     /**
      * @see javax.resource.spi.ResourceAdapter#start(javax.resource.spi.BootstrapContext)
      */
     @Override
     public void start(BootstrapContext bootstrapContext) throws ResourceAdapterInternalException {
         this.logger.info("Starting kismet resource adapter");
+        if (this.captureSegmentSize == null || this.captureSegmentSize <= KismetCaptureLog.SEGMENT_HEADER_SIZE + KismetCaptureLog.RECORD_HEADER_SIZE) {
+            throw new ResourceAdapterInternalException("Invalid captureSegmentSize " + this.captureSegmentSize);
+        }
+        if (this.connectTimeoutMillis == null || this.connectTimeoutMillis < 0) {
+            throw new ResourceAdapterInternalException("Invalid connectTimeoutMillis " + this.connectTimeoutMillis);
+        }
+        if (this.reconnectInitialDelayMillis == null || this.reconnectInitialDelayMillis <= 0) {
+            throw new ResourceAdapterInternalException("Invalid reconnectInitialDelayMillis " + this.reconnectInitialDelayMillis);
+        }
+        if (this.reconnectMaxDelayMillis == null || this.reconnectMaxDelayMillis < this.reconnectInitialDelayMillis) {
+            throw new ResourceAdapterInternalException("Invalid reconnectMaxDelayMillis " + this.reconnectMaxDelayMillis);
+        }
+        if (this.deviceStateCapacity == null || this.deviceStateCapacity < 0) {
+            throw new ResourceAdapterInternalException("Invalid deviceStateCapacity " + this.deviceStateCapacity);
+        }
+        if (this.deviceStateHistorySize == null || this.deviceStateHistorySize <= 0) {
+            throw new ResourceAdapterInternalException("Invalid deviceStateHistorySize " + this.deviceStateHistorySize);
+        }
+        if (this.deviceStateTtlSeconds == null || this.deviceStateTtlSeconds <= 0) {
+            throw new ResourceAdapterInternalException("Invalid deviceStateTtlSeconds " + this.deviceStateTtlSeconds);
+        }
         this.workManager = bootstrapContext.getWorkManager();
+        try {
+            this.timer = bootstrapContext.createTimer();
+        }
+        catch (UnavailableException exn) {
+            throw new ResourceAdapterInternalException("Failed to create timer for kismet resource adapter", exn);
+        }
+        final KismetResourceAdapterMetrics metrics = new KismetResourceAdapterMetrics(this.connections.values(), this.activations.values());
+        registerMBean(metrics, KismetResourceAdapterMetrics.OBJECT_NAME);
+        this.timer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                metrics.sample();
+            }
+        }, 1000, 1000);
+        this.metrics = metrics;
+        if (this.deviceStateCapacity > 0) {
+            // Evict the stale device state a few times per time-to-live
+            final KismetDeviceStateIndex deviceStateIndex = new KismetDeviceStateIndex(this.deviceStateCapacity, this.deviceStateHistorySize, this.deviceStateTtlSeconds);
+            long sweepMillis = Math.max(1000L, this.deviceStateTtlSeconds * 250L);
+            this.timer.scheduleAtFixedRate(new TimerTask() {
+                @Override
+                public void run() {
+                    deviceStateIndex.sweep(System.currentTimeMillis());
+                }
+            }, sweepMillis, sweepMillis);
+            this.deviceStateIndex = deviceStateIndex;
+        }
+        if (SELECTOR_CONNECTION_MODE.equals(this.connectionMode)) {
+            if (this.selectorThreads == null || this.selectorThreads <= 0) {
+                throw new ResourceAdapterInternalException("Invalid selectorThreads " + this.selectorThreads);
+            }
+            try {
+                // Start the selector engines
+                this.engines = new KismetSelectorEngine[this.selectorThreads];
+                for (int i = 0; i < this.engines.length; ++i) {
+                    this.engines[i] = new KismetSelectorEngine();
+                    this.workManager.scheduleWork(this.engines[i]);
+                }
+            }
+            catch (Exception exn) {
+                stopEngines();
+                throw new ResourceAdapterInternalException("Failed to start kismet selector engines", exn);
+            }
+        }
+        else if (!BLOCKING_CONNECTION_MODE.equals(this.connectionMode)) {
+            throw new ResourceAdapterInternalException("Invalid connectionMode " + this.connectionMode);
+        }
     }
 
     /**
@@ -49,6 +190,16 @@ public class KismetResourceAdapter implements ResourceAdapter, Serializable {
     @Override
     public void stop() {
         this.logger.info("Stopping kismet resource adapter");
+        stopEngines();
+        if (this.timer != null) {
+            this.timer.cancel();
+            this.timer = null;
+        }
+        if (this.metrics != null) {
+            unregisterMBean(KismetResourceAdapterMetrics.OBJECT_NAME);
+            this.metrics = null;
+        }
+        this.deviceStateIndex = null;
         this.workManager = null;
     }
 
@@ -62,14 +213,40 @@ public class KismetResourceAdapter implements ResourceAdapter, Serializable {
             // Validate the activation spec first
             KismetActivationSpec activationSpec = (KismetActivationSpec) as;
             activationSpec.validate();
+            if (activationSpec.getResourceAdapter() == null) {
+                // The default overflow policy depends on the connection mode of the resource adapter
+                activationSpec.setResourceAdapter(this);
+            }
+            if (this.engines != null && !isReplay(activationSpec) && activationSpec.getEffectiveOverflowPolicy() == KismetOverflowPolicy.BLOCK) {
+                // The selector threads parse for all connections, so blocking one of them would stall every kismet server
+                throw new NotSupportedException("Overflow policy block is not supported in connection mode " + this.connectionMode);
+            }
 
+            KismetActivation activation = new KismetActivation(activationSpec, endpointFactory, this.timer, this.workManager);
             try {
-                // Establish a new connection to the given kismet server
-                KismetServerConnection connection = new KismetServerConnection(activationSpec, endpointFactory);
-                this.workManager.scheduleWork(connection);
-                this.connections.add(connection);
+                KismetMessageDispatcher[] dispatchers = activation.getDispatchers();
+                for (int i = 0; i < dispatchers.length; ++i) {
+                    dispatchers[i].setMetrics(this.metrics);
+                    this.workManager.scheduleWork(dispatchers[i]);
+                    registerMBean(new KismetDispatcherMetrics(activation, i), KismetDispatcherMetrics.objectName(activation, i));
+                }
+                synchronized (this.connections) {
+                    List<InetSocketAddress> servers = activationSpec.getEffectiveServers();
+                    try {
+                        for (int i = 0; i < servers.size(); ++i) {
+                            connect(activation, servers.get(i).getHostName(), servers.get(i).getPort(), i);
+                        }
+                    }
+                    catch (Throwable cause) {
+                        disconnect(activation);
+                        throw cause;
+                    }
+                }
+                this.activations.put(endpointFactory, activation);
             }
             catch (Throwable cause) {
+                unregisterMBeans(activation);
+                activation.release();
                 throw new ResourceException("Failed to establish new connection to kismet server at " + activationSpec.getServerName() + " on port " + activationSpec.getPortNumber(), cause);
             }
         }
@@ -84,17 +261,436 @@ public class KismetResourceAdapter implements ResourceAdapter, Serializable {
     @Override
     public void endpointDeactivation(MessageEndpointFactory endpointFactory, ActivationSpec as) {
         this.logger.info("Deactivating message endpoint with factory " + endpointFactory + " and activation spec " + as);
-        for (Iterator<KismetServerConnection> it = this.connections.iterator(); it.hasNext(); ) {
-            KismetServerConnection connection = it.next();
-            if (connection.getActivationSpec().equals(as) && connection.getEndpointFactory().equals(endpointFactory)) {
-                // Stop the connection and remove it from the list
+        KismetActivation activation = this.activations.remove(endpointFactory);
+        if (activation != null) {
+            synchronized (this.connections) {
+                disconnect(activation);
+            }
+            unregisterMBeans(activation);
+            activation.release();
+        }
+    }
+
+    /**
+     * Adds the specified <code>activation</code> to the connection to the specified kismet server, establishing a new
+     * connection if necessary. Must be invoked while holding the lock on the connections.
+     * 
+     * @param activation the activation.
+     * @param serverName the kismet server name.
+     * @param portNumber the kismet server port number.
+     * @param server the index of the kismet server among the kismet servers of the activation.
+     * @throws IOException if the capture directory cannot be created.
+     * @throws ResourceException if the connection cannot be scheduled.
+     */
+    private void connect(KismetActivation activation, String serverName, int portNumber, int server) throws IOException, ResourceException {
+        // Share the connection to the given kismet server, establishing a new one if necessary
+        KismetActivationSpec activationSpec = activation.getActivationSpec();
+        String key = connectionKey(activationSpec, serverName, portNumber);
+        KismetConnection connection = this.connections.get(key);
+        if (connection == null) {
+            if (isReplay(activationSpec)) {
+                KismetReplayConnection replayConnection = new KismetReplayConnection(serverName, portNumber, new File(activationSpec.getReplayDirectory()), activationSpec.getReplaySpeed());
+                replayConnection.getActivations().setDeviceStateIndex(this.deviceStateIndex);
+                replayConnection.getActivations().add(activation, server);
+                this.workManager.scheduleWork(replayConnection);
+                connection = replayConnection;
+            }
+            else if (this.engines != null) {
+                connection = new KismetChannelConnection(serverName, portNumber, activationSpec.getFieldProjection(), selectEngine(), this.timer, this.workManager,
+                                                         createCapture(serverName, portNumber), this.connectTimeoutMillis, createBackoff());
+                connection.getActivations().setDeviceStateIndex(this.deviceStateIndex);
+                connection.getActivations().add(activation, server);
+            }
+            else {
+                KismetServerConnection serverConnection = new KismetServerConnection(serverName, portNumber, activationSpec.getFieldProjection(), createCapture(serverName, portNumber),
+                                                                                     this.connectTimeoutMillis, createBackoff());
+                serverConnection.getActivations().setDeviceStateIndex(this.deviceStateIndex);
+                serverConnection.getActivations().add(activation, server);
+                try {
+                    this.workManager.scheduleWork(serverConnection);
+                }
+                catch (ResourceException exn) {
+                    serverConnection.release();
+                    throw exn;
+                }
+                connection = serverConnection;
+            }
+            this.connections.put(key, connection);
+            registerMBean(connection.getMetrics(), connection.getMetrics().getObjectName());
+        }
+        else {
+            connection.getActivations().add(activation, server);
+        }
+    }
+
+    /**
+     * Removes the specified <code>activation</code> from the connections to its kismet servers, and closes the
+     * connections without activations. Must be invoked while holding the lock on the connections.
+     * 
+     * @param activation the activation.
+     */
+    private void disconnect(KismetActivation activation) {
+        KismetActivationSpec activationSpec = activation.getActivationSpec();
+        for (InetSocketAddress address : activationSpec.getEffectiveServers()) {
+            // Close the connection to the kismet server with the last activation
+            String key = connectionKey(activationSpec, address.getHostName(), address.getPort());
+            KismetConnection connection = this.connections.get(key);
+            if (connection != null && connection.getActivations().remove(activation) && connection.getActivations().size() == 0) {
                 connection.release();
-                it.remove();
-                return;
+                this.connections.remove(key);
+                unregisterMBean(connection.getMetrics().getObjectName());
+            }
+        }
+    }
+
+    /**
+     * Returns the key of the connection to the specified kismet server for the specified <code>activationSpec</code>.
+     * Replays are keyed separately from the live connection to the same kismet server.
+     * 
+     * @param activationSpec the kismet activation specification.
+     * @param serverName the kismet server name.
+     * @param portNumber the kismet server port number.
+     * @return the connection key.
+     */
+    private static String connectionKey(KismetActivationSpec activationSpec, String serverName, int portNumber) {
+        String key = serverName + ":" + portNumber;
+        if (isReplay(activationSpec)) {
+            key = "replay:" + new File(activationSpec.getReplayDirectory()).getAbsolutePath() + ":" + key;
+        }
+        return key;
+    }
+
+    /**
+     * Checks whether the specified <code>activationSpec</code> replays a capture instead of connecting to the kismet
+     * server.
+     * 
+     * @param activationSpec the kismet activation specification.
+     * @return <code>true</code> if the activation replays a capture, <code>false</code> otherwise.
+     */
+    private static boolean isReplay(KismetActivationSpec activationSpec) {
+        return activationSpec.getReplayDirectory() != null && activationSpec.getReplayDirectory().length() > 0;
+    }
+
+    /**
+     * Creates the capture for a new connection to the specified kismet server.
+     * 
+     * @param serverName the kismet server name.
+     * @param portNumber the kismet server port number.
+     * @return the capture, or <code>null</code> if nothing is captured.
+     * @throws IOException if the capture directory cannot be created.
+     */
+    private KismetCaptureLog createCapture(String serverName, int portNumber) throws IOException {
+        if (this.captureDirectory == null || this.captureDirectory.length() == 0) {
+            return null;
+        }
+        return new KismetCaptureLog(new File(this.captureDirectory), serverName, portNumber, this.captureSegmentSize, this.workManager);
+    }
+
+    /**
+     * Creates the backoff for a new connection.
+     * 
+     * @return the backoff.
+     */
+    private KismetBackoff createBackoff() {
+        return new KismetBackoff(this.reconnectInitialDelayMillis, this.reconnectMaxDelayMillis);
+    }
+
+    /**
+     * Registers the specified <code>mbean</code> with the platform MBean server. Failures are logged, since the
+     * resource adapter works without its MBeans.
+     * 
+     * @param mbean the MBean.
+     * @param objectName the name of the MBean.
+     */
+    private void registerMBean(Object mbean, ObjectName objectName) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(mbean, objectName);
+        }
+        catch (JMException exn) {
+            this.logger.log(Level.WARNING, "Failed to register MBean " + objectName, exn);
+        }
+    }
+
+    /**
+     * Unregisters the MBean with the specified <code>objectName</code> from the platform MBean server.
+     * 
+     * @param objectName the name of the MBean.
+     */
+    private void unregisterMBean(ObjectName objectName) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        }
+        catch (JMException exn) {
+            this.logger.log(Level.WARNING, "Failed to unregister MBean " + objectName, exn);
+        }
+    }
+
+    /**
+     * Unregisters the MBeans of the dispatchers of the specified <code>activation</code> from the platform MBean
+     * server, if they are registered.
+     * 
+     * @param activation the activation.
+     */
+    private void unregisterMBeans(KismetActivation activation) {
+        for (int i = 0; i < activation.getDispatchers().length; ++i) {
+            ObjectName objectName = KismetDispatcherMetrics.objectName(activation, i);
+            if (ManagementFactory.getPlatformMBeanServer().isRegistered(objectName)) {
+                unregisterMBean(objectName);
+            }
+        }
+    }
+
+    /**
+     * Returns the selector engine serving the least number of connections.
+     * 
+     * @return the selector engine for a new connection.
+     */
+    private KismetSelectorEngine selectEngine() {
+        KismetSelectorEngine engine = this.engines[0];
+        for (int i = 1; i < this.engines.length; ++i) {
+            if (this.engines[i].getConnectionCount() < engine.getConnectionCount()) {
+                engine = this.engines[i];
+            }
+        }
+        return engine;
+    }
+
+    /**
+     * Stops the selector engines, if any.
+     */
+    private void stopEngines() {
+        if (this.engines != null) {
+            for (KismetSelectorEngine engine : this.engines) {
+                if (engine != null) {
+                    engine.release();
+                }
             }
+            this.engines = null;
         }
     }
 
+    /**
+     * Returns the metrics of this <code>KismetResourceAdapter</code> object, which are also registered with the
+     * platform MBean server.
+     * 
+     * @return the metrics, or <code>null</code> if the resource adapter is not started.
+     */
+    public KismetResourceAdapterMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Returns the connection mode of this <code>KismetResourceAdapter</code> object.
+     * 
+     * @return the connection mode.
+     */
+    public String getConnectionMode() {
+        return this.connectionMode;
+    }
+
+    /**
+     * Set the connection mode of this <code>KismetResourceAdapter</code> object to the specified
+     * <code>connectionMode</code>, either {@value #BLOCKING_CONNECTION_MODE} or {@value #SELECTOR_CONNECTION_MODE}. In
+     * selector connection mode, live activations default to the <code>drop-oldest</code> overflow policy, and those
+     * asking for the <code>block</code> overflow policy are rejected, since blocking a selector thread would stall all
+     * connections served by it.
+     * 
+     * @param connectionMode the connection mode.
+     */
+    public void setConnectionMode(String connectionMode) {
+        this.connectionMode = connectionMode;
+    }
+
+    /**
+     * Returns the number of selector threads of this <code>KismetResourceAdapter</code> object.
+     * 
+     * @return the number of selector threads.
+     */
+    public Integer getSelectorThreads() {
+        return this.selectorThreads;
+    }
+
+    /**
+     * Set the number of selector threads of this <code>KismetResourceAdapter</code> object to the specified
+     * <code>selectorThreads</code>.
+     * 
+     * @param selectorThreads the number of selector threads.
+     */
+    public void setSelectorThreads(Integer selectorThreads) {
+        this.selectorThreads = selectorThreads;
+    }
+
+    /**
+     * Returns the capture directory of this <code>KismetResourceAdapter</code> object.
+     * 
+     * @return the capture directory, or <code>null</code> if nothing is captured.
+     */
+    public String getCaptureDirectory() {
+        return this.captureDirectory;
+    }
+
+    /**
+     * Set the capture directory of this <code>KismetResourceAdapter</code> object to the specified
+     * <code>captureDirectory</code>. If set, the raw bytes received from every kismet server are appended to rolling
+     * memory-mapped segment files in this directory, which can be replayed via
+     * {@link KismetActivationSpec#setReplayDirectory(String)}.
+     * 
+     * @param captureDirectory the capture directory, or <code>null</code> to capture nothing.
+     */
+    public void setCaptureDirectory(String captureDirectory) {
+        this.captureDirectory = captureDirectory;
+    }
+
+    /**
+     * Returns the capture segment size of this <code>KismetResourceAdapter</code> object.
+     * 
+     * @return the size of the capture segments in bytes.
+     */
+    public Integer getCaptureSegmentSize() {
+        return this.captureSegmentSize;
+    }
+
+    /**
+     * Set the capture segment size of this <code>KismetResourceAdapter</code> object to the specified
+     * <code>captureSegmentSize</code>.
+     * 
+     * @param captureSegmentSize the size of the capture segments in bytes.
+     */
+    public void setCaptureSegmentSize(Integer captureSegmentSize) {
+        this.captureSegmentSize = captureSegmentSize;
+    }
+
+    /**
+     * Returns the connect timeout of this <code>KismetResourceAdapter</code> object.
+     * 
+     * @return the connect timeout in milliseconds, or <code>0</code> for no timeout.
+     */
+    public Integer getConnectTimeoutMillis() {
+        return this.connectTimeoutMillis;
+    }
+
+    /**
+     * Set the connect timeout of this <code>KismetResourceAdapter</code> object to the specified
+     * <code>connectTimeoutMillis</code>. Connections are established asynchronously, so the timeout only limits how
+     * long an unreachable kismet server delays the next attempt.
+     * 
+     * @param connectTimeoutMillis the connect timeout in milliseconds, or <code>0</code> for no timeout.
+     */
+    public void setConnectTimeoutMillis(Integer connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    /**
+     * Returns the initial reconnect delay of this <code>KismetResourceAdapter</code> object.
+     * 
+     * @return the delay in milliseconds before the first attempt to re-establish a lost connection.
+     */
+    public Long getReconnectInitialDelayMillis() {
+        return this.reconnectInitialDelayMillis;
+    }
+
+    /**
+     * Set the initial reconnect delay of this <code>KismetResourceAdapter</code> object to the specified
+     * <code>reconnectInitialDelayMillis</code>. The delay doubles with every failed attempt up to the
+     * {@link #setReconnectMaxDelayMillis(Long) maximum reconnect delay}, and is jittered randomly between half and all
+     * of its value.
+     * 
+     * @param reconnectInitialDelayMillis the delay in milliseconds before the first attempt to re-establish a lost
+     *            connection.
+     */
+    public void setReconnectInitialDelayMillis(Long reconnectInitialDelayMillis) {
+        this.reconnectInitialDelayMillis = reconnectInitialDelayMillis;
+    }
+
+    /**
+     * Returns the maximum reconnect delay of this <code>KismetResourceAdapter</code> object.
+     * 
+     * @return the maximum delay in milliseconds between two attempts to re-establish a lost connection.
+     */
+    public Long getReconnectMaxDelayMillis() {
+        return this.reconnectMaxDelayMillis;
+    }
+
+    /**
+     * Set the maximum reconnect delay of this <code>KismetResourceAdapter</code> object to the specified
+     * <code>reconnectMaxDelayMillis</code>.
+     * 
+     * @param reconnectMaxDelayMillis the maximum delay in milliseconds between two attempts to re-establish a lost
+     *            connection.
+     */
+    public void setReconnectMaxDelayMillis(Long reconnectMaxDelayMillis) {
+        this.reconnectMaxDelayMillis = reconnectMaxDelayMillis;
+    }
+
+    /**
+     * Returns the device state capacity of this <code>KismetResourceAdapter</code> object.
+     * 
+     * @return the maximum number of devices in the device state, or <code>0</code> if no device state is maintained.
+     * @see KismetDeviceStateService
+     */
+    public Integer getDeviceStateCapacity() {
+        return this.deviceStateCapacity;
+    }
+
+    /**
+     * Set the device state capacity of this <code>KismetResourceAdapter</code> object to the specified
+     * <code>deviceStateCapacity</code>.
+     * 
+     * @param deviceStateCapacity the maximum number of devices in the device state, or <code>0</code> to maintain no
+     *            device state.
+     */
+    public void setDeviceStateCapacity(Integer deviceStateCapacity) {
+        this.deviceStateCapacity = deviceStateCapacity;
+    }
+
+    /**
+     * Returns the device state history size of this <code>KismetResourceAdapter</code> object.
+     * 
+     * @return the number of recent measured values retained per device.
+     */
+    public Integer getDeviceStateHistorySize() {
+        return this.deviceStateHistorySize;
+    }
+
+    /**
+     * Set the device state history size of this <code>KismetResourceAdapter</code> object to the specified
+     * <code>deviceStateHistorySize</code>.
+     * 
+     * @param deviceStateHistorySize the number of recent measured values retained per device.
+     */
+    public void setDeviceStateHistorySize(Integer deviceStateHistorySize) {
+        this.deviceStateHistorySize = deviceStateHistorySize;
+    }
+
+    /**
+     * Returns the device state time-to-live of this <code>KismetResourceAdapter</code> object.
+     * 
+     * @return the time in seconds after which devices and drones not seen anymore are evicted.
+     */
+    public Integer getDeviceStateTtlSeconds() {
+        return this.deviceStateTtlSeconds;
+    }
+
+    /**
+     * Set the device state time-to-live of this <code>KismetResourceAdapter</code> object to the specified
+     * <code>deviceStateTtlSeconds</code>.
+     * 
+     * @param deviceStateTtlSeconds the time in seconds after which devices and drones not seen anymore are evicted.
+     */
+    public void setDeviceStateTtlSeconds(Integer deviceStateTtlSeconds) {
+        this.deviceStateTtlSeconds = deviceStateTtlSeconds;
+    }
+
+    /**
+     * Returns the device state index of this resource adapter.
+     * 
+     * @return the device state index, or <code>null</code> if the resource adapter is not started or maintains no
+     *         device state.
+     */
+    KismetDeviceStateIndex getDeviceStateIndex() {
+        return this.deviceStateIndex;
+    }
+
     /**
      * @see javax.resource.spi.ResourceAdapter#getXAResources(javax.resource.spi.ActivationSpec[])
      */
@@ -0,0 +1,250 @@
+package de.oscillation.kismet.connector;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+/**
+ * Instrumentation of the {@link KismetResourceAdapter}, which aggregates the deliveries of all dispatchers into
+ * histograms of the batch sizes and the delivery latencies. The dispatchers record every delivery without locking or
+ * allocating, everything else is computed on demand from the connections and activations.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetResourceAdapterMetricsMBean
+ * @see KismetMessageDispatcher#setMetrics(KismetResourceAdapterMetrics)
+ */
+public class KismetResourceAdapterMetrics implements KismetResourceAdapterMetricsMBean {
+    /** The name of the MBean. */
+    static final ObjectName OBJECT_NAME;
+
+    static {
+        try {
+            OBJECT_NAME = new ObjectName(KismetConnectionMetrics.DOMAIN + ":type=KismetResourceAdapter");
+        }
+        catch (MalformedObjectNameException exn) {
+            throw new ExceptionInInitializerError(exn);
+        }
+    }
+
+    /** The established connections. */
+    private final Collection<KismetConnection> connections;
+
+    /** The active activations. */
+    private final Collection<KismetActivation> activations;
+
+    /** The histogram of the number of measurements per delivered message. */
+    private final KismetHistogram batchSizes = new KismetHistogram();
+
+    /** The histogram of the delivery latencies in nanoseconds. */
+    private final KismetHistogram deliveryLatencies = new KismetHistogram();
+
+    /** The number of delivered messages at the last sample, guarded by <code>this</code>. */
+    private long sampledDeliveredMessages;
+
+    /** The number of messages delivered during the last second. */
+    private volatile long deliveredMessagesPerSecond;
+
+    /**
+     * Constructs new metrics for the specified live views of the <code>connections</code> and
+     * <code>activations</code> of a resource adapter.
+     * 
+     * @param connections the established connections.
+     * @param activations the active activations.
+     * @throws NullPointerException if either <code>connections</code> or <code>activations</code> is
+     *             <code>null</code>.
+     */
+    public KismetResourceAdapterMetrics(Collection<KismetConnection> connections, Collection<KismetActivation> activations) {
+        if (connections == null) {
+            throw new NullPointerException("connections must not be null");
+        }
+        if (activations == null) {
+            throw new NullPointerException("activations must not be null");
+        }
+        this.connections = connections;
+        this.activations = activations;
+    }
+
+    /**
+     * Records the delivery of a message. Invoked by the dispatchers after <code>onMessage</code> returned.
+     * 
+     * @param batchSize the number of measurements of the message.
+     * @param latencyNanos the time in nanoseconds since the batch was completed.
+     */
+    void onDelivery(int batchSize, long latencyNanos) {
+        this.batchSizes.record(batchSize);
+        this.deliveryLatencies.record(latencyNanos);
+    }
+
+    /**
+     * Samples the counters to update the rates, and the metrics of all connections. Invoked once per second by the
+     * resource adapter.
+     */
+    synchronized void sample() {
+        long deliveredMessages = this.deliveryLatencies.getCount();
+        this.deliveredMessagesPerSecond = deliveredMessages - this.sampledDeliveredMessages;
+        this.sampledDeliveredMessages = deliveredMessages;
+        for (KismetConnection connection : this.connections) {
+            connection.getMetrics().sample();
+        }
+    }
+
+    /**
+     * @see KismetResourceAdapterMetricsMBean#getConnectionCount()
+     */
+    @Override
+    public int getConnectionCount() {
+        return this.connections.size();
+    }
+
+    /**
+     * @see KismetResourceAdapterMetricsMBean#getActivationCount()
+     */
+    @Override
+    public int getActivationCount() {
+        return this.activations.size();
+    }
+
+    /**
+     * @see KismetResourceAdapterMetricsMBean#getDeliveredMessages()
+     */
+    @Override
+    public long getDeliveredMessages() {
+        return this.deliveryLatencies.getCount();
+    }
+
+    /**
+     * @see KismetResourceAdapterMetricsMBean#getDeliveredMessagesPerSecond()
+     */
+    @Override
+    public long getDeliveredMessagesPerSecond() {
+        return this.deliveredMessagesPerSecond;
+    }
+
+    /**
+     * @see KismetResourceAdapterMetricsMBean#getDroppedMessages()
+     */
+    @Override
+    public long getDroppedMessages() {
+        long droppedMessages = 0;
+        for (KismetActivation activation : this.activations) {
+            for (KismetMessageDispatcher dispatcher : activation.getDispatchers()) {
+                droppedMessages += dispatcher.getDroppedCount();
+            }
+        }
+        return droppedMessages;
+    }
+
+    /**
+     * @see KismetResourceAdapterMetricsMBean#getPendingMeasurements()
+     */
+    @Override
+    public long getPendingMeasurements() {
+        long pendingMeasurements = 0;
+        for (KismetActivation activation : this.activations) {
+            pendingMeasurements += activation.getPendingMeasurements();
+        }
+        return pendingMeasurements;
+    }
+
+    /**
+     * @see KismetResourceAdapterMetricsMBean#getPendingMessages()
+     */
+    @Override
+    public long getPendingMessages() {
+        long pendingMessages = 0;
+        for (KismetActivation activation : this.activations) {
+            pendingMessages += activation.getPendingMessages();
+        }
+        return pendingMessages;
+    }
+
+    /**
+     * @see KismetResourceAdapterMetricsMBean#getMeanBatchSize()
+     */
+    @Override
+    public long getMeanBatchSize() {
+        return this.batchSizes.getMean();
+    }
+
+    /**
+     * @see KismetResourceAdapterMetricsMBean#getMedianBatchSize()
+     */
+    @Override
+    public long getMedianBatchSize() {
+        return this.batchSizes.getValueAtPercentile(50.0);
+    }
+
+    /**
+     * @see KismetResourceAdapterMetricsMBean#getBatchSize99thPercentile()
+     */
+    @Override
+    public long getBatchSize99thPercentile() {
+        return this.batchSizes.getValueAtPercentile(99.0);
+    }
+
+    /**
+     * @see KismetResourceAdapterMetricsMBean#getMaxBatchSize()
+     */
+    @Override
+    public long getMaxBatchSize() {
+        return this.batchSizes.getMax();
+    }
+
+    /**
+     * @see KismetResourceAdapterMetricsMBean#getMeanDeliveryLatencyMicros()
+     */
+    @Override
+    public long getMeanDeliveryLatencyMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(this.deliveryLatencies.getMean());
+    }
+
+    /**
+     * @see KismetResourceAdapterMetricsMBean#getMedianDeliveryLatencyMicros()
+     */
+    @Override
+    public long getMedianDeliveryLatencyMicros() {
+        return deliveryLatencyAtPercentileMicros(50.0);
+    }
+
+    /**
+     * @see KismetResourceAdapterMetricsMBean#getDeliveryLatency90thPercentileMicros()
+     */
+    @Override
+    public long getDeliveryLatency90thPercentileMicros() {
+        return deliveryLatencyAtPercentileMicros(90.0);
+    }
+
+    /**
+     * @see KismetResourceAdapterMetricsMBean#getDeliveryLatency99thPercentileMicros()
+     */
+    @Override
+    public long getDeliveryLatency99thPercentileMicros() {
+        return deliveryLatencyAtPercentileMicros(99.0);
+    }
+
+    /**
+     * @see KismetResourceAdapterMetricsMBean#getDeliveryLatency999thPercentileMicros()
+     */
+    @Override
+    public long getDeliveryLatency999thPercentileMicros() {
+        return deliveryLatencyAtPercentileMicros(99.9);
+    }
+
+    /**
+     * @see KismetResourceAdapterMetricsMBean#getMaxDeliveryLatencyMicros()
+     */
+    @Override
+    public long getMaxDeliveryLatencyMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(this.deliveryLatencies.getMax());
+    }
+
+    /**
+     * @see KismetResourceAdapterMetricsMBean#deliveryLatencyAtPercentileMicros(double)
+     */
+    @Override
+    public long deliveryLatencyAtPercentileMicros(double percentile) {
+        return TimeUnit.NANOSECONDS.toMicros(this.deliveryLatencies.getValueAtPercentile(percentile));
+    }
+}
@@ -0,0 +1,139 @@
+package de.oscillation.kismet.connector;
+
+/**
+ * Management interface of the kismet resource adapter, registered with the platform MBean server as
+ * <code>de.oscillation.kismet.connector:type=KismetResourceAdapter</code>. The delivery latency is the time from the
+ * completion of a batch, which is usually the TIME sentence of the kismet server, until <code>onMessage</code> of the
+ * message endpoint returned.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetResourceAdapterMetrics
+ */
+public interface KismetResourceAdapterMetricsMBean {
+    /**
+     * Returns the number of established kismet server connections.
+     * 
+     * @return the number of connections.
+     */
+    public int getConnectionCount();
+
+    /**
+     * Returns the number of active message endpoint activations.
+     * 
+     * @return the number of activations.
+     */
+    public int getActivationCount();
+
+    /**
+     * Returns the number of messages delivered to the message endpoints.
+     * 
+     * @return the number of delivered messages.
+     */
+    public long getDeliveredMessages();
+
+    /**
+     * Returns the number of messages delivered to the message endpoints during the last second.
+     * 
+     * @return the number of delivered messages per second.
+     */
+    public long getDeliveredMessagesPerSecond();
+
+    /**
+     * Returns the number of messages dropped by the dispatchers because of their overflow policy.
+     * 
+     * @return the number of dropped messages.
+     */
+    public long getDroppedMessages();
+
+    /**
+     * Returns the number of measurements collected by the activations, but not yet handed to the dispatchers.
+     * 
+     * @return the number of pending measurements.
+     */
+    public long getPendingMeasurements();
+
+    /**
+     * Returns the number of messages waiting for delivery in the dispatchers.
+     * 
+     * @return the number of pending messages.
+     */
+    public long getPendingMessages();
+
+    /**
+     * Returns the mean number of measurements per delivered message.
+     * 
+     * @return the mean batch size.
+     */
+    public long getMeanBatchSize();
+
+    /**
+     * Returns the median number of measurements per delivered message.
+     * 
+     * @return the median batch size.
+     */
+    public long getMedianBatchSize();
+
+    /**
+     * Returns the 99th percentile of the number of measurements per delivered message.
+     * 
+     * @return the 99th percentile of the batch size.
+     */
+    public long getBatchSize99thPercentile();
+
+    /**
+     * Returns the maximum number of measurements per delivered message.
+     * 
+     * @return the maximum batch size.
+     */
+    public long getMaxBatchSize();
+
+    /**
+     * Returns the mean delivery latency in microseconds.
+     * 
+     * @return the mean delivery latency.
+     */
+    public long getMeanDeliveryLatencyMicros();
+
+    /**
+     * Returns the median delivery latency in microseconds.
+     * 
+     * @return the median delivery latency.
+     */
+    public long getMedianDeliveryLatencyMicros();
+
+    /**
+     * Returns the 90th percentile of the delivery latency in microseconds.
+     * 
+     * @return the 90th percentile of the delivery latency.
+     */
+    public long getDeliveryLatency90thPercentileMicros();
+
+    /**
+     * Returns the 99th percentile of the delivery latency in microseconds.
+     * 
+     * @return the 99th percentile of the delivery latency.
+     */
+    public long getDeliveryLatency99thPercentileMicros();
+
+    /**
+     * Returns the 99.9th percentile of the delivery latency in microseconds.
+     * 
+     * @return the 99.9th percentile of the delivery latency.
+     */
+    public long getDeliveryLatency999thPercentileMicros();
+
+    /**
+     * Returns the maximum delivery latency in microseconds.
+     * 
+     * @return the maximum delivery latency.
+     */
+    public long getMaxDeliveryLatencyMicros();
+
+    /**
+     * Returns the delivery latency at the specified <code>percentile</code> in microseconds.
+     * 
+     * @param percentile the percentile between <code>0</code> and <code>100</code>.
+     * @return the delivery latency at the percentile.
+     */
+    public long deliveryLatencyAtPercentileMicros(double percentile);
+}
@@ -0,0 +1,122 @@
+package de.oscillation.kismet.connector;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free ring buffer connecting a single producer with a single consumer. In addition to the usual
+ * {@link #offer(Object)} and {@link #poll()} operations, the producer may {@link #overwrite(Object)} the oldest element
+ * when the buffer is full, which is used to implement the drop oldest and sample overflow policies.
+ * <p>
+ * The consumer and the overwriting producer race for the oldest element using a compare-and-set on the head sequence,
+ * so every element is either consumed or dropped exactly once.
+ * 
+ * @param <E> the type of the elements.
+ * @author Benedikt Meurer
+ * @see KismetMessageDispatcher
+ */
+public class KismetRingBuffer<E> {
+    /** The slots of the ring buffer. */
+    private final AtomicReferenceArray<E> slots;
+
+    /** The mask used to map sequences to slot indices. */
+    private final int mask;
+
+    /** The sequence of the next element to consume. */
+    private final AtomicLong head = new AtomicLong();
+
+    /** The sequence of the next element to produce. */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Constructs a new ring buffer, which can hold at least <code>capacity</code> elements. The actual capacity is
+     * rounded up to the next power of two.
+     * 
+     * @param capacity the minimum capacity.
+     * @throws IllegalArgumentException if <code>capacity</code> is not positive.
+     */
+    public KismetRingBuffer(int capacity) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.slots = new AtomicReferenceArray<E>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Returns the capacity of this ring buffer.
+     * 
+     * @return the capacity.
+     */
+    public int capacity() {
+        return this.mask + 1;
+    }
+
+    /**
+     * Returns the number of elements in this ring buffer.
+     * 
+     * @return the number of elements.
+     */
+    public int size() {
+        return (int) (this.tail.get() - this.head.get());
+    }
+
+    /**
+     * Inserts the specified <code>element</code> unless this ring buffer is full. Must only be invoked by the producer.
+     * 
+     * @param element the element to insert.
+     * @return <code>true</code> if the element was inserted, <code>false</code> if the ring buffer is full.
+     */
+    public boolean offer(E element) {
+        long t = this.tail.get();
+        if (t - this.head.get() > this.mask) {
+            return false;
+        }
+        this.slots.lazySet((int) t & this.mask, element);
+        this.tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Inserts the specified <code>element</code>, dropping the oldest element if this ring buffer is full. Must only be
+     * invoked by the producer.
+     * 
+     * @param element the element to insert.
+     * @return <code>true</code> if the oldest element was dropped, <code>false</code> otherwise.
+     */
+    public boolean overwrite(E element) {
+        boolean dropped = false;
+        long t = this.tail.get();
+        for (long h; t - (h = this.head.get()) > this.mask; ) {
+            if (this.head.compareAndSet(h, h + 1)) {
+                dropped = true;
+                break;
+            }
+        }
+        this.slots.lazySet((int) t & this.mask, element);
+        this.tail.lazySet(t + 1);
+        return dropped;
+    }
+
+    /**
+     * Removes and returns the oldest element of this ring buffer. Must only be invoked by the consumer.
+     * 
+     * @return the oldest element, or <code>null</code> if the ring buffer is empty.
+     */
+    public E poll() {
+        for (;;) {
+            long h = this.head.get();
+            if (h == this.tail.get()) {
+                return null;
+            }
+            E element = this.slots.get((int) h & this.mask);
+            if (this.head.compareAndSet(h, h + 1)) {
+                return element;
+            }
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package de.oscillation.kismet.connector;
+
+import static java.util.logging.Level.SEVERE;
+import static java.util.logging.Level.WARNING;
+import static java.util.logging.Logger.getLogger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import javax.resource.spi.work.Work;
+
+/**
+ * Serves any number of {@link KismetChannelConnection}s from a single thread, using a {@link Selector} and
+ * non-blocking socket channels. The kismet resource adapter schedules one or more engines with its work manager when
+ * configured for the <code>selector</code> connection mode, so the number of threads stays constant independent of
+ * the number of kismet servers.
+ * 
+ * @see KismetChannelConnection
+ * @see KismetResourceAdapter
+ * @author Benedikt Meurer
+ */
+public class KismetSelectorEngine implements Work {
+    /** The size of the buffer used to read from the connection channels. */
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    /** The maximum number of reads performed for a single connection before serving the other connections. */
+    private static final int MAX_READS_PER_SELECT = 16;
+
+    /** The logger. */
+    private final Logger logger = getLogger(KismetSelectorEngine.class.getName());
+
+    /** The selector. */
+    private final Selector selector;
+
+    /** The connections waiting to be registered with the selector. */
+    private final ConcurrentLinkedQueue<KismetChannelConnection> registrations = new ConcurrentLinkedQueue<KismetChannelConnection>();
+
+    /** The number of connections served by this engine. */
+    private final AtomicInteger connectionCount = new AtomicInteger();
+
+    /** The read buffer shared by all connections (every parser keeps incomplete lines on its own). */
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    /** Whether this engine was released. */
+    private volatile boolean released;
+
+    /**
+     * Constructs a new selector engine.
+     * 
+     * @throws IOException if the selector cannot be opened.
+     */
+    public KismetSelectorEngine() throws IOException {
+        this.selector = Selector.open();
+    }
+
+    /**
+     * Registers the specified <code>connection</code> with this engine, which serves all its channels until the
+     * connection is released.
+     * 
+     * @param connection the connection to register.
+     */
+    void register(KismetChannelConnection connection) {
+        this.connectionCount.incrementAndGet();
+    }
+
+    /**
+     * Queues the current channel of the specified <code>connection</code> for registration with the selector. Invoked
+     * by the connection for every new channel.
+     * 
+     * @param connection the connection.
+     */
+    void watch(KismetChannelConnection connection) {
+        this.registrations.add(connection);
+        this.selector.wakeup();
+    }
+
+    /**
+     * Deregisters the specified <code>connection</code> from this engine after it was released.
+     * 
+     * @param connection the connection to deregister.
+     */
+    void deregister(KismetChannelConnection connection) {
+        this.connectionCount.decrementAndGet();
+        this.selector.wakeup();
+    }
+
+    /**
+     * Returns the number of connections served by this engine.
+     * 
+     * @return the number of connections.
+     */
+    public int getConnectionCount() {
+        return this.connectionCount.get();
+    }
+
+    /**
+     * @see java.lang.Runnable#run()
+     */
+    @Override
+    public void run() {
+        try {
+            while (!this.released) {
+                // Register the new connections and wait for events
+                for (KismetChannelConnection connection; (connection = this.registrations.poll()) != null; ) {
+                    SocketChannel channel = connection.getChannel();
+                    if (channel == null || channel.keyFor(this.selector) != null) {
+                        // The channel was closed or registered already
+                        continue;
+                    }
+                    try {
+                        if (channel.isConnectionPending()) {
+                            channel.register(this.selector, SelectionKey.OP_CONNECT, connection);
+                        }
+                        else {
+                            connection.onConnected(channel);
+                            channel.register(this.selector, interestOps(connection), connection);
+                        }
+                    }
+                    catch (ClosedChannelException exn) {
+                        // The connection was lost or released concurrently
+                    }
+                    catch (RuntimeException exn) {
+                        // Only this connection is affected, so let it re-establish itself
+                        this.logger.log(SEVERE, "Error in kismet server connection", exn);
+                        SelectionKey key = channel.keyFor(this.selector);
+                        if (key != null) {
+                            key.cancel();
+                        }
+                        connection.onDisconnected(channel, String.valueOf(exn));
+                    }
+                }
+                this.selector.select();
+
+                // Process the ready connections
+                for (Iterator<SelectionKey> it = this.selector.selectedKeys().iterator(); it.hasNext(); ) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    process(key, (KismetChannelConnection) key.attachment());
+                }
+            }
+        }
+        catch (Exception exn) {
+            this.logger.log(SEVERE, "Error in kismet selector engine, terminating engine", exn);
+        }
+        finally {
+            try {
+                this.selector.close();
+            }
+            catch (IOException exn) {
+                this.logger.log(WARNING, "Failed to close kismet selector engine", exn);
+            }
+        }
+    }
+
+    /**
+     * Processes the ready operations of a single <code>connection</code>.
+     * 
+     * @param key the selection key of the connection.
+     * @param connection the connection.
+     */
+    private void process(SelectionKey key, KismetChannelConnection connection) {
+        SocketChannel channel = (SocketChannel) key.channel();
+        try {
+            if (key.isConnectable()) {
+                if (channel.finishConnect()) {
+                    connection.onConnected(channel);
+                    key.interestOps(interestOps(connection));
+                }
+                return;
+            }
+            if (key.isWritable()) {
+                connection.write(channel);
+                if (!connection.hasPendingOutput()) {
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+            }
+            if (key.isReadable()) {
+                for (int i = 0; i < MAX_READS_PER_SELECT; ++i) {
+                    this.buffer.clear();
+                    int n = channel.read(this.buffer);
+                    if (n < 0) {
+                        close(key, connection, "Kismet server closed the connection");
+                        break;
+                    }
+                    else if (n == 0) {
+                        break;
+                    }
+                    connection.parse(this.buffer.array(), this.buffer.arrayOffset(), n);
+                }
+                if (connection.hasPendingOutput() && key.isValid()) {
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                }
+            }
+        }
+        catch (CancelledKeyException exn) {
+            // The connection was released concurrently
+        }
+        catch (IOException exn) {
+            close(key, connection, String.valueOf(exn));
+        }
+        catch (RuntimeException exn) {
+            this.logger.log(SEVERE, "Error in kismet server connection", exn);
+            close(key, connection, String.valueOf(exn));
+        }
+    }
+
+    /**
+     * Returns the operations of interest for the connected channel of the specified <code>connection</code>.
+     * 
+     * @param connection the connection.
+     * @return the operations of interest.
+     */
+    private static int interestOps(KismetChannelConnection connection) {
+        return connection.hasPendingOutput() ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+    }
+
+    /**
+     * Closes the channel of the specified <code>connection</code> after an error, which lets the connection
+     * re-establish itself.
+     * 
+     * @param key the selection key of the channel.
+     * @param connection the connection.
+     * @param reason the reason the channel is closed.
+     */
+    private void close(SelectionKey key, KismetChannelConnection connection, String reason) {
+        key.cancel();
+        connection.onDisconnected((SocketChannel) key.channel(), reason);
+    }
+
+    /**
+     * @see javax.resource.spi.work.Work#release()
+     */
+    @Override
+    public void release() {
+        this.released = true;
+        this.selector.wakeup();
+    }
+}
@@ -1,69 +1,109 @@
 package de.oscillation.kismet.connector;
 
-import static java.lang.Integer.parseInt;
-import static java.lang.Long.parseLong;
 import static java.util.logging.Level.SEVERE;
 import static java.util.logging.Level.WARNING;
 import static java.util.logging.Logger.getLogger;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
 import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
 import java.net.Socket;
-import java.net.UnknownHostException;
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.StringTokenizer;
-import java.util.UUID;
 import java.util.logging.Logger;
 
-import javax.resource.spi.endpoint.MessageEndpoint;
-import javax.resource.spi.endpoint.MessageEndpointFactory;
 import javax.resource.spi.work.Work;
 
-import de.benediktmeurer.eui4j.EUI48;
-
 /**
- * Represents a connection to a kismet server established by the kismet resource adapter.
+ * Represents a connection to a kismet server established by the kismet resource adapter. The connection is
+ * established asynchronously by the work thread (with a connect timeout), so scheduling the connection neither
+ * blocks the caller nor the connections to other kismet servers. Whenever the connection is lost, it is
+ * re-established after a jittered exponential backoff, the subscription is negotiated anew, and the activations are
+ * notified about the gap, until the connection is released.
  * 
  * @see KismetResourceAdapter
+ * @see KismetBackoff
  * @author Benedikt Meurer
  */
-public class KismetServerConnection implements Work {
-    /** The kismet activation specification. */
-    private final KismetActivationSpec activationSpec;
+public class KismetServerConnection implements Work, KismetConnection {
+    /** The size of the buffer used to read from the connection socket. */
+    private static final int BUFFER_SIZE = 8192;
+
+    /** The kismet server name. */
+    private final String serverName;
+
+    /** The kismet server port number. */
+    private final int portNumber;
 
-    /** The factory for the kismet message listeners. */
-    private final MessageEndpointFactory endpointFactory;
+    /** Whether only the protocol fields needed by the connector are requested. */
+    private final boolean fieldProjection;
 
     /** The logger. */
     private final Logger logger = getLogger(KismetServerConnection.class.getName());
 
-    /** The kismet server connection socket. */
-    private final Socket socket;
+    /** The activations sharing this connection. */
+    private final KismetActivationGroup activations = new KismetActivationGroup();
+
+    /** The capture of the received bytes, or <code>null</code> if the connection is not captured. */
+    private final KismetCaptureLog capture;
+
+    /** The connect timeout in milliseconds, or <code>0</code> for no timeout. */
+    private final int connectTimeoutMillis;
+
+    /** The delays between the attempts to re-establish the connection, only accessed by the work thread. */
+    private final KismetBackoff backoff;
+
+    /** The metrics of this connection. */
+    private final KismetConnectionMetrics metrics;
+
+    /** The current kismet server connection socket, or <code>null</code> between two attempts. */
+    private Socket socket;
+
+    /** Whether this connection was released. */
+    private volatile boolean released;
 
     /**
-     * Constructs and initializes a new kismet server connection using the specified
-     * <code>activationSpec</code> and <code>endpointFactory</code>.
+     * Constructs a new connection to the specified kismet server with the default connect timeout and backoff. The
+     * activations must be added to the connection before it is scheduled.
      * 
-     * @param activationSpec the kismet activation specification.
-     * @param endpointFactory the message endpoint factory to handle the kismet messages.
-     * @throws IOException in case of an I/O error.
-     * @throws NullPointerException if either <code>activationSpec</code> or
-     *             <code>endpointFactory</code> is <code>null</code>.
-     * @throws UnknownHostException if the host specified by the <code>activationSpec</code> cannot
-     *             be resolved.
+     * @param serverName the kismet server name.
+     * @param portNumber the kismet server port number.
+     * @param fieldProjection whether only the protocol fields needed by the connector are requested.
+     * @throws NullPointerException if <code>serverName</code> is <code>null</code>.
      */
-    public KismetServerConnection(KismetActivationSpec activationSpec, MessageEndpointFactory endpointFactory) throws UnknownHostException, IOException {
-        if (endpointFactory == null) {
-            throw new NullPointerException("endpointFactory must not be null");
+    public KismetServerConnection(String serverName, int portNumber, boolean fieldProjection) {
+        this(serverName, portNumber, fieldProjection, null, DEFAULT_CONNECT_TIMEOUT_MILLIS, new KismetBackoff());
+    }
+
+    /**
+     * Constructs a new connection to the specified kismet server, which appends the received bytes to the specified
+     * <code>capture</code>. The activations must be added to the connection before it is scheduled.
+     * 
+     * @param serverName the kismet server name.
+     * @param portNumber the kismet server port number.
+     * @param fieldProjection whether only the protocol fields needed by the connector are requested.
+     * @param capture the capture of the received bytes, which is closed with the connection, or <code>null</code>.
+     * @param connectTimeoutMillis the connect timeout in milliseconds, or <code>0</code> for no timeout.
+     * @param backoff the delays between the attempts to re-establish the connection.
+     * @throws IllegalArgumentException if <code>connectTimeoutMillis</code> is negative.
+     * @throws NullPointerException if either <code>serverName</code> or <code>backoff</code> is <code>null</code>.
+     */
+    public KismetServerConnection(String serverName, int portNumber, boolean fieldProjection, KismetCaptureLog capture, int connectTimeoutMillis, KismetBackoff backoff) {
+        if (serverName == null) {
+            throw new NullPointerException("serverName must not be null");
         }
-        this.activationSpec = activationSpec;
-        this.endpointFactory = endpointFactory;
-        this.socket = new Socket(activationSpec.getServerName(), activationSpec.getPortNumber());
-        this.logger.info("Successfully established new kismet server connection to " + activationSpec.getServerName()
-                         + " on port " + activationSpec.getPortNumber());
+        if (connectTimeoutMillis < 0) {
+            throw new IllegalArgumentException("Invalid connectTimeoutMillis " + connectTimeoutMillis);
+        }
+        if (backoff == null) {
+            throw new NullPointerException("backoff must not be null");
+        }
+        this.serverName = serverName;
+        this.portNumber = portNumber;
+        this.fieldProjection = fieldProjection;
+        this.capture = capture;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.backoff = backoff;
+        this.metrics = new KismetConnectionMetrics(this);
     }
 
     /**
@@ -72,87 +112,126 @@ public class KismetServerConnection implements Work {
     @Override
     public void run() {
         try {
-            // Properly wrap the connection socket's input and output streams
-            BufferedReader in = new BufferedReader(new InputStreamReader(this.socket.getInputStream()));
-            OutputStreamWriter out = new OutputStreamWriter(this.socket.getOutputStream());
-
-            // Enable the CLISRC and SOURCE protocols
-            this.logger.info("Enabling CLISRC and SOURCE protocols for kismet server connection");
-            out.write("!1 ENABLE CLISRC *\n");
-            out.write("!2 ENABLE SOURCE *\n");
-            out.flush();
-
-            // Process the incoming kismet messages (collecting drones and measured values)
-            HashMap<UUID, String> droneNames = new HashMap<UUID, String>();
-            LinkedList<KismetMeasuredValue> measuredValues = new LinkedList<KismetMeasuredValue>();
-            for (;;) {
-                StringTokenizer tokenizer = new StringTokenizer(in.readLine(), " ");
-                String header = tokenizer.nextToken();
-                if ("*CLISRC:".equals(header)) {
-                    // Parse the CLISRC sentence
-                    tokenizer.nextToken(); // BSSID
-                    EUI48 deviceId = EUI48.fromString(tokenizer.nextToken());
-                    UUID droneId = UUID.fromString(tokenizer.nextToken());
-                    long timestamp = parseLong(tokenizer.nextToken());
-                    tokenizer.nextToken(); // Packet count
-                    int signalStrength = parseInt(tokenizer.nextToken());
-
-                    // Collect the measured value
-                    measuredValues.add(new KismetMeasuredValue(deviceId, droneId, signalStrength, timestamp));
-                }
-                else if ("*SOURCE:".equals(header)) {
-                    // Parse the SOURCE sentence
-                    String interf = tokenizer.nextToken();
-                    String type = tokenizer.nextToken();
-                    if ("drone".equals(interf) && "drone".equals(type)) {
-                        // Extract the drone name and UUID and insert it into the drone mapping
-                        String name = tokenizer.nextToken();
-                        tokenizer.nextToken(); // Channel
-                        UUID id = UUID.fromString(tokenizer.nextToken());
-                        droneNames.put(id, name);
+            for (boolean established = false; ; ) {
+                Socket socket = new Socket();
+                String reason;
+                try {
+                    if (!attach(socket)) {
+                        break;
                     }
-                }
-                else if ("*TIME:".equals(header)) {
-                    // Parse the TIME sentence
-                    long timestamp = parseLong(tokenizer.nextToken());
-
-                    try {
-                        // Prepare to send the collected data as message using our configured
-                        // message endpoint factory
-                        MessageEndpoint messageEndpoint = this.endpointFactory.createEndpoint(null);
-                        messageEndpoint.beforeDelivery(KismetMessageService.class.getDeclaredMethod("onMessage", KismetMessage.class));
-                        try {
-                            // Send the message to the endpoint
-                            KismetMessage message = new KismetMessage(new HashMap<UUID, String>(droneNames), measuredValues, timestamp);
-                            ((KismetMessageService) messageEndpoint).onMessage(message);
-
-                            // Reset the measured values
-                            measuredValues = new LinkedList<KismetMeasuredValue>();
-                        }
-                        finally {
-                            messageEndpoint.afterDelivery();
-                            messageEndpoint.release();
-                        }
+                    socket.connect(new InetSocketAddress(this.serverName, this.portNumber), this.connectTimeoutMillis);
+                    if (established) {
+                        // Tell the activations that they missed the sentences while the connection was down
+                        this.activations.onGap();
                     }
-                    catch (Exception exn) {
-                        this.logger.log(WARNING, "Failed to pass kismet message to endpoint", exn);
+                    established = true;
+                    if (this.capture != null) {
+                        this.capture.appendSessionStart(System.currentTimeMillis());
                     }
+                    this.metrics.onConnected();
+                    this.logger.info("Successfully established new kismet server connection to " + this.serverName + " on port " + this.portNumber);
+                    session(socket);
+                    reason = "Kismet server closed the connection";
+                }
+                catch (IOException exn) {
+                    reason = String.valueOf(exn);
+                }
+                catch (RuntimeException exn) {
+                    reason = String.valueOf(exn);
+                    if (!this.released) {
+                        this.logger.log(SEVERE, "Error in kismet server connection", exn);
+                    }
+                }
+                finally {
+                    detach(socket);
+                }
+                if (this.released) {
+                    break;
+                }
+                this.metrics.onDisconnected(reason);
+                long delayMillis = this.backoff.nextDelayMillis();
+                this.logger.warning("Lost kismet server connection to " + this.serverName + " on port " + this.portNumber + " (" + reason + "), reconnecting in " + delayMillis
+                                    + " ms");
+                if (!await(delayMillis)) {
+                    break;
                 }
             }
         }
-        catch (Exception exn) {
-            this.logger.log(SEVERE, "Error in kismet server connection, terminating connection", exn);
+        catch (InterruptedException exn) {
+            this.metrics.onTerminated("Connection interrupted");
+        }
+        finally {
+            if (this.capture != null) {
+                this.capture.close();
+            }
         }
     }
 
     /**
-     * @see javax.resource.spi.work.Work#release()
+     * Subscribes to the CLISRC and SOURCE protocols and processes the incoming kismet sentences on the specified
+     * established <code>socket</code>, until the kismet server closes the connection. Every session uses a parser and
+     * subscription of its own, since the kismet server starts from scratch with every connection.
+     * 
+     * @param socket the established connection socket.
+     * @throws IOException in case of an I/O error.
      */
-    @Override
-    public void release() {
+    private void session(Socket socket) throws IOException {
+        // Properly wrap the connection socket's output stream
+        InputStream in = socket.getInputStream();
+        OutputStreamWriter out = new OutputStreamWriter(socket.getOutputStream());
+        KismetSubscription subscription = new KismetSubscription(this.fieldProjection);
+        KismetProtocolParser parser = new KismetProtocolParser(this.activations, subscription);
+
+        // Subscribe to the CLISRC and SOURCE protocols
+        this.logger.info("Subscribing to CLISRC and SOURCE protocols for kismet server connection");
+        out.write(subscription.takePendingCommands());
+        out.flush();
+
+        // Process the incoming kismet messages (collecting drones and measured values), and back off from scratch once
+        // the kismet server actually talks to us, so servers dropping connections right away are not hammered
+        byte[] buffer = new byte[BUFFER_SIZE];
+        for (int n, chunks = 0; (n = in.read(buffer)) >= 0; ) {
+            if (chunks++ == 0) {
+                this.backoff.reset();
+            }
+            if (this.capture != null) {
+                this.capture.append(System.currentTimeMillis(), buffer, 0, n);
+            }
+            parser.setFilter(this.activations.getFilter());
+            parser.parse(buffer, 0, n);
+            this.activations.onReadComplete();
+            this.metrics.onRead(n, parser);
+            if (subscription.hasPendingCommands()) {
+                // Complete the subscription negotiated by the parser
+                out.write(subscription.takePendingCommands());
+                out.flush();
+            }
+        }
+    }
+
+    /**
+     * Makes the specified <code>socket</code> the current socket, so that {@link #release()} can close it.
+     * 
+     * @param socket the new socket.
+     * @return <code>true</code> if the socket was attached, <code>false</code> if the connection was released.
+     */
+    private synchronized boolean attach(Socket socket) {
+        if (this.released) {
+            return false;
+        }
+        this.socket = socket;
+        return true;
+    }
+
+    /**
+     * Closes the specified <code>socket</code>, and clears the current socket.
+     * 
+     * @param socket the socket to close.
+     */
+    private synchronized void detach(Socket socket) {
+        this.socket = null;
         try {
-            // Try to close the connection socket
-            this.socket.close();
+            socket.close();
         }
         catch (IOException exn) {
             this.logger.log(WARNING, "Failed to close kismet server connection", exn);
@@ -160,20 +239,73 @@ public class KismetServerConnection implements Work {
     }
 
     /**
-     * Returns the activationSpec of this <code>KismetServerConnection</code> object.
+     * Waits for the specified delay before the next attempt to establish the connection, unless the connection is
+     * released in the meantime.
      * 
-     * @return the activationSpec.
+     * @param delayMillis the delay in milliseconds.
+     * @return <code>true</code> if the delay elapsed, <code>false</code> if the connection was released.
+     * @throws InterruptedException if the work thread was interrupted.
      */
-    public KismetActivationSpec getActivationSpec() {
-        return this.activationSpec;
+    private synchronized boolean await(long delayMillis) throws InterruptedException {
+        long deadlineMillis = System.currentTimeMillis() + delayMillis;
+        for (long waitMillis = delayMillis; !this.released && waitMillis > 0; waitMillis = deadlineMillis - System.currentTimeMillis()) {
+            wait(waitMillis);
+        }
+        return !this.released;
     }
 
     /**
-     * Returns the endpointFactory of this <code>KismetServerConnection</code> object.
+     * Closes the current socket, if any, and stops re-establishing the connection.
      * 
-     * @return the endpointFactory.
+     * @see javax.resource.spi.work.Work#release()
+     */
+    @Override
+    public void release() {
+        this.metrics.onTerminated("Connection released");
+        synchronized (this) {
+            this.released = true;
+            notifyAll();
+            if (this.socket != null) {
+                try {
+                    // Try to close the connection socket
+                    this.socket.close();
+                }
+                catch (IOException exn) {
+                    this.logger.log(WARNING, "Failed to close kismet server connection", exn);
+                }
+            }
+        }
+    }
+
+    /**
+     * @see KismetConnection#getServerName()
+     */
+    @Override
+    public String getServerName() {
+        return this.serverName;
+    }
+
+    /**
+     * @see KismetConnection#getPortNumber()
      */
-    public MessageEndpointFactory getEndpointFactory() {
-        return this.endpointFactory;
+    @Override
+    public int getPortNumber() {
+        return this.portNumber;
+    }
+
+    /**
+     * @see KismetConnection#getActivations()
+     */
+    @Override
+    public KismetActivationGroup getActivations() {
+        return this.activations;
+    }
+
+    /**
+     * @see KismetConnection#getMetrics()
+     */
+    @Override
+    public KismetConnectionMetrics getMetrics() {
+        return this.metrics;
     }
 }
@@ -0,0 +1,277 @@
+package de.oscillation.kismet.connector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import javax.resource.spi.endpoint.MessageEndpointFactory;
+
+/**
+ * Delivery stage that splits every message by device into a fixed number of shards, and delivers the shards
+ * concurrently via one {@link KismetMessageDispatcher} per shard. A device is always assigned to the same shard, and
+ * every shard delivers its messages in order, so the measured values (or aggregates) of a single device are still
+ * delivered in order (as are their positions), while the message endpoints for different devices run in parallel.
+ * <p>
+ * Every shard has its own buffer, thread and message endpoint, and reports its own queue depth and delivery latency.
+ * Empty parts of a message are not delivered, unless the whole message is empty, in which case it is delivered to the
+ * first shard to keep the drone registry and timestamp up to date.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetActivationSpec#getShardCount()
+ */
+public class KismetShardedDispatcher implements KismetMessageSink {
+    /** The dispatchers of the shards. */
+    private final KismetMessageDispatcher[] shards;
+
+    /**
+     * Constructs a new sharded dispatcher for the specified <code>activationSpec</code>.
+     * 
+     * @param activationSpec the kismet activation specification.
+     * @param endpointFactory the message endpoint factory to handle the kismet messages.
+     * @throws IllegalArgumentException if the shard count of the <code>activationSpec</code> is not positive.
+     */
+    public KismetShardedDispatcher(KismetActivationSpec activationSpec, MessageEndpointFactory endpointFactory) {
+        int shardCount = activationSpec.getShardCount();
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("Invalid shardCount " + shardCount);
+        }
+        this.shards = new KismetMessageDispatcher[shardCount];
+        for (int i = 0; i < shardCount; ++i) {
+            this.shards[i] = new KismetMessageDispatcher(activationSpec, endpointFactory);
+        }
+    }
+
+    /**
+     * Returns the dispatchers of the shards, which must be scheduled with the work manager.
+     * 
+     * @return the shards.
+     */
+    public KismetMessageDispatcher[] getShards() {
+        return this.shards.clone();
+    }
+
+    /**
+     * Returns the shard of the specified device.
+     * 
+     * @param deviceId the EUI-48 address of the device in the lower 48 bits.
+     * @return the index of the shard.
+     */
+    public int shardOf(long deviceId) {
+        return (KismetAggregateTable.hash(deviceId) >>> 1) % this.shards.length;
+    }
+
+    /**
+     * @see KismetMessageSink#dispatch(KismetMessage)
+     */
+    @Override
+    public void dispatch(KismetMessage message) {
+        KismetMessage[] parts;
+        if (message instanceof KismetAggregatedMessage) {
+            parts = split((KismetAggregatedMessage) message);
+        }
+        else if (message instanceof KismetPositionedMessage) {
+            parts = split((KismetPositionedMessage) message);
+        }
+        else if (message instanceof KismetWindowedMessage) {
+            parts = split((KismetWindowedMessage) message);
+        }
+        else {
+            parts = split(message);
+        }
+        boolean delivered = false;
+        for (int i = 0; i < parts.length; ++i) {
+            if (parts[i] != null) {
+                this.shards[i].dispatch(parts[i]);
+                delivered = true;
+            }
+        }
+        if (!delivered) {
+            this.shards[0].dispatch(message);
+        }
+    }
+
+    /**
+     * @see KismetMessageSink#wouldBlock()
+     */
+    @Override
+    public boolean wouldBlock() {
+        for (KismetMessageDispatcher shard : this.shards) {
+            if (shard.wouldBlock()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Releases the dispatchers of all shards.
+     */
+    public void release() {
+        for (KismetMessageDispatcher shard : this.shards) {
+            shard.release();
+        }
+    }
+
+    /**
+     * Splits the measured and expired values of the specified <code>message</code> by shard.
+     * 
+     * @param message the message to split.
+     * @return the parts per shard, <code>null</code> for shards without values.
+     */
+    private KismetMessage[] split(KismetMessage message) {
+        KismetMeasuredValueBatch measuredValues = message.getMeasuredValueBatch();
+        KismetMeasuredValueBatch expiredValues = message.getExpiredValueBatch();
+        KismetMeasuredValueBatchBuilder[] measuredBuilders = split(measuredValues);
+        KismetMeasuredValueBatchBuilder[] expiredBuilders = split(expiredValues);
+        UUID[] measuredDrones = drones(measuredValues);
+        UUID[] expiredDrones = drones(expiredValues);
+        KismetMessage[] parts = new KismetMessage[this.shards.length];
+        for (int i = 0; i < parts.length; ++i) {
+            if (measuredBuilders[i].size() > 0 || expiredBuilders[i].size() > 0) {
+                parts[i] = new KismetMessage(message.getDroneRegistry(), measuredBuilders[i].build(measuredDrones), expiredBuilders[i].build(expiredDrones),
+                                             message.getTimestamp(), message.isAfterGap());
+            }
+        }
+        return parts;
+    }
+
+    /**
+     * Splits the measured and expired values of the specified windowed <code>message</code> by shard.
+     * 
+     * @param message the message to split.
+     * @return the parts per shard, <code>null</code> for shards without values.
+     */
+    private KismetMessage[] split(KismetWindowedMessage message) {
+        KismetMeasuredValueBatch measuredValues = message.getMeasuredValueBatch();
+        KismetMeasuredValueBatch expiredValues = message.getExpiredValueBatch();
+        KismetMeasuredValueBatchBuilder[] measuredBuilders = split(measuredValues);
+        KismetMeasuredValueBatchBuilder[] expiredBuilders = split(expiredValues);
+        UUID[] measuredDrones = drones(measuredValues);
+        UUID[] expiredDrones = drones(expiredValues);
+        KismetMessage[] parts = new KismetMessage[this.shards.length];
+        for (int i = 0; i < parts.length; ++i) {
+            if (measuredBuilders[i].size() > 0 || expiredBuilders[i].size() > 0) {
+                parts[i] = new KismetWindowedMessage(message.getDroneRegistry(), measuredBuilders[i].build(measuredDrones), expiredBuilders[i].build(expiredDrones),
+                                                     message.getWindowStart(), message.getWindowEnd(), message.getTimestamp(), message.isAfterGap(), message.isLate());
+            }
+        }
+        return parts;
+    }
+
+    /**
+     * Splits the specified <code>batch</code> of measured values by shard.
+     * 
+     * @param batch the batch to split.
+     * @return the builders per shard.
+     */
+    private KismetMeasuredValueBatchBuilder[] split(KismetMeasuredValueBatch batch) {
+        KismetMeasuredValueBatchBuilder[] builders = new KismetMeasuredValueBatchBuilder[this.shards.length];
+        int capacity = batch.size() / this.shards.length + 1;
+        for (int i = 0; i < builders.length; ++i) {
+            builders[i] = new KismetMeasuredValueBatchBuilder(capacity);
+        }
+        for (int i = 0; i < batch.size(); ++i) {
+            long deviceId = batch.getDeviceId(i);
+            builders[shardOf(deviceId)].add(deviceId, batch.getDroneIndex(i), batch.getSignalStrength(i), batch.getTimestamp(i));
+        }
+        return builders;
+    }
+
+    /**
+     * Splits the aggregates of the specified <code>message</code> by shard.
+     * 
+     * @param message the message to split.
+     * @return the parts per shard, <code>null</code> for shards without aggregates.
+     */
+    private KismetMessage[] split(KismetAggregatedMessage message) {
+        KismetAggregateBatch aggregates = message.getAggregates();
+        int n = aggregates.size();
+        int[] shardOf = new int[n];
+        int[] sizes = new int[this.shards.length];
+        for (int i = 0; i < n; ++i) {
+            shardOf[i] = shardOf(aggregates.getDeviceId(i));
+            sizes[shardOf[i]]++;
+        }
+        UUID[] drones = new UUID[aggregates.getDroneCount()];
+        for (int i = 0; i < drones.length; ++i) {
+            drones[i] = aggregates.getDrone(i);
+        }
+        KismetMessage[] parts = new KismetMessage[this.shards.length];
+        for (int shard = 0; shard < parts.length; ++shard) {
+            int size = sizes[shard];
+            if (size == 0) {
+                continue;
+            }
+            long[] deviceIds = new long[size];
+            int[] droneIndices = new int[size];
+            int[] counts = new int[size];
+            int[] minSignalStrengths = new int[size];
+            int[] maxSignalStrengths = new int[size];
+            long[] sumSignalStrengths = new long[size];
+            int[] lastSignalStrengths = new int[size];
+            long[] firstTimestamps = new long[size];
+            long[] lastTimestamps = new long[size];
+            for (int i = 0, j = 0; j < size; ++i) {
+                if (shardOf[i] == shard) {
+                    deviceIds[j] = aggregates.getDeviceId(i);
+                    droneIndices[j] = aggregates.getDroneIndex(i);
+                    counts[j] = aggregates.getCount(i);
+                    minSignalStrengths[j] = aggregates.getMinSignalStrength(i);
+                    maxSignalStrengths[j] = aggregates.getMaxSignalStrength(i);
+                    sumSignalStrengths[j] = aggregates.getSumSignalStrength(i);
+                    lastSignalStrengths[j] = aggregates.getLastSignalStrength(i);
+                    firstTimestamps[j] = aggregates.getFirstTimestamp(i);
+                    lastTimestamps[j] = aggregates.getLastTimestamp(i);
+                    ++j;
+                }
+            }
+            parts[shard] = new KismetAggregatedMessage(message.getDroneRegistry(), new KismetAggregateBatch(drones, size, deviceIds, droneIndices, counts,
+                                                                                                           minSignalStrengths, maxSignalStrengths,
+                                                                                                           sumSignalStrengths, lastSignalStrengths,
+                                                                                                           firstTimestamps, lastTimestamps),
+                                                       message.getWindowStart(), message.getWindowEnd(), message.getTimestamp(), message.isAfterGap());
+        }
+        return parts;
+    }
+
+    /**
+     * Splits the measured values and positions of the specified <code>message</code> by shard.
+     * 
+     * @param message the message to split.
+     * @return the parts per shard, <code>null</code> for shards without measured values and positions.
+     */
+    private KismetMessage[] split(KismetPositionedMessage message) {
+        KismetMeasuredValueBatch measuredValues = message.getMeasuredValueBatch();
+        KismetMeasuredValueBatchBuilder[] measuredBuilders = split(measuredValues);
+        UUID[] measuredDrones = drones(measuredValues);
+        List<List<KismetPosition>> positions = new ArrayList<List<KismetPosition>>(this.shards.length);
+        for (int i = 0; i < this.shards.length; ++i) {
+            positions.add(new ArrayList<KismetPosition>());
+        }
+        for (KismetPosition position : message.getPositions()) {
+            positions.get(shardOf(KismetIdentifiers.toLong(position.getDeviceId()))).add(position);
+        }
+        KismetMessage[] parts = new KismetMessage[this.shards.length];
+        for (int i = 0; i < parts.length; ++i) {
+            if (measuredBuilders[i].size() > 0 || !positions.get(i).isEmpty()) {
+                parts[i] = new KismetPositionedMessage(message.getDroneRegistry(), measuredBuilders[i].build(measuredDrones), positions.get(i), message.getTimestamp(),
+                                                       message.isAfterGap());
+            }
+        }
+        return parts;
+    }
+
+    /**
+     * Returns the drone table of the specified <code>batch</code>.
+     * 
+     * @param batch the batch.
+     * @return the drones referenced by the drone indices of the batch.
+     */
+    private static UUID[] drones(KismetMeasuredValueBatch batch) {
+        UUID[] drones = new UUID[batch.getDroneCount()];
+        for (int i = 0; i < drones.length; ++i) {
+            drones[i] = batch.getDrone(i);
+        }
+        return drones;
+    }
+}
@@ -0,0 +1,72 @@
+package de.oscillation.kismet.connector;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter that spreads concurrent updates over several cells, so that threads updating the same counter don't
+ * contend on a single cache line. The cells are padded to separate cache lines, and each thread picks its cell by its
+ * thread identifier. Reading the counter sums up all cells, which is only done by the management interface.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetConnectionMetrics
+ * @see KismetResourceAdapterMetrics
+ */
+public class KismetStripedCounter {
+    /** The distance between two cells in longs, so that every cell occupies its own cache line. */
+    private static final int PADDING = 8;
+
+    /** The number of cells, a power of two. */
+    private static final int CELLS;
+
+    static {
+        int cells = 1;
+        while (cells < Runtime.getRuntime().availableProcessors() && cells < 64) {
+            cells <<= 1;
+        }
+        CELLS = cells;
+    }
+
+    /** The cells, of which only every {@link #PADDING}th element is used. */
+    private final AtomicLongArray cells = new AtomicLongArray(CELLS * PADDING);
+
+    /**
+     * Adds the specified <code>delta</code> to this counter.
+     * 
+     * @param delta the value to add.
+     */
+    public void add(long delta) {
+        if (delta != 0) {
+            this.cells.getAndAdd(cell(), delta);
+        }
+    }
+
+    /**
+     * Increments this counter by one.
+     */
+    public void increment() {
+        this.cells.getAndIncrement(cell());
+    }
+
+    /**
+     * Returns the current sum of this counter. The sum is not an atomic snapshot if the counter is updated
+     * concurrently.
+     * 
+     * @return the sum.
+     */
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < CELLS; ++i) {
+            sum += this.cells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the index of the cell of the current thread.
+     * 
+     * @return the index into {@link #cells}.
+     */
+    private static int cell() {
+        return (KismetAggregateTable.hash(Thread.currentThread().getId()) & (CELLS - 1)) * PADDING;
+    }
+}
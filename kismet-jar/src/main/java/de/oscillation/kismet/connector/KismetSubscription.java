@@ -0,0 +1,151 @@
+package de.oscillation.kismet.connector;
+
+import static java.util.logging.Logger.getLogger;
+
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+/**
+ * Negotiates the subscription to the CLISRC and SOURCE protocols with the kismet server. With field projection, the
+ * connector first asks the kismet server for the fields it supports via <code>!n CAPABILITY</code> command, and then
+ * enables only the fields it actually needs, in the order it prefers. The {@link KismetProtocolParser} is configured
+ * with the negotiated field layout when the <code>*CAPABILITY:</code> response arrives. If the kismet server lacks
+ * one of the needed fields, all fields are enabled and the parser is configured with the complete layout announced by
+ * the kismet server. Without field projection, all fields are enabled right away and the parser uses the default
+ * layout.
+ * <p>
+ * The commands to send to the kismet server are queued by this object and picked up by the connection via
+ * {@link #takePendingCommands()}. Instances of this class are not thread-safe, every connection must use its own
+ * subscription.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetProtocolParser
+ * @see KismetActivationSpec#getFieldProjection()
+ */
+public class KismetSubscription {
+    /** The name of the CLISRC protocol. */
+    public static final String CLIENT_SOURCE_PROTOCOL = "CLISRC";
+
+    /** The name of the SOURCE protocol. */
+    public static final String SOURCE_PROTOCOL = "SOURCE";
+
+    /** The CLISRC fields needed by the connector, in the order the parser fails fast on filtered measured values. */
+    static final String[] CLIENT_SOURCE_FIELDS = { "mac", "uuid", "lasttime", "signal_dbm" };
+
+    /** The SOURCE fields needed by the connector, in the order the parser fails fast on non-drone sources. */
+    static final String[] SOURCE_FIELDS = { "interface", "type", "username", "uuid" };
+
+    /** The leading CLISRC fields sent by the kismet server if all fields are enabled. */
+    static final String[] DEFAULT_CLIENT_SOURCE_LAYOUT = { "bssid", "mac", "uuid", "lasttime", "numpackets", "signal_dbm" };
+
+    /** The leading SOURCE fields sent by the kismet server if all fields are enabled. */
+    static final String[] DEFAULT_SOURCE_LAYOUT = { "interface", "type", "username", "channel", "uuid" };
+
+    /** Whether only the needed fields are enabled. */
+    private final boolean fieldProjection;
+
+    /** The logger. */
+    private final Logger logger = getLogger(KismetSubscription.class.getName());
+
+    /** The commands not yet picked up by the connection. */
+    private final StringBuilder pendingCommands = new StringBuilder();
+
+    /** The identifier of the next command. */
+    private int nextCommandId = 1;
+
+    /**
+     * Constructs a new subscription, and queues the initial commands for the kismet server.
+     * 
+     * @param fieldProjection whether only the needed fields are enabled.
+     */
+    public KismetSubscription(boolean fieldProjection) {
+        this.fieldProjection = fieldProjection;
+        if (fieldProjection) {
+            command("CAPABILITY " + CLIENT_SOURCE_PROTOCOL);
+            command("CAPABILITY " + SOURCE_PROTOCOL);
+        }
+        else {
+            command("ENABLE " + CLIENT_SOURCE_PROTOCOL + " *");
+            command("ENABLE " + SOURCE_PROTOCOL + " *");
+        }
+    }
+
+    /**
+     * Checks whether there are commands not yet picked up by the connection.
+     * 
+     * @return <code>true</code> if there are pending commands, <code>false</code> otherwise.
+     */
+    public boolean hasPendingCommands() {
+        return this.pendingCommands.length() > 0;
+    }
+
+    /**
+     * Returns and clears the commands not yet picked up by the connection.
+     * 
+     * @return the pending commands, each terminated by a newline.
+     */
+    public String takePendingCommands() {
+        String commands = this.pendingCommands.toString();
+        this.pendingCommands.setLength(0);
+        return commands;
+    }
+
+    /**
+     * Invoked by the parser for every <code>*CAPABILITY:</code> sentence. Queues the command enabling the
+     * <code>protocol</code> and returns the field layout of its sentences.
+     * 
+     * @param protocol the name of the protocol.
+     * @param capability the fields supported by the kismet server.
+     * @return the field layout the parser must use for the <code>protocol</code>, or <code>null</code> if the
+     *         protocol was not requested.
+     */
+    public String[] onCapability(String protocol, String[] capability) {
+        String[] fields;
+        if (CLIENT_SOURCE_PROTOCOL.equals(protocol)) {
+            fields = CLIENT_SOURCE_FIELDS;
+        }
+        else if (SOURCE_PROTOCOL.equals(protocol)) {
+            fields = SOURCE_FIELDS;
+        }
+        else {
+            return null;
+        }
+        if (!this.fieldProjection) {
+            return null;
+        }
+        if (Arrays.asList(capability).containsAll(Arrays.asList(fields))) {
+            this.logger.info("Enabling " + protocol + " protocol with fields " + Arrays.toString(fields) + " for kismet server connection");
+            command("ENABLE " + protocol + " " + join(fields));
+            return fields;
+        }
+        this.logger.warning("Kismet server does not support all of " + Arrays.toString(fields) + " for " + protocol + ", enabling all fields");
+        command("ENABLE " + protocol + " *");
+        return capability;
+    }
+
+    /**
+     * Queues a command for the kismet server.
+     * 
+     * @param command the command without identifier and newline.
+     */
+    private void command(String command) {
+        this.pendingCommands.append('!').append(this.nextCommandId++).append(' ').append(command).append('\n');
+    }
+
+    /**
+     * Joins the specified <code>fields</code> into a comma separated list.
+     * 
+     * @param fields the fields.
+     * @return the comma separated list.
+     */
+    private static String join(String[] fields) {
+        StringBuilder sb = new StringBuilder();
+        for (String field : fields) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(field);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,128 @@
+package de.oscillation.kismet.connector;
+
+/**
+ * Estimates the position of a device from its distances to several drones with known coordinates. The distances are
+ * derived from the signal strengths with the log-distance path loss model, and the position is the weighted least
+ * squares fit of the distances, found with damped Gauss-Newton iterations. Nearer drones get larger weights, since
+ * the error of the derived distance grows with the distance. The iterations start from the previous position of the
+ * device if known, so a device that moved only slightly converges in one or two iterations.
+ * 
+ * @author Benedikt Meurer
+ * @see KismetPositioningStage
+ */
+public final class KismetTrilateration {
+    /** The maximum number of iterations. */
+    private static final int MAX_ITERATIONS = 20;
+
+    /** The step length below which the iterations stop, in the unit of the coordinates. */
+    private static final double TOLERANCE = 1e-3;
+
+    /** The relative damping added to the normal equations, which keeps them solvable for collinear drones. */
+    private static final double DAMPING = 1e-6;
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private KismetTrilateration() {
+    }
+
+    /**
+     * Returns the distance corresponding to the specified signal strength according to the log-distance path loss
+     * model.
+     * 
+     * @param signalStrength the signal strength in dBm.
+     * @param referenceSignalStrength the signal strength in dBm at the unit distance.
+     * @param pathLossExponent the path loss exponent, <code>2</code> in free space.
+     * @return the distance in the unit of the coordinates.
+     */
+    public static double distance(int signalStrength, double referenceSignalStrength, double pathLossExponent) {
+        return Math.pow(10.0, (referenceSignalStrength - signalStrength) / (10.0 * pathLossExponent));
+    }
+
+    /**
+     * Estimates the position from the distances to the specified drones.
+     * 
+     * @param xs the x coordinates of the drones.
+     * @param ys the y coordinates of the drones.
+     * @param distances the positive distances to the drones.
+     * @param n the number of drones, at least <code>1</code>.
+     * @param position the previous position as <code>{x, y}</code> to start from, or <code>NaN</code>s if unknown;
+     *            receives the estimated position.
+     * @return the accuracy of the estimated position, i.e. the weighted root mean square distance error.
+     * @throws IllegalArgumentException if <code>n</code> is not positive.
+     */
+    public static double solve(double[] xs, double[] ys, double[] distances, int n, double[] position) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("Invalid n " + n);
+        }
+        if (n == 1) {
+            // A single drone only tells the distance
+            position[0] = xs[0];
+            position[1] = ys[0];
+            return distances[0];
+        }
+        double x = position[0];
+        double y = position[1];
+        if (Double.isNaN(x) || Double.isNaN(y)) {
+            // Start from the centroid of the drones weighted by proximity
+            double sumW = 0, sumX = 0, sumY = 0;
+            for (int i = 0; i < n; ++i) {
+                double w = 1.0 / distances[i];
+                sumW += w;
+                sumX += w * xs[i];
+                sumY += w * ys[i];
+            }
+            x = sumX / sumW;
+            y = sumY / sumW;
+        }
+        for (int iteration = 0; iteration < MAX_ITERATIONS; ++iteration) {
+            // Accumulate the normal equations J'WJ d = -J'Wr
+            double a = 0, b = 0, c = 0, gx = 0, gy = 0;
+            for (int i = 0; i < n; ++i) {
+                double dx = x - xs[i];
+                double dy = y - ys[i];
+                double r = Math.sqrt(dx * dx + dy * dy);
+                if (r < TOLERANCE) {
+                    // The gradient is undefined on the drone itself
+                    continue;
+                }
+                double w = 1.0 / (distances[i] * distances[i]);
+                double jx = dx / r;
+                double jy = dy / r;
+                double residual = r - distances[i];
+                a += w * jx * jx;
+                b += w * jx * jy;
+                c += w * jy * jy;
+                gx += w * jx * residual;
+                gy += w * jy * residual;
+            }
+            double damping = DAMPING * (a + c);
+            a += damping;
+            c += damping;
+            double det = a * c - b * b;
+            if (!(det > 0)) {
+                break;
+            }
+            double stepX = (c * gx - b * gy) / det;
+            double stepY = (a * gy - b * gx) / det;
+            x -= stepX;
+            y -= stepY;
+            if (stepX * stepX + stepY * stepY < TOLERANCE * TOLERANCE) {
+                break;
+            }
+        }
+        position[0] = x;
+        position[1] = y;
+
+        double sumW = 0, sumWR2 = 0;
+        for (int i = 0; i < n; ++i) {
+            double dx = x - xs[i];
+            double dy = y - ys[i];
+            double residual = Math.sqrt(dx * dx + dy * dy) - distances[i];
+            double w = 1.0 / (distances[i] * distances[i]);
+            sumW += w;
+            sumWR2 += w * residual * residual;
+        }
+        return Math.sqrt(sumWR2 / sumW);
+    }
+}
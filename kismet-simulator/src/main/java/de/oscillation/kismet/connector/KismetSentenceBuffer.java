@@ -0,0 +1,153 @@
+package de.oscillation.kismet.connector;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Growable byte buffer used by the {@link KismetSimulator} to format kismet protocol sentences without creating
+ * intermediate strings. Instances of this class are not thread-safe.
+ * 
+ * @author Benedikt Meurer
+ */
+final class KismetSentenceBuffer {
+    /** The hexadecimal digits. */
+    private static final byte[] HEX_DIGITS = "0123456789ABCDEF".getBytes(Charset.forName("US-ASCII"));
+
+    /** The buffered bytes. */
+    private byte[] bytes;
+
+    /** The number of buffered bytes. */
+    private int length;
+
+    /**
+     * Constructs a new buffer with the specified initial <code>capacity</code>.
+     * 
+     * @param capacity the initial capacity in bytes.
+     */
+    public KismetSentenceBuffer(int capacity) {
+        this.bytes = new byte[capacity];
+    }
+
+    /**
+     * Returns the number of buffered bytes.
+     * 
+     * @return the number of buffered bytes.
+     */
+    public int length() {
+        return this.length;
+    }
+
+    /**
+     * Appends a single byte.
+     * 
+     * @param b the byte.
+     * @return this buffer.
+     */
+    public KismetSentenceBuffer append(byte b) {
+        ensureCapacity(1);
+        this.bytes[this.length++] = b;
+        return this;
+    }
+
+    /**
+     * Appends the specified bytes.
+     * 
+     * @param b the bytes.
+     * @return this buffer.
+     */
+    public KismetSentenceBuffer append(byte[] b) {
+        ensureCapacity(b.length);
+        System.arraycopy(b, 0, this.bytes, this.length, b.length);
+        this.length += b.length;
+        return this;
+    }
+
+    /**
+     * Appends the specified ASCII string.
+     * 
+     * @param s the string.
+     * @return this buffer.
+     */
+    public KismetSentenceBuffer append(String s) {
+        ensureCapacity(s.length());
+        for (int i = 0; i < s.length(); ++i) {
+            this.bytes[this.length++] = (byte) s.charAt(i);
+        }
+        return this;
+    }
+
+    /**
+     * Appends the decimal representation of the specified <code>value</code>.
+     * 
+     * @param value the value.
+     * @return this buffer.
+     */
+    public KismetSentenceBuffer append(long value) {
+        if (value == Long.MIN_VALUE) {
+            return append(Long.toString(value));
+        }
+        ensureCapacity(20);
+        if (value < 0) {
+            this.bytes[this.length++] = '-';
+            value = -value;
+        }
+        int start = this.length;
+        do {
+            this.bytes[this.length++] = (byte) ('0' + (value % 10));
+            value /= 10;
+        }
+        while (value != 0);
+        // Reverse the digits in place
+        for (int i = start, j = this.length - 1; i < j; ++i, --j) {
+            byte b = this.bytes[i];
+            this.bytes[i] = this.bytes[j];
+            this.bytes[j] = b;
+        }
+        return this;
+    }
+
+    /**
+     * Appends the EUI-48 address in the lower 48 bits of <code>deviceId</code> in the form
+     * <code>00:11:22:33:44:55</code>.
+     * 
+     * @param deviceId the EUI-48 address.
+     * @return this buffer.
+     */
+    public KismetSentenceBuffer appendDeviceId(long deviceId) {
+        ensureCapacity(17);
+        for (int shift = 40; shift >= 0; shift -= 8) {
+            int b = (int) (deviceId >>> shift) & 0xff;
+            this.bytes[this.length++] = HEX_DIGITS[b >>> 4];
+            this.bytes[this.length++] = HEX_DIGITS[b & 0xf];
+            if (shift != 0) {
+                this.bytes[this.length++] = ':';
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Writes the buffered bytes to the specified output stream and clears the buffer.
+     * 
+     * @param out the output stream.
+     * @throws IOException if an I/O error occurs.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(this.bytes, 0, this.length);
+        this.length = 0;
+    }
+
+    /**
+     * Grows the buffer as necessary to hold the specified number of additional bytes.
+     * 
+     * @param n the number of additional bytes.
+     */
+    private void ensureCapacity(int n) {
+        if (this.length + n > this.bytes.length) {
+            byte[] bytes = new byte[Math.max(this.bytes.length * 2, this.length + n)];
+            System.arraycopy(this.bytes, 0, bytes, 0, this.length);
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,595 @@
+package de.oscillation.kismet.connector;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Local simulator of a kismet server, which speaks the <code>CAPABILITY</code>/<code>ENABLE</code> handshake used by
+ * the connector and emits <code>*CLISRC:</code>, <code>*SOURCE:</code> and <code>*TIME:</code> sentences for a
+ * configurable number of drones and devices, either at a fixed rate or as fast as the client reads. On top of the
+ * steady rate, the simulator can emit periodic bursts of measured values, and replace drones periodically to
+ * simulate drone churn.
+ * <p>
+ * Slow readers are throttled by the socket, so the simulator never drops sentences, unless a slow reader timeout is
+ * configured, in which case clients that don't accept any data for longer than the timeout are disconnected, like
+ * the kismet server does when the write buffer of a client overflows.
+ * <p>
+ * The simulator must be configured before it is started. It can also be run from the command line, passing the
+ * properties as <code>name=value</code> arguments, e.g. <code>port=2501 devices=10000 measuredValuesPerSecond=0</code>.
+ * 
+ * @author Benedikt Meurer
+ */
+public class KismetSimulator {
+    /** The default port number of the kismet server. */
+    public static final int DEFAULT_PORT_NUMBER = 2501;
+
+    /** The charset of the kismet protocol. */
+    static final Charset CHARSET = Charset.forName("US-ASCII");
+
+    /** The most significant bits of the simulated drone UUIDs. */
+    private static final long DRONE_ID_MSB = 0x6b69736d65740000L;
+
+    /** The interval in milliseconds in which the slow reader timeout is checked. */
+    private static final long SLOW_READER_CHECK_MILLIS = 100L;
+
+    /** The address to bind to. */
+    private String bindAddress = "127.0.0.1";
+
+    /** The port number to listen on, or <code>0</code> for an ephemeral port. */
+    private int portNumber;
+
+    /** The number of simulated drones. */
+    private int drones = 4;
+
+    /** The number of simulated devices. */
+    private int devices = 1000;
+
+    /** The number of measured values per second, or <code>0</code> to send as fast as the client reads. */
+    private int measuredValuesPerSecond = 1000;
+
+    /** The number of additional measured values sent per burst. */
+    private int burstSize;
+
+    /** The interval in milliseconds between bursts, or <code>0</code> for no bursts. */
+    private long burstIntervalMillis;
+
+    /** The interval in milliseconds in which a drone is replaced, or <code>0</code> for no drone churn. */
+    private long churnIntervalMillis;
+
+    /** The time in milliseconds a client may block a write before it's disconnected, or <code>0</code> for no limit. */
+    private long slowReaderTimeoutMillis;
+
+    /** The currently active sessions. */
+    private final CopyOnWriteArrayList<KismetSimulatorSession> sessions = new CopyOnWriteArrayList<KismetSimulatorSession>();
+
+    /** The number of accepted clients. */
+    private final AtomicLong sessionCount = new AtomicLong();
+
+    /** The number of measured values sent to all clients. */
+    private final AtomicLong measuredValueCount = new AtomicLong();
+
+    /** The number of bytes sent to all clients. */
+    private final AtomicLong byteCount = new AtomicLong();
+
+    /** The total time in nanoseconds spent waiting for clients to accept data. */
+    private final AtomicLong blockedNanos = new AtomicLong();
+
+    /** The number of clients disconnected for being too slow. */
+    private final AtomicLong slowReaderDisconnects = new AtomicLong();
+
+    /** The logger. */
+    private final Logger logger = Logger.getLogger(KismetSimulator.class.getName());
+
+    /** The currently simulated drones. */
+    private volatile Drones currentDrones;
+
+    /** The serial number of the next drone. */
+    private long nextDroneSerial;
+
+    /** The server socket, or <code>null</code> if the simulator is not running. */
+    private volatile ServerSocket serverSocket;
+
+    /** The timer for drone churn and the slow reader timeout, or <code>null</code> if not needed. */
+    private Timer timer;
+
+    /**
+     * Starts the simulator, which accepts clients on a dedicated daemon thread until it is stopped.
+     * 
+     * @throws IOException if the server socket cannot be created.
+     * @throws IllegalStateException if the simulator is already running.
+     */
+    public synchronized void start() throws IOException {
+        if (this.serverSocket != null) {
+            throw new IllegalStateException("Simulator already running");
+        }
+        this.nextDroneSerial = 0;
+        UUID[] droneIds = new UUID[this.drones];
+        String[] droneNames = new String[this.drones];
+        for (int i = 0; i < this.drones; ++i) {
+            droneIds[i] = new UUID(DRONE_ID_MSB, this.nextDroneSerial);
+            droneNames[i] = "drone-" + this.nextDroneSerial++;
+        }
+        this.currentDrones = new Drones(droneIds, droneNames);
+        final ServerSocket serverSocket = new ServerSocket(this.portNumber, 50, InetAddress.getByName(this.bindAddress));
+        this.serverSocket = serverSocket;
+        if (this.churnIntervalMillis > 0 || this.slowReaderTimeoutMillis > 0) {
+            this.timer = new Timer("KismetSimulator-timer", true);
+            if (this.churnIntervalMillis > 0 && this.drones > 0) {
+                this.timer.schedule(new TimerTask() {
+                    @Override
+                    public void run() {
+                        churn();
+                    }
+                }, this.churnIntervalMillis, this.churnIntervalMillis);
+            }
+            if (this.slowReaderTimeoutMillis > 0) {
+                this.timer.schedule(new TimerTask() {
+                    @Override
+                    public void run() {
+                        checkSlowReaders();
+                    }
+                }, SLOW_READER_CHECK_MILLIS, SLOW_READER_CHECK_MILLIS);
+            }
+        }
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accept(serverSocket);
+            }
+        }, "KismetSimulator-" + serverSocket.getLocalPort());
+        thread.setDaemon(true);
+        thread.start();
+        this.logger.info("Kismet simulator listening on " + this.bindAddress + ":" + serverSocket.getLocalPort());
+    }
+
+    /**
+     * Stops the simulator and disconnects all clients.
+     */
+    public synchronized void stop() {
+        ServerSocket serverSocket = this.serverSocket;
+        if (serverSocket != null) {
+            this.serverSocket = null;
+            try {
+                serverSocket.close();
+            }
+            catch (IOException exn) {
+                this.logger.log(Level.WARNING, "Failed to close server socket", exn);
+            }
+            if (this.timer != null) {
+                this.timer.cancel();
+                this.timer = null;
+            }
+            for (KismetSimulatorSession session : this.sessions) {
+                session.close();
+            }
+        }
+    }
+
+    /**
+     * Checks whether the simulator is running.
+     * 
+     * @return <code>true</code> if the simulator is running, <code>false</code> otherwise.
+     */
+    public boolean isRunning() {
+        return this.serverSocket != null;
+    }
+
+    /**
+     * Returns the port number the simulator actually listens on, which differs from the configured port number if an
+     * ephemeral port was requested.
+     * 
+     * @return the local port number, or <code>-1</code> if the simulator is not running.
+     */
+    public int getLocalPortNumber() {
+        ServerSocket serverSocket = this.serverSocket;
+        return serverSocket == null ? -1 : serverSocket.getLocalPort();
+    }
+
+    /**
+     * Returns the number of currently connected clients.
+     * 
+     * @return the number of connected clients.
+     */
+    public int getActiveSessionCount() {
+        return this.sessions.size();
+    }
+
+    /**
+     * Returns the number of clients accepted since the simulator was created.
+     * 
+     * @return the number of accepted clients.
+     */
+    public long getSessionCount() {
+        return this.sessionCount.get();
+    }
+
+    /**
+     * Returns the number of measured values sent to all clients so far.
+     * 
+     * @return the number of measured values.
+     */
+    public long getMeasuredValueCount() {
+        return this.measuredValueCount.get();
+    }
+
+    /**
+     * Returns the number of bytes sent to all clients so far.
+     * 
+     * @return the number of bytes.
+     */
+    public long getByteCount() {
+        return this.byteCount.get();
+    }
+
+    /**
+     * Returns the total time spent waiting for clients to accept data, which indicates how much the clients pushed
+     * back on the simulator.
+     * 
+     * @return the blocked time in nanoseconds.
+     */
+    public long getBlockedNanos() {
+        return this.blockedNanos.get();
+    }
+
+    /**
+     * Returns the number of clients disconnected because they exceeded the slow reader timeout.
+     * 
+     * @return the number of disconnected slow readers.
+     */
+    public long getSlowReaderDisconnects() {
+        return this.slowReaderDisconnects.get();
+    }
+
+    /**
+     * @return the address to bind to.
+     */
+    public String getBindAddress() {
+        return this.bindAddress;
+    }
+
+    /**
+     * @param bindAddress the address to bind to.
+     * @throws NullPointerException if <code>bindAddress</code> is <code>null</code>.
+     */
+    public void setBindAddress(String bindAddress) {
+        if (bindAddress == null) {
+            throw new NullPointerException("bindAddress must not be null");
+        }
+        this.bindAddress = bindAddress;
+    }
+
+    /**
+     * @return the port number to listen on, or <code>0</code> for an ephemeral port.
+     */
+    public int getPortNumber() {
+        return this.portNumber;
+    }
+
+    /**
+     * @param portNumber the port number to listen on, or <code>0</code> for an ephemeral port.
+     * @throws IllegalArgumentException if <code>portNumber</code> is not a valid port number.
+     */
+    public void setPortNumber(int portNumber) {
+        if (portNumber < 0 || portNumber > 65535) {
+            throw new IllegalArgumentException("Invalid portNumber " + portNumber);
+        }
+        this.portNumber = portNumber;
+    }
+
+    /**
+     * @return the number of simulated drones.
+     */
+    public int getDrones() {
+        return this.drones;
+    }
+
+    /**
+     * @param drones the number of simulated drones.
+     * @throws IllegalArgumentException if <code>drones</code> is not positive.
+     */
+    public void setDrones(int drones) {
+        if (drones <= 0) {
+            throw new IllegalArgumentException("Invalid drones " + drones);
+        }
+        this.drones = drones;
+    }
+
+    /**
+     * @return the number of simulated devices.
+     */
+    public int getDevices() {
+        return this.devices;
+    }
+
+    /**
+     * @param devices the number of simulated devices.
+     * @throws IllegalArgumentException if <code>devices</code> is not positive.
+     */
+    public void setDevices(int devices) {
+        if (devices <= 0) {
+            throw new IllegalArgumentException("Invalid devices " + devices);
+        }
+        this.devices = devices;
+    }
+
+    /**
+     * @return the number of measured values per second, or <code>0</code> to send as fast as the client reads.
+     */
+    public int getMeasuredValuesPerSecond() {
+        return this.measuredValuesPerSecond;
+    }
+
+    /**
+     * Sets the number of measured values sent per second. If the rate is unlimited, the simulator sends a
+     * <code>*TIME:</code> sentence whenever it has sent a measured value for every device, and advances the kismet
+     * server timestamp by one second each time; otherwise it sends a <code>*TIME:</code> sentence every second.
+     * 
+     * @param measuredValuesPerSecond the number of measured values per second, or <code>0</code> to send as fast as
+     *            the client reads.
+     * @throws IllegalArgumentException if <code>measuredValuesPerSecond</code> is negative.
+     */
+    public void setMeasuredValuesPerSecond(int measuredValuesPerSecond) {
+        if (measuredValuesPerSecond < 0) {
+            throw new IllegalArgumentException("Invalid measuredValuesPerSecond " + measuredValuesPerSecond);
+        }
+        this.measuredValuesPerSecond = measuredValuesPerSecond;
+    }
+
+    /**
+     * @return the number of additional measured values sent per burst.
+     */
+    public int getBurstSize() {
+        return this.burstSize;
+    }
+
+    /**
+     * @param burstSize the number of additional measured values sent per burst.
+     * @throws IllegalArgumentException if <code>burstSize</code> is negative.
+     */
+    public void setBurstSize(int burstSize) {
+        if (burstSize < 0) {
+            throw new IllegalArgumentException("Invalid burstSize " + burstSize);
+        }
+        this.burstSize = burstSize;
+    }
+
+    /**
+     * @return the interval in milliseconds between bursts, or <code>0</code> for no bursts.
+     */
+    public long getBurstIntervalMillis() {
+        return this.burstIntervalMillis;
+    }
+
+    /**
+     * @param burstIntervalMillis the interval in milliseconds between bursts, or <code>0</code> for no bursts.
+     * @throws IllegalArgumentException if <code>burstIntervalMillis</code> is negative.
+     */
+    public void setBurstIntervalMillis(long burstIntervalMillis) {
+        if (burstIntervalMillis < 0) {
+            throw new IllegalArgumentException("Invalid burstIntervalMillis " + burstIntervalMillis);
+        }
+        this.burstIntervalMillis = burstIntervalMillis;
+    }
+
+    /**
+     * @return the interval in milliseconds in which a drone is replaced, or <code>0</code> for no drone churn.
+     */
+    public long getChurnIntervalMillis() {
+        return this.churnIntervalMillis;
+    }
+
+    /**
+     * Sets the interval in which one of the drones is replaced by a new drone with a new UUID and name. The drones
+     * are replaced round-robin, and announced via <code>*SOURCE:</code> sentence with the next <code>*TIME:</code>
+     * sentence.
+     * 
+     * @param churnIntervalMillis the interval in milliseconds in which a drone is replaced, or <code>0</code> for no
+     *            drone churn.
+     * @throws IllegalArgumentException if <code>churnIntervalMillis</code> is negative.
+     */
+    public void setChurnIntervalMillis(long churnIntervalMillis) {
+        if (churnIntervalMillis < 0) {
+            throw new IllegalArgumentException("Invalid churnIntervalMillis " + churnIntervalMillis);
+        }
+        this.churnIntervalMillis = churnIntervalMillis;
+    }
+
+    /**
+     * @return the time in milliseconds a client may block a write before it's disconnected, or <code>0</code> for no
+     *         limit.
+     */
+    public long getSlowReaderTimeoutMillis() {
+        return this.slowReaderTimeoutMillis;
+    }
+
+    /**
+     * @param slowReaderTimeoutMillis the time in milliseconds a client may block a write before it's disconnected,
+     *            or <code>0</code> for no limit.
+     * @throws IllegalArgumentException if <code>slowReaderTimeoutMillis</code> is negative.
+     */
+    public void setSlowReaderTimeoutMillis(long slowReaderTimeoutMillis) {
+        if (slowReaderTimeoutMillis < 0) {
+            throw new IllegalArgumentException("Invalid slowReaderTimeoutMillis " + slowReaderTimeoutMillis);
+        }
+        this.slowReaderTimeoutMillis = slowReaderTimeoutMillis;
+    }
+
+    /**
+     * Returns the currently simulated drones.
+     * 
+     * @return the drones.
+     */
+    Drones getCurrentDrones() {
+        return this.currentDrones;
+    }
+
+    /**
+     * Accounts the specified statistics of a session.
+     * 
+     * @param measuredValues the number of measured values sent.
+     * @param bytes the number of bytes sent.
+     * @param blockedNanos the time in nanoseconds spent waiting for the client.
+     */
+    void account(long measuredValues, long bytes, long blockedNanos) {
+        this.measuredValueCount.addAndGet(measuredValues);
+        this.byteCount.addAndGet(bytes);
+        this.blockedNanos.addAndGet(blockedNanos);
+    }
+
+    /**
+     * Removes the specified <code>session</code> from the active sessions.
+     * 
+     * @param session the terminated session.
+     */
+    void remove(KismetSimulatorSession session) {
+        this.sessions.remove(session);
+    }
+
+    /**
+     * Accepts clients on the specified <code>serverSocket</code> until it is closed.
+     * 
+     * @param serverSocket the server socket.
+     */
+    private void accept(ServerSocket serverSocket) {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                KismetSimulatorSession session = new KismetSimulatorSession(this, socket);
+                this.sessions.add(session);
+                this.sessionCount.incrementAndGet();
+                session.start();
+            }
+            catch (IOException exn) {
+                if (!serverSocket.isClosed()) {
+                    this.logger.log(Level.WARNING, "Failed to accept kismet client", exn);
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces the next drone round-robin by a new drone.
+     */
+    private synchronized void churn() {
+        Drones drones = this.currentDrones;
+        UUID[] droneIds = drones.ids.clone();
+        String[] droneNames = drones.names.clone();
+        int index = (int) (this.nextDroneSerial % droneIds.length);
+        droneIds[index] = new UUID(DRONE_ID_MSB, this.nextDroneSerial);
+        droneNames[index] = "drone-" + this.nextDroneSerial++;
+        this.currentDrones = new Drones(droneIds, droneNames);
+    }
+
+    /**
+     * Disconnects the clients that blocked a write for longer than the slow reader timeout.
+     */
+    private void checkSlowReaders() {
+        long timeoutNanos = this.slowReaderTimeoutMillis * 1000000L;
+        long now = System.nanoTime();
+        for (KismetSimulatorSession session : this.sessions) {
+            if (session.isBlockedLongerThan(now, timeoutNanos)) {
+                this.logger.warning("Disconnecting slow kismet client " + session);
+                this.slowReaderDisconnects.incrementAndGet();
+                session.close();
+            }
+        }
+    }
+
+    /**
+     * Runs the simulator from the command line until the process is terminated, logging the statistics every
+     * second.
+     * 
+     * @param args the properties as <code>name=value</code> pairs.
+     * @throws Exception if the simulator cannot be started.
+     */
+    public static void main(String[] args) throws Exception {
+        KismetSimulator simulator = new KismetSimulator();
+        simulator.setPortNumber(DEFAULT_PORT_NUMBER);
+        for (String arg : args) {
+            int i = arg.indexOf('=');
+            if (i < 0) {
+                throw new IllegalArgumentException("Invalid argument " + arg);
+            }
+            String name = arg.substring(0, i);
+            String value = arg.substring(i + 1);
+            if (name.equals("bindAddress")) {
+                simulator.setBindAddress(value);
+            }
+            else if (name.equals("port") || name.equals("portNumber")) {
+                simulator.setPortNumber(Integer.parseInt(value));
+            }
+            else if (name.equals("drones")) {
+                simulator.setDrones(Integer.parseInt(value));
+            }
+            else if (name.equals("devices")) {
+                simulator.setDevices(Integer.parseInt(value));
+            }
+            else if (name.equals("measuredValuesPerSecond")) {
+                simulator.setMeasuredValuesPerSecond(Integer.parseInt(value));
+            }
+            else if (name.equals("burstSize")) {
+                simulator.setBurstSize(Integer.parseInt(value));
+            }
+            else if (name.equals("burstIntervalMillis")) {
+                simulator.setBurstIntervalMillis(Long.parseLong(value));
+            }
+            else if (name.equals("churnIntervalMillis")) {
+                simulator.setChurnIntervalMillis(Long.parseLong(value));
+            }
+            else if (name.equals("slowReaderTimeoutMillis")) {
+                simulator.setSlowReaderTimeoutMillis(Long.parseLong(value));
+            }
+            else {
+                throw new IllegalArgumentException("Invalid property " + name);
+            }
+        }
+        simulator.start();
+        long measuredValueCount = 0;
+        while (simulator.isRunning()) {
+            Thread.sleep(1000L);
+            long count = simulator.getMeasuredValueCount();
+            simulator.logger.info(simulator.getActiveSessionCount() + " clients, " + (count - measuredValueCount) + " measured values/s, " + simulator.getByteCount() + " bytes, "
+                + simulator.getBlockedNanos() / 1000000L + " ms blocked, " + simulator.getSlowReaderDisconnects() + " slow readers disconnected");
+            measuredValueCount = count;
+        }
+    }
+
+    /**
+     * Immutable snapshot of the simulated drones, with their identifiers and names preformatted for the protocol.
+     */
+    static final class Drones {
+        /** The UUIDs of the drones. */
+        final UUID[] ids;
+
+        /** The names of the drones. */
+        final String[] names;
+
+        /** The UUIDs of the drones as protocol bytes. */
+        final byte[][] idBytes;
+
+        /** The names of the drones as protocol bytes. */
+        final byte[][] nameBytes;
+
+        Drones(UUID[] ids, String[] names) {
+            this.ids = ids;
+            this.names = names;
+            this.idBytes = new byte[ids.length][];
+            this.nameBytes = new byte[ids.length][];
+            for (int i = 0; i < ids.length; ++i) {
+                this.idBytes[i] = ids[i].toString().getBytes(CHARSET);
+                this.nameBytes[i] = names[i].getBytes(CHARSET);
+            }
+        }
+    }
+}
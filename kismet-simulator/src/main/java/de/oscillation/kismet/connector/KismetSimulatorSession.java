@@ -0,0 +1,456 @@
+package de.oscillation.kismet.connector;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A single client of the {@link KismetSimulator}. Commands are read on a dedicated reader thread, while the writer
+ * thread generates the sentences for the enabled protocols and writes them, together with the replies to the
+ * commands, to the client.
+ * 
+ * @author Benedikt Meurer
+ */
+final class KismetSimulatorSession implements Runnable {
+    /** The CLISRC fields supported by the simulator, in the order of the kismet server. */
+    static final String[] CLIENT_SOURCE_CAPABILITY = { "bssid", "mac", "uuid", "lasttime", "numpackets", "signal_dbm", "minsignal_dbm", "maxsignal_dbm" };
+
+    /** The SOURCE fields supported by the simulator, in the order of the kismet server. */
+    static final String[] SOURCE_CAPABILITY = { "interface", "type", "username", "channel", "uuid", "packets", "hop" };
+
+    /** The EUI-48 address prefix of the simulated devices (locally administered). */
+    private static final long DEVICE_ID_PREFIX = 0x020000000000L;
+
+    /** The EUI-48 address of the simulated access point. */
+    private static final long BSSID = 0x020000ffffffL;
+
+    /** The number of measured values generated per iteration when sending as fast as the client reads. */
+    private static final int UNLIMITED_CHUNK = 256;
+
+    /** The size of the write buffer in bytes. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** The prefix of CLISRC sentences. */
+    private static final byte[] CLISRC = "*CLISRC: ".getBytes(KismetSimulator.CHARSET);
+
+    /** The prefix of SOURCE sentences. */
+    private static final byte[] SOURCE = "*SOURCE: ".getBytes(KismetSimulator.CHARSET);
+
+    /** The prefix of TIME sentences. */
+    private static final byte[] TIME = "*TIME: ".getBytes(KismetSimulator.CHARSET);
+
+    /** The interface and type of drone sources. */
+    private static final byte[] DRONE = "drone".getBytes(KismetSimulator.CHARSET);
+
+    /** The simulator this session belongs to. */
+    private final KismetSimulator simulator;
+
+    /** The client socket. */
+    private final Socket socket;
+
+    /** The replies to the commands of the client, not yet written by the writer thread. */
+    private final ConcurrentLinkedQueue<String> replies = new ConcurrentLinkedQueue<String>();
+
+    /** The logger. */
+    private final Logger logger = Logger.getLogger(KismetSimulatorSession.class.getName());
+
+    /** The enabled CLISRC fields as indices into the capability, or <code>null</code> if not enabled. */
+    private volatile int[] clientSourceLayout;
+
+    /** The enabled SOURCE fields as indices into the capability, or <code>null</code> if not enabled. */
+    private volatile int[] sourceLayout;
+
+    /** Whether the SOURCE sentences must be sent before the next measured value. */
+    private volatile boolean sourcesPending;
+
+    /** The {@link System#nanoTime()} when the current write started, or <code>0</code> if not writing. */
+    private volatile long writeStartNanos;
+
+    /** Whether the session is closed. */
+    private volatile boolean closed;
+
+    /** The random number generator for the measured values. */
+    private final Random random = new Random(0);
+
+    /** The write buffer. */
+    private final KismetSentenceBuffer buffer = new KismetSentenceBuffer(BUFFER_SIZE);
+
+    /** The index of the next device. */
+    private int device;
+
+    /** The number of packets seen so far. */
+    private long packets;
+
+    /** The current kismet server timestamp. */
+    private long timestamp = System.currentTimeMillis() / 1000L;
+
+    /**
+     * Constructs a new session for the specified client <code>socket</code>.
+     * 
+     * @param simulator the simulator.
+     * @param socket the client socket.
+     */
+    KismetSimulatorSession(KismetSimulator simulator, Socket socket) {
+        this.simulator = simulator;
+        this.socket = socket;
+    }
+
+    /**
+     * Starts the reader and writer threads of this session.
+     */
+    public void start() {
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                read();
+            }
+        }, this + "-reader");
+        reader.setDaemon(true);
+        reader.start();
+        Thread writer = new Thread(this, this + "-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Closes the client socket, which terminates both threads of this session.
+     */
+    public void close() {
+        this.closed = true;
+        try {
+            this.socket.close();
+        }
+        catch (IOException exn) {
+            this.logger.log(Level.FINE, "Failed to close kismet client " + this, exn);
+        }
+    }
+
+    /**
+     * Checks whether the current write blocks for longer than <code>timeoutNanos</code>.
+     * 
+     * @param now the current {@link System#nanoTime()}.
+     * @param timeoutNanos the timeout in nanoseconds.
+     * @return <code>true</code> if the client is too slow, <code>false</code> otherwise.
+     */
+    public boolean isBlockedLongerThan(long now, long timeoutNanos) {
+        long writeStartNanos = this.writeStartNanos;
+        return writeStartNanos != 0 && now - writeStartNanos > timeoutNanos;
+    }
+
+    /**
+     * Generates and writes the sentences until the session is closed.
+     * 
+     * @see Runnable#run()
+     */
+    @Override
+    public void run() {
+        try {
+            OutputStream out = this.socket.getOutputStream();
+            int measuredValuesPerSecond = this.simulator.getMeasuredValuesPerSecond();
+            int burstSize = this.simulator.getBurstSize();
+            long burstIntervalNanos = this.simulator.getBurstIntervalMillis() * 1000000L;
+            long startNanos = System.nanoTime();
+            long nextTimeNanos = startNanos + 1000000000L;
+            long nextBurstNanos = startNanos + burstIntervalNanos;
+            long measuredValues = 0;
+            this.buffer.append("*KISMET: 0.0.0 " + this.timestamp + " \001Kismet Simulator\001 \001\001 0\n");
+            this.buffer.append("*PROTOCOLS: KISMET,ERROR,ACK,PROTOCOLS,CAPABILITY,TIME,SOURCE,CLISRC\n");
+            while (!this.closed) {
+                for (String reply; (reply = this.replies.poll()) != null;) {
+                    this.buffer.append(reply);
+                }
+                long now = System.nanoTime();
+                int count = 0;
+                if (measuredValuesPerSecond == 0) {
+                    count = Math.min(UNLIMITED_CHUNK, this.simulator.getDevices() - this.device);
+                }
+                else {
+                    long due = (long) ((now - startNanos) / 1e9 * measuredValuesPerSecond);
+                    if (due - measuredValues > measuredValuesPerSecond) {
+                        // Don't try to catch up on more than one second after the client blocked us
+                        measuredValues = due - measuredValuesPerSecond;
+                    }
+                    count = (int) (due - measuredValues);
+                    measuredValues = due;
+                    if (now - nextTimeNanos >= 0) {
+                        nextTimeNanos += 1000000000L;
+                        this.timestamp = System.currentTimeMillis() / 1000L;
+                        appendTime();
+                    }
+                }
+                if (burstIntervalNanos > 0 && now - nextBurstNanos >= 0) {
+                    nextBurstNanos += burstIntervalNanos;
+                    count += burstSize;
+                }
+                int sent = appendClientSources(count);
+                if (measuredValuesPerSecond == 0 && this.device == this.simulator.getDevices()) {
+                    // Every device was measured, advance the simulated clock
+                    this.device = 0;
+                    this.timestamp++;
+                    appendTime();
+                }
+                if (this.buffer.length() > 0) {
+                    long bytes = this.buffer.length();
+                    long writeStartNanos = System.nanoTime();
+                    this.writeStartNanos = writeStartNanos;
+                    this.buffer.writeTo(out);
+                    long blockedNanos = System.nanoTime() - writeStartNanos;
+                    this.writeStartNanos = 0;
+                    this.simulator.account(sent, bytes, blockedNanos);
+                }
+                if (sent == 0) {
+                    Thread.sleep(1L);
+                }
+            }
+        }
+        catch (InterruptedException exn) {
+            Thread.currentThread().interrupt();
+        }
+        catch (IOException exn) {
+            if (!this.closed) {
+                this.logger.log(Level.FINE, "Kismet client " + this + " disconnected", exn);
+            }
+        }
+        finally {
+            close();
+            this.simulator.remove(this);
+        }
+    }
+
+    /**
+     * Reads and answers the commands of the client until the session is closed.
+     */
+    private void read() {
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(this.socket.getInputStream(), KismetSimulator.CHARSET));
+            for (String line; (line = reader.readLine()) != null;) {
+                command(line);
+            }
+        }
+        catch (IOException exn) {
+            if (!this.closed) {
+                this.logger.log(Level.FINE, "Kismet client " + this + " disconnected", exn);
+            }
+        }
+        finally {
+            close();
+        }
+    }
+
+    /**
+     * Executes the specified command <code>line</code> of the form <code>!id COMMAND arguments</code>.
+     * 
+     * @param line the command line.
+     */
+    private void command(String line) {
+        String[] tokens = line.trim().split(" +");
+        if (tokens.length < 2 || !tokens[0].startsWith("!")) {
+            this.replies.add("*ERROR: 0 \001Invalid command\001\n");
+            return;
+        }
+        String id = tokens[0].substring(1);
+        String command = tokens[1];
+        String protocol = tokens.length > 2 ? tokens[2] : "";
+        String[] capability;
+        if (protocol.equals("CLISRC")) {
+            capability = CLIENT_SOURCE_CAPABILITY;
+        }
+        else if (protocol.equals("SOURCE")) {
+            capability = SOURCE_CAPABILITY;
+        }
+        else if (protocol.equals("TIME") || protocol.equals("KISMET") || protocol.equals("PROTOCOLS")) {
+            // Always enabled
+            this.replies.add("*ACK: " + id + " \001OK\001\n");
+            return;
+        }
+        else {
+            this.replies.add("*ERROR: " + id + " \001Unknown protocol " + protocol + "\001\n");
+            return;
+        }
+        if (command.equals("CAPABILITY")) {
+            StringBuilder sb = new StringBuilder("*CAPABILITY: ").append(protocol).append(' ');
+            for (int i = 0; i < capability.length; ++i) {
+                sb.append(i == 0 ? "" : ",").append(capability[i]);
+            }
+            this.replies.add(sb.append('\n').toString());
+        }
+        else if (command.equals("ENABLE")) {
+            int[] layout = layout(capability, tokens.length > 3 ? tokens[3] : "*");
+            if (layout == null) {
+                this.replies.add("*ERROR: " + id + " \001Unknown field\001\n");
+                return;
+            }
+            if (capability == SOURCE_CAPABILITY) {
+                this.sourceLayout = layout;
+                this.sourcesPending = true;
+            }
+            else {
+                this.clientSourceLayout = layout;
+            }
+        }
+        else if (command.equals("REMOVE")) {
+            if (capability == SOURCE_CAPABILITY) {
+                this.sourceLayout = null;
+            }
+            else {
+                this.clientSourceLayout = null;
+            }
+        }
+        else {
+            this.replies.add("*ERROR: " + id + " \001Unknown command " + command + "\001\n");
+            return;
+        }
+        this.replies.add("*ACK: " + id + " \001OK\001\n");
+    }
+
+    /**
+     * Translates the comma separated list of <code>fields</code> into indices into the <code>capability</code>.
+     * 
+     * @param capability the supported fields.
+     * @param fields the requested fields, or <code>*</code> for all fields.
+     * @return the layout, or <code>null</code> if a field is not supported.
+     */
+    private static int[] layout(String[] capability, String fields) {
+        if (fields.equals("*")) {
+            int[] layout = new int[capability.length];
+            for (int i = 0; i < layout.length; ++i) {
+                layout[i] = i;
+            }
+            return layout;
+        }
+        String[] names = fields.split(",");
+        int[] layout = new int[names.length];
+        for (int i = 0; i < names.length; ++i) {
+            layout[i] = -1;
+            for (int j = 0; j < capability.length; ++j) {
+                if (capability[j].equals(names[i])) {
+                    layout[i] = j;
+                }
+            }
+            if (layout[i] < 0) {
+                return null;
+            }
+        }
+        return layout;
+    }
+
+    /**
+     * Appends up to <code>count</code> CLISRC sentences, preceded by the SOURCE sentences if they are pending.
+     * 
+     * @param count the number of measured values.
+     * @return the number of CLISRC sentences appended.
+     */
+    private int appendClientSources(int count) {
+        int[] layout = this.clientSourceLayout;
+        KismetSimulator.Drones drones = this.simulator.getCurrentDrones();
+        if (this.sourcesPending) {
+            appendSources(drones);
+        }
+        if (layout == null) {
+            return 0;
+        }
+        int devices = this.simulator.getDevices();
+        KismetSentenceBuffer buffer = this.buffer;
+        for (int n = 0; n < count; ++n) {
+            int drone = this.random.nextInt(drones.ids.length);
+            int signalStrength = -30 - this.random.nextInt(60);
+            buffer.append(CLISRC);
+            for (int i = 0; i < layout.length; ++i) {
+                if (i != 0) {
+                    buffer.append((byte) ' ');
+                }
+                switch (layout[i]) {
+                case 0: // bssid
+                    buffer.appendDeviceId(BSSID);
+                    break;
+                case 1: // mac
+                    buffer.appendDeviceId(DEVICE_ID_PREFIX | this.device);
+                    break;
+                case 2: // uuid
+                    buffer.append(drones.idBytes[drone]);
+                    break;
+                case 3: // lasttime
+                    buffer.append(this.timestamp);
+                    break;
+                case 4: // numpackets
+                    buffer.append(++this.packets);
+                    break;
+                default: // signal_dbm, minsignal_dbm, maxsignal_dbm
+                    buffer.append(signalStrength);
+                    break;
+                }
+            }
+            buffer.append((byte) '\n');
+            if (++this.device == devices) {
+                if (this.simulator.getMeasuredValuesPerSecond() == 0) {
+                    return n + 1;
+                }
+                this.device = 0;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Appends a TIME sentence for the current timestamp, followed by the SOURCE sentences for all drones.
+     */
+    private void appendTime() {
+        this.buffer.append(TIME).append(this.timestamp).append((byte) '\n');
+        this.sourcesPending = true;
+    }
+
+    /**
+     * Appends the SOURCE sentences for the specified <code>drones</code>, if enabled.
+     * 
+     * @param drones the drones.
+     */
+    private void appendSources(KismetSimulator.Drones drones) {
+        this.sourcesPending = false;
+        int[] layout = this.sourceLayout;
+        if (layout == null) {
+            return;
+        }
+        KismetSentenceBuffer buffer = this.buffer;
+        for (int drone = 0; drone < drones.ids.length; ++drone) {
+            buffer.append(SOURCE);
+            for (int i = 0; i < layout.length; ++i) {
+                if (i != 0) {
+                    buffer.append((byte) ' ');
+                }
+                switch (layout[i]) {
+                case 0: // interface
+                case 1: // type
+                    buffer.append(DRONE);
+                    break;
+                case 2: // username
+                    buffer.append((byte) 1).append(drones.nameBytes[drone]).append((byte) 1);
+                    break;
+                case 3: // channel
+                    buffer.append(6L);
+                    break;
+                case 4: // uuid
+                    buffer.append(drones.idBytes[drone]);
+                    break;
+                default: // packets, hop
+                    buffer.append(0L);
+                    break;
+                }
+            }
+            buffer.append((byte) '\n');
+        }
+    }
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "KismetSimulatorSession[" + this.socket.getRemoteSocketAddress() + "]";
+    }
+}